@@ -25,6 +25,7 @@ import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import javax.activation.DataHandler;
 import javax.jbi.JBIException;
@@ -106,6 +107,7 @@ import org.apache.cxf.wsdl.WSDLManager;
 import org.apache.cxf.wsdl11.WSDLServiceFactory;
 import org.apache.servicemix.common.endpoints.ConsumerEndpoint;
 import org.apache.servicemix.common.security.AuthenticationService;
+import org.apache.servicemix.cxfbc.ExchangeCorrelationTable.Correlation;
 import org.apache.servicemix.cxfbc.interceptors.ExtractHeaderPartIntercepor;
 import org.apache.servicemix.cxfbc.interceptors.JbiInInterceptor;
 import org.apache.servicemix.cxfbc.interceptors.JbiInWsdl1Interceptor;
@@ -134,6 +136,12 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
     
     public static final String WSN_UNSUBSCRIBE_ADDRESS = "wsn.unsubscribe.address";
 
+    private static final String EXCHANGE_TIMED_OUT = CxfBcConsumer.class.getName() + ".exchangeTimedOut";
+
+    // the correlation table times out the suspended requests, the continuation
+    // timeout only ends them if the table can't, for instance once it is stopped
+    private static final long CONTINUATION_TIMEOUT_MARGIN = 5000;
+
     List<Interceptor<? extends Message>> in = new CopyOnWriteArrayList<Interceptor<? extends Message>>();
 
     List<Interceptor<? extends Message>> out = new CopyOnWriteArrayList<Interceptor<? extends Message>>();
@@ -150,7 +158,8 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
 
     private Server server;
 
-    private Map<String, Message> messages = new ConcurrentHashMap<String, Message>();
+    private ExchangeCorrelationTable<Message> messages = new ExchangeCorrelationTable<Message>(
+            new ExpiryHandler());
 
     private boolean synchronous;
 
@@ -297,19 +306,27 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
 
     public void process(MessageExchange exchange) throws Exception {
         if (exchange.getStatus() == ExchangeStatus.DONE) {
-            Message message = messages.get(exchange.getExchangeId());
-            if (message == null) {
+            Correlation<Message> correlation = messages.get(exchange.getExchangeId());
+            if (correlation == null) {
                 return;
             }
-            boolean oneway = message.getExchange().get(BindingOperationInfo.class)
+            boolean oneway = correlation.getValue().getExchange().get(BindingOperationInfo.class)
                 .getOperationInfo().isOneWay();
             if (oneway) {
                 //ensure remove message if oneway to avoid memory leak
-                messages.remove(exchange.getExchangeId());
+                messages.complete(exchange.getExchangeId());
             }
             return;
         }
-        Message message = messages.remove(exchange.getExchangeId());
+        Correlation<Message> correlation = messages.complete(exchange.getExchangeId());
+        if (correlation == null) {
+            // the exchange has already timed out and a fault has been sent back to the client
+            if (exchange.getStatus() == ExchangeStatus.ACTIVE) {
+                done(exchange);
+            }
+            return;
+        }
+        Message message = correlation.getValue();
         message.setContent(MessageExchange.class, exchange);
         message.put("needSetDone", Boolean.TRUE);
         
@@ -317,22 +334,76 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
                 .getOperationInfo().isOneWay();
         if (!isSynchronous() && !oneway 
             && !isServletTransport()) {
-            if (isNativeAsyn(message)) {
-                message.getInterceptorChain().resume();
-            } else {
-                ContinuationProvider continuationProvider = (ContinuationProvider) message
-                        .get(ContinuationProvider.class.getName());
-                Continuation continuation = continuationProvider
-                        .getContinuation();
-                synchronized(continuation) {
-                	if (continuation.isPending()) {
-                		continuation.resume();
-                	}
-                }
+            synchronized (correlation) {
+                resume(message);
             }
         }
     }
 
+    /**
+     * Resumes the processing of a request suspended while waiting for its exchange.
+     * Must be called while holding the lock on the exchange correlation.
+     */
+    private void resume(Message message) {
+        if (isNativeAsyn(message)) {
+            message.getInterceptorChain().resume();
+        } else {
+            ContinuationProvider continuationProvider = (ContinuationProvider) message
+                    .get(ContinuationProvider.class.getName());
+            Continuation continuation = continuationProvider
+                    .getContinuation();
+            if (continuation.isPending()) {
+                continuation.resume();
+            }
+        }
+    }
+
+    /*
+     * No response was received in time: resume the request so that a fault is sent back
+     */
+    private void exchangeExpired(Correlation<Message> correlation) {
+        Message message = correlation.getValue();
+        if (message.getExchange().isOneWay()) {
+            // nobody is waiting for the response, just forget about it
+            return;
+        }
+        message.put(EXCHANGE_TIMED_OUT, Boolean.TRUE);
+        synchronized (correlation) {
+            resume(message);
+        }
+    }
+
+    /*
+     * A named class rather than an anonymous one, which the xbean mapping parser can't read in a field initializer
+     */
+    private class ExpiryHandler implements ExchangeCorrelationTable.ExpiryListener<Message> {
+        public void expired(Correlation<Message> correlation) {
+            exchangeExpired(correlation);
+        }
+    }
+
+    /**
+     * Returns the number of exchanges this endpoint is waiting on.
+     */
+    public int getPendingExchanges() {
+        return messages.getPendingCount();
+    }
+
+    /**
+     * Returns the number of exchanges which did not receive a response within the timeout.
+     */
+    public long getExpiredExchanges() {
+        return messages.getExpiredCount();
+    }
+
+    /**
+     * Returns the 99th percentile of the time (in milliseconds) taken by the recent
+     * exchanges to receive their response.
+     */
+    public long getResponseTimeP99() {
+        return messages.getResponseTimePercentile(99);
+    }
+
     private boolean isServletTransport() {
         return locationURI != null && locationURI.startsWith("/");
     }
@@ -397,6 +468,17 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
 
     @Override
     public void start() throws Exception {
+        if (timeout > 0) {
+            // resume the expired requests outside of the timer thread
+            final org.apache.servicemix.executors.Executor executor =
+                getServiceUnit().getComponent().getExecutor(MessageExchange.Role.CONSUMER);
+            messages.setExecutor(new Executor() {
+                public void execute(Runnable command) {
+                    executor.execute(command);
+                }
+            });
+            messages.start();
+        }
         server.start();
         super.start();
         this.started = true;
@@ -405,6 +487,7 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
     @Override
     public void stop() throws Exception {
         this.started = false;
+        messages.stop();
         getBus().getExtension(WSDLManager.class).removeDefinition(definition);
         super.stop();
     }
@@ -851,60 +934,58 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
 
             try {
             	if (CxfBcConsumer.this.isOneway) {
-                        CxfBcConsumer.this.messages.put(exchange.getExchangeId(), message);
+                    CxfBcConsumer.this.messages.register(exchange.getExchangeId(), message,
+                            timeout * 1000);
             		context.getDeliveryChannel().send(exchange);
             	} else if ((CxfBcConsumer.this.isSynchronous()
                         && !CxfBcConsumer.this.isOneway)
                         || isServletTransport()) {
-                    CxfBcConsumer.this.messages.put(exchange.getExchangeId(), message);
+                    // sendSync enforces the timeout itself
+                    CxfBcConsumer.this.messages.register(exchange.getExchangeId(), message, 0);
                     context.getDeliveryChannel().sendSync(exchange,
                             timeout * 1000);
                     process(exchange);
                 } else {
                     if (isNativeAsyn(message)) {
-                        synchronized (message) {
-
-                            if (!((PhaseInterceptorChain)message.getInterceptorChain()).getState()
-                                    .equals(State.PAUSED)) {
-                                CxfBcConsumer.this.messages.put(exchange
-                                        .getExchangeId(), message);
+                        if (!((PhaseInterceptorChain)message.getInterceptorChain()).getState()
+                                .equals(State.PAUSED)) {
+                            // the response can only resume the chain once it has been paused
+                            Correlation<Message> correlation = CxfBcConsumer.this.messages.register(
+                                    exchange.getExchangeId(), message, timeout * 1000);
+                            synchronized (correlation) {
                                 context.getDeliveryChannel().send(exchange);
                                 message.getInterceptorChain().pause();
-                            } else {
-                                // retry or timeout
-                                if (!((PhaseInterceptorChain)message.getInterceptorChain()).getState()
-                                        .equals(State.EXECUTING)) {
-                                    messages.remove(exchange.getExchangeId());
-                                    // exchange timeout
-                                    throw new Exception("Exchange timed out: "
-                                            + exchange.getExchangeId());
-                                }
-
                             }
-
+                        } else {
+                            // retry or timeout
+                            if (!((PhaseInterceptorChain)message.getInterceptorChain()).getState()
+                                    .equals(State.EXECUTING)) {
+                                messages.remove(exchange.getExchangeId());
+                                // exchange timeout
+                                throw new Exception("Exchange timed out: "
+                                        + exchange.getExchangeId());
+                            }
                         }
                     } else {
-                        synchronized (((ContinuationProvider) message
-                                .get(ContinuationProvider.class.getName()))
-                                .getContinuation()) {
-
-                            ContinuationProvider continuationProvider = (ContinuationProvider) message
-                                    .get(ContinuationProvider.class.getName());
-                            Continuation continuation = continuationProvider
-                                    .getContinuation();
-                            if (continuation.isNew()) {
-                            	continuation.suspend(timeout * 1000);
-                                CxfBcConsumer.this.messages.put(exchange
-                                        .getExchangeId(), message);
+                        ContinuationProvider continuationProvider = (ContinuationProvider) message
+                                .get(ContinuationProvider.class.getName());
+                        Continuation continuation = continuationProvider
+                                .getContinuation();
+                        if (continuation.isNew()) {
+                            // the response can only resume the continuation once it has been suspended
+                            Correlation<Message> correlation = CxfBcConsumer.this.messages.register(
+                                    exchange.getExchangeId(), message, timeout * 1000);
+                            synchronized (correlation) {
+                                continuation.suspend(timeout > 0 ? timeout * 1000 + CONTINUATION_TIMEOUT_MARGIN : 0);
                                 context.getDeliveryChannel().send(exchange);
-                            } else if (!continuation.isResumed()) {
-                                if (!continuation.isPending()) {
-                                    messages.remove(exchange.getExchangeId());
-                                    continuation.reset();
-                                    // exchange timeout
-                                    throw new Exception("Exchange timed out: "
-                                            + exchange.getExchangeId());
-                                }
+                            }
+                        } else if (!continuation.isResumed()) {
+                            if (!continuation.isPending()) {
+                                messages.remove(exchange.getExchangeId());
+                                continuation.reset();
+                                // exchange timeout
+                                throw new Exception("Exchange timed out: "
+                                        + exchange.getExchangeId());
                             }
                         }
                     }
@@ -929,6 +1010,10 @@ public class CxfBcConsumer extends ConsumerEndpoint implements
         	MessageExchange exchange = message
                     .getContent(MessageExchange.class);
             Exchange ex = message.getExchange();
+            if (Boolean.TRUE.equals(message.get(EXCHANGE_TIMED_OUT))) {
+                throw new Fault(new Exception("Exchange timed out: "
+                        + exchange.getExchangeId()));
+            }
             if (exchange.getStatus() == ExchangeStatus.ERROR) {
                 throw new Fault(exchange.getError());
             }
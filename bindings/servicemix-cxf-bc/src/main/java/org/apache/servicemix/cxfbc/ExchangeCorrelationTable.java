@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the exchanges an endpoint is waiting on, keyed on the JBI exchange id.
+ * <p>
+ * Correlations registered with a timeout are put on a hashed timer wheel and handed to
+ * the {@link ExpiryListener} once they have been pending for longer than that timeout.
+ * A correlation is only ever handed out once: either by {@link #complete(String)},
+ * {@link #remove(String)} or to the expiry listener. The listener is notified on the
+ * executor given by {@link #setExecutor(Executor)}, so that the timer thread only
+ * advances the wheel.
+ */
+public class ExchangeCorrelationTable<T> {
+
+    public static final long DEFAULT_TICK = 100;
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int SAMPLES = 1024;
+
+    /**
+     * Called for each correlation that expired, from the executor of the table or
+     * from the timer thread if it has none.
+     */
+    public interface ExpiryListener<T> {
+        void expired(Correlation<T> correlation);
+    }
+
+    /**
+     * A pending exchange.  The correlation can be used as a lock to order the
+     * suspension of the request against the processing of its response.
+     */
+    public static class Correlation<T> {
+        private final String id;
+        private final T value;
+        private final long created;
+        private final long deadline;
+
+        Correlation(String id, T value, long deadline) {
+            this.id = id;
+            this.value = value;
+            this.created = System.currentTimeMillis();
+            this.deadline = deadline;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(ExchangeCorrelationTable.class);
+
+    private final ConcurrentMap<String, Correlation<T>> pending = new ConcurrentHashMap<String, Correlation<T>>();
+    private final List<Queue<Correlation<T>>> wheel;
+    private final long tick;
+    private final ExpiryListener<T> listener;
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+    private final AtomicInteger sampleIndex = new AtomicInteger();
+    private volatile long ticks;
+    private ScheduledExecutorService timer;
+    private volatile Executor executor;
+
+    public ExchangeCorrelationTable(ExpiryListener<T> listener) {
+        this(listener, DEFAULT_TICK, DEFAULT_WHEEL_SIZE);
+    }
+
+    public ExchangeCorrelationTable(ExpiryListener<T> listener, long tick, int wheelSize) {
+        if (tick <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tick and wheelSize must be positive");
+        }
+        this.listener = listener;
+        this.tick = tick;
+        this.wheel = new ArrayList<Queue<Correlation<T>>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ConcurrentLinkedQueue<Correlation<T>>());
+        }
+    }
+
+    /**
+     * Sets the executor notifying the expiry listener. Without executor the listener
+     * is called from the timer thread.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the timer thread which expires the correlations.
+     */
+    public synchronized void start() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "servicemix-cxf-bc-correlation-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timer.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    expireTick();
+                }
+            }, tick, tick, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the timer thread. Pending correlations are kept but will not expire
+     * until the table is started again.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Registers a pending exchange.
+     *
+     * @param id the exchange id
+     * @param value the object waiting on the exchange
+     * @param timeout the timeout in milliseconds, or <code>0</code> for no timeout
+     * @return the new correlation
+     */
+    public Correlation<T> register(String id, T value, long timeout) {
+        Correlation<T> correlation;
+        if (timeout > 0) {
+            // one extra tick so that a tick happening concurrently can not make the bucket be missed
+            long delay = (timeout + tick - 1) / tick + 1;
+            correlation = new Correlation<T>(id, value, ticks + delay);
+            pending.put(id, correlation);
+            wheel.get((int) (correlation.deadline % wheel.size())).add(correlation);
+        } else {
+            correlation = new Correlation<T>(id, value, -1);
+            pending.put(id, correlation);
+        }
+        return correlation;
+    }
+
+    public Correlation<T> get(String id) {
+        return pending.get(id);
+    }
+
+    /**
+     * Removes the correlation because its response has been received, recording
+     * the time it has been pending.
+     *
+     * @return the correlation, or <code>null</code> if it has expired or was never registered
+     */
+    public Correlation<T> complete(String id) {
+        Correlation<T> correlation = remove(id);
+        if (correlation != null) {
+            completed.incrementAndGet();
+            long elapsed = System.currentTimeMillis() - correlation.created;
+            samples.set(sampleIndex.getAndIncrement() & (SAMPLES - 1), elapsed);
+        }
+        return correlation;
+    }
+
+    /**
+     * Removes the correlation without recording it as completed.
+     */
+    public Correlation<T> remove(String id) {
+        Correlation<T> correlation = pending.remove(id);
+        if (correlation != null && correlation.deadline >= 0) {
+            // don't keep the value reachable from the wheel until its bucket comes round
+            wheel.get((int) (correlation.deadline % wheel.size())).remove(correlation);
+        }
+        return correlation;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the given percentile of the time to response (in milliseconds) over
+     * the most recently completed exchanges.
+     *
+     * @param percentile a percentile between 0 and 100
+     */
+    public long getResponseTimePercentile(double percentile) {
+        int count = (int) Math.min(completed.get(), SAMPLES);
+        if (count == 0) {
+            return 0;
+        }
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = samples.get(i);
+        }
+        Arrays.sort(values);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return values[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Returns the number of correlations on the timer wheel.
+     */
+    int getScheduledCount() {
+        int count = 0;
+        for (Queue<Correlation<T>> bucket : wheel) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    /**
+     * Advances the wheel by one tick, expiring the correlations whose deadline has passed.
+     * Correlations completed while they were being scheduled are dropped from the wheel here.
+     */
+    void expireTick() {
+        long current = ++ticks;
+        Queue<Correlation<T>> bucket = wheel.get((int) (current % wheel.size()));
+        List<Correlation<T>> later = null;
+        for (Correlation<T> correlation = bucket.poll(); correlation != null; correlation = bucket.poll()) {
+            if (pending.get(correlation.id) != correlation) {
+                continue;
+            }
+            if (correlation.deadline > current) {
+                // due on a later revolution of the wheel
+                if (later == null) {
+                    later = new ArrayList<Correlation<T>>();
+                }
+                later.add(correlation);
+            } else if (pending.remove(correlation.id, correlation)) {
+                expired.incrementAndGet();
+                notifyExpired(correlation);
+            }
+        }
+        if (later != null) {
+            bucket.addAll(later);
+        }
+    }
+
+    private void notifyExpired(final Correlation<T> correlation) {
+        Executor notifier = executor;
+        if (notifier != null) {
+            try {
+                notifier.execute(new Runnable() {
+                    public void run() {
+                        callListener(correlation);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.warn("Unable to notify the expiry of exchange {} asynchronously", correlation.id, e);
+            }
+        }
+        callListener(correlation);
+    }
+
+    private void callListener(Correlation<T> correlation) {
+        try {
+            listener.expired(correlation);
+        } catch (RuntimeException e) {
+            // keep the timer running for the other correlations
+            logger.error("Error handling the expiry of exchange {}", correlation.id, e);
+        }
+    }
+
+}
@@ -16,25 +16,48 @@
  */
 package org.apache.servicemix.cxfbc.interceptors;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
 
 import org.apache.cxf.binding.soap.SoapMessage;
 import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
 import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.service.Service;
+import org.apache.cxf.service.model.ServiceInfo;
 import org.apache.cxf.service.model.ServiceModelUtil;
 import org.apache.cxf.wsdl.EndpointReferenceUtils;
-import org.apache.servicemix.jbi.jaxp.SourceTransformer;
-import org.apache.servicemix.soap.util.DomUtil;
-import org.w3c.dom.Element;
-
 
+/**
+ * Validates the message content against the schema of the endpoint.
+ *
+ * The schema is looked up once for the service and the content is streamed as SAX events into a
+ * pooled {@link ValidatorHandler}, so no DOM is built for validation.  DOM content is validated
+ * in place; other content is parsed once, and copied to a buffer while it is validated so that it
+ * can still be read after validation.
+ */
 public abstract class AbstractSchemaValidationInterceptor extends
         AbstractSoapInterceptor {
     private boolean useJBIWrapper = true;
     private boolean useSOAPEnvelope = true;
+
+    private ServiceInfo schemaServiceInfo;
+    private Schema schema;
+    private final Queue<ValidatorHandler> validators = new ConcurrentLinkedQueue<ValidatorHandler>();
+    private final SAXTransformerFactory transformerFactory = (SAXTransformerFactory) TransformerFactory.newInstance();
     
     public AbstractSchemaValidationInterceptor(String phase, boolean useJBIWrapper, boolean useSOAPEnvelope) {
         super(phase);
@@ -45,31 +68,76 @@ public abstract class AbstractSchemaValidationInterceptor extends
     protected void validateMessage(SoapMessage message) throws Fault {
         Service service = ServiceModelUtil.getService(message.getExchange());
         if (service != null) {
-            Schema schema = EndpointReferenceUtils.getSchema(service.getServiceInfos().get(0));
-            if (schema != null) {
-                javax.xml.validation.Validator validator = schema.newValidator();
+            Schema schema = getSchema(service.getServiceInfos().get(0));
+            Source source = message.getContent(Source.class);
+            if (schema != null && source != null) {
                 try {
-                    Element sourceMessage = new SourceTransformer().toDOMElement(message.getContent(Source.class));
-                    message.setContent(Source.class, new DOMSource(sourceMessage));
-                    if (!useJBIWrapper && !useSOAPEnvelope) {
-                        validator.validate(new DOMSource(sourceMessage));
+                    if (source instanceof DOMSource) {
+                        validate(schema, source, null);
                     } else {
-                        Element partWrapper = DomUtil
-                                .getFirstChildElement(sourceMessage);
-                        while (partWrapper != null) {
-                            Element partContent = DomUtil
-                                    .getFirstChildElement(partWrapper);
-                            validator.validate(new DOMSource(partContent));
-                            partWrapper = DomUtil
-                                    .getNextSiblingElement(partWrapper);
+                        // copy the content while it is validated, so it can still be read by the next
+                        // interceptors without parsing it twice
+                        CachedOutputStream cos = new CachedOutputStream();
+                        try {
+                            TransformerHandler copy = newTransformerHandler();
+                            copy.setResult(new StreamResult(cos));
+                            validate(schema, source, copy);
+                            message.setContent(Source.class, new StreamSource(cos.getInputStream()));
+                        } finally {
+                            cos.close();
                         }
                     }
-                    
+                } catch (Fault e) {
+                    throw e;
                 } catch (Exception e) {
                     throw new Fault(e);
                 }
             }
         }
     }
-    
+
+    /*
+     * Resolve the schema once for the service instead of on every message
+     */
+    private synchronized Schema getSchema(ServiceInfo serviceInfo) {
+        if (schemaServiceInfo != serviceInfo) {
+            schema = EndpointReferenceUtils.getSchema(serviceInfo);
+            schemaServiceInfo = serviceInfo;
+            validators.clear();
+        }
+        return schema;
+    }
+
+    /*
+     * Streams the source through the validator, and through the copy handler if any
+     */
+    private void validate(Schema schema, Source source, TransformerHandler copy) throws Exception {
+        ValidatorHandler validator = validators.poll();
+        if (validator == null) {
+            validator = schema.newValidatorHandler();
+        }
+        int depth = !useJBIWrapper && !useSOAPEnvelope ? 1 : 3;
+        SAXResult result = new SAXResult(new PartValidatingContentHandler(validator, depth, copy));
+        if (copy != null) {
+            // keep the comments and CDATA sections in the copy
+            result.setLexicalHandler(copy);
+        }
+        newTransformer().transform(source, result);
+        // only reuse validators that completed successfully
+        validators.offer(validator);
+    }
+
+    private Transformer newTransformer() throws TransformerConfigurationException {
+        // TransformerFactory is not guaranteed to be thread-safe
+        synchronized (transformerFactory) {
+            return transformerFactory.newTransformer();
+        }
+    }
+
+    private TransformerHandler newTransformerHandler() throws TransformerConfigurationException {
+        synchronized (transformerFactory) {
+            return transformerFactory.newTransformerHandler();
+        }
+    }
+
 }
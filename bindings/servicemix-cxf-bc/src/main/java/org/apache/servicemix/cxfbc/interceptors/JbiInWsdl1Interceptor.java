@@ -79,10 +79,25 @@ public class JbiInWsdl1Interceptor extends AbstractSoapInterceptor {
         if (message.getContent(Exception.class) != null) {
             return;
         }
-        Document document = DomUtil.createDocument();
+        Document document = null;
               
+        if (!useJBIWrapper && !useSOAPEnvelope && !isRequestor(message)) {
+            XMLStreamReader reader = getBodyReader(message);
+            if (reader != null) {
+                message.setContent(Source.class, new StaxSource(reader));
+                return;
+            }
+        }
         if (!useJBIWrapper) {
         	SoapVersion soapVersion = message.getVersion();
+        	// the body has been read into a document of its own, so build around it instead of copying it
+        	Element body = getBodyElement(message);
+        	if (body != null) {
+        	    document = body.getOwnerDocument();
+        	    document.removeChild(body);
+        	} else {
+        	    document = DomUtil.createDocument();
+        	}
         	if (useSOAPEnvelope) {
         		Element soapEnv = DomUtil.createElement(document, new QName(
                     soapVersion.getEnvelope().getNamespaceURI(), soapVersion
@@ -93,17 +108,11 @@ public class JbiInWsdl1Interceptor extends AbstractSoapInterceptor {
         		setExtraPrefix(message, soapEnv);
                         
                 soapEnv.appendChild(soapBody);
-        		Element body = getBodyElement(message);
-                        
         		if (body != null) {
-        			soapBody.appendChild(soapBody.getOwnerDocument().importNode(body,
-        					true));
+        			soapBody.appendChild(body);
         		}
-        	} else {
-        		Element body = getBodyElement(message);
-        		if (body != null) {
-                   	document.appendChild(document.importNode(body, true));
-                }
+        	} else if (body != null) {
+        	    document.appendChild(body);
         	}
         	message.setContent(Source.class, new DOMSource(document));
         } else {
@@ -227,8 +236,13 @@ public class JbiInWsdl1Interceptor extends AbstractSoapInterceptor {
             }
         }
         processHeader(message, headers, headerElement, parts);
+        boolean bodyMoved = false;
         for (Object part : parts) {
-            if (part instanceof Node) {
+            if (part == body && !bodyMoved) {
+                // the body belongs to a throw-away document, so it can be moved instead of copied
+                adoptPart(root, body);
+                bodyMoved = true;
+            } else if (part instanceof Node) {
                 addPart(root, (Node) part);
             } else if (part instanceof NodeList) {
                 addPart(root, (NodeList) part);
@@ -399,6 +413,31 @@ public class JbiInWsdl1Interceptor extends AbstractSoapInterceptor {
         }
     }
 
+    /**
+     * Stream the content of the SOAP body, or return null if the body is empty or
+     * holds a fault, which are read as a DOM element instead
+     */
+    protected XMLStreamReader getBodyReader(SoapMessage message) {
+        try {
+            XMLStreamReader xmlReader = message.getContent(XMLStreamReader.class);
+            if (xmlReader == null) {
+                return null;
+            }
+            while (xmlReader.getEventType() != XMLStreamReader.START_ELEMENT
+                    && xmlReader.getEventType() != XMLStreamReader.END_ELEMENT
+                    && xmlReader.hasNext()) {
+                xmlReader.next();
+            }
+            if (xmlReader.getEventType() != XMLStreamReader.START_ELEMENT
+                    || message.getVersion().getFault().equals(xmlReader.getName())) {
+                return null;
+            }
+            return new StaxBodyReader(xmlReader);
+        } catch (XMLStreamException e) {
+            throw new Fault(e);
+        }
+    }
+
     protected Header getHeaderElement(SoapMessage message, QName name) {
         Exchange exchange = message.getExchange();
         BindingOperationInfo bop = exchange.get(BindingOperationInfo.class);
@@ -437,6 +476,20 @@ public class JbiInWsdl1Interceptor extends AbstractSoapInterceptor {
                 true));
     }
 
+    /**
+     * Move a node into a new jbi:part of a normalized message document, copying it only if
+     * it can not be adopted
+     */
+    private static void adoptPart(Element parent, Node partValue) {
+        Element element = DomUtil.createElement(parent,
+                CxfJbiConstants.WSDL11_WRAPPER_PART);
+        Node adopted = element.getOwnerDocument().adoptNode(partValue);
+        if (adopted == null) {
+            adopted = element.getOwnerDocument().importNode(partValue, true);
+        }
+        element.appendChild(adopted);
+    }
+
     /**
      * Add a jbi:part to a normalized message document
      */
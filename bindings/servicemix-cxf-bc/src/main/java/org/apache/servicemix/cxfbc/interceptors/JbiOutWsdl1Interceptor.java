@@ -20,9 +20,13 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -35,6 +39,7 @@ import org.apache.cxf.binding.soap.model.SoapBindingInfo;
 import org.apache.cxf.binding.soap.model.SoapHeaderInfo;
 import org.apache.cxf.endpoint.Endpoint;
 import org.apache.cxf.headers.Header;
+import org.apache.cxf.helpers.DOMUtils;
 import org.apache.cxf.helpers.NSStack;
 import org.apache.cxf.helpers.XMLUtils;
 import org.apache.cxf.interceptor.Fault;
@@ -43,10 +48,12 @@ import org.apache.cxf.service.model.BindingMessageInfo;
 import org.apache.cxf.service.model.BindingOperationInfo;
 import org.apache.cxf.service.model.MessagePartInfo;
 import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.staxutils.W3CDOMStreamWriter;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.soap.interceptors.jbi.JbiConstants;
 import org.apache.servicemix.soap.util.DomUtil;
 import org.apache.servicemix.soap.util.QNameUtil;
+import org.apache.servicemix.soap.util.stax.StaxSource;
 
 /**
  * @author <a href="mailto:gnodet [at] gmail.com">Guillaume Nodet</a>
@@ -69,9 +76,20 @@ public class JbiOutWsdl1Interceptor extends AbstractSoapInterceptor {
                 return;
             }
             
-            Element element = new SourceTransformer().toDOMElement(source);
             XMLStreamWriter xmlWriter = message
                 .getContent(XMLStreamWriter.class);
+            XMLStreamReader reader = getStreamReader(source);
+            if (reader != null) {
+                // unwrap the content as it streams by instead of building a DOM first
+                try {
+                    writeStreaming(message, reader, xmlWriter);
+                } finally {
+                    reader.close();
+                }
+                return;
+            }
+
+            Element element = new SourceTransformer().toDOMElement(source);
             
             if (!useJBIWrapper) {
                 SoapVersion soapVersion = message.getVersion();                
@@ -110,13 +128,7 @@ public class JbiOutWsdl1Interceptor extends AbstractSoapInterceptor {
             BindingMessageInfo msg = isRequestor(message) ? bop.getInput()
                     : bop.getOutput();
 
-            
-            SoapBindingInfo binding = (SoapBindingInfo) message.getExchange()
-                    .get(Endpoint.class).getEndpointInfo().getBinding();
-            String style = binding.getStyle(bop.getOperationInfo());
-            if (style == null) {
-                style = binding.getStyle();
-            }
+            String style = getStyle(message, bop);
 
             if ("rpc".equals(style)) {
                 addOperationNode(message, xmlWriter);
@@ -145,6 +157,269 @@ public class JbiOutWsdl1Interceptor extends AbstractSoapInterceptor {
         }
     }
 
+
+    /*
+     * Stream and StAX sources can be unwrapped without building a DOM, other sources
+     * (including DOM content) are handled using DOM
+     */
+    private XMLStreamReader getStreamReader(Source source) {
+        if (source instanceof StaxSource) {
+            return ((StaxSource) source).getStreamReader();
+        } else if (source instanceof StreamSource) {
+            return StaxUtils.createXMLStreamReader(source);
+        }
+        return null;
+    }
+
+    private void writeStreaming(SoapMessage message, XMLStreamReader reader,
+                                XMLStreamWriter xmlWriter) throws XMLStreamException {
+        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            reader.nextTag();
+        }
+        QName root = reader.getName();
+        if (!useJBIWrapper) {
+            SoapVersion soapVersion = message.getVersion();
+            if (useSOAPWrapper && soapVersion.getEnvelope().getLocalPart().equals(root.getLocalPart())) {
+                // if this message is coming from the CxfBCConsumer
+                QName body = new QName(root.getNamespaceURI(), soapVersion.getBody().getLocalPart());
+                // the elements before the body are kept, so that an envelope without body is
+                // still written as a whole, like the DOM code path does
+                W3CDOMStreamWriter envelope = new W3CDOMStreamWriter(DOMUtils.createDocument());
+                writeStartElement(reader, envelope);
+                while (toChildElement(reader)) {
+                    if (body.equals(reader.getName())) {
+                        if (toChildElement(reader)) {
+                            copyElement(reader, xmlWriter);
+                        }
+                        return;
+                    }
+                    copyElement(reader, envelope);
+                }
+                envelope.writeEndElement();
+                StaxUtils.writeElement(envelope.getDocument().getDocumentElement(), xmlWriter, true);
+            } else {
+                // if this message is coming from the CxfBCProvider 
+                copyElement(reader, xmlWriter);
+            }
+            return;
+        }
+
+        if (!JbiConstants.WSDL11_WRAPPER_NAMESPACE.equals(root.getNamespaceURI())
+                || !JbiConstants.WSDL11_WRAPPER_MESSAGE_LOCALNAME.equals(root.getLocalPart())) {
+            throw new Fault(new Exception("Message wrapper element is '"
+                    + QNameUtil.toString(root) + "' but expected '{"
+                    + JbiConstants.WSDL11_WRAPPER_NAMESPACE + "}message'"));
+        }
+        BindingOperationInfo bop = message.getExchange().get(
+                BindingOperationInfo.class);
+        if (bop == null) {
+            throw new Fault(
+                    new Exception("Operation not bound on this message"));
+        }
+        BindingMessageInfo msg = isRequestor(message) ? bop.getInput()
+                : bop.getOutput();
+        boolean rpc = "rpc".equals(getStyle(message, bop));
+
+        if (rpc) {
+            addOperationNode(message, xmlWriter);
+        }
+        Iterator<MessagePartInfo> parts = msg.getMessageParts().iterator();
+        while (toChildElement(reader)) {
+            if (!JbiConstants.WSDL11_WRAPPER_PART_LOCALNAME.equals(reader.getLocalName())) {
+                throw new Fault(new Exception(
+                        "Unexpected part wrapper element '"
+                                + QNameUtil.toString(reader.getName())
+                                + "' expected '{"
+                                + JbiConstants.WSDL11_WRAPPER_NAMESPACE
+                                + "}part'"));
+            }
+            if (rpc) {
+                MessagePartInfo msgPart = parts.next();
+                StaxUtils.writeStartElement(xmlWriter, msgPart.getName().getPrefix(),
+                                            msgPart.getName().getLocalPart(), "");
+                writePartContent(message, reader, xmlWriter, msg);
+                xmlWriter.writeEndElement();
+            } else {
+                writePartContent(message, reader, xmlWriter, msg);
+            }
+        }
+        if (rpc) {
+            xmlWriter.writeEndElement();
+        }
+    }
+
+    /*
+     * Copy the content of the jbi:part the reader is positioned on, leaving the reader on its end tag.
+     * A part whose first element is bound to a SOAP header is turned into a header instead.
+     */
+    private void writePartContent(SoapMessage message, XMLStreamReader reader,
+                                  XMLStreamWriter xmlWriter, BindingMessageInfo msg) throws XMLStreamException {
+        boolean first = true;
+        boolean header = false;
+        int event = reader.next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                SoapHeaderInfo headerInfo = first ? getHeaderInfo(msg, reader.getName()) : null;
+                if (headerInfo != null) {
+                    W3CDOMStreamWriter domWriter = new W3CDOMStreamWriter(DOMUtils.createDocument());
+                    copyElement(reader, domWriter);
+                    message.getHeaders().add(new Header(headerInfo.getPart().getConcreteName(),
+                                                        domWriter.getDocument().getDocumentElement()));
+                    header = true;
+                } else if (!header) {
+                    copyElement(reader, xmlWriter);
+                }
+                first = false;
+            } else if (!header) {
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    xmlWriter.writeCharacters(reader.getText());
+                } else if (event == XMLStreamConstants.COMMENT) {
+                    xmlWriter.writeComment(reader.getText());
+                }
+            }
+            event = reader.next();
+        }
+    }
+
+    /*
+     * Copy the element the reader is positioned on (and its content), leaving the reader on its end tag
+     */
+    private static void copyElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int depth = 0;
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                writeStartElement(reader, writer);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                writer.writeEndElement();
+                depth--;
+                if (depth == 0) {
+                    return;
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.CDATA:
+                writer.writeCData(reader.getText());
+                break;
+            case XMLStreamConstants.COMMENT:
+                writer.writeComment(reader.getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                break;
+            default:
+                break;
+            }
+            event = reader.next();
+        }
+    }
+
+    /*
+     * Write the start tag the reader is positioned on, with its namespace declarations and attributes.
+     * The namespaces of the element and its attributes are declared as well when they are bound on
+     * an ancestor of the copied element only.
+     */
+    private static void writeStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        String prefix = nonNull(reader.getPrefix());
+        String uri = nonNull(reader.getNamespaceURI());
+        List<String> unbound = new ArrayList<String>();
+        if (!isBound(writer, prefix, uri)) {
+            unbound.add(prefix);
+            unbound.add(uri);
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributePrefix = nonNull(reader.getAttributePrefix(i));
+            String attributeUri = nonNull(reader.getAttributeNamespace(i));
+            if (attributePrefix.length() > 0 && !isBound(writer, attributePrefix, attributeUri)) {
+                unbound.add(attributePrefix);
+                unbound.add(attributeUri);
+            }
+        }
+        writer.writeStartElement(prefix, reader.getLocalName(), uri);
+        List<String> declared = new ArrayList<String>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String nsPrefix = nonNull(reader.getNamespacePrefix(i));
+            writeNamespace(writer, nsPrefix, nonNull(reader.getNamespaceURI(i)));
+            declared.add(nsPrefix);
+        }
+        for (int i = 0; i < unbound.size(); i += 2) {
+            if (!declared.contains(unbound.get(i))) {
+                writeNamespace(writer, unbound.get(i), unbound.get(i + 1));
+                declared.add(unbound.get(i));
+            }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributeUri = nonNull(reader.getAttributeNamespace(i));
+            if (attributeUri.length() > 0) {
+                writer.writeAttribute(nonNull(reader.getAttributePrefix(i)), attributeUri,
+                                      reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static boolean isBound(XMLStreamWriter writer, String prefix, String uri) {
+        String bound = writer.getNamespaceContext().getNamespaceURI(prefix);
+        return uri.equals(bound == null ? "" : bound);
+    }
+
+    private static void writeNamespace(XMLStreamWriter writer, String prefix, String uri) throws XMLStreamException {
+        if (prefix.length() == 0) {
+            writer.writeDefaultNamespace(uri);
+        } else {
+            writer.writeNamespace(prefix, uri);
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    private SoapHeaderInfo getHeaderInfo(BindingMessageInfo msg, QName name) {
+        List<SoapHeaderInfo> headers = msg.getExtensors(SoapHeaderInfo.class);
+        if (headers != null) {
+            for (SoapHeaderInfo header : headers) {
+                if (header.getPart().getConcreteName().equals(name)) {
+                    return header;
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Move the reader to the next child element of the current element, returning false
+     * (with the reader on the end tag of the current element) if there is none
+     */
+    private static boolean toChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private String getStyle(SoapMessage message, BindingOperationInfo bop) {
+        SoapBindingInfo binding = (SoapBindingInfo) message.getExchange()
+                .get(Endpoint.class).getEndpointInfo().getBinding();
+        String style = binding.getStyle(bop.getOperationInfo());
+        if (style == null) {
+            style = binding.getStyle();
+        }
+        return style;
+    }
     
     private void getRPCPartWrapper(BindingMessageInfo msg, 
                                    Element element,
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler that forwards the events for the elements found at a given depth of the document
+ * (and their content) to a {@link ValidatorHandler}, each element being validated as a document on
+ * its own.  This allows the parts of a JBI wrapped message to be validated as they stream by,
+ * without building a DOM first.  All the events can also be passed on to another handler, so that
+ * the content is copied while it is validated.
+ */
+class PartValidatingContentHandler extends DefaultHandler {
+
+    private final ValidatorHandler validator;
+    private final int validationDepth;
+    private final ContentHandler next;
+
+    private final List<String[]> mappings = new ArrayList<String[]>();
+    private final List<Integer> mappingDepths = new ArrayList<Integer>();
+
+    private int depth;
+
+    /**
+     * @param validator the validator handler receiving the events
+     * @param validationDepth the depth of the elements to validate (1 for the document element)
+     */
+    PartValidatingContentHandler(ValidatorHandler validator, int validationDepth) {
+        this(validator, validationDepth, null);
+    }
+
+    /**
+     * @param validator the validator handler receiving the events
+     * @param validationDepth the depth of the elements to validate (1 for the document element)
+     * @param next the handler receiving all the events, or null
+     */
+    PartValidatingContentHandler(ValidatorHandler validator, int validationDepth, ContentHandler next) {
+        this.validator = validator;
+        this.validationDepth = validationDepth;
+        this.next = next;
+    }
+
+    private boolean isValidating() {
+        return depth >= validationDepth;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        if (next != null) {
+            next.setDocumentLocator(locator);
+        }
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        if (next != null) {
+            next.startDocument();
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        if (next != null) {
+            next.endDocument();
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (isValidating()) {
+            validator.startPrefixMapping(prefix, uri);
+        } else {
+            // keep track of the mappings in scope, they will be replayed when validation starts
+            mappings.add(new String[] {prefix, uri});
+            mappingDepths.add(depth + 1);
+        }
+        if (next != null) {
+            next.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (isValidating()) {
+            validator.endPrefixMapping(prefix);
+        }
+        if (next != null) {
+            next.endPrefixMapping(prefix);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        depth++;
+        if (depth == validationDepth) {
+            validator.startDocument();
+            for (String[] mapping : mappings) {
+                validator.startPrefixMapping(mapping[0], mapping[1]);
+            }
+        }
+        if (isValidating()) {
+            validator.startElement(uri, localName, qName, atts);
+        }
+        if (next != null) {
+            next.startElement(uri, localName, qName, atts);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (isValidating()) {
+            validator.endElement(uri, localName, qName);
+        }
+        if (depth == validationDepth) {
+            for (int i = mappings.size() - 1; i >= 0; i--) {
+                validator.endPrefixMapping(mappings.get(i)[0]);
+            }
+            validator.endDocument();
+        }
+        // drop the mappings declared on the element being closed
+        for (int i = mappings.size() - 1; i >= 0 && mappingDepths.get(i) == depth; i--) {
+            mappings.remove(i);
+            mappingDepths.remove(i);
+        }
+        depth--;
+        if (next != null) {
+            next.endElement(uri, localName, qName);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (isValidating()) {
+            validator.characters(ch, start, length);
+        }
+        if (next != null) {
+            next.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (isValidating()) {
+            validator.ignorableWhitespace(ch, start, length);
+        }
+        if (next != null) {
+            next.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (isValidating()) {
+            validator.processingInstruction(target, data);
+        }
+        if (next != null) {
+            next.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        if (isValidating()) {
+            validator.skippedEntity(name);
+        }
+        if (next != null) {
+            next.skippedEntity(name);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.servicemix.soap.util.stax.FragmentStreamReader;
+
+/**
+ * Streams the element the SOAP body reader is positioned on as a document of its own.
+ * The namespaces the fragment inherits from the envelope and the body are declared
+ * again on the elements using them, as the DOM copy made by
+ * {@link JbiInWsdl1Interceptor#getBodyElement} would do.
+ */
+public class StaxBodyReader extends FragmentStreamReader {
+
+    private LinkedList<Map<String, String>> scopes = new LinkedList<Map<String, String>>();
+    private List<String[]> undeclared = Collections.emptyList();
+
+    public StaxBodyReader(XMLStreamReader parent) {
+        super(parent);
+    }
+
+    public int next() throws XMLStreamException {
+        int e = super.next();
+        if (e == START_ELEMENT) {
+            Map<String, String> scope = new HashMap<String, String>();
+            for (int i = 0; i < super.getNamespaceCount(); i++) {
+                scope.put(nonNull(super.getNamespacePrefix(i)), nonNull(super.getNamespaceURI(i)));
+            }
+            scopes.addFirst(scope);
+            undeclared = new ArrayList<String[]>();
+            declare(getPrefix(), getNamespaceURI());
+            for (int i = 0; i < getAttributeCount(); i++) {
+                String uri = getAttributeNamespace(i);
+                if (uri != null && uri.length() > 0) {
+                    declare(getAttributePrefix(i), uri);
+                }
+            }
+        } else if (e == END_ELEMENT) {
+            scopes.removeFirst();
+            undeclared = Collections.emptyList();
+        }
+        return e;
+    }
+
+    public int getNamespaceCount() {
+        return super.getNamespaceCount() + undeclared.size();
+    }
+
+    public String getNamespacePrefix(int i) {
+        int declared = super.getNamespaceCount();
+        if (i < declared) {
+            return super.getNamespacePrefix(i);
+        }
+        String prefix = undeclared.get(i - declared)[0];
+        return prefix.length() > 0 ? prefix : null;
+    }
+
+    public String getNamespaceURI(int i) {
+        int declared = super.getNamespaceCount();
+        if (i < declared) {
+            return super.getNamespaceURI(i);
+        }
+        return undeclared.get(i - declared)[1];
+    }
+
+    private void declare(String prefix, String uri) {
+        prefix = nonNull(prefix);
+        uri = nonNull(uri);
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return;
+        }
+        String bound = null;
+        for (Map<String, String> scope : scopes) {
+            bound = scope.get(prefix);
+            if (bound != null) {
+                break;
+            }
+        }
+        if (uri.equals(bound) || (bound == null && uri.length() == 0)) {
+            return;
+        }
+        scopes.getFirst().put(prefix, uri);
+        undeclared.add(new String[] {prefix, uri});
+    }
+
+    private static String nonNull(String s) {
+        return s != null ? s : "";
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.cxfbc.ExchangeCorrelationTable.Correlation;
+
+/**
+ * Test cases for {@link ExchangeCorrelationTable}
+ */
+public class ExchangeCorrelationTableTest extends TestCase {
+
+    private List<String> expired;
+    private ExchangeCorrelationTable<String> table;
+
+    @Override
+    protected void setUp() throws Exception {
+        expired = new ArrayList<String>();
+        table = new ExchangeCorrelationTable<String>(new ExchangeCorrelationTable.ExpiryListener<String>() {
+            public void expired(Correlation<String> correlation) {
+                expired.add(correlation.getValue());
+            }
+        }, 10, 4);
+    }
+
+    public void testCompleteBeforeTimeout() {
+        table.register("id1", "message1", 50);
+        assertEquals(1, table.getPendingCount());
+        Correlation<String> correlation = table.complete("id1");
+        assertEquals("message1", correlation.getValue());
+        assertNull(table.complete("id1"));
+        for (int i = 0; i < 20; i++) {
+            table.expireTick();
+        }
+        assertTrue(expired.isEmpty());
+        assertEquals(0, table.getPendingCount());
+        assertEquals(1, table.getCompletedCount());
+        assertEquals(0, table.getExpiredCount());
+    }
+
+    public void testCompleteRemovesFromWheel() {
+        table.register("id1", "message1", 50);
+        table.register("id2", "message2", 50);
+        assertEquals(2, table.getScheduledCount());
+        table.complete("id1");
+        assertEquals(1, table.getScheduledCount());
+        table.remove("id2");
+        assertEquals(0, table.getScheduledCount());
+    }
+
+    public void testExpiryAfterSeveralRevolutions() {
+        // 100ms with a 10ms tick needs more than two revolutions of a 4 slots wheel
+        table.register("id1", "message1", 100);
+        table.register("id2", "message2", 0);
+        for (int i = 0; i < 10; i++) {
+            table.expireTick();
+        }
+        assertTrue(expired.isEmpty());
+        table.expireTick();
+        assertEquals(1, expired.size());
+        assertEquals("message1", expired.get(0));
+        assertNull(table.complete("id1"));
+        assertEquals(1, table.getPendingCount());
+        assertEquals(1, table.getExpiredCount());
+        for (int i = 0; i < 20; i++) {
+            table.expireTick();
+        }
+        // no timeout
+        assertNotNull(table.get("id2"));
+    }
+
+    public void testListenerErrorDoesNotStopExpiry() {
+        table = new ExchangeCorrelationTable<String>(new ExchangeCorrelationTable.ExpiryListener<String>() {
+            public void expired(Correlation<String> correlation) {
+                expired.add(correlation.getValue());
+                if ("message1".equals(correlation.getValue())) {
+                    throw new IllegalStateException("boom");
+                }
+            }
+        }, 10, 4);
+        table.register("id1", "message1", 10);
+        table.register("id2", "message2", 10);
+        for (int i = 0; i < 3; i++) {
+            table.expireTick();
+        }
+        assertEquals(2, expired.size());
+        assertEquals(2, table.getExpiredCount());
+    }
+
+    public void testListenerIsNotifiedOnExecutor() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        table.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        table.register("id1", "message1", 10);
+        for (int i = 0; i < 3; i++) {
+            table.expireTick();
+        }
+        // expired on the tick, but notified by the executor
+        assertEquals(1, table.getExpiredCount());
+        assertTrue(expired.isEmpty());
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals("message1", expired.get(0));
+    }
+
+    public void testResponseTimePercentile() {
+        assertEquals(0, table.getResponseTimePercentile(99));
+        for (int i = 0; i < 100; i++) {
+            table.register("id" + i, "message" + i, 0);
+            table.complete("id" + i);
+        }
+        assertEquals(100, table.getCompletedCount());
+        assertTrue(table.getResponseTimePercentile(99) >= 0);
+    }
+
+    public void testTimer() throws Exception {
+        table.start();
+        try {
+            table.register("id1", "message1", 20);
+            long end = System.currentTimeMillis() + 5000;
+            while (table.getExpiredCount() == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, table.getExpiredCount());
+            assertEquals(0, table.getPendingCount());
+        } finally {
+            table.stop();
+        }
+    }
+
+}
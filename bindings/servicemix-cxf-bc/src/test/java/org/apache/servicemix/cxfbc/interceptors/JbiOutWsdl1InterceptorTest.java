@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Element;
+
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.staxutils.StaxUtils;
+
+/**
+ * Test cases for the unwrapping of SOAP envelopes by {@link JbiOutWsdl1Interceptor}, when
+ * the JBI wrapper is not used.  Stream sources are unwrapped while they are read, DOM
+ * sources through a DOM element, and both must write the same content.
+ */
+public class JbiOutWsdl1InterceptorTest extends TestCase {
+
+    private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    public void testEnvelopeWithBody() throws Exception {
+        String xml = "<soap:Envelope xmlns:soap='" + SOAP_NS + "'><soap:Header><t:h xmlns:t='urn:test'/></soap:Header>"
+            + "<soap:Body><t:order xmlns:t='urn:test'><quantity>2</quantity></t:order></soap:Body></soap:Envelope>";
+
+        Element streamed = unwrap(new StreamSource(new StringReader(xml)));
+        assertEquals("urn:test", streamed.getNamespaceURI());
+        assertEquals("order", streamed.getLocalName());
+        assertEquals("2", streamed.getTextContent());
+
+        Element dom = unwrap(new DOMSource(StaxUtils.read(new StringReader(xml))));
+        assertEquals("order", dom.getLocalName());
+    }
+
+    public void testEnvelopeWithoutBody() throws Exception {
+        String xml = "<soap:Envelope xmlns:soap='" + SOAP_NS + "'><soap:Header>"
+            + "<t:h xmlns:t='urn:test'>header</t:h></soap:Header></soap:Envelope>";
+
+        // an envelope without body is written as a whole
+        Element streamed = unwrap(new StreamSource(new StringReader(xml)));
+        assertEquals(SOAP_NS, streamed.getNamespaceURI());
+        assertEquals("Envelope", streamed.getLocalName());
+        Element header = (Element) streamed.getFirstChild();
+        assertEquals("Header", header.getLocalName());
+        assertEquals("urn:test", header.getFirstChild().getNamespaceURI());
+        assertEquals("header", header.getTextContent());
+
+        Element dom = unwrap(new DOMSource(StaxUtils.read(new StringReader(xml))));
+        assertEquals("Envelope", dom.getLocalName());
+        assertEquals("header", dom.getTextContent());
+    }
+
+    public void testEmptyBody() throws Exception {
+        String xml = "<soap:Envelope xmlns:soap='" + SOAP_NS + "'><soap:Body/></soap:Envelope>";
+
+        // nothing is written for an empty body
+        assertEquals("", write(new StreamSource(new StringReader(xml))));
+    }
+
+    private Element unwrap(Source source) throws Exception {
+        return StaxUtils.read(new StringReader(write(source))).getDocumentElement();
+    }
+
+    private String write(Source source) throws Exception {
+        SoapMessage message = new SoapMessage(new MessageImpl());
+        StringWriter out = new StringWriter();
+        XMLStreamWriter writer = StaxUtils.createXMLStreamWriter(out);
+        message.setContent(Source.class, source);
+        message.setContent(XMLStreamWriter.class, writer);
+        new JbiOutWsdl1Interceptor(false, true).handleMessage(message);
+        writer.flush();
+        return out.toString();
+    }
+
+}
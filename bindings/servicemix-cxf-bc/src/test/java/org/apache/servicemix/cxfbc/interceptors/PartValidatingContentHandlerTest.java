@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Test cases for {@link PartValidatingContentHandler}
+ */
+public class PartValidatingContentHandlerTest extends TestCase {
+
+    private static final String SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:test' "
+        + "elementFormDefault='qualified'><xs:element name='order'><xs:complexType><xs:sequence>"
+        + "<xs:element name='quantity' type='xs:int'/></xs:sequence></xs:complexType></xs:element></xs:schema>";
+
+    private Schema schema;
+
+    @Override
+    protected void setUp() throws Exception {
+        schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+            .newSchema(new StreamSource(new StringReader(SCHEMA)));
+    }
+
+    public void testValidateWrappedParts() throws Exception {
+        ValidatorHandler validator = schema.newValidatorHandler();
+        validate(validator, 3, "<jbi:message xmlns:jbi='urn:jbi' xmlns:t='urn:test'>"
+                 + "<jbi:part><t:order><t:quantity>1</t:quantity></t:order></jbi:part>"
+                 + "<jbi:part><t:order><t:quantity>2</t:quantity></t:order></jbi:part></jbi:message>");
+        try {
+            validate(validator, 3, "<jbi:message xmlns:jbi='urn:jbi'><jbi:part>"
+                     + "<order xmlns='urn:test'><quantity>many</quantity></order></jbi:part></jbi:message>");
+            fail("Invalid part should have been rejected");
+        } catch (SAXException e) {
+            // expected
+        }
+    }
+
+    public void testValidateDocument() throws Exception {
+        validate(schema.newValidatorHandler(), 1, "<order xmlns='urn:test'><quantity>3</quantity></order>");
+    }
+
+    public void testCopyWhileValidating() throws Exception {
+        String xml = "<jbi:message xmlns:jbi='urn:jbi' xmlns:t='urn:test'><!-- order -->"
+            + "<jbi:part><t:order><t:quantity>1</t:quantity></t:order></jbi:part></jbi:message>";
+        StringWriter copy = new StringWriter();
+        TransformerHandler handler = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+        handler.setResult(new StreamResult(copy));
+        SAXResult result = new SAXResult(new PartValidatingContentHandler(schema.newValidatorHandler(), 3, handler));
+        result.setLexicalHandler(handler);
+        TransformerFactory.newInstance().newTransformer().transform(new StreamSource(new StringReader(xml)), result);
+
+        String copied = copy.toString();
+        assertTrue(copied, copied.indexOf("<!-- order -->") > 0);
+        assertTrue(copied, copied.indexOf("<t:quantity>1</t:quantity>") > 0);
+        assertTrue(copied, copied.endsWith("</jbi:message>"));
+    }
+
+    private void validate(ValidatorHandler validator, int depth, String xml) throws Exception {
+        Source source = new StreamSource(new StringReader(xml));
+        try {
+            TransformerFactory.newInstance().newTransformer()
+                .transform(source, new SAXResult(new PartValidatingContentHandler(validator, depth)));
+        } catch (javax.xml.transform.TransformerException e) {
+            if (e.getCause() instanceof SAXException) {
+                throw (SAXException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
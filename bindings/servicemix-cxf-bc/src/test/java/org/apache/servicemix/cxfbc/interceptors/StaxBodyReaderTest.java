@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.servicemix.soap.util.stax.StaxSource;
+
+/**
+ * Test cases for {@link StaxBodyReader}
+ */
+public class StaxBodyReaderTest extends TestCase {
+
+    private static final String ENVELOPE =
+        "<soap:Envelope xmlns:soap='http://schemas.xmlsoap.org/soap/envelope/' xmlns:t='urn:test'"
+        + " xmlns:a='urn:attr'><soap:Body xmlns='urn:default'>\n"
+        + "  <t:order a:id='1'><quantity>2</quantity><t:note xmlns:t='urn:other'>x</t:note></t:order>"
+        + "</soap:Body></soap:Envelope>";
+
+    public void testInheritedNamespacesAreDeclared() throws Exception {
+        XMLStreamReader reader = toBody(ENVELOPE);
+        Document doc = read(new StaxBodyReader(reader));
+
+        Element order = doc.getDocumentElement();
+        assertEquals("urn:test", order.getNamespaceURI());
+        assertEquals("order", order.getLocalName());
+        assertEquals("1", order.getAttributeNS("urn:attr", "id"));
+        Element quantity = (Element) order.getFirstChild();
+        assertEquals("urn:default", quantity.getNamespaceURI());
+        assertEquals("2", quantity.getTextContent());
+        Element note = (Element) quantity.getNextSibling();
+        assertEquals("urn:other", note.getNamespaceURI());
+
+        // the serialized fragment must be usable on its own
+        StringWriter xml = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(
+            new StaxSource(new StaxBodyReader(toBody(ENVELOPE))), new StreamResult(xml));
+        Element reparsed = StaxUtils.read(new StringReader(xml.toString())).getDocumentElement();
+        assertEquals("urn:test", reparsed.getNamespaceURI());
+    }
+
+    public void testStopsAtTheEndOfTheFragment() throws Exception {
+        XMLStreamReader reader = toBody(ENVELOPE);
+        read(new StaxBodyReader(reader));
+
+        assertEquals(XMLStreamReader.END_ELEMENT, reader.getEventType());
+        assertEquals("order", reader.getLocalName());
+        assertEquals(XMLStreamReader.END_ELEMENT, reader.nextTag());
+        assertEquals("Body", reader.getLocalName());
+    }
+
+    private XMLStreamReader toBody(String xml) throws Exception {
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(new StringReader(xml));
+        reader.nextTag();
+        reader.nextTag();
+        reader.nextTag();
+        return reader;
+    }
+
+    private Document read(XMLStreamReader reader) throws Exception {
+        DOMResult result = new DOMResult();
+        TransformerFactory.newInstance().newTransformer().transform(new StaxSource(reader), result);
+        return (Document) result.getNode();
+    }
+
+}
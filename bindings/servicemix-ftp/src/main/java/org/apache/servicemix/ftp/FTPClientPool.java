@@ -43,13 +43,18 @@ public class FTPClientPool extends SocketClientPoolSupport {
     private FTPClientConfig config;
     private String controlEncoding = DEFAULT_CONTROL_ENCODING;
     private int dataTimeout = DEFAULT_DATA_TIMEOUT;
+    private volatile Boolean mdtmSupported;
 
     public boolean validateObject(Object object) {
         FTPClient client = (FTPClient) object;
+        if (!client.isConnected()) {
+            return false;
+        }
         try {
+            // a dead control connection fails the NOOP, the pool then discards the client
             return client.sendNoOp();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to validate client: " + e, e);
+            return false;
         }
     }
 
@@ -63,6 +68,35 @@ public class FTPClientPool extends SocketClientPoolSupport {
         client.setReaderThread(false);
     }
 
+    /**
+     * Checks if a file exists using a MDTM command, which only needs the control connection
+     * instead of listing the directory over a data connection.
+     *
+     * @param client a client borrowed from this pool
+     * @param file the path of the file
+     * @return whether the file exists, or <code>null</code> if the server does not support MDTM
+     */
+    public Boolean fileExists(FTPClient client, String file) throws IOException {
+        if (Boolean.FALSE.equals(mdtmSupported)) {
+            return null;
+        }
+        int code = client.sendCommand("MDTM", file);
+        if (code == FTPReply.FILE_STATUS) {
+            mdtmSupported = Boolean.TRUE;
+            return Boolean.TRUE;
+        }
+        if (code == FTPReply.COMMAND_NOT_IMPLEMENTED || code == FTPReply.UNRECOGNIZED_COMMAND
+                || code == FTPReply.COMMAND_NOT_IMPLEMENTED_FOR_PARAMETER) {
+            mdtmSupported = Boolean.FALSE;
+            return null;
+        }
+        if (code == FTPReply.FILE_UNAVAILABLE && Boolean.TRUE.equals(mdtmSupported)) {
+            return Boolean.FALSE;
+        }
+        // until MDTM is known to work, an error could also mean that the path is a directory
+        return null;
+    }
+
     // Properties
     //-------------------------------------------------------------------------
     public String getUsername() {
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ftp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * A short-lived cache of the remote directory listings, used to avoid listing the same
+ * directory again while walking the remote directories.  It must not be used to check that
+ * a file still exists: another client may have removed it since the listing.
+ */
+public class FtpListingCache {
+
+    private final long timeToLive;
+
+    private final ConcurrentMap<String, Listing> listings = new ConcurrentHashMap<String, Listing>();
+
+    private static class Listing {
+        final long time = System.currentTimeMillis();
+        final FTPFile[] files;
+        Listing(FTPFile[] files) {
+            this.files = files;
+        }
+    }
+
+    /**
+     * @param timeToLive the time (in milliseconds) a listing is used for, <code>0</code> disables the cache
+     */
+    public FtpListingCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public void put(String directory, FTPFile[] files) {
+        if (timeToLive <= 0) {
+            return;
+        }
+        listings.put(directory, new Listing(files));
+    }
+
+    /**
+     * Gets the cached listing of a directory
+     *
+     * @return the listing, or <code>null</code> if there is no recent listing of the directory
+     */
+    public FTPFile[] get(String directory) {
+        Listing listing = listings.get(directory);
+        if (listing == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - listing.time > timeToLive) {
+            listings.remove(directory, listing);
+            return null;
+        }
+        return listing.files;
+    }
+
+    /**
+     * Forgets the listing of a directory, for example after a file in it has been deleted or renamed
+     */
+    public void invalidate(String directory) {
+        listings.remove(directory);
+    }
+
+    public void clear() {
+        listings.clear();
+    }
+
+}
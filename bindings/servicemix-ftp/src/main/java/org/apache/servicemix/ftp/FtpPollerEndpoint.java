@@ -21,9 +21,11 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 
 import javax.jbi.JBIException;
@@ -56,6 +58,8 @@ import org.apache.servicemix.components.util.FileMarshaler;
  */
 public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointType {
 
+    public static final long DEFAULT_LISTING_CACHE_TIME_TO_LIVE = 0;
+
     private FTPClientPool clientPool;
     private FileFilter filter;  
     private boolean deleteFile = true;
@@ -69,6 +73,13 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
     private boolean stateless = true;
     private URI archive;
     private boolean autoCreateDirectory = true;
+    private int maxConcurrentDownloads;
+    private Semaphore downloads;
+    private boolean incremental;
+    private long listingCacheTimeToLive = DEFAULT_LISTING_CACHE_TIME_TO_LIVE;
+    private FtpListingCache listingCache;
+    private ConcurrentMap<String, ConcurrentMap<String, String>> previousListings =
+        new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
 
     protected class FtpData {
         final String file;
@@ -203,6 +214,15 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
             returnClient(ftp);
         }
 
+        // each download holds a pooled connection until its exchange is done,
+        // keep one connection for listing the directories
+        int permits = maxConcurrentDownloads;
+        if (permits <= 0 && clientPool.getMaxActive() > 0) {
+            permits = Math.max(1, clientPool.getMaxActive() - 1);
+        }
+        downloads = permits > 0 ? new Semaphore(permits) : null;
+        listingCache = new FtpListingCache(listingCacheTimeToLive);
+
         super.start();
     }
 
@@ -386,6 +406,54 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
         return lockManager;
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * When set to <code>true</code>, the poller remembers the name, size and timestamp of the files
+     * found in each directory and only processes the files which are new or have changed since the
+     * previous poll.  This is mostly useful with <code>deleteFile='false'</code>.
+     * Defaults to <code>false</code>.
+     *
+     * @param incremental a boolean specifying whether only new or changed files are processed
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public long getListingCacheTimeToLive() {
+        return listingCacheTimeToLive;
+    }
+
+    /**
+     * Set the time (in milliseconds) during which a directory listing is reused instead of listing the
+     * directory again while polling.  It is never used to check if a file still exists before processing it.
+     * A listing reused for longer than the polling period delays the processing of new files.
+     * <code>0</code> disables the cache.  Defaults to <code>0</code>.
+     *
+     * @param listingCacheTimeToLive the time to live of the listings
+     */
+    public void setListingCacheTimeToLive(long listingCacheTimeToLive) {
+        this.listingCacheTimeToLive = listingCacheTimeToLive;
+    }
+
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    /**
+     * Set the maximum number of files downloaded in parallel, each over its own pooled connection.
+     * Files which can not be downloaded yet are picked up by a later poll.  When not set, the
+     * limit is derived from the <code>maxActive</code> setting of the client pool, and there is
+     * no limit if the pool is not bounded either.
+     *
+     * @param maxConcurrentDownloads the maximum number of parallel downloads
+     */
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
     // Implementation methods
     //-------------------------------------------------------------------------
 
@@ -400,7 +468,18 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
     }
 
     protected void pollFileOrDirectory(FTPClient ftp, String fileOrDirectory, boolean processDir) throws Exception {
-        FTPFile[] files = listFiles(ftp, fileOrDirectory);
+        FTPFile[] files = listingCache.get(fileOrDirectory);
+        if (files == null) {
+            files = listFiles(ftp, fileOrDirectory);
+            listingCache.put(fileOrDirectory, files);
+        }
+        ConcurrentMap<String, String> previous = null;
+        ConcurrentMap<String, String> current = null;
+        if (incremental) {
+            // files which could not be scheduled are removed from the current listing while polling
+            current = new ConcurrentHashMap<String, String>();
+            previous = previousListings.put(fileOrDirectory, current);
+        }
         for (int i = 0; i < files.length; i++) {
             String name = files[i].getName();
             if (".".equals(name) || "..".equals(name)) {
@@ -410,6 +489,13 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
             // This is a file, process it
             if (!files[i].isDirectory()) {
                 if (getFilter() == null || getFilter().accept(new File(file))) {
+                    if (current != null) {
+                        String signature = getSignature(files[i]);
+                        current.put(name, signature);
+                        if (previous != null && signature.equals(previous.get(name))) {
+                            continue; // unchanged since the last poll
+                        }
+                    }
                     pollFile(file); // process the file
                 }
                 // Only process directories if processDir is true
@@ -422,6 +508,24 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
         }
     }
 
+    private static String getSignature(FTPFile file) {
+        long time = file.getTimestamp() != null ? file.getTimestamp().getTimeInMillis() : 0;
+        return file.getSize() + ":" + time;
+    }
+
+    /**
+     * Makes the next incremental poll consider the file as new, because it has not been processed
+     */
+    private void forgetFile(String file) {
+        int lastIndex = file.lastIndexOf('/');
+        if (incremental && lastIndex >= 0) {
+            Map<String, String> listing = previousListings.get(file.substring(0, lastIndex));
+            if (listing != null) {
+                listing.remove(file.substring(lastIndex + 1));
+            }
+        }
+    }
+
     private FTPFile[] listFiles(FTPClient ftp, String directory) throws IOException {
         if (changeWorkingDirectory) {
             ftp.changeWorkingDirectory(directory);
@@ -432,19 +536,34 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
     }
 
     protected void pollFile(final String file) {
+        if (downloads != null && !downloads.tryAcquire()) {
+            logger.debug("Too many files being downloaded, {} will be picked up later", file);
+            forgetFile(file);
+            return;
+        }
         logger.debug("Scheduling file {} for processing", file);
-        getExecutor().execute(new Runnable() {
-            public void run() {
-                final Lock lock = lockManager.getLock(file);
-                if (lock.tryLock()) {
-                    processFileNow(file);
+        try {
+            getExecutor().execute(new Runnable() {
+                public void run() {
+                    final Lock lock = lockManager.getLock(file);
+                    if (lock.tryLock()) {
+                        processFileNow(file);
+                    } else {
+                        forgetFile(file);
+                        releaseDownload();
+                    }
                 }
-            }
-        });
+            });
+        } catch (RuntimeException e) {
+            forgetFile(file);
+            releaseDownload();
+            throw e;
+        }
     }
 
     protected void processFileNow(String file) {
         FTPClient ftp = null;
+        boolean sent = false;
         try {
             ftp = borrowClient();
             logger.debug("Processing file {}", file);
@@ -452,6 +571,7 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
                 // Process the file. If processing fails, an exception should be thrown.
                 processFile(ftp, file);
                 ftp = null;
+                sent = true;
             } else {
                 //avoid processing files that have been deleted on the server
                 logger.debug("Skipping {}: the file no longer exists on the server", file);
@@ -462,6 +582,18 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
             if (ftp != null) {
                 returnClient(ftp);
             }
+            if (!sent) {
+                // the file will be picked up again by a later poll
+                forgetFile(file);
+                unlockAsyncFile(file);
+                releaseDownload();
+            }
+        }
+    }
+
+    private void releaseDownload() {
+        if (downloads != null) {
+            downloads.release();
         }
     }
 
@@ -482,6 +614,13 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
             rawName = file.substring(lastIndex+1);
         }
 
+        // avoid listing the whole directory again if possible, the cached listings can't be
+        // used here as the file may have been removed since the poll
+        Boolean exists = changeWorkingDirectory ? null : getClientPool().fileExists(ftp, file);
+        if (exists != null) {
+            return exists.booleanValue();
+        }
+
         FTPFile[] files = listFiles(ftp, directory);
         if (files.length > 0) {
             for (FTPFile f : files) {
@@ -497,6 +636,9 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
     
     protected void processFile(FTPClient ftp, String file) throws Exception {
         InputStream in = ftp.retrieveFileStream(file);
+        if (in == null) {
+            throw new IOException("Unable to retrieve file " + file + ": " + ftp.getReplyString());
+        }
         InOnly exchange = getExchangeFactory().createInOnlyExchange();
         configureExchangeTarget(exchange);
         NormalizedMessage message = exchange.createMessage();
@@ -547,8 +689,12 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
                                 throw new IOException("Could not delete file " + data.file);
                             }
                         }
+                        int lastIndex = data.file.lastIndexOf('/');
+                        listingCache.invalidate(lastIndex > 0 ? data.file.substring(0, lastIndex) : ".");
                     }
                 } else {
+                    // make sure the file is picked up again on the next poll
+                    forgetFile(data.file);
                     Exception e = exchange.getError();
                     if (e == null) {
                         e = new JBIException("Unknown error");
@@ -560,6 +706,7 @@ public class FtpPollerEndpoint extends PollingEndpoint implements FtpEndpointTyp
                 unlockAsyncFile(data.file);
                 // release ftp client
                 returnClient(data.ftp);
+                releaseDownload();
             }
         } else {
             // strange, we don't know this exchange
@@ -270,7 +270,7 @@ public class FtpSenderEndpoint extends ProviderEndpoint implements FtpEndpointTy
                     out = client.storeUniqueFileStream();
                 }
             } else {
-                if (checkDuplicates && client.listFiles(name).length > 0) {
+                if (checkDuplicates && fileExists(client, name)) {
                     if (overwrite) {
                         client.deleteFile(name);
                     } else {
@@ -301,6 +301,15 @@ public class FtpSenderEndpoint extends ProviderEndpoint implements FtpEndpointTy
         }
     }
 
+    private boolean fileExists(FTPClient client, String name) throws IOException {
+        // MDTM only needs the control connection, listing needs a data connection
+        Boolean exists = getClientPool().fileExists(client, name);
+        if (exists != null) {
+            return exists.booleanValue();
+        }
+        return client.listFiles(name).length > 0;
+    }
+
     @Deprecated
     protected String getUploadName(String name) {
         String result = uploadPrefix == null ? name : uploadPrefix + name;
@@ -18,6 +18,7 @@ package org.apache.servicemix.ftp;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.jbi.JBIException;
 
 import org.apache.commons.net.SocketClient;
@@ -35,18 +36,47 @@ import org.springframework.beans.factory.InitializingBean;
  * @version $Revision: 426415 $
  */
 public abstract class SocketClientPoolSupport implements InitializingBean, DisposableBean, PoolableObjectFactory {
+
+    public static final int DEFAULT_MAX_ACTIVE = -1;
+    public static final int DEFAULT_MAX_IDLE = 8;
+    public static final long DEFAULT_MAX_WAIT = 30000;
+    public static final long DEFAULT_TIME_BETWEEN_EVICTION_RUNS = 60000;
+    public static final long DEFAULT_MIN_EVICTABLE_IDLE_TIME = 300000;
+
     private ObjectPool pool;
     private InetAddress address;
     private String host;
     private int port = -1;
     private InetAddress localAddress;
     private int localPort;
+    private int maxActive = DEFAULT_MAX_ACTIVE;
+    private int maxIdle = DEFAULT_MAX_IDLE;
+    private long maxWait = DEFAULT_MAX_WAIT;
+    private long timeBetweenEvictionRunsMillis = DEFAULT_TIME_BETWEEN_EVICTION_RUNS;
+    private long minEvictableIdleTimeMillis = DEFAULT_MIN_EVICTABLE_IDLE_TIME;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitTime = new AtomicLong();
+    private final AtomicLong maxBorrowWaitTime = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
 
     public void afterPropertiesSet() throws Exception {
         if (pool == null) {
             GenericObjectPool goPool = new GenericObjectPool();
             goPool.setTestOnBorrow(true);
-            goPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_GROW);
+            if (maxActive > 0) {
+                goPool.setMaxActive(maxActive);
+                goPool.setMaxWait(maxWait);
+                goPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+            } else {
+                goPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_GROW);
+            }
+            goPool.setMaxIdle(maxIdle);
+            // idle connections are validated (which keeps them alive) and evicted in the background
+            goPool.setTimeBetweenEvictionRunsMillis(timeBetweenEvictionRunsMillis);
+            goPool.setMinEvictableIdleTimeMillis(minEvictableIdleTimeMillis);
+            goPool.setTestWhileIdle(true);
             pool = goPool;
         }
         pool.setFactory(this);
@@ -59,7 +89,18 @@ public abstract class SocketClientPoolSupport implements InitializingBean, Dispo
     }
 
     public SocketClient borrowClient() throws Exception {
-        return (SocketClient) getPool().borrowObject();
+        long start = System.currentTimeMillis();
+        try {
+            return (SocketClient) getPool().borrowObject();
+        } finally {
+            long wait = System.currentTimeMillis() - start;
+            borrowCount.incrementAndGet();
+            borrowWaitTime.addAndGet(wait);
+            long max = maxBorrowWaitTime.get();
+            while (wait > max && !maxBorrowWaitTime.compareAndSet(max, wait)) {
+                max = maxBorrowWaitTime.get();
+            }
+        }
     }
 
     public void returnClient(SocketClient client) throws Exception {
@@ -71,11 +112,13 @@ public abstract class SocketClientPoolSupport implements InitializingBean, Dispo
     public Object makeObject() throws Exception {
         SocketClient client = createSocketClient();
         connect(client);
+        createdCount.incrementAndGet();
         return client;
     }
 
     public void destroyObject(Object object) throws Exception {
         SocketClient client = (SocketClient) object;
+        destroyedCount.incrementAndGet();
         disconnect(client);
     }
 
@@ -157,6 +200,120 @@ public abstract class SocketClientPoolSupport implements InitializingBean, Dispo
         this.port = port;
     }
 
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * Set the maximum number of connections opened at the same time.  When this limit is reached,
+     * borrowing a connection waits for one to be returned.  A negative value means no limit, the
+     * pool then grows as needed.  Defaults to <code>-1</code> (no limit).
+     *
+     * @param maxActive
+     */
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Set the maximum number of idle connections kept in the pool.  Defaults to <code>8</code>.
+     *
+     * @param maxIdle
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Set the maximum time (in milliseconds) to wait for a connection when <code>maxActive</code>
+     * connections are in use.  Only used when <code>maxActive</code> is set.  Defaults to <code>30000</code>.
+     *
+     * @param maxWait
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Set the interval (in milliseconds) at which idle connections are validated, which keeps
+     * them alive, and evicted when they have been idle for too long.  A negative value disables
+     * this.  Defaults to <code>60000</code>.
+     *
+     * @param timeBetweenEvictionRunsMillis
+     */
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    public long getMinEvictableIdleTimeMillis() {
+        return minEvictableIdleTimeMillis;
+    }
+
+    /**
+     * Set the time (in milliseconds) after which an idle connection is closed.
+     * Defaults to <code>300000</code>.
+     *
+     * @param minEvictableIdleTimeMillis
+     */
+    public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+        this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+    }
+
+    // Metrics
+    //-------------------------------------------------------------------------
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return the average time (in milliseconds) spent waiting for a connection
+     */
+    public long getAverageBorrowWaitTime() {
+        long count = borrowCount.get();
+        return count > 0 ? borrowWaitTime.get() / count : 0;
+    }
+
+    /**
+     * @return the longest time (in milliseconds) spent waiting for a connection
+     */
+    public long getMaxBorrowWaitTime() {
+        return maxBorrowWaitTime.get();
+    }
+
+    /**
+     * @return the number of connections opened
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return the number of connections closed
+     */
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public int getNumActive() {
+        return pool != null ? pool.getNumActive() : 0;
+    }
+
+    public int getNumIdle() {
+        return pool != null ? pool.getNumIdle() : 0;
+    }
+
     public ObjectPool getPool() {
         return pool;
     }
@@ -18,10 +18,12 @@ package org.apache.servicemix.ftp;
 
 import java.io.File;
 import java.net.URI;
+import java.util.NoSuchElementException;
 
 import javax.jbi.component.Component;
 import javax.xml.namespace.QName;
 
+import org.apache.commons.net.ftp.FTPClient;
 import org.apache.servicemix.tck.MessageList;
 import org.apache.servicemix.tck.ReceiverComponent;
 
@@ -88,6 +90,40 @@ public class FtpClientPoolTest extends AbstractFtpTestSupport {
 				"TYPE I"));
 	}
 
+	// test the pool bounds and metrics
+	public void testBoundedPool() throws Exception {
+		FTPClientPool pool = createClientPool();
+		pool.setMaxActive(1);
+		pool.setMaxWait(100);
+		pool.afterPropertiesSet();
+		try {
+			FTPClient client = (FTPClient) pool.borrowClient();
+			try {
+				pool.borrowClient();
+				fail("The pool should be exhausted");
+			} catch (NoSuchElementException e) {
+				// expected
+			}
+			assertEquals(1, pool.getNumActive());
+			pool.returnClient(client);
+			assertEquals(1, pool.getNumIdle());
+
+			// a dead connection is not handed out again
+			client.disconnect();
+			FTPClient other = (FTPClient) pool.borrowClient();
+			assertNotSame(client, other);
+			assertTrue(other.isConnected());
+			pool.returnClient(other);
+
+			assertEquals(3, pool.getBorrowCount());
+			assertEquals(2, pool.getCreatedCount());
+			assertEquals(1, pool.getDestroyedCount());
+			assertTrue(pool.getMaxBorrowWaitTime() >= 100);
+		} finally {
+			pool.destroy();
+		}
+	}
+
 	private Component createComponent(FtpPollerEndpoint endpoint) {
 		FtpComponent component = new FtpComponent();
 		component.setEndpoints(new FtpPollerEndpoint[] { endpoint });
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ftp;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Test cases for {@link FtpListingCache}
+ */
+public class FtpListingCacheTest extends TestCase {
+
+    public void testGet() throws Exception {
+        FtpListingCache cache = new FtpListingCache(60000);
+        assertNull(cache.get("dir"));
+        FTPFile[] files = new FTPFile[] {createFile("a.xml"), createFile("b.xml")};
+        cache.put("dir", files);
+        assertSame(files, cache.get("dir"));
+        assertNull(cache.get("other"));
+        cache.invalidate("dir");
+        assertNull(cache.get("dir"));
+    }
+
+    public void testExpiry() throws Exception {
+        FtpListingCache cache = new FtpListingCache(10);
+        cache.put("dir", new FTPFile[] {createFile("a.xml")});
+        Thread.sleep(50);
+        assertNull(cache.get("dir"));
+    }
+
+    public void testDisabled() throws Exception {
+        FtpListingCache cache = new FtpListingCache(0);
+        cache.put("dir", new FTPFile[] {createFile("a.xml")});
+        assertNull(cache.get("dir"));
+    }
+
+    private FTPFile createFile(String name) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        return file;
+    }
+
+}
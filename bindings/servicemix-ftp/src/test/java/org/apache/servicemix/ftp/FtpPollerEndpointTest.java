@@ -124,6 +124,23 @@ public class FtpPollerEndpointTest extends AbstractFtpTestSupport {
 		});
 	}
 
+	// test incremental polling: files left on the server are only processed once
+	public void testIncremental() throws Exception {
+		Map<String, File> files = createTestFiles(2);
+
+		FtpPollerEndpoint endpoint = createEndpoint();
+		endpoint.setDeleteFile(false);
+		endpoint.setIncremental(true);
+
+		container
+				.activateComponent(createComponent(endpoint), "servicemix-ftp");
+		MessageList messageList = receiver.getMessageList();
+		messageList.assertMessagesReceived(files.size());
+		// let a few more polls happen
+		Thread.sleep(3000);
+		assertEquals(files.size(), messageList.getMessageCount());
+	}
+
 	// test polling with archiving
 	public void testArchive() throws Exception {
 		Map<String, File> files = createTestFiles(3);
@@ -18,12 +18,18 @@ package org.apache.servicemix.ldap;
 
 import java.net.URL;
 import java.util.Hashtable;
+import java.util.NoSuchElementException;
 
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
+import javax.naming.NamingException;
 import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,7 +46,7 @@ public class LdapConnection {
     private final static transient Log LOG = LogFactory.getLog(LdapConnection.class);
     
     private Hashtable<String, String> env = new Hashtable<String, String>();
-    private DirContext context;
+    private LdapContext context;
     private SearchControls searchControls;
     
     /**
@@ -86,7 +92,7 @@ public class LdapConnection {
      */
     public void connect() throws Exception {
         if (context == null) {
-            context = new InitialDirContext(env);
+            context = new InitialLdapContext(env, null);
         }
     }
     
@@ -117,5 +123,123 @@ public class LdapConnection {
     public NamingEnumeration search(String searchBase, String filter) throws Exception {
         return context.search(searchBase, filter, searchControls);
     }
+    
+    /**
+     * <p>
+     * Search entries on the LDAP directory, retrieving the results in pages of the given size
+     * using the paged results control. The next page is requested when the returned enumeration
+     * reaches the end of the current one. Servers not supporting the control return all entries at once.
+     * </p>
+     * 
+     * @param searchBase the search base.
+     * @param filter the search filter.
+     * @param pageSize the number of entries per page, 0 to search without paging.
+     * @return the NamingEnumeration containing entries.
+     * @throws Exception in case of search failure.
+     */
+    public NamingEnumeration search(String searchBase, String filter, int pageSize) throws Exception {
+        if (pageSize <= 0) {
+            return search(searchBase, filter);
+        }
+        return new PagedSearchEnumeration(searchBase, filter, pageSize);
+    }
+    
+    /**
+     * <p>
+     * Define the attributes returned by the searches, <code>null</code> to return all user attributes.
+     * </p>
+     * 
+     * @param attributes the attributes to return.
+     */
+    public void setReturningAttributes(String[] attributes) {
+        searchControls.setReturningAttributes(attributes);
+    }
+    
+    /**
+     * <p>
+     * Naming enumeration requesting the next page of a paged search when the current one is exhausted.
+     * </p>
+     */
+    private class PagedSearchEnumeration implements NamingEnumeration {
+        
+        private final String searchBase;
+        private final String filter;
+        private final int pageSize;
+        private NamingEnumeration<SearchResult> page;
+        
+        PagedSearchEnumeration(String searchBase, String filter, int pageSize) throws Exception {
+            this.searchBase = searchBase;
+            this.filter = filter;
+            this.pageSize = pageSize;
+            this.page = searchPage(null);
+        }
+        
+        private NamingEnumeration<SearchResult> searchPage(byte[] cookie) throws Exception {
+            context.setRequestControls(new Control[] { new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL) });
+            return context.search(searchBase, filter, searchControls);
+        }
+        
+        public boolean hasMore() throws NamingException {
+            while (page != null && !page.hasMore()) {
+                byte[] cookie = null;
+                Control[] controls = context.getResponseControls();
+                if (controls != null) {
+                    for (Control control : controls) {
+                        if (control instanceof PagedResultsResponseControl) {
+                            cookie = ((PagedResultsResponseControl) control).getCookie();
+                        }
+                    }
+                }
+                page.close();
+                page = null;
+                if (cookie != null && cookie.length > 0) {
+                    LOG.debug("Request the next page of the search in " + searchBase);
+                    try {
+                        page = searchPage(cookie);
+                    } catch (NamingException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        NamingException namingException = new NamingException("Can't request the next page");
+                        namingException.setRootCause(e);
+                        throw namingException;
+                    }
+                } else {
+                    context.setRequestControls(null);
+                }
+            }
+            return page != null;
+        }
+        
+        public Object next() throws NamingException {
+            if (!hasMore()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+        
+        public boolean hasMoreElements() {
+            try {
+                return hasMore();
+            } catch (NamingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        public Object nextElement() {
+            try {
+                return next();
+            } catch (NamingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        public void close() throws NamingException {
+            if (page != null) {
+                page.close();
+                page = null;
+            }
+            context.setRequestControls(null);
+        }
+    }
 
 }
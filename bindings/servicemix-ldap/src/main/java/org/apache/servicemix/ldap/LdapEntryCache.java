@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ldap;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * <p>
+ * Cache of the LDAP entries seen by the poller, keeping a digest of the attributes of each entry
+ * by DN. The digest includes the operational attributes <code>modifyTimestamp</code> and
+ * <code>entryCSN</code> when the search returns them, so any modification of an entry changes it.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class LdapEntryCache {
+    
+    public final static String MODIFY_TIMESTAMP = "modifyTimestamp";
+    public final static String ENTRY_CSN = "entryCSN";
+    
+    // the key of the last modify timestamp in the persisted state, it can't be a valid DN
+    final static String LAST_MODIFY_TIMESTAMP_KEY = "#lastModifyTimestamp";
+    
+    // YYYYMMDDHH[MM[SS]][(.|,)fraction][Z|(+|-)HH[MM]], see RFC 4517 3.3.13
+    private final static Pattern GENERALIZED_TIME = Pattern.compile(
+            "(\\d{4})(\\d{2})(\\d{2})(\\d{2})(\\d{2})?(\\d{2})?(?:[.,](\\d+))?(Z|[+-]\\d{2}(?:\\d{2})?)?");
+    
+    private final Map<String, String> digests = new ConcurrentHashMap<String, String>();
+    private volatile String lastModifyTimestamp;
+    
+    /**
+     * <p>
+     * Check if an entry is new or changed since it was recorded the last time, without recording it.
+     * </p>
+     * 
+     * @param dn the entry DN.
+     * @param attributes the entry attributes.
+     * @return true if the entry is new or changed.
+     * @throws NamingException in case of failure reading the attributes.
+     */
+    public boolean isChanged(String dn, Attributes attributes) throws NamingException {
+        return !digest(attributes).equals(digests.get(dn));
+    }
+    
+    /**
+     * <p>
+     * Update the digest of an entry. The last modify timestamp is not changed, it's only
+     * moved forward by {@link #advanceLastModifyTimestamp(String)} once a whole poll succeeded.
+     * </p>
+     * 
+     * @param dn the entry DN.
+     * @param attributes the entry attributes.
+     * @return true if the entry is new or changed since it was seen the last time.
+     * @throws NamingException in case of failure reading the attributes.
+     */
+    public boolean update(String dn, Attributes attributes) throws NamingException {
+        String digest = digest(attributes);
+        return !digest.equals(digests.put(dn, digest));
+    }
+    
+    /**
+     * <p>
+     * Move the last modify timestamp forward, a timestamp lower than the current one is ignored.
+     * </p>
+     * 
+     * @param timestamp the new modify timestamp, can be null.
+     */
+    public void advanceLastModifyTimestamp(String timestamp) {
+        lastModifyTimestamp = max(lastModifyTimestamp, timestamp);
+    }
+    
+    /**
+     * <p>
+     * Remove the entries not found by the last full search from the cache.
+     * </p>
+     * 
+     * @param found the DNs of the entries found.
+     * @return the number of removed entries.
+     */
+    public int retainAll(Set<String> found) {
+        int removed = 0;
+        for (Iterator<String> iterator = digests.keySet().iterator(); iterator.hasNext();) {
+            if (!found.contains(iterator.next())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * <p>
+     * Get the highest <code>modifyTimestamp</code> seen, to restrict the next search to modified entries.
+     * </p>
+     * 
+     * @return the highest modify timestamp or null if none was returned by the directory.
+     */
+    public String getLastModifyTimestamp() {
+        return lastModifyTimestamp;
+    }
+    
+    public int size() {
+        return digests.size();
+    }
+    
+    public void clear() {
+        digests.clear();
+        lastModifyTimestamp = null;
+    }
+    
+    /**
+     * <p>
+     * Get a serializable copy of the cache content, used to persist it.
+     * </p>
+     * 
+     * @return the digests by DN, with the last modify timestamp stored under its own key.
+     */
+    public HashMap<String, String> getState() {
+        HashMap<String, String> state = new HashMap<String, String>(digests);
+        if (lastModifyTimestamp != null) {
+            state.put(LAST_MODIFY_TIMESTAMP_KEY, lastModifyTimestamp);
+        }
+        return state;
+    }
+    
+    /**
+     * <p>
+     * Restore the cache content returned by {@link #getState()}.
+     * </p>
+     * 
+     * @param state the persisted cache content.
+     */
+    public void setState(Map<String, String> state) {
+        clear();
+        for (Map.Entry<String, String> entry : state.entrySet()) {
+            if (LAST_MODIFY_TIMESTAMP_KEY.equals(entry.getKey())) {
+                lastModifyTimestamp = entry.getValue();
+            } else {
+                digests.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * <p>
+     * Get the <code>modifyTimestamp</code> operational attribute of an entry.
+     * </p>
+     * 
+     * @param attributes the entry attributes.
+     * @return the modify timestamp or null if the directory didn't return it.
+     * @throws NamingException in case of failure reading the attributes.
+     */
+    public static String getModifyTimestamp(Attributes attributes) throws NamingException {
+        Attribute modifyTimestamp = attributes.get(MODIFY_TIMESTAMP);
+        if (modifyTimestamp == null || modifyTimestamp.get() == null) {
+            return null;
+        }
+        return modifyTimestamp.get().toString();
+    }
+    
+    /**
+     * <p>
+     * Get the highest of two modify timestamps.
+     * </p>
+     * 
+     * @param first the first timestamp, can be null.
+     * @param second the second timestamp, can be null.
+     * @return the highest timestamp, null if both are null.
+     */
+    public static String max(String first, String second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null || compareModifyTimestamps(first, second) >= 0) {
+            return first;
+        }
+        return second;
+    }
+    
+    /**
+     * <p>
+     * Compare two modify timestamps as points in time, whatever their time zone and precision.
+     * Values which are not generalized times are compared as strings.
+     * </p>
+     * 
+     * @param first the first timestamp.
+     * @param second the second timestamp.
+     * @return a negative number, zero or a positive number if the first timestamp is before, at the same time or after the second.
+     */
+    static int compareModifyTimestamps(String first, String second) {
+        try {
+            long firstTime = parseGeneralizedTime(first);
+            long secondTime = parseGeneralizedTime(second);
+            return firstTime < secondTime ? -1 : (firstTime == secondTime ? 0 : 1);
+        } catch (ParseException e) {
+            return first.compareTo(second);
+        }
+    }
+    
+    /**
+     * <p>
+     * Parse a generalized time value. A value without time zone is a local time.
+     * </p>
+     * 
+     * @param value the generalized time.
+     * @return the time in milliseconds since the epoch.
+     * @throws ParseException if the value is not a generalized time.
+     */
+    static long parseGeneralizedTime(String value) throws ParseException {
+        Matcher matcher = GENERALIZED_TIME.matcher(value.trim());
+        if (!matcher.matches()) {
+            throw new ParseException("Invalid generalized time " + value, 0);
+        }
+        TimeZone timeZone;
+        String zone = matcher.group(8);
+        if (zone == null) {
+            timeZone = TimeZone.getDefault();
+        } else if ("Z".equals(zone)) {
+            timeZone = TimeZone.getTimeZone("GMT");
+        } else {
+            timeZone = TimeZone.getTimeZone("GMT" + zone.substring(0, 3) + ":" + (zone.length() > 3 ? zone.substring(3) : "00"));
+        }
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.setLenient(false);
+        calendar.set(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) - 1,
+                Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)),
+                matcher.group(5) != null ? Integer.parseInt(matcher.group(5)) : 0,
+                matcher.group(6) != null ? Integer.parseInt(matcher.group(6)) : 0);
+        long time;
+        try {
+            time = calendar.getTimeInMillis();
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid generalized time " + value, 0);
+        }
+        if (matcher.group(7) != null) {
+            // the fraction is a fraction of the last unit given
+            long unit = matcher.group(6) != null ? 1000L : (matcher.group(5) != null ? 60 * 1000L : 60 * 60 * 1000L);
+            time += (long) (Double.parseDouble("0." + matcher.group(7)) * unit);
+        }
+        return time;
+    }
+    
+    /**
+     * <p>
+     * Compute the digest of entry attributes, independent of the attributes and values order.
+     * </p>
+     * 
+     * @param attributes the entry attributes.
+     * @return the hexadecimal digest.
+     * @throws NamingException in case of failure reading the attributes.
+     */
+    public static String digest(Attributes attributes) throws NamingException {
+        List<String> lines = new ArrayList<String>();
+        NamingEnumeration all = attributes.getAll();
+        while (all.hasMore()) {
+            Attribute attribute = (Attribute) all.next();
+            String id = attribute.getID().toLowerCase();
+            List<String> values = new ArrayList<String>();
+            NamingEnumeration attributeValues = attribute.getAll();
+            while (attributeValues.hasMore()) {
+                Object value = attributeValues.next();
+                values.add(value instanceof byte[] ? toHex((byte[]) value) : String.valueOf(value));
+            }
+            Collections.sort(values);
+            for (String value : values) {
+                lines.add(id + ":" + value);
+            }
+        }
+        Collections.sort(lines);
+        
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String line : lines) {
+            try {
+                messageDigest.update(line.getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            messageDigest.update((byte) '\n');
+        }
+        return toHex(messageDigest.digest());
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuffer buffer = new StringBuffer(bytes.length * 2);
+        for (byte b : bytes) {
+            buffer.append(Character.forDigit((b >> 4) & 0xF, 16));
+            buffer.append(Character.forDigit(b & 0xF, 16));
+        }
+        return buffer.toString();
+    }
+
+}
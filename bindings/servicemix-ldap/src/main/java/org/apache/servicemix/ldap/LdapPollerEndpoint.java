@@ -16,8 +16,14 @@
  */
 package org.apache.servicemix.ldap;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
@@ -26,12 +32,14 @@ import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.naming.NamingEnumeration;
+import javax.naming.directory.SearchResult;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.servicemix.common.endpoints.PollingEndpoint;
 import org.apache.servicemix.ldap.marshaler.DefaultLdapMarshaler;
 import org.apache.servicemix.ldap.marshaler.LdapMarshalerSupport;
+import org.apache.servicemix.store.Store;
 
 /**
  * <p>
@@ -55,8 +63,12 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
     private String searchBase; // use searchBase as the starting point for the search instead of the default
     private String filter = "(objectclass=*)"; // the search filter
     private boolean newOnly = false; // fetch only new entries if true, fetch all entries if false
-    private ArrayList cache = new ArrayList(); // contains the cache of latest LDAP entries
+    private LdapEntryCache cache = new LdapEntryCache(); // contains the digests of latest LDAP entries
     private boolean persistent = false; // keep the LDAP connection open
+    private boolean serverSideFiltering = false; // only search entries modified since the last poll when newOnly is true
+    private int pageSize = 0; // retrieve the search result in pages of this size, 0 for no paging
+    private int batchSize = 0; // send this number of entries per exchange, 0 for all entries in one exchange
+    private Store storage; // the store used to persist the cache
     private LdapMarshalerSupport marshaler = new DefaultLdapMarshaler();
     
     private LdapConnection ldapConnection;
@@ -89,12 +101,151 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
         if (!persistent) {
             ldapConnection.connect();
         }
-
-        LOG.debug("Define the search filter to " + filter + " in " + searchBase);
-        NamingEnumeration namingEnumeration = ldapConnection.search(searchBase, filter);
-        
-        // TODO compare with the cache to send the new entries
         
+        try {
+            String searchFilter = filter;
+            boolean modifiedOnly = newOnly && serverSideFiltering && cache.getLastModifyTimestamp() != null;
+            if (modifiedOnly) {
+                // let the directory return only the entries modified since the last poll
+                searchFilter = modifiedSince(filter, cache.getLastModifyTimestamp());
+            }
+            
+            LOG.debug("Define the search filter to " + searchFilter + " in " + searchBase);
+            NamingEnumeration namingEnumeration = ldapConnection.search(searchBase, searchFilter, pageSize);
+            
+            if (!newOnly && batchSize <= 0) {
+                // send all entries in one exchange
+                try {
+                    send(createExchange(namingEnumeration));
+                } finally {
+                    namingEnumeration.close();
+                }
+                return;
+            }
+            
+            // the DNs found by a full search, to remove the deleted entries from the cache
+            Set<String> found = (newOnly && !modifiedOnly) ? new HashSet<String>() : null;
+            // the highest modify timestamp of this poll, only kept if every batch has been processed
+            String modifyTimestamp = null;
+            boolean processed = true;
+            List<SearchResult> entries = new ArrayList<SearchResult>();
+            try {
+                while (namingEnumeration.hasMore()) {
+                    SearchResult result = (SearchResult) namingEnumeration.next();
+                    if (newOnly) {
+                        if (found != null) {
+                            found.add(result.getName());
+                        }
+                        modifyTimestamp = LdapEntryCache.max(modifyTimestamp, LdapEntryCache.getModifyTimestamp(result.getAttributes()));
+                        if (!cache.isChanged(result.getName(), result.getAttributes())) {
+                            // the entry didn't change since the last poll
+                            continue;
+                        }
+                    }
+                    entries.add(result);
+                    if (batchSize > 0 && entries.size() >= batchSize) {
+                        processed &= sendBatch(entries);
+                        entries = new ArrayList<SearchResult>();
+                    }
+                }
+            } finally {
+                namingEnumeration.close();
+            }
+            if (!entries.isEmpty()) {
+                processed &= sendBatch(entries);
+            }
+            if (found != null) {
+                int removed = cache.retainAll(found);
+                LOG.debug(removed + " entries have been removed from the directory since the last poll");
+            }
+            if (newOnly) {
+                if (processed) {
+                    cache.advanceLastModifyTimestamp(modifyTimestamp);
+                } else {
+                    // the entries of the failed batches must still match the next search
+                    LOG.debug("Keep the last modify timestamp " + cache.getLastModifyTimestamp() + " as some entries have not been processed");
+                }
+                storeCache();
+            }
+        } finally {
+            if (!persistent) {
+                ldapConnection.disconnect();
+            }
+        }
+    }
+    
+    /**
+     * <p>
+     * Build the filter of the entries modified since the given timestamp.
+     * </p>
+     * 
+     * @param filter the search filter, with or without its enclosing parentheses.
+     * @param timestamp the modify timestamp.
+     * @return the combined filter.
+     */
+    static String modifiedSince(String filter, String timestamp) {
+        String trimmed = filter.trim();
+        if (!trimmed.startsWith("(")) {
+            // a filter like objectClass=person is only valid on its own
+            trimmed = "(" + trimmed + ")";
+        }
+        return "(&" + trimmed + "(" + LdapEntryCache.MODIFY_TIMESTAMP + ">=" + timestamp + "))";
+    }
+    
+    /**
+     * <p>
+     * Send a batch of LDAP entries. When only new entries are sent, the exchange is sent
+     * synchronously and the entries are recorded in the cache once it is DONE, so that
+     * the entries of a batch which failed are sent again by the next poll.
+     * </p>
+     * 
+     * @param entries the entries to send.
+     * @return false if the batch has not been processed.
+     * @throws Exception in case of sending failure.
+     */
+    private boolean sendBatch(List<SearchResult> entries) throws Exception {
+        if (!newOnly) {
+            send(createExchange(new SearchResultEnumeration(entries)));
+            return true;
+        }
+        if (!sendEntries(entries)) {
+            LOG.warn("The batch of " + entries.size() + " LDAP entries has not been processed, it will be sent again");
+            return false;
+        }
+        for (SearchResult result : entries) {
+            cache.update(result.getName(), result.getAttributes());
+        }
+        return true;
+    }
+    
+    /**
+     * <p>
+     * Send a batch of LDAP entries synchronously.
+     * </p>
+     * 
+     * @param entries the entries to send.
+     * @return true if the exchange is DONE.
+     * @throws Exception in case of sending failure.
+     */
+    boolean sendEntries(List<SearchResult> entries) throws Exception {
+        InOnly exchange = createExchange(new SearchResultEnumeration(entries));
+        sendSync(exchange);
+        if (exchange.getStatus() == ExchangeStatus.ERROR) {
+            LOG.debug("The batch of LDAP entries failed", exchange.getError());
+        }
+        return exchange.getStatus() == ExchangeStatus.DONE;
+    }
+    
+    /**
+     * <p>
+     * Create an InOnly exchange containing LDAP entries.
+     * </p>
+     * 
+     * @param namingEnumeration the entries to send.
+     * @return the exchange to send.
+     * @throws Exception in case of marshalling failure.
+     */
+    private InOnly createExchange(NamingEnumeration namingEnumeration) throws Exception {
         // create an InOnly exchange
         LOG.debug("Create the InOnly exchange.");
         InOnly exchange = getExchangeFactory().createInOnlyExchange();
@@ -105,14 +256,7 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
         
         // marshal the LDAP naming enumeration into the in message
         marshaler.marshal(message, namingEnumeration);
-        
-        // send the exchange
-        LOG.debug("Send the exchange.");
-        send(exchange);
-        
-        if (!persistent) {
-            ldapConnection.disconnect();
-        }
+        return exchange;
     }
     
     /*
@@ -135,6 +279,10 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
         
         // create the LDAP connection
         ldapConnection = new LdapConnection(url, contextFactory, bindDn, bindPassword);
+        if (newOnly) {
+            // return the operational attributes changed on each entry modification as well
+            ldapConnection.setReturningAttributes(new String[] { "*", LdapEntryCache.MODIFY_TIMESTAMP, LdapEntryCache.ENTRY_CSN });
+        }
     }
     
     /*
@@ -142,8 +290,20 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
      * @see org.apache.servicemix.common.endpoints.PollingEndpoint#start()
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void start() throws Exception {
         super.start();
+        if (newOnly && storage != null) {
+            LOG.debug("Load the LDAP entries cache");
+            try {
+                Map<String, String> state = (Map<String, String>) storage.load(getStorageId());
+                if (state != null) {
+                    cache.setState(state);
+                }
+            } catch (IOException e) {
+                LOG.error("Can't load the LDAP entries cache", e);
+            }
+        }
         if (persistent) {
             LOG.debug("The LDAP connection is persistent, connect to the LDAP server now");
             ldapConnection.connect();
@@ -160,9 +320,41 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
             LOG.debug("The LDAP connection is persistent, disconnect to the LDAP server now");
             ldapConnection.disconnect();
         }
+        if (newOnly) {
+            storeCache();
+        }
         super.stop();
     }
     
+    /**
+     * <p>
+     * Persist the LDAP entries cache in the storage, if any. It's done after each poll, so
+     * the entries already sent are not sent again after a crash.
+     * </p>
+     */
+    private void storeCache() {
+        if (storage != null) {
+            LOG.debug("Store the LDAP entries cache");
+            try {
+                storage.store(getStorageId(), cache.getState());
+            } catch (IOException e) {
+                LOG.error("Can't store the LDAP entries cache", e);
+            }
+        }
+    }
+    
+    private String getStorageId() {
+        return getService() + "#" + getEndpoint();
+    }
+    
+    LdapEntryCache getCache() {
+        return cache;
+    }
+    
+    void setLdapConnection(LdapConnection ldapConnection) {
+        this.ldapConnection = ldapConnection;
+    }
+    
     public URL getUrl() {
         return url;
     }
@@ -233,7 +425,8 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
     /**
      * <p>
      * This attribute specifies if the search fetch only new entries
-     * or all entries.
+     * or all entries. New entries are the ones created or modified since
+     * the previous poll.
      * </p>
      * <i>&nbsp;&nbsp;&nbsp;The default value is <b>false</b></i>
      * 
@@ -261,5 +454,109 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
     public void setPersistent(boolean persistent) {
         this.persistent = persistent;
     }
+    
+    public boolean isServerSideFiltering() {
+        return serverSideFiltering;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies if the search is restricted by the LDAP directory server to the entries
+     * modified since the last poll, using the <code>modifyTimestamp</code> operational attribute.
+     * It's only used when newOnly is true. Without it, all entries are searched and compared with the
+     * cache. With it, the entries deleted from the directory are not removed from the cache.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>false</b></i>
+     * 
+     * @param serverSideFiltering a <code>boolean</code> value representing if the search is restricted to modified entries
+     */
+    public void setServerSideFiltering(boolean serverSideFiltering) {
+        this.serverSideFiltering = serverSideFiltering;
+    }
+    
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the number of entries retrieved at once from the LDAP directory server
+     * using the paged results control. It should be used with large directories, whose servers limit
+     * the number of entries returned by a search.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>0</b> (no paging)</i>
+     * 
+     * @param pageSize an <code>int</code> value representing the number of entries per page
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the maximum number of entries sent in one exchange. Use 1 to send
+     * one exchange per entry.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>0</b> (all entries in one exchange)</i>
+     * 
+     * @param batchSize an <code>int</code> value representing the number of entries per exchange
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public Store getStorage() {
+        return storage;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the store used to keep the cache of the LDAP entries seen while the
+     * endpoint is stopped, so only new or changed entries are sent after a restart when newOnly is true.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>null</b></i>
+     * 
+     * @param storage a <code>org.apache.servicemix.store.Store</code> implementation
+     */
+    public void setStorage(Store storage) {
+        this.storage = storage;
+    }
+    
+    /**
+     * <p>
+     * Naming enumeration over a list of search results.
+     * </p>
+     */
+    static class SearchResultEnumeration implements NamingEnumeration {
+        
+        private final Iterator<SearchResult> iterator;
+        
+        SearchResultEnumeration(List<SearchResult> results) {
+            this.iterator = results.iterator();
+        }
+        
+        public boolean hasMore() {
+            return iterator.hasNext();
+        }
+        
+        public Object next() {
+            return iterator.next();
+        }
+        
+        public boolean hasMoreElements() {
+            return iterator.hasNext();
+        }
+        
+        public Object nextElement() {
+            return iterator.next();
+        }
+        
+        public void close() {
+        }
+    }
 
 }
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ldap;
+
+import java.util.Collections;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Unit tests on the LDAP entries cache.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class LdapEntryCacheTest extends TestCase {
+    
+    private LdapEntryCache cache;
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() throws Exception {
+        this.cache = new LdapEntryCache();
+    }
+    
+    /**
+     * <p>
+     * Test the detection of new and changed entries.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testUpdate() throws Exception {
+        assertTrue(cache.update("cn=test", createAttributes("first", "second", "20100101000000Z")));
+        assertFalse(cache.update("cn=test", createAttributes("first", "second", "20100101000000Z")));
+        // the order of the values doesn't matter
+        assertFalse(cache.update("cn=test", createAttributes("second", "first", "20100101000000Z")));
+        assertTrue(cache.update("cn=test", createAttributes("first", "third", "20100102000000Z")));
+        assertTrue(cache.update("cn=other", createAttributes("first", "third", "20100101000000Z")));
+        assertEquals(2, cache.size());
+        // the last modify timestamp is only moved by the poller
+        assertNull(cache.getLastModifyTimestamp());
+    }
+    
+    /**
+     * <p>
+     * Test the last modify timestamp only moves forward.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testAdvanceLastModifyTimestamp() throws Exception {
+        cache.advanceLastModifyTimestamp(null);
+        assertNull(cache.getLastModifyTimestamp());
+        cache.advanceLastModifyTimestamp("20100102000000Z");
+        cache.advanceLastModifyTimestamp("20100101000000Z");
+        cache.advanceLastModifyTimestamp(null);
+        assertEquals("20100102000000Z", cache.getLastModifyTimestamp());
+        assertEquals("20100102000000Z", LdapEntryCache.getModifyTimestamp(createAttributes("a", "b", "20100102000000Z")));
+        assertNull(LdapEntryCache.getModifyTimestamp(new BasicAttributes()));
+    }
+    
+    /**
+     * <p>
+     * Test the modify timestamps are compared as times, not as strings.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testMaxModifyTimestamp() throws Exception {
+        // 10:00 in UTC+02:00 is before 09:00 UTC
+        assertEquals("20100101090000Z", LdapEntryCache.max("20100101100000+0200", "20100101090000Z"));
+        assertEquals("20100101090000Z", LdapEntryCache.max("20100101090000Z", "20100101100000+0200"));
+        // fractions and reduced precision
+        assertEquals("20100101090000.5Z", LdapEntryCache.max("20100101090000Z", "20100101090000.5Z"));
+        assertEquals("20100101090001Z", LdapEntryCache.max("20100101090000.999Z", "20100101090001Z"));
+        assertEquals("201001010930Z", LdapEntryCache.max("2010010109.4Z", "201001010930Z"));
+        assertEquals(LdapEntryCache.parseGeneralizedTime("20100101093000Z"), LdapEntryCache.parseGeneralizedTime("2010010109.5Z"));
+        // values which are not generalized times are still compared as strings
+        assertEquals("b", LdapEntryCache.max("a", "b"));
+        assertEquals("20100101090000Z", LdapEntryCache.max(null, "20100101090000Z"));
+    }
+    
+    /**
+     * <p>
+     * Test the removal of the entries deleted from the directory.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testRetainAll() throws Exception {
+        cache.update("cn=first", createAttributes("a", "b", "20100101000000Z"));
+        cache.update("cn=second", createAttributes("a", "b", "20100101000000Z"));
+        assertEquals(1, cache.retainAll(Collections.singleton("cn=second")));
+        assertEquals(1, cache.size());
+        assertTrue(cache.update("cn=first", createAttributes("a", "b", "20100101000000Z")));
+        assertFalse(cache.update("cn=second", createAttributes("a", "b", "20100101000000Z")));
+    }
+    
+    /**
+     * <p>
+     * Test the restore of a persisted cache.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testState() throws Exception {
+        cache.update("cn=test", createAttributes("a", "b", "20100101000000Z"));
+        cache.advanceLastModifyTimestamp("20100101000000Z");
+        LdapEntryCache restored = new LdapEntryCache();
+        restored.setState(cache.getState());
+        assertEquals(1, restored.size());
+        assertEquals("20100101000000Z", restored.getLastModifyTimestamp());
+        assertFalse(restored.update("cn=test", createAttributes("a", "b", "20100101000000Z")));
+        // the timestamp is not stored under a null key
+        assertFalse(cache.getState().containsKey(null));
+        assertEquals("20100101000000Z", cache.getState().get(LdapEntryCache.LAST_MODIFY_TIMESTAMP_KEY));
+    }
+    
+    private Attributes createAttributes(String first, String second, String modifyTimestamp) {
+        Attributes attributes = new BasicAttributes();
+        BasicAttribute attribute = new BasicAttribute("description");
+        attribute.add(first);
+        attribute.add(second);
+        attributes.put(attribute);
+        attributes.put(new BasicAttribute(LdapEntryCache.MODIFY_TIMESTAMP, modifyTimestamp));
+        return attributes;
+    }
+
+}
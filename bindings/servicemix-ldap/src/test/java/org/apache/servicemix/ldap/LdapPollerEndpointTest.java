@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ldap;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.id.IdGenerator;
+import org.apache.servicemix.store.Store;
+import org.apache.servicemix.store.memory.MemoryStore;
+
+/**
+ * <p>
+ * Unit tests on the LDAP poller endpoint.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class LdapPollerEndpointTest extends TestCase {
+    
+    /**
+     * <p>
+     * Test the filter restricting the search to the modified entries.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testModifiedSince() throws Exception {
+        assertEquals("(&(objectClass=person)(modifyTimestamp>=20100101000000Z))",
+                     LdapPollerEndpoint.modifiedSince("(objectClass=person)", "20100101000000Z"));
+        // a filter without its enclosing parentheses
+        assertEquals("(&(objectClass=person)(modifyTimestamp>=20100101000000Z))",
+                     LdapPollerEndpoint.modifiedSince("objectClass=person", "20100101000000Z"));
+        assertEquals("(&(|(cn=a)(cn=b))(modifyTimestamp>=20100101000000Z))",
+                     LdapPollerEndpoint.modifiedSince(" (|(cn=a)(cn=b)) ", "20100101000000Z"));
+    }
+
+    
+    /**
+     * <p>
+     * Test that a failed batch keeps the last modify timestamp, even if a later batch of the
+     * same poll succeeds, so that its entries are still found by the next search.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testFailedBatchKeepsModifyTimestamp() throws Exception {
+        final List<String> filters = new ArrayList<String>();
+        final List<SearchResult> results = Arrays.asList(
+                new SearchResult("cn=first", null, createAttributes("first", "20100102000000Z")),
+                new SearchResult("cn=second", null, createAttributes("second", "20100103000000Z")));
+        final List<String> sent = new ArrayList<String>();
+        final boolean[] failFirst = new boolean[] { true };
+        LdapPollerEndpoint endpoint = new LdapPollerEndpoint() {
+            boolean sendEntries(List<SearchResult> entries) {
+                for (SearchResult result : entries) {
+                    sent.add(result.getName());
+                }
+                if (failFirst[0]) {
+                    failFirst[0] = false;
+                    return false;
+                }
+                return true;
+            }
+        };
+        endpoint.setLdapConnection(new LdapConnection(new URL("http://localhost:389"), "com.sun.jndi.ldap.LdapCtxFactory", null, null) {
+            public void connect() {
+            }
+            public void disconnect() {
+            }
+            public NamingEnumeration search(String searchBase, String filter, int pageSize) {
+                filters.add(filter);
+                return new LdapPollerEndpoint.SearchResultEnumeration(results);
+            }
+        });
+        Store storage = new MemoryStore(new IdGenerator());
+        endpoint.setStorage(storage);
+        endpoint.setNewOnly(true);
+        endpoint.setServerSideFiltering(true);
+        endpoint.setBatchSize(1);
+        endpoint.getCache().advanceLastModifyTimestamp("20100101000000Z");
+        
+        // the first batch fails and the second one succeeds
+        endpoint.poll();
+        assertEquals(Arrays.asList("cn=first", "cn=second"), sent);
+        assertEquals("20100101000000Z", endpoint.getCache().getLastModifyTimestamp());
+        // the cache is stored after the poll
+        Map state = (Map) storage.load("null#null");
+        assertNotNull(state);
+        assertEquals(2, state.size());
+        
+        // the failed entry is still found and sent again
+        sent.clear();
+        endpoint.poll();
+        assertEquals(LdapPollerEndpoint.modifiedSince("(objectclass=*)", "20100101000000Z"), filters.get(1));
+        assertEquals(Arrays.asList("cn=first"), sent);
+        assertEquals("20100103000000Z", endpoint.getCache().getLastModifyTimestamp());
+        
+        sent.clear();
+        endpoint.poll();
+        assertEquals(LdapPollerEndpoint.modifiedSince("(objectclass=*)", "20100103000000Z"), filters.get(2));
+        assertTrue(sent.isEmpty());
+    }
+    
+    private Attributes createAttributes(String description, String modifyTimestamp) {
+        Attributes attributes = new BasicAttributes();
+        attributes.put(new BasicAttribute("description", description));
+        attributes.put(new BasicAttribute(LdapEntryCache.MODIFY_TIMESTAMP, modifyTimestamp));
+        return attributes;
+    }
+
+}
@@ -17,21 +17,26 @@
 package org.apache.servicemix.mail;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+
 import javax.jbi.JBIException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.ParseException;
 import javax.mail.search.FlagTerm;
@@ -41,6 +46,7 @@ import org.apache.servicemix.mail.marshaler.AbstractMailMarshaler;
 import org.apache.servicemix.mail.marshaler.DefaultMailMarshaler;
 import org.apache.servicemix.mail.utils.MailConnectionConfiguration;
 import org.apache.servicemix.mail.utils.MailUtils;
+import org.apache.servicemix.mail.utils.SeenMessages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,7 +62,7 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
     private AbstractMailMarshaler marshaler = new DefaultMailMarshaler();
 
-    private final List<String> seenMessages = Collections.synchronizedList(new LinkedList<String>());
+    private SeenMessages seenMessages = new SeenMessages(null, null);
 
     private String customTrustManagers;
 
@@ -74,8 +80,6 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
     private Map<String, String> customProperties;
 
-    private final List<String> foundMessagesInFolder = Collections.synchronizedList(new LinkedList<String>());
-
     private org.apache.servicemix.store.Store storage;
 
     /**
@@ -105,28 +109,17 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
      * @see org.apache.servicemix.common.endpoints.PollingEndpoint#start()
      */
     @Override
-    @SuppressWarnings("unchecked")
     public synchronized void start() throws Exception {
         super.start();
 
         if (this.storage == null) {
         	return;
         }
-        	
-        String id = config.getUsername() + " @ " + config.getHost();
+
+        String id = getStorageId();
+        this.seenMessages = new SeenMessages(this.storage, id);
         try {
-        	// load the list of seen messages
-        	List<String> loadedMsg = (List<String>)this.storage.load(id);
-        	if (loadedMsg == null || loadedMsg.isEmpty()) {
-        		return;
-        	}
-        		
-        	for (String uid : loadedMsg) {
-        		if (!this.seenMessages.contains(uid)) {
-        			this.seenMessages.add(uid);
-        		}
-        	}
-        	loadedMsg.clear();
+        	this.seenMessages.load();
         } catch (IOException ioex) {
         	logger.error("Error loading seen messages for: {}", id, ioex);
         }
@@ -138,19 +131,21 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
      */
     @Override
     public synchronized void stop() throws Exception {
-        if (this.storage != null) {
-            String id = config.getUsername() + " @ " + config.getHost();
-            try {
-                // save the list of seen messages
-                this.storage.store(id, this.seenMessages);
-            } catch (IOException ioex) {
-                logger.error("Error saving list of seen messages for: {}", id, ioex);
-            }
-        }
+        // save the remaining changes of the seen messages
+        this.seenMessages.store();
 
         super.stop();
     }
 
+    /**
+     * returns the id of the seen messages in the storage
+     * 
+     * @return the storage id
+     */
+    private String getStorageId() {
+        return config.getUsername() + " @ " + config.getHost();
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -176,8 +171,8 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
         boolean isPopProtocol = this.config.getProtocol().toLowerCase().indexOf("pop") > -1;
 
-        // clear the list each run
-        this.foundMessagesInFolder.clear();
+        // the uids of all messages found in the folder during this run
+        Set<String> foundMessagesInFolder = null;
 
         Store store = null;
         Folder folder = null;
@@ -210,91 +205,79 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
                 messages = folder.getMessages();
             }
 
-            int fetchSize = getMaxFetchSize() == -1 ? messages.length : Math.min(getMaxFetchSize(),
-                                                                                 messages.length);
-            int fetchedMessages = 0;
-            String uid;
-            
-            for (Message msg : messages) {
-                uid = null;
-                
-                // get the message
-                MimeMessage mailMsg = (MimeMessage)msg;
+            Method uidMethod = null;
+            if (isProcessOnlyUnseenMessages() && isPopProtocol) {
+                // POP3 doesn't support flags, so we need to check manually
+                // if message is new or not
+                foundMessagesInFolder = new HashSet<String>(messages.length * 2);
+                uidMethod = getUidMethod(folder);
+                messages = filterSeenMessages(folder, messages, uidMethod, foundMessagesInFolder);
+            }
 
-                if (isProcessOnlyUnseenMessages() && isPopProtocol) {
-                    // POP3 doesn't support flags, so we need to check manually
-                    // if message is new or not
-                    try {
-                        Object ouid = folder.getClass().getMethod("getUID", Message.class).invoke(folder, mailMsg);
-                        
-                        // remember each found message
-                        if (ouid != null) {
-                            uid = (String)ouid;
-                            foundMessagesInFolder.add(uid);
-                        }
+            // only process messages until the max message fetch size is reached
+            if (getMaxFetchSize() != -1 && getMaxFetchSize() < messages.length) {
+                Message[] limited = new Message[getMaxFetchSize()];
+                System.arraycopy(messages, 0, limited, 0, limited.length);
+                messages = limited;
+            }
 
-                        // check if we already processed the message
-                        if (uid != null && this.seenMessages.contains(uid)) {
-                            // this message was already processed
-                            continue;
-                        }
-                    } catch (Exception ex) {
-                        // this folder doesn't provide UIDs for messages
-                        logger.warn("{}: Unable to determine unique id of mail.", getEndpoint(), ex);
-                    }
-                }
+            // retrieve the headers and flags of the messages to process in bulk
+            FetchProfile profile = new FetchProfile();
+            profile.add(FetchProfile.Item.ENVELOPE);
+            profile.add(FetchProfile.Item.FLAGS);
+            folder.fetch(messages, profile);
 
-                // only process a message if the max message fetch size isn't
-                // exceeded then
-                if (fetchedMessages < fetchSize) {
-                    // create a inOnly exchange
-                    InOnly io = getExchangeFactory().createInOnlyExchange();
+            for (Message msg : messages) {
+                // get the message
+                MimeMessage mailMsg = (MimeMessage)msg;
 
-                    // configure the exchange target
-                    configureExchangeTarget(io);
+                // create a inOnly exchange
+                InOnly io = getExchangeFactory().createInOnlyExchange();
 
-                    // create the in message
-                    NormalizedMessage normalizedMessage = io.createMessage();
+                // configure the exchange target
+                configureExchangeTarget(io);
 
-                    // now let the marshaller convert the mail into a normalized
-                    // message to send to jbi bus
-                    marshaler.convertMailToJBI(io, normalizedMessage, mailMsg);
+                // create the in message
+                NormalizedMessage normalizedMessage = io.createMessage();
 
-                    // then put the in message into the inOnly exchange
-                    io.setInMessage(normalizedMessage);
+                // now let the marshaller convert the mail into a normalized
+                // message to send to jbi bus
+                marshaler.convertMailToJBI(io, normalizedMessage, mailMsg);
 
-                    // and use sendSync to deliver it
-                    sendSync(io);
+                // then put the in message into the inOnly exchange
+                io.setInMessage(normalizedMessage);
 
-                    // increment the fetched messages counter
-                    fetchedMessages++;
+                // and use sendSync to deliver it
+                sendSync(io);
 
-                    // now check if delivery succeeded or went wrong
-                    if (io.getStatus() == ExchangeStatus.ERROR) {
-                        // to ensure reprocessing of the mail we set it to UNSEEN even if we
-                        // did not mark it seen before (seems there are some mail systems out there
-                        // which do set somehow automatically)
-                        mailMsg.setFlag(Flags.Flag.SEEN, false);
+                // now check if delivery succeeded or went wrong
+                if (io.getStatus() == ExchangeStatus.ERROR) {
+                    // to ensure reprocessing of the mail we set it to UNSEEN even if we
+                    // did not mark it seen before (seems there are some mail systems out there
+                    // which do set somehow automatically)
+                    mailMsg.setFlag(Flags.Flag.SEEN, false);
 
-                        Exception e = io.getError();
-                        if (e == null) {
-                            e = new JBIException("Unexpected error occured...");
-                        }
-                        throw e;
+                    Exception e = io.getError();
+                    if (e == null) {
+                        e = new JBIException("Unexpected error occured...");
+                    }
+                    throw e;
+                } else {
+                    // then mark the mail as processed (only if no errors)
+                    if (deleteProcessedMessages) {
+                        // processed messages have to be marked as deleted
+                        mailMsg.setFlag(Flags.Flag.DELETED, true);
                     } else {
-                        // then mark the mail as processed (only if no errors)
-                        if (deleteProcessedMessages) {
-                            // processed messages have to be marked as deleted
-                            mailMsg.setFlag(Flags.Flag.DELETED, true);
-                        } else {
-                            // processed messages have to be marked as seen
-                            mailMsg.setFlag(Flags.Flag.SEEN, true);
-                        }
-                        // remember the processed mail if needed
-                        if (isProcessOnlyUnseenMessages() && isPopProtocol && uid != null) {
-                            // POP3 doesn't support flags, so we need to
-                            // remember processed mails
-                            this.seenMessages.add(uid);
+                        // processed messages have to be marked as seen
+                        mailMsg.setFlag(Flags.Flag.SEEN, true);
+                    }
+                    // remember the processed mail if needed
+                    if (uidMethod != null) {
+                        // POP3 doesn't support flags, so we need to
+                        // remember processed mails
+                        String uid = getUid(folder, mailMsg, uidMethod);
+                        if (uid != null) {
+                            this.seenMessages.setSeen(uid, true);
                         }
                     }
                 }
@@ -308,35 +291,103 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
                 if (store != null) {
                     store.close();
                 }
-                // clean up the seen messages list because of maybe deleted
-                // messages
-                if (isProcessOnlyUnseenMessages() && isPopProtocol) {
-                    cleanUpSeenMessages();
-                }
             } catch (Exception ignored) {
                 logger.debug("", ignored);
             }
+            // clean up the seen messages list because of maybe deleted
+            // messages
+            if (foundMessagesInFolder != null) {
+                cleanUpSeenMessages(foundMessagesInFolder);
+            }
+            this.seenMessages.store();
+        }
+    }
+
+    /**
+     * returns the method to determine the unique id of a message in the given
+     * folder
+     * 
+     * @param folder the folder
+     * @return the method or null if the folder doesn't provide UIDs
+     */
+    private Method getUidMethod(Folder folder) {
+        try {
+            return folder.getClass().getMethod("getUID", Message.class);
+        } catch (Exception ex) {
+            // this folder doesn't provide UIDs for messages
+            logger.warn("{}: Unable to determine unique id of mail.", getEndpoint(), ex);
+            return null;
         }
     }
 
+    /**
+     * returns the unique id of a message
+     * 
+     * @param folder the folder of the message
+     * @param msg the message
+     * @param uidMethod the method returned by {@link #getUidMethod(Folder)}
+     * @return the uid or null if it can't be determined
+     */
+    private String getUid(Folder folder, Message msg, Method uidMethod) {
+        try {
+            Object ouid = uidMethod.invoke(folder, msg);
+            return ouid != null ? ouid.toString() : null;
+        } catch (Exception ex) {
+            logger.warn("{}: Unable to determine unique id of mail.", getEndpoint(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * retrieves the uids of all messages in bulk and returns the messages
+     * which were not processed yet
+     * 
+     * @param folder the folder of the messages
+     * @param messages all messages of the folder
+     * @param uidMethod the method returned by {@link #getUidMethod(Folder)}
+     * @param found the set to add the uids of all found messages to
+     * @return the messages not seen before
+     * @throws Exception on errors retrieving the uids
+     */
+    private Message[] filterSeenMessages(Folder folder, Message[] messages, Method uidMethod,
+                                         Set<String> found) throws Exception {
+        if (uidMethod == null) {
+            return messages;
+        }
+        FetchProfile profile = new FetchProfile();
+        profile.add(UIDFolder.FetchProfileItem.UID);
+        folder.fetch(messages, profile);
+
+        List<Message> unseen = new ArrayList<Message>();
+        for (Message msg : messages) {
+            String uid = getUid(folder, msg, uidMethod);
+            if (uid != null) {
+                // remember each found message
+                found.add(uid);
+                if (this.seenMessages.contains(uid)) {
+                    // this message was already processed
+                    continue;
+                }
+            }
+            unseen.add(msg);
+        }
+        return unseen.toArray(new Message[unseen.size()]);
+    }
+
     /**
      * this method will check if a seen message was deleted from mail folder and
      * remove this from the list of messages already seen
+     * 
+     * @param foundMessagesInFolder the uids of all messages in the mail folder
      */
-    private synchronized void cleanUpSeenMessages() {
-        List<String> uidsToRemove = new LinkedList<String>();
-        // first collect all uid's to remove
-        for (String uid : seenMessages) {
+    private void cleanUpSeenMessages(Set<String> foundMessagesInFolder) {
+        for (String uid : this.seenMessages.getUids()) {
             if (!foundMessagesInFolder.contains(uid)) {
                 // the message was deleted from the mail folder, so delete it
                 // also from the seen messages list as well
-                uidsToRemove.add(uid);
+                this.seenMessages.setSeen(uid, false);
             }
         }
-        // now remove them
-        for (String uid : uidsToRemove) {
-            seenMessages.remove(uid);
-        }
     }
 
     /**
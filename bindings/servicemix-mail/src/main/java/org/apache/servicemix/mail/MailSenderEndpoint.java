@@ -22,6 +22,8 @@ import org.apache.servicemix.mail.marshaler.AbstractMailMarshaler;
 import org.apache.servicemix.mail.marshaler.DefaultMailMarshaler;
 import org.apache.servicemix.mail.utils.IgnoreList;
 import org.apache.servicemix.mail.utils.MailConnectionConfiguration;
+import org.apache.servicemix.mail.utils.MailTransportPool;
+import org.apache.servicemix.mail.utils.MailTransportPool.PooledTransport;
 import org.apache.servicemix.mail.utils.MailUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,8 +33,7 @@ import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Transport;
+import javax.mail.SendFailedException;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.ParseException;
 import java.util.HashMap;
@@ -58,6 +59,7 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
     private boolean debugMode;
     private Map<String, String> customProperties = new HashMap<String, String>();
     private IgnoreList ignoreMessageProperties = new IgnoreList();
+    private MailTransportPool transportPool = new MailTransportPool();
 
     /*
      * (non-Javadoc)
@@ -71,6 +73,17 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.apache.servicemix.common.endpoints.SimpleEndpoint#stop()
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        // close the connections kept open to the mail servers
+        this.transportPool.close();
+        super.stop();
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -180,7 +193,6 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
     }
 
     private void sendMail(MessageExchange exchange, NormalizedMessage in) throws Exception {
-        Session session;
         Properties props = MailUtils.getPropertiesForProtocol(this.config, this.customTrustManagers);
         props.put("mail.debug", isDebugMode() ? "true" : "false");
 
@@ -193,34 +205,45 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
         // apply the custom properties
         applyCustomProperties(props);
 
-        // Get session
-        session = Session.getInstance(props, config.getAuthenticator(user, passwd));
-
-        // debug the session
-        session.setDebug(this.debugMode);
-
-        // get the transport from session
-        Transport transport = session.getTransport(protocol);
-
-        // Connect only once here
-        // Transport.send() disconnects after each send
+        // get a connected transport, the connection is kept open between
+        // exchanges so consecutive mails to the same server share one session
         // Usually, no username and password is required for SMTP
-        transport.connect(host, port, user, passwd);
-
-        // Define message
-        MimeMessage msg = new MimeMessage(session);
-
-        // handle ignore properties
-        handleIgnoreProperties(in);
+        PooledTransport transport = this.transportPool.borrowTransport(protocol, host, port, user, passwd, props,
+                                                                       config.getAuthenticator(user, passwd));
+        boolean failed = true;
+        try {
+            // Define message
+            MimeMessage msg = new MimeMessage(transport.getSession());
 
-        // let the marshaler to the conversion of message to mail
-        this.marshaler.convertJBIToMail(msg, exchange, in, this.sender, this.receiver);
+            // handle ignore properties
+            handleIgnoreProperties(in);
 
-        // Send message
-        transport.sendMessage(msg, msg.getAllRecipients());
+            // let the marshaler to the conversion of message to mail
+            this.marshaler.convertJBIToMail(msg, exchange, in, this.sender, this.receiver);
 
-        // close transport
-        transport.close();
+            // Send message
+            try {
+                transport.sendMessage(msg, msg.getAllRecipients());
+            } catch (MessagingException mex) {
+                if (mex instanceof SendFailedException || transport.getMessageCount() == 0) {
+                    throw mex;
+                }
+                // the server may have dropped the reused connection, so retry once on a new one
+                logger.debug("Sending mail over a reused connection failed, retrying...", mex);
+                this.transportPool.returnTransport(transport, true);
+                // the broken transport has been destroyed, do not give it back again if the retry fails
+                transport = null;
+                transport = this.transportPool.borrowTransport(protocol, host, port, user, passwd, props,
+                                                               config.getAuthenticator(user, passwd));
+                transport.sendMessage(msg, msg.getAllRecipients());
+            }
+            failed = false;
+        } finally {
+            // give the transport back to the pool
+            if (transport != null) {
+                this.transportPool.returnTransport(transport, failed);
+            }
+        }
     }
 
     /**
@@ -446,4 +469,24 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
 	public void setIgnoreMessageProperties(IgnoreList ignoreMessageProperties) {
 		this.ignoreMessageProperties = ignoreMessageProperties;
 	}
+
+    public MailTransportPool getTransportPool() {
+        return this.transportPool;
+    }
+
+    /**
+     * <p>Specifies the pool of connections to the mail servers. Connections
+     * are kept open between exchanges, so mails sent to the same server don't
+     * pay the connect, TLS handshake and login for every mail. The pool also
+     * provides the number of connections and messages sent and the send
+     * latency.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default is a pool keeping up to <b>4</b> idle connections per
+     * server and account, each used for up to <b>100</b> mails</i><br/><br/>
+     *
+     * @param transportPool
+     * 				a <code>MailTransportPool</code>
+     */
+    public void setTransportPool(MailTransportPool transportPool) {
+        this.transportPool = transportPool;
+    }
 }
@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Address;
+import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a pool of connected mail transports, keyed by protocol, host, port and
+ * user, which keeps connections to the mail server open between sends
+ * 
+ * @author lhein
+ */
+public class MailTransportPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MailTransportPool.class);
+
+    private int maxIdle = 4;
+    private int maxMessagesPerConnection = 100;
+    private long maxIdleTime = 60000;
+    private long validationInterval = 5000;
+
+    private final ConcurrentMap<PoolKey, Session> sessions = new ConcurrentHashMap<PoolKey, Session>();
+    private final ConcurrentMap<PoolKey, Queue<PooledTransport>> idleTransports = new ConcurrentHashMap<PoolKey, Queue<PooledTransport>>();
+    private final ConcurrentMap<PoolKey, AtomicInteger> idleCounts = new ConcurrentHashMap<PoolKey, AtomicInteger>();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong totalSendTime = new AtomicLong();
+    private final AtomicLong maxSendTime = new AtomicLong();
+
+    /**
+     * returns a connected transport for the given server and account, reusing
+     * an idle connection if there is a healthy one
+     * 
+     * @param protocol the transport protocol
+     * @param host the mail server host
+     * @param port the mail server port
+     * @param user the user name, may be null
+     * @param password the password, may be null
+     * @param props the session properties used for new connections
+     * @param authenticator the session authenticator used for new connections
+     * @return a connected transport
+     * @throws MessagingException if no connection could be established
+     */
+    public PooledTransport borrowTransport(String protocol, String host, int port, String user, String password,
+                                           Properties props, Authenticator authenticator) throws MessagingException {
+        PoolKey key = new PoolKey(protocol, host, port, user, password);
+        borrowCount.incrementAndGet();
+
+        // the session is rebuilt when the endpoint properties changed since it was created
+        Session session = sessions.get(key);
+        if (session == null || !session.getProperties().equals(props)) {
+            Session created = Session.getInstance((Properties) props.clone(), authenticator);
+            if (session == null ? sessions.putIfAbsent(key, created) == null : sessions.replace(key, session, created)) {
+                session = created;
+            } else {
+                session = sessions.get(key);
+            }
+        }
+
+        Queue<PooledTransport> idle = idleTransports.get(key);
+        if (idle != null) {
+            PooledTransport pooled;
+            while ((pooled = idle.poll()) != null) {
+                idleCounts.get(key).decrementAndGet();
+                // connections of a replaced session do not use the current properties
+                if (pooled.session == session && isHealthy(pooled)) {
+                    return pooled;
+                }
+                destroy(pooled);
+            }
+        }
+
+        Transport transport = session.getTransport(protocol);
+        transport.connect(host, port, user, password);
+        createdCount.incrementAndGet();
+        return new PooledTransport(key, session, transport);
+    }
+
+    /**
+     * gives a transport back to the pool. It is closed if it failed, sent the
+     * maximum number of messages or the pool is full.
+     * 
+     * @param pooled the transport returned by {@link #borrowTransport}
+     * @param failed flag if the last use of the transport failed
+     */
+    public void returnTransport(PooledTransport pooled, boolean failed) {
+        if (failed || (maxMessagesPerConnection > 0 && pooled.messageCount >= maxMessagesPerConnection)) {
+            destroy(pooled);
+            return;
+        }
+        Queue<PooledTransport> idle = idleTransports.get(pooled.key);
+        if (idle == null) {
+            idleTransports.putIfAbsent(pooled.key, new ConcurrentLinkedQueue<PooledTransport>());
+            idleCounts.putIfAbsent(pooled.key, new AtomicInteger());
+            idle = idleTransports.get(pooled.key);
+        }
+        AtomicInteger count = idleCounts.get(pooled.key);
+        if (count.incrementAndGet() > maxIdle) {
+            count.decrementAndGet();
+            destroy(pooled);
+            return;
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+        idle.offer(pooled);
+    }
+
+    /**
+     * closes all idle connections
+     */
+    public void close() {
+        for (PoolKey key : idleTransports.keySet()) {
+            Queue<PooledTransport> idle = idleTransports.get(key);
+            PooledTransport pooled;
+            while ((pooled = idle.poll()) != null) {
+                idleCounts.get(key).decrementAndGet();
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * checks an idle transport before it is reused. Connections idle for
+     * longer than the validation interval are checked with the server, which
+     * sends a NOOP for SMTP.
+     * 
+     * @param pooled the idle transport
+     * @return true if the transport can be used
+     */
+    private boolean isHealthy(PooledTransport pooled) {
+        long idleTime = System.currentTimeMillis() - pooled.lastUsed;
+        if (maxIdleTime > 0 && idleTime > maxIdleTime) {
+            return false;
+        }
+        if (idleTime > validationInterval) {
+            return pooled.transport.isConnected();
+        }
+        return true;
+    }
+
+    private void destroy(PooledTransport pooled) {
+        destroyedCount.incrementAndGet();
+        try {
+            pooled.transport.close();
+        } catch (MessagingException ex) {
+            LOG.debug("Error closing mail transport {}", pooled.key, ex);
+        }
+    }
+
+    private void recordSend(long time) {
+        sentCount.incrementAndGet();
+        totalSendTime.addAndGet(time);
+        long max = maxSendTime.get();
+        while (time > max && !maxSendTime.compareAndSet(max, time)) {
+            max = maxSendTime.get();
+        }
+    }
+
+    /**
+     * @return the maximum number of idle connections kept per server and account
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @param maxIdle the maximum number of idle connections kept per server and account
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return the number of messages after which a connection is closed, 0 for no limit
+     */
+    public int getMaxMessagesPerConnection() {
+        return maxMessagesPerConnection;
+    }
+
+    /**
+     * @param maxMessagesPerConnection the number of messages after which a connection is closed, 0 for no limit
+     */
+    public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    /**
+     * @return the time in milliseconds after which an idle connection is closed
+     */
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * @param maxIdleTime the time in milliseconds after which an idle connection is closed
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * @return the idle time in milliseconds after which a connection is checked before it is reused
+     */
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    /**
+     * @param validationInterval the idle time in milliseconds after which a connection is checked before it is reused
+     */
+    public void setValidationInterval(long validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of idle connections over all servers and accounts
+     */
+    public int getNumIdle() {
+        int idle = 0;
+        for (AtomicInteger count : idleCounts.values()) {
+            idle += count.get();
+        }
+        return idle;
+    }
+
+    /**
+     * @return the average time in milliseconds to send a message
+     */
+    public long getAverageSendTime() {
+        long sent = sentCount.get();
+        return sent == 0 ? 0 : totalSendTime.get() / sent;
+    }
+
+    /**
+     * @return the maximum time in milliseconds to send a message
+     */
+    public long getMaxSendTime() {
+        return maxSendTime.get();
+    }
+
+    /**
+     * the server and account a connection is made for, compared on the real
+     * credentials so that connections are never shared between accounts
+     */
+    private static final class PoolKey {
+
+        private final String protocol;
+        private final String host;
+        private final int port;
+        private final String user;
+        private final String password;
+
+        private PoolKey(String protocol, String host, int port, String user, String password) {
+            this.protocol = protocol;
+            this.host = host;
+            this.port = port;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) o;
+            return port == other.port && equal(protocol, other.protocol) && equal(host, other.host)
+                && equal(user, other.user) && equal(password, other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = port;
+            hash = 31 * hash + (protocol != null ? protocol.hashCode() : 0);
+            hash = 31 * hash + (host != null ? host.hashCode() : 0);
+            hash = 31 * hash + (user != null ? user.hashCode() : 0);
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            // never expose the password
+            return protocol + "://" + user + "@" + host + ":" + port;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * a connected transport borrowed from the pool
+     */
+    public final class PooledTransport {
+
+        private final PoolKey key;
+        private final Session session;
+        private final Transport transport;
+        private int messageCount;
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledTransport(PoolKey key, Session session, Transport transport) {
+            this.key = key;
+            this.session = session;
+            this.transport = transport;
+        }
+
+        /**
+         * @return the session of the transport, to be used for creating messages
+         */
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * @return the number of messages sent over this connection
+         */
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        /**
+         * sends a message over this connection
+         * 
+         * @param msg the message to send
+         * @param recipients the recipients of the message
+         * @throws MessagingException on errors sending the message
+         */
+        public void sendMessage(Message msg, Address[] recipients) throws MessagingException {
+            long start = System.currentTimeMillis();
+            transport.sendMessage(msg, recipients);
+            messageCount++;
+            recordSend(System.currentTimeMillis() - start);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.servicemix.store.Store;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * the uids of the mails already processed by a poller. The uids are kept in
+ * a hash index and, if a storage is set, persisted as a chain of entries: a
+ * snapshot of all uids followed by the changes written after each poll, so
+ * only the delta is written instead of the whole list.
+ * <p>
+ * Two chains are used alternately. When loaded, the current chain is
+ * compacted into a new snapshot written as the other chain, which becomes
+ * current once its generation marker is written. Only then the entries of
+ * the old chain are removed, so the seen messages survive a crash at any
+ * point. Stored entries are never overwritten.
+ *
+ * @author lhein
+ */
+public class SeenMessages {
+
+    private static final String[] CHAINS = new String[] {"a", "b"};
+
+    private final Logger logger = LoggerFactory.getLogger(SeenMessages.class);
+
+    private final Store storage;
+    private final String id;
+
+    private final ConcurrentMap<String, Boolean> uids = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * changes of the seen messages not yet written to the storage, mapping
+     * the uid to <code>true</code> if it was added and <code>false</code>
+     * if it was removed, guarded by itself
+     */
+    private final Map<String, Boolean> pendingChanges = new LinkedHashMap<String, Boolean>();
+
+    // the chain and sequence the next changes are written to, guarded by pendingChanges
+    private String chain;
+    private int sequence;
+
+    /**
+     * creates the seen messages
+     *
+     * @param storage the storage, or <code>null</code> to keep the uids in memory only
+     * @param id the id of the seen messages in the storage
+     */
+    public SeenMessages(Store storage, String id) {
+        this.storage = storage;
+        this.id = id;
+    }
+
+    /**
+     * loads the seen messages from the storage and compacts them into a new
+     * snapshot
+     *
+     * @throws IOException on storage errors, the changes are then written to
+     *             the current chain if it could be loaded
+     */
+    @SuppressWarnings("unchecked")
+    public void load() throws IOException {
+        if (this.storage == null) {
+            return;
+        }
+        synchronized (this.pendingChanges) {
+            this.pendingChanges.clear();
+            this.chain = null;
+
+            // the list of seen messages stored by older versions
+            Collection<String> legacy = (Collection<String>) this.storage.peek(this.id);
+            if (legacy != null) {
+                for (String uid : legacy) {
+                    this.uids.put(uid, Boolean.TRUE);
+                }
+            }
+
+            // the chain with the highest generation is the current one
+            Long[] generations = new Long[CHAINS.length];
+            int current = -1;
+            for (int i = 0; i < CHAINS.length; i++) {
+                generations[i] = (Long) this.storage.peek(getStorageId(CHAINS[i]));
+                if (generations[i] != null && (current < 0 || generations[i] > generations[current])) {
+                    current = i;
+                }
+            }
+            if (current >= 0) {
+                int count = 0;
+                Map<String, Boolean> changes;
+                while ((changes = (Map<String, Boolean>) this.storage.peek(getStorageId(CHAINS[current], count))) != null) {
+                    apply(changes);
+                    count++;
+                }
+                // until the compaction is done the changes are appended to the current chain
+                this.chain = CHAINS[current];
+                this.sequence = count;
+            }
+
+            // write the compacted snapshot as the other chain, removing the
+            // leftovers of an interrupted compaction first
+            int next = current < 0 ? 0 : (current + 1) % CHAINS.length;
+            removeChain(CHAINS[next]);
+            LinkedHashMap<String, Boolean> snapshot = new LinkedHashMap<String, Boolean>();
+            for (String uid : this.uids.keySet()) {
+                snapshot.put(uid, Boolean.TRUE);
+            }
+            this.storage.store(getStorageId(CHAINS[next], 0), snapshot);
+            this.storage.store(getStorageId(CHAINS[next]), Long.valueOf(current < 0 ? 0 : generations[current] + 1));
+            this.chain = CHAINS[next];
+            this.sequence = 1;
+
+            // the older state is not needed anymore
+            if (current >= 0) {
+                removeChain(CHAINS[current]);
+            }
+            if (legacy != null) {
+                this.storage.load(this.id);
+            }
+        }
+    }
+
+    /**
+     * writes the changes of the seen messages since the last call to the
+     * storage
+     */
+    public void store() {
+        if (this.storage == null) {
+            return;
+        }
+        synchronized (this.pendingChanges) {
+            if (this.pendingChanges.isEmpty()) {
+                return;
+            }
+            if (this.chain == null) {
+                logger.warn("The seen messages of {} could not be loaded, not saving {} changes",
+                            this.id, this.pendingChanges.size());
+                return;
+            }
+            String changesId = getStorageId(this.chain, this.sequence);
+            try {
+                this.storage.store(changesId, new LinkedHashMap<String, Boolean>(this.pendingChanges));
+                this.pendingChanges.clear();
+                this.sequence++;
+            } catch (IOException ioex) {
+                // keep the changes, they will be written with the next poll
+                logger.error("Error saving list of seen messages for: {}", changesId, ioex);
+            }
+        }
+    }
+
+    /**
+     * @param uid the uid of a message
+     * @return true if the message was seen
+     */
+    public boolean contains(String uid) {
+        return this.uids.containsKey(uid);
+    }
+
+    /**
+     * marks a message as seen or unseen and records the change for the storage
+     *
+     * @param uid the uid of the message
+     * @param seen flag if the message was seen
+     */
+    public void setSeen(String uid, boolean seen) {
+        boolean changed;
+        if (seen) {
+            changed = this.uids.put(uid, Boolean.TRUE) == null;
+        } else {
+            changed = this.uids.remove(uid) != null;
+        }
+        if (changed && this.storage != null) {
+            synchronized (this.pendingChanges) {
+                this.pendingChanges.put(uid, Boolean.valueOf(seen));
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the uids of the seen messages
+     */
+    public List<String> getUids() {
+        return new ArrayList<String>(this.uids.keySet());
+    }
+
+    private void apply(Map<String, Boolean> changes) {
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            if (change.getValue().booleanValue()) {
+                this.uids.put(change.getKey(), Boolean.TRUE);
+            } else {
+                this.uids.remove(change.getKey());
+            }
+        }
+    }
+
+    /**
+     * removes a chain, its generation marker first so it is not read
+     * anymore, then its entries from the last one so the remaining entries
+     * of an interrupted removal can still be found
+     */
+    private void removeChain(String name) throws IOException {
+        if (this.storage.peek(getStorageId(name)) != null) {
+            this.storage.load(getStorageId(name));
+        }
+        int count = 0;
+        while (this.storage.peek(getStorageId(name, count)) != null) {
+            count++;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            this.storage.load(getStorageId(name, i));
+        }
+    }
+
+    private String getStorageId(String name) {
+        return this.id + " #" + name;
+    }
+
+    private String getStorageId(String name, int index) {
+        return getStorageId(name) + index;
+    }
+}
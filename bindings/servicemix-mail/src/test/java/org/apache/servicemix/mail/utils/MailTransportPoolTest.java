@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.mail.utils.MailTransportPool.PooledTransport;
+
+/**
+ * tests the pooling of mail transports against a minimal local SMTP server
+ */
+public class MailTransportPoolTest extends TestCase {
+
+    private FakeSmtpServer server;
+
+    public void setUp() throws Exception {
+        this.server = new FakeSmtpServer();
+        this.server.start();
+    }
+
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    public void testConnectionIsReused() throws Exception {
+        MailTransportPool pool = new MailTransportPool();
+        sendMails(pool, 5);
+        pool.close();
+
+        assertEquals(1, server.connections.get());
+        assertEquals(5, server.messages.get());
+        assertEquals(5, pool.getBorrowCount());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(5, pool.getSentCount());
+        assertEquals(0, pool.getNumIdle());
+    }
+
+    public void testMaxMessagesPerConnection() throws Exception {
+        MailTransportPool pool = new MailTransportPool();
+        pool.setMaxMessagesPerConnection(2);
+        sendMails(pool, 5);
+        pool.close();
+
+        assertEquals(3, server.connections.get());
+        assertEquals(5, server.messages.get());
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(3, pool.getDestroyedCount());
+    }
+
+    public void testDroppedConnectionIsReplaced() throws Exception {
+        MailTransportPool pool = new MailTransportPool();
+        pool.setValidationInterval(-1);
+        sendMails(pool, 1);
+        server.dropConnections();
+        sendMails(pool, 1);
+        pool.close();
+
+        assertEquals(2, server.connections.get());
+        assertEquals(2, server.messages.get());
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    public void testChangedPropertiesRebuildSession() throws Exception {
+        MailTransportPool pool = new MailTransportPool();
+        Properties props = createProperties();
+        PooledTransport transport = pool.borrowTransport("smtp", "localhost", server.getPort(), null, null,
+                                                         props, null);
+        pool.returnTransport(transport, false);
+        props.put("mail.debug", "true");
+        PooledTransport other = pool.borrowTransport("smtp", "localhost", server.getPort(), null, null,
+                                                     props, null);
+        pool.returnTransport(other, false);
+        pool.close();
+
+        assertNotSame(transport.getSession(), other.getSession());
+        assertEquals("true", other.getSession().getProperty("mail.debug"));
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(2, pool.getDestroyedCount());
+    }
+
+    public void testCredentialsAreNotShared() throws Exception {
+        MailTransportPool pool = new MailTransportPool();
+        Properties props = createProperties();
+        // "Aa" and "BB" have the same hash code
+        PooledTransport transport = pool.borrowTransport("smtp", "localhost", server.getPort(), null, "Aa",
+                                                         props, null);
+        pool.returnTransport(transport, false);
+        PooledTransport other = pool.borrowTransport("smtp", "localhost", server.getPort(), null, "BB",
+                                                     props, null);
+        pool.returnTransport(other, false);
+        pool.close();
+
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    private Properties createProperties() {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "localhost");
+        props.put("mail.smtp.port", String.valueOf(server.getPort()));
+        return props;
+    }
+
+    private void sendMails(MailTransportPool pool, int count) throws Exception {
+        Properties props = createProperties();
+        for (int i = 0; i < count; i++) {
+            PooledTransport transport = pool.borrowTransport("smtp", "localhost", server.getPort(), null, null,
+                                                             props, null);
+            MimeMessage msg = new MimeMessage(transport.getSession());
+            msg.setFrom(new InternetAddress("sender@localhost"));
+            msg.setRecipient(Message.RecipientType.TO, new InternetAddress("receiver@localhost"));
+            msg.setSubject("test " + i);
+            msg.setText("This is test mail " + i);
+            transport.sendMessage(msg, msg.getAllRecipients());
+            pool.returnTransport(transport, false);
+        }
+    }
+
+    /**
+     * a minimal SMTP server accepting every mail and counting connections and
+     * messages
+     */
+    private static class FakeSmtpServer extends Thread {
+
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger messages = new AtomicInteger();
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+        FakeSmtpServer() throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void dropConnections() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        void shutdown() throws IOException {
+            serverSocket.close();
+            dropConnections();
+        }
+
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    sockets.add(socket);
+                    Thread handler = new Thread() {
+                        public void run() {
+                            try {
+                                handle(socket);
+                            } catch (IOException e) {
+                                // connection closed
+                            } finally {
+                                sockets.remove(socket);
+                            }
+                        }
+                    };
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    // server closed
+                }
+            }
+        }
+
+        private void handle(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !".".equals(line)) {
+                        // skip the message content
+                    }
+                    messages.incrementAndGet();
+                    reply(out, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    socket.close();
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        }
+
+        private void reply(Writer out, String reply) throws IOException {
+            out.write(reply + "\r\n");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.id.IdGenerator;
+import org.apache.servicemix.store.memory.MemoryStore;
+
+/**
+ * tests the persistence of the seen messages
+ */
+public class SeenMessagesTest extends TestCase {
+
+    private static final String ID = "user @ localhost";
+
+    private CrashingStore storage;
+
+    protected void setUp() throws Exception {
+        this.storage = new CrashingStore();
+    }
+
+    public void testReplay() throws Exception {
+        SeenMessages seen = new SeenMessages(this.storage, ID);
+        seen.load();
+        seen.setSeen("1", true);
+        seen.setSeen("2", true);
+        seen.store();
+        seen.setSeen("3", true);
+        seen.setSeen("1", false);
+        seen.store();
+
+        assertUids(load(), "2", "3");
+    }
+
+    public void testCompaction() throws Exception {
+        SeenMessages seen = new SeenMessages(this.storage, ID);
+        seen.load();
+        seen.setSeen("1", true);
+        seen.setSeen("2", true);
+        seen.store();
+        seen.setSeen("1", false);
+        seen.store();
+
+        seen = load();
+        // only the snapshot of the new chain is left
+        assertEquals(Long.valueOf(1), this.storage.peek(ID + " #b"));
+        assertEquals(new HashSet<String>(Arrays.asList("2")), ((Map<?, ?>) this.storage.peek(ID + " #b0")).keySet());
+        assertNull(this.storage.peek(ID + " #b1"));
+        assertNull(this.storage.peek(ID + " #a"));
+        assertNull(this.storage.peek(ID + " #a0"));
+        assertNull(this.storage.peek(ID + " #a1"));
+
+        // the changes are appended to the new chain
+        seen.setSeen("4", true);
+        seen.store();
+        assertNotNull(this.storage.peek(ID + " #b1"));
+        assertUids(load(), "2", "4");
+        assertNull(this.storage.peek(ID + " #b"));
+        assertEquals(Long.valueOf(2), this.storage.peek(ID + " #a"));
+    }
+
+    public void testLegacyList() throws Exception {
+        this.storage.store(ID, Arrays.asList("1", "2"));
+
+        assertUids(load(), "1", "2");
+        assertNull(this.storage.peek(ID));
+        assertUids(load(), "1", "2");
+    }
+
+    public void testCompactionInterrupted() throws Exception {
+        // the loaded state is kept whatever the storage operation the compaction fails at
+        for (int crash = 0; crash < 20; crash++) {
+            this.storage = new CrashingStore();
+            SeenMessages seen = load();
+            seen.setSeen("1", true);
+            seen.setSeen("2", true);
+            seen.store();
+            seen.setSeen("1", false);
+            seen.setSeen("3", true);
+            seen.store();
+
+            this.storage.crashAfter = crash;
+            try {
+                new SeenMessages(this.storage, ID).load();
+            } catch (IOException e) {
+                // the crash
+            }
+            this.storage.crashAfter = -1;
+            assertUids(load(), "2", "3");
+            assertUids(load(), "2", "3");
+        }
+    }
+
+    public void testWithoutStorage() throws Exception {
+        SeenMessages seen = new SeenMessages(null, ID);
+        seen.load();
+        seen.setSeen("1", true);
+        seen.store();
+
+        assertTrue(seen.contains("1"));
+        assertFalse(seen.contains("2"));
+    }
+
+    private SeenMessages load() throws IOException {
+        SeenMessages seen = new SeenMessages(this.storage, ID);
+        seen.load();
+        return seen;
+    }
+
+    private void assertUids(SeenMessages seen, String... uids) {
+        assertEquals(new HashSet<String>(Arrays.asList(uids)), new HashSet<String>(seen.getUids()));
+    }
+
+    /**
+     * a memory store failing all writes and removals after a number of them
+     */
+    private static class CrashingStore extends MemoryStore {
+
+        private int crashAfter = -1;
+
+        CrashingStore() {
+            super(new IdGenerator());
+        }
+
+        public void store(String id, Object data) throws IOException {
+            crash();
+            super.store(id, data);
+        }
+
+        public Object load(String id) throws IOException {
+            crash();
+            return super.load(id);
+        }
+
+        private void crash() throws IOException {
+            if (this.crashAfter == 0) {
+                throw new IOException("crashed");
+            }
+            if (this.crashAfter > 0) {
+                this.crashAfter--;
+            }
+        }
+    }
+}
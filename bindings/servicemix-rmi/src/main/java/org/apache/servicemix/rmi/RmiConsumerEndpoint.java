@@ -21,20 +21,24 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.rmi.Remote;
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOut;
 import javax.jbi.messaging.MessageExchange;
-import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.wsdl.factory.WSDLFactory;
 import javax.wsdl.xml.WSDLWriter;
+import javax.xml.namespace.QName;
 
-import org.apache.cxf.frontend.ClientProxyFactoryBean;
 import org.apache.servicemix.common.endpoints.ConsumerEndpoint;
 import org.apache.servicemix.rmi.marshaler.DefaultRmiMarshaler;
 import org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport;
@@ -59,9 +63,14 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
     private int port = Registry.REGISTRY_PORT; // the RMI registry port number
     private Registry registry = null; // component RMI registry
     
+    private long timeout; // the exchange timeout, 0 means no timeout
+    
     private Remote stub; // the remote stub
     private Remote proxy; // the remote proxy
     
+    // the invocations waiting for the response of their exchange, by exchange id
+    private final ConcurrentMap<String, PendingInvocation> pendingInvocations = new ConcurrentHashMap<String, PendingInvocation>();
+    
     private ClassLoader classLoader;
     
     public Class getRemoteInterface() {
@@ -124,6 +133,24 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
         this.port = port;
     }
     
+    public long getTimeout() {
+        return this.timeout;
+    }
+    
+    /**
+     * <p>
+     * This attribute defines the maximum time in milliseconds a RMI call waits
+     * for the response of the JBI exchange. A RemoteException is thrown to the
+     * RMI client when the timeout expires.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>0</b> meaning no timeout.</i>
+     * 
+     * @param timeout the exchange timeout.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+    
     /*
      * (non-Javadoc)
      * @see org.apache.servicemix.common.endpoints.ConsumerEndpoint#validate()
@@ -150,6 +177,9 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
             throw new DeploymentException("The remoteInterface property is mandatory.");
         }
         
+        // the marshaler computes the method signatures once
+        marshaler.setRemoteInterface(remoteInterface);
+        
         if (name == null || name.trim().length() < 1) {
             // if the user hasn't define the registry name, use the endpoint one
             logger.debug("The user hasn't define the RMI registry name, use the endpoint one.");
@@ -216,6 +246,10 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
      */
     @Override
     public synchronized void stop() throws Exception {
+        // release the RMI calls still waiting for a response
+        for (PendingInvocation pending : pendingInvocations.values()) {
+            pending.latch.countDown();
+        }
         // destroy the RMI registry if local
         if (registry != null) {
             Registry reg = registry;
@@ -230,49 +264,116 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
      * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
      */
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        logger.error("Remote invocation made");
+        logger.debug("Remote invocation made on {}", method);
+        if (method.getDeclaringClass() == Object.class) {
+            // don't send the object methods into the NMR
+            if ("equals".equals(method.getName())) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(method.getName())) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            return "RMI proxy " + name;
+        }
+        // create a RMI exchange
+        RmiExchange rmiExchange = new RmiExchange();
+        rmiExchange.setObject(proxy);
+        rmiExchange.setMethod(method);
+        rmiExchange.setArgs(args);
         if (pojo != null) {
             // delegrate method call to the POJO
             // WARNING: using POJO you bypass NMR and it's a direct POJO call
             try {
-                return method.invoke(pojo, args);
+                return rmiExchange.invoke(pojo);
             } catch (InvocationTargetException invocationTargetException) {
                 throw invocationTargetException.getTargetException();
-            } catch (Exception e) {
-                throw e;
             }
-        } else {
-            // TODO use CXF ClientProxyFactoryBean to inject into the NMR, much easier
-            //ClientProxyFactoryBean clientProxyFactory = new ClientProxyFactoryBean();
-            //clientProxyFactory.setServiceClass(serviceClass);
-            
-            // construct XML structure corresponding to the RMI call and send into the NMR
-            // create in-out exchange
-            InOut exchange = getExchangeFactory().createInOutExchange();
-            // set the exchange operation name to the called method
-            //exchange.setOperation(new QName("", ""));
-            // create the in message
-            NormalizedMessage in = exchange.createMessage();
-            // set the exchange in message
-            exchange.setInMessage(in);
-            
-            // TODO check if the method match a WSDL an operation
-            
-            // create a RMI exchange
-            RmiExchange rmiExchange = new RmiExchange();
-            rmiExchange.setObject(proxy);
-            rmiExchange.setMethod(method);
-            rmiExchange.setArgs(args);
-            
-            // marshal the RMI exchange into the in message
-            marshaler.rmiExchangeToNmr(in, rmiExchange);
-            // send the exchange to the delivery channel
-            // TODO use a send and hold on to the marshaler in a map with the exchange id
-            sendSync(exchange);
-            // use the marshaler to get back to the object
-            //return marshaler.objectFromNMR(exchange.getOutMessage());
+        }
+        
+        // create in-out exchange
+        InOut exchange = getExchangeFactory().createInOutExchange();
+        configureExchangeTarget(exchange);
+        // set the exchange operation name to the called method
+        exchange.setOperation(new QName(getService().getNamespaceURI(), method.getName()));
+        // create the in message
+        NormalizedMessage in = exchange.createMessage();
+        // marshal the RMI exchange into the in message
+        marshaler.rmiExchangeToNmr(in, rmiExchange);
+        // set the exchange in message
+        exchange.setInMessage(in);
+        
+        // send the exchange asynchronously, the response is correlated in process()
+        PendingInvocation pending = new PendingInvocation();
+        pendingInvocations.put(exchange.getExchangeId(), pending);
+        try {
+            send(exchange);
+            if (timeout > 0) {
+                if (!pending.latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new RemoteException("No response received for " + method.getName() + " within " 
+                        + timeout + " ms.");
+                }
+            } else {
+                pending.latch.await();
+            }
+        } finally {
+            pendingInvocations.remove(exchange.getExchangeId());
+        }
+        if (pending.response == null) {
+            throw new RemoteException("The RMI endpoint " + name + " has been stopped.");
+        }
+        return handleResponse(pending.response, method);
+    }
+    
+    /**
+     * <p>
+     * Get the result of a RMI call from the exchange response.
+     * </p>
+     * 
+     * @param exchange the exchange response.
+     * @param method the called method.
+     * @return the result of the RMI call.
+     * @throws Throwable the exception of the RMI call.
+     */
+    private Object handleResponse(MessageExchange exchange, Method method) throws Throwable {
+        if (exchange.getStatus() == ExchangeStatus.ERROR) {
+            Exception error = exchange.getError();
+            if (error != null && isDeclared(error, method)) {
+                throw error;
+            }
+            throw new RemoteException("The invocation of " + method.getName() + " failed.", error);
+        }
+        if (exchange.getFault() != null) {
+            Object exception = marshaler.objectFromNmr(exchange.getFault(), Throwable.class);
+            done(exchange);
+            if (exception instanceof Throwable && isDeclared((Throwable) exception, method)) {
+                throw (Throwable) exception;
+            }
+            throw new RemoteException("The invocation of " + method.getName() + " failed.", 
+                exception instanceof Throwable ? (Throwable) exception : null);
+        }
+        if (exchange.getStatus() == ExchangeStatus.DONE) {
+            // no out message for this call
             return null;
         }
+        Object result = marshaler.objectFromNmr(exchange.getMessage("out"), method.getReturnType());
+        done(exchange);
+        return result;
+    }
+    
+    /**
+     * <p>
+     * Check if an exception can be thrown to the RMI client by the method.
+     * </p>
+     */
+    private static boolean isDeclared(Throwable throwable, Method method) {
+        if (throwable instanceof RuntimeException || throwable instanceof Error) {
+            return true;
+        }
+        for (Class exceptionType : method.getExceptionTypes()) {
+            if (exceptionType.isInstance(throwable)) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /*
@@ -281,7 +382,12 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
      */
     @Override
     public void process(MessageExchange exchange) throws Exception {
-        if (exchange.getStatus() == ExchangeStatus.DONE) {
+        PendingInvocation pending = pendingInvocations.remove(exchange.getExchangeId());
+        if (pending != null) {
+            // wake up the waiting RMI call
+            pending.response = exchange;
+            pending.latch.countDown();
+        } else if (exchange.getStatus() == ExchangeStatus.DONE) {
             // received DONE for a sent message
             return;
         } else if (exchange.getStatus() == ExchangeStatus.ERROR) {
@@ -289,8 +395,20 @@ public class RmiConsumerEndpoint extends ConsumerEndpoint implements RmiEndpoint
             // there is no real error handling here for now
             return;
         } else {
-            throw new MessagingException("Unsupported exchange received...");
+            // the RMI call has timed out, simply complete the late response
+            logger.warn("Received a response for the timed out exchange {}", exchange.getExchangeId());
+            done(exchange);
         }
     }
     
+    /**
+     * <p>
+     * A RMI call waiting for the response of its exchange.
+     * </p>
+     */
+    private static class PendingInvocation {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile MessageExchange response;
+    }
+    
 }
@@ -16,8 +16,8 @@
  */
 package org.apache.servicemix.rmi;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.rmi.Remote;
 
 /**
  * <p>
@@ -61,11 +61,12 @@ public class RmiExchange {
      * Invoke the RMI exchange on to the give stub.
      * </p>
      * 
-     * @param stub the Remote on which invoke the RMI exchange.
+     * @param stub the Remote or POJO on which invoke the RMI exchange.
      * @return the response object.
+     * @throws InvocationTargetException if the invoked method throws an exception.
      * @throws Exception in case of RMI invocation failure.
      */
-    public Object invoke(Remote stub) throws Exception {
+    public Object invoke(Object stub) throws Exception {
         return method.invoke(stub, args);
     }
 
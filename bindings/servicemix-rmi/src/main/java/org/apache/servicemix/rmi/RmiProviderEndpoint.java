@@ -16,19 +16,26 @@
  */
 package org.apache.servicemix.rmi;
 
+import java.lang.reflect.InvocationTargetException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
 import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 
-import javax.jbi.JBIException;
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.Fault;
+import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
-import javax.wsdl.PortType;
+import javax.jbi.messaging.RobustInOnly;
 import javax.wsdl.factory.WSDLFactory;
 import javax.wsdl.xml.WSDLWriter;
-import javax.xml.namespace.QName;
 
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
 import org.apache.servicemix.rmi.marshaler.DefaultRmiMarshaler;
@@ -55,7 +62,7 @@ public class RmiProviderEndpoint extends ProviderEndpoint implements RmiEndpoint
     private RmiMarshalerSupport marshaler = new DefaultRmiMarshaler(); // the RMI marshaler
     
     private Registry registry = null; // the RMI registry
-    private Remote stub = null; // the remote stub
+    private volatile Remote stub = null; // the cached remote stub
     
     public String getHost() {
         return this.host;
@@ -171,6 +178,9 @@ public class RmiProviderEndpoint extends ProviderEndpoint implements RmiEndpoint
             name = this.getEndpoint();
         }
         
+        // the marshaler resolves the called methods on the remote interface
+        marshaler.setRemoteInterface(remoteInterface);
+        
         if (wsdl != null) {
             // the user provides the WSDL, load it into endpoint definition/description
             
@@ -199,13 +209,82 @@ public class RmiProviderEndpoint extends ProviderEndpoint implements RmiEndpoint
         
         // lookup the stub
         try {
-            stub = registry.lookup(name);
+            stub = lookup();
         } catch (Exception e) {
             throw new DeploymentException("Remote object " + name + " lookup fails.", e);
         }
-        
-        if (stub == null) {
-            throw new DeploymentException("Remote object " + name + " is not found.");
+    }
+    
+    /**
+     * <p>
+     * Lookup the remote stub into the RMI registry.
+     * </p>
+     * 
+     * @return the remote stub.
+     * @throws Exception in case of lookup failure.
+     */
+    private Remote lookup() throws Exception {
+        Remote remote = registry.lookup(name);
+        if (remote == null) {
+            throw new NotBoundException("Remote object " + name + " is not found.");
+        }
+        return remote;
+    }
+    
+    /**
+     * <p>
+     * Get the cached remote stub, looking it up if a previous call failed.
+     * </p>
+     * 
+     * @return the remote stub.
+     * @throws Exception in case of lookup failure.
+     */
+    private Remote getStub() throws Exception {
+        Remote remote = stub;
+        if (remote == null) {
+            remote = lookup();
+            stub = remote;
+        }
+        return remote;
+    }
+    
+    /**
+     * <p>
+     * Check if a RMI failure is due to the connection to the remote object,
+     * meaning that the call has not reached the remote object.
+     * </p>
+     * 
+     * @param e the RMI failure.
+     * @return true if a new stub should be used.
+     */
+    private boolean isConnectionFailure(RemoteException e) {
+        return e instanceof ConnectException || e instanceof ConnectIOException 
+            || e instanceof NoSuchObjectException || e instanceof UnknownHostException;
+    }
+    
+    /**
+     * <p>
+     * Invoke the RMI exchange on the cached stub. If the connection to the 
+     * remote object fails, the stub is looked up again and the call retried once.
+     * </p>
+     * 
+     * @param rmiExchange the RMI exchange.
+     * @return the response object.
+     * @throws Exception in case of RMI invocation failure.
+     */
+    private Object invoke(RmiExchange rmiExchange) throws Exception {
+        Remote remote = getStub();
+        try {
+            return rmiExchange.invoke(remote);
+        } catch (InvocationTargetException e) {
+            if (!(e.getTargetException() instanceof RemoteException) 
+                || !isConnectionFailure((RemoteException) e.getTargetException())) {
+                throw e;
+            }
+            logger.debug("Connection to the remote object {} failed, lookup it again.", name);
+            // the remote object may have been exported again, forget the stale stub
+            stub = null;
+            return rmiExchange.invoke(getStub());
         }
     }
     
@@ -214,21 +293,43 @@ public class RmiProviderEndpoint extends ProviderEndpoint implements RmiEndpoint
      * @see org.apache.servicemix.common.endpoints.ProviderEndpoint#process(javax.jbi.messaging.MessageExchange)
      */
     public void process(MessageExchange exchange) throws Exception {
-        if (exchange.getStatus() == ExchangeStatus.ACTIVE) {
-            // the exchange is active
-            NormalizedMessage in = exchange.getMessage("in");
-            if (in == null) {
-                throw new IllegalStateException("Exchange has not in message.");
-            }
-            // create a RMI exchange container
-            RmiExchange rmiExchange = new RmiExchange();
-            // populate the RMI exchange
-            //marshaler.createRmiCall(in, rmiExchange);
+        if (exchange.getStatus() != ExchangeStatus.ACTIVE) {
+            // DONE or ERROR for a sent out or fault
+            return;
+        }
+        // the exchange is active
+        NormalizedMessage in = exchange.getMessage("in");
+        if (in == null) {
+            throw new IllegalStateException("Exchange has not in message.");
+        }
+        // unmarshal the RMI call from the in message
+        RmiExchange rmiExchange = marshaler.rmiExchangeFromNmr(exchange);
+        boolean inOnly = exchange instanceof InOnly || exchange instanceof RobustInOnly;
+        Object response;
+        try {
             // perform the RMI call
-            Object response = rmiExchange.invoke(stub);
-            // TODO handle RMI invocation exception using exchange.setError();
+            response = invoke(rmiExchange);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            if (exchange instanceof InOnly || !(cause instanceof Exception)) {
+                // no fault allowed
+                fail(exchange, cause instanceof Exception ? (Exception) cause : e);
+                return;
+            }
+            // the remote exception is returned as a fault
+            Fault fault = exchange.createFault();
+            marshaler.objectToNmr(fault, cause);
+            exchange.setFault(fault);
+            send(exchange);
+            return;
+        }
+        if (inOnly) {
+            done(exchange);
+        } else {
             // marshal the response object into a normalized message
-            //marshaler.handleRmiResponse(exchange, response, rmiExchange.getMethod().getReturnType());
+            NormalizedMessage out = exchange.createMessage();
+            marshaler.objectToNmr(out, response);
+            exchange.setMessage(out, "out");
             // send the exchange into the NMR
             send(exchange);
         }
@@ -16,16 +16,23 @@
  */
 package org.apache.servicemix.rmi.marshaler;
 
-import javax.jbi.messaging.ExchangeStatus;
-import javax.jbi.messaging.InOptionalOut;
-import javax.jbi.messaging.InOut;
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 
 import org.apache.cxf.databinding.DataBinding;
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.rmi.RmiExchange;
+import org.apache.servicemix.rmi.util.RemoteInterfaceDescriptor;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,56 +41,289 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Default RMI marshaler.
  * </p>
+ * <p>
+ * The arguments and results are passed as is in message properties, so calls
+ * between RMI endpoints don't need any conversion. The message content
+ * describes the call in XML, for instance:
+ * </p>
+ * <pre>
+ * &lt;rmi:call xmlns:rmi="http://servicemix.apache.org/rmi/1.0" method="echo(java.lang.String)"&gt;
+ *   &lt;rmi:argument&gt;test&lt;/rmi:argument&gt;
+ * &lt;/rmi:call&gt;
+ * </pre>
+ * <p>
+ * If the properties are missing, for instance because the message has been
+ * created by another component, the call is read from the content. This
+ * supports arguments and results of primitive, wrapper and string types.
+ * Values of other types are only passed in the properties: the content just
+ * gives their class, for instance
+ * <code>&lt;rmi:argument type="com.acme.Order" property="true"/&gt;</code>,
+ * and reading such a value from the content is rejected. They are not
+ * serialized in the content, as deserializing content produced by any
+ * component would not be safe.
+ * </p>
  * 
  * @author jbonofre
  */
 public class DefaultRmiMarshaler implements RmiMarshalerSupport {
     
+    public static final String NAMESPACE = "http://servicemix.apache.org/rmi/1.0";
+    
+    public static final String SIGNATURE_PROPERTY = "org.apache.servicemix.rmi.signature";
+    public static final String ARGUMENTS_PROPERTY = "org.apache.servicemix.rmi.arguments";
+    public static final String RESULT_PROPERTY = "org.apache.servicemix.rmi.result";
+    
+    private static final String CALL = "call";
+    private static final String ARGUMENT = "argument";
+    private static final String RESULT = "result";
+    private static final String EXCEPTION = "exception";
+    
     private final Logger logger = LoggerFactory.getLogger(DefaultRmiMarshaler.class);
     
     private DataBinding dataBinding;
+    private RemoteInterfaceDescriptor descriptor;
+    private SourceTransformer transformer = new SourceTransformer();
     
     public void setDataBinding(DataBinding dataBinding) {
         this.dataBinding = dataBinding;
     }
     
+    /*
+     * (non-Javadoc)
+     * @see org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport#setRemoteInterface(java.lang.Class)
+     */
+    public void setRemoteInterface(Class remoteInterface) {
+        if (descriptor == null || descriptor.getRemoteInterface() != remoteInterface) {
+            descriptor = new RemoteInterfaceDescriptor(remoteInterface);
+        }
+    }
+    
     /*
      * (non-Javadoc)
      * @see org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport#rmiExchangeFromNmr(javax.jbi.messaging.MessageExchange)
      */
     public RmiExchange rmiExchangeFromNmr(MessageExchange exchange) throws MessagingException {
-        if (exchange instanceof InOut) {
-            // it's an InOut exchange
-            // create the out message
-            NormalizedMessage out = exchange.createMessage();
-            // marshal the object using the data binding
-            //DataWriter dataWriter = dataBinding.createWriter(objectClass);
-            // put the marshaled response into the out message
-            //out.setContent(dataWriter.write(arg0, arg1)));
-        } else if (exchange instanceof InOptionalOut) {
-            // it's an InOptionalOut, send the response only if the object is not null
-            //if (object != null) {
-                
-            //} else {
-                exchange.setStatus(ExchangeStatus.DONE);
-            //}
-        } else {
-            // it's an InOnly exchange
-            exchange.setStatus(ExchangeStatus.DONE);
+        NormalizedMessage in = exchange.getMessage("in");
+        if (in == null) {
+            throw new MessagingException("Exchange has not in message.");
+        }
+        RmiExchange rmiExchange = new RmiExchange();
+        String signature = (String) in.getProperty(SIGNATURE_PROPERTY);
+        Object[] args = (Object[]) in.getProperty(ARGUMENTS_PROPERTY);
+        Element call = null;
+        if (signature == null || args == null) {
+            // slow path: read the call from the message content
+            logger.debug("Unmarshal the RMI call from the in normalized message content.");
+            call = toElement(in);
+            signature = call.getAttribute("method");
         }
-        return null;
+        Method method = getMethod(signature);
+        if (method == null && exchange.getOperation() != null) {
+            method = getMethod(exchange.getOperation().getLocalPart());
+        }
+        if (method == null) {
+            throw new MessagingException("No method " + signature + " found in the remote interface.");
+        }
+        if (args == null) {
+            Class[] types = method.getParameterTypes();
+            args = new Object[types.length];
+            int i = 0;
+            for (Element argument : getChildren(call, ARGUMENT)) {
+                if (i >= types.length) {
+                    break;
+                }
+                args[i] = fromText(argument, types[i]);
+                i++;
+            }
+            if (i < types.length) {
+                throw new MessagingException("Missing arguments for method " + signature + ".");
+            }
+        }
+        rmiExchange.setMethod(method);
+        rmiExchange.setArgs(args);
+        return rmiExchange;
     }
     
     /*
      * (non-Javadoc)
-     * @see org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport#rmiCallFromNMR(javax.jbi.messaging.NormalizedMessage)
+     * @see org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport#rmiExchangeToNmr(javax.jbi.messaging.NormalizedMessage, org.apache.servicemix.rmi.RmiExchange)
      */
     public void rmiExchangeToNmr(NormalizedMessage in, RmiExchange rmiExchange) throws MessagingException {
-        // marshal the RMI exchange into the "in" normalized message using JAXB
-        logger.debug("Marshal a RMI exchange into the in normalized message using JAXB.");
-        
-        // TODO only for testing purpose
-        in.setContent(new StringSource("<TEST></TEST>")); 
+        String signature = descriptor != null ? descriptor.getSignature(rmiExchange.getMethod())
+            : rmiExchange.getMethod().getName();
+        Object[] args = rmiExchange.getArgs() != null ? rmiExchange.getArgs() : new Object[0];
+        // the arguments are passed as is in the properties
+        in.setProperty(SIGNATURE_PROPERTY, signature);
+        in.setProperty(ARGUMENTS_PROPERTY, args);
+        // describe the call in the content
+        StringBuilder content = new StringBuilder();
+        content.append("<rmi:").append(CALL).append(" xmlns:rmi=\"").append(NAMESPACE).append("\" method=\"");
+        escape(content, signature);
+        content.append("\">");
+        for (Object arg : args) {
+            appendElement(content, ARGUMENT, null, arg, false);
+        }
+        content.append("</rmi:").append(CALL).append('>');
+        in.setContent(new StringSource(content.toString()));
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport#objectToNmr(javax.jbi.messaging.NormalizedMessage, java.lang.Object)
+     */
+    public void objectToNmr(NormalizedMessage message, Object object) throws MessagingException {
+        StringBuilder content = new StringBuilder();
+        if (object instanceof Throwable) {
+            Throwable throwable = (Throwable) object;
+            appendElement(content, EXCEPTION, throwable.getClass().getName(), throwable.getMessage(), true);
+        } else {
+            appendElement(content, RESULT, null, object, true);
+        }
+        if (object != null) {
+            message.setProperty(RESULT_PROPERTY, object);
+        }
+        message.setContent(new StringSource(content.toString()));
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see org.apache.servicemix.rmi.marshaler.RmiMarshalerSupport#objectFromNmr(javax.jbi.messaging.NormalizedMessage, java.lang.Class)
+     */
+    public Object objectFromNmr(NormalizedMessage message, Class type) throws MessagingException {
+        Object object = message.getProperty(RESULT_PROPERTY);
+        if (object != null || type == void.class) {
+            return object;
+        }
+        if (message.getContent() == null) {
+            return null;
+        }
+        Element element = toElement(message);
+        if (EXCEPTION.equals(element.getLocalName())) {
+            return new RemoteException(element.getAttribute("type") + ": " + element.getTextContent());
+        }
+        return fromText(element, type);
+    }
+    
+    private Method getMethod(String signature) {
+        return descriptor != null && signature != null ? descriptor.getMethod(signature) : null;
+    }
+    
+    private Element toElement(NormalizedMessage message) throws MessagingException {
+        try {
+            Element element = transformer.toDOMElement(message);
+            if (element == null) {
+                throw new MessagingException("The normalized message has no content.");
+            }
+            return element;
+        } catch (MessagingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MessagingException("Can't read the normalized message content.", e);
+        }
+    }
+    
+    private static List<Element> getChildren(Element parent, String localName) {
+        List<Element> children = new ArrayList<Element>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element && localName.equals(node.getLocalName())) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+    
+    private static void appendElement(StringBuilder content, String name, String type, Object value,
+                                      boolean root) {
+        boolean simple = isSimple(value);
+        if (!simple && type == null) {
+            type = value.getClass().getName();
+        }
+        content.append("<rmi:").append(name);
+        if (root) {
+            content.append(" xmlns:rmi=\"").append(NAMESPACE).append('"');
+        }
+        if (type != null) {
+            content.append(" type=\"");
+            escape(content, type);
+            content.append('"');
+        }
+        if (value == null) {
+            content.append(" null=\"true\"/>");
+            return;
+        }
+        if (!simple) {
+            // only carried by the message properties
+            content.append(" property=\"true\"/>");
+            return;
+        }
+        content.append('>');
+        escape(content, String.valueOf(value));
+        content.append("</rmi:").append(name).append('>');
+    }
+    
+    private static void escape(StringBuilder content, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '<':
+                content.append("&lt;");
+                break;
+            case '>':
+                content.append("&gt;");
+                break;
+            case '&':
+                content.append("&amp;");
+                break;
+            case '"':
+                content.append("&quot;");
+                break;
+            default:
+                content.append(c);
+            }
+        }
+    }
+    
+    /**
+     * Checks if a value is written as text in the message content.
+     */
+    private static boolean isSimple(Object value) {
+        return value == null || value instanceof String || value instanceof Boolean || value instanceof Character
+            || value instanceof Integer || value instanceof Long || value instanceof Double
+            || value instanceof Float || value instanceof Short || value instanceof Byte;
+    }
+    
+    private static Object fromText(Element element, Class type) throws MessagingException {
+        if ("true".equals(element.getAttribute("null"))) {
+            return null;
+        }
+        if ("true".equals(element.getAttribute("property"))) {
+            throw new MessagingException("Can't unmarshal a " + element.getAttribute("type") + " from the message "
+                + "content, the RMI properties are required for this type.");
+        }
+        String text = element.getTextContent();
+        if (type == String.class || type == Object.class) {
+            return text;
+        } else if (type == int.class || type == Integer.class) {
+            return Integer.valueOf(text);
+        } else if (type == long.class || type == Long.class) {
+            return Long.valueOf(text);
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Boolean.valueOf(text);
+        } else if (type == double.class || type == Double.class) {
+            return Double.valueOf(text);
+        } else if (type == float.class || type == Float.class) {
+            return Float.valueOf(text);
+        } else if (type == short.class || type == Short.class) {
+            return Short.valueOf(text);
+        } else if (type == byte.class || type == Byte.class) {
+            return Byte.valueOf(text);
+        } else if ((type == char.class || type == Character.class) && text.length() == 1) {
+            return Character.valueOf(text.charAt(0));
+        }
+        throw new MessagingException("Can't unmarshal a " + type.getName() + " from the message content, the "
+            + "RMI properties are required for this type.");
     }
 
 }
@@ -43,24 +43,56 @@ public interface RmiMarshalerSupport {
     
     /**
      * <p>
-     * Unmarshal a RMI call contained into a <code>NormalizedMessage</code>.
+     * Define the remote interface whose method calls are marshaled.
+     * </p>
+     * 
+     * @param remoteInterface the remote interface.
+     */
+    public void setRemoteInterface(Class remoteInterface);
+    
+    /**
+     * <p>
+     * Marshal a RMI call into a <code>NormalizedMessage</code>.
      * </p>
      * 
      * @param in the in normalized message.
-     * @param rmiCall the RMI call to populate.
-     * @throws MessagingException in case of unmarshaling failure.
+     * @param rmiExchange the RMI call to marshal.
+     * @throws MessagingException in case of marshaling failure.
      */
     public void rmiExchangeToNmr(NormalizedMessage in, RmiExchange rmiExchange) throws MessagingException;
     
     /**
      * <p>
-     * Marshal an object and push into the <code>NormalizedMessage</code> content.
+     * Unmarshal the RMI call contained into the in message of the exchange.
      * </p>
      *  
      * @param exchange the message exchange.
      * @return the RMI Exchange.
-     * @throws MessagingException in case of marshaling failure.
+     * @throws MessagingException in case of unmarshaling failure.
      */
     public RmiExchange rmiExchangeFromNmr(MessageExchange exchange) throws MessagingException;
+    
+    /**
+     * <p>
+     * Marshal the result or the exception of a RMI call into a <code>NormalizedMessage</code>.
+     * </p>
+     * 
+     * @param message the out or fault normalized message.
+     * @param object the RMI call result or exception.
+     * @throws MessagingException in case of marshaling failure.
+     */
+    public void objectToNmr(NormalizedMessage message, Object object) throws MessagingException;
+    
+    /**
+     * <p>
+     * Unmarshal the result or the exception of a RMI call from a <code>NormalizedMessage</code>.
+     * </p>
+     * 
+     * @param message the out or fault normalized message.
+     * @param type the expected type.
+     * @return the RMI call result or exception.
+     * @throws MessagingException in case of unmarshaling failure.
+     */
+    public Object objectFromNmr(NormalizedMessage message, Class type) throws MessagingException;
 
 }
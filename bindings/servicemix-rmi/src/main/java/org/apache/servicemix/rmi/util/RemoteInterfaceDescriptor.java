@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.rmi.util;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Describes the methods of a remote interface. The method signatures used in
+ * the normalized messages are computed once and the methods are resolved from
+ * their signature, or their name if it's not overloaded, without reflection
+ * lookups for each call.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class RemoteInterfaceDescriptor {
+    
+    private final Class remoteInterface;
+    private final Map<Method, String> signatures;
+    private final Map<String, Method> methods;
+    
+    public RemoteInterfaceDescriptor(Class remoteInterface) {
+        this.remoteInterface = remoteInterface;
+        Map<Method, String> signatures = new HashMap<Method, String>();
+        Map<String, Method> methods = new HashMap<String, Method>();
+        Set<String> overloaded = new HashSet<String>();
+        for (Method method : remoteInterface.getMethods()) {
+            try {
+                // skip the access checks on each invocation
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // use the checked invocation
+            }
+            String signature = getSignature(method.getName(), method.getParameterTypes());
+            signatures.put(method, signature);
+            methods.put(signature, method);
+            if (methods.containsKey(method.getName()) || overloaded.contains(method.getName())) {
+                // the name doesn't identify the method anymore
+                methods.remove(method.getName());
+                overloaded.add(method.getName());
+            } else {
+                methods.put(method.getName(), method);
+            }
+        }
+        this.signatures = Collections.unmodifiableMap(signatures);
+        this.methods = Collections.unmodifiableMap(methods);
+    }
+    
+    public Class getRemoteInterface() {
+        return this.remoteInterface;
+    }
+    
+    /**
+     * <p>
+     * Get the signature of a method, for instance <code>echo(java.lang.String)</code>.
+     * </p>
+     * 
+     * @param method the method.
+     * @return the method signature.
+     */
+    public String getSignature(Method method) {
+        String signature = signatures.get(method);
+        if (signature == null) {
+            signature = getSignature(method.getName(), method.getParameterTypes());
+        }
+        return signature;
+    }
+    
+    /**
+     * <p>
+     * Get a method of the remote interface.
+     * </p>
+     * 
+     * @param signature the method signature, or the method name if it's not overloaded.
+     * @return the method or null if not found.
+     */
+    public Method getMethod(String signature) {
+        return methods.get(signature);
+    }
+    
+    private static String getSignature(String name, Class[] parameterTypes) {
+        StringBuilder signature = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(parameterTypes[i].getName());
+        }
+        return signature.append(')').toString();
+    }
+
+}
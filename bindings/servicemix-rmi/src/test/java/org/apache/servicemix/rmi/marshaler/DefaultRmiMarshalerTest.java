@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.rmi.marshaler;
+
+import java.rmi.RemoteException;
+
+import javax.jbi.messaging.Fault;
+import javax.jbi.messaging.InOut;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
+import org.apache.servicemix.jbi.jaxp.StringSource;
+import org.apache.servicemix.jbi.messaging.InOutImpl;
+import org.apache.servicemix.rmi.Echo;
+import org.apache.servicemix.rmi.RmiExchange;
+
+/**
+ * <p>
+ * Test the default RMI marshaler.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class DefaultRmiMarshalerTest extends TestCase {
+    
+    private DefaultRmiMarshaler marshaler;
+    
+    protected void setUp() throws Exception {
+        marshaler = new DefaultRmiMarshaler();
+        marshaler.setRemoteInterface(Echo.class);
+    }
+    
+    public void testCallUsingProperties() throws Exception {
+        RmiExchange rmiExchange = new RmiExchange();
+        rmiExchange.setMethod(Echo.class.getMethod("echo", String.class));
+        rmiExchange.setArgs(new Object[] {"test"});
+        
+        InOut exchange = new InOutImpl("id");
+        NormalizedMessage in = exchange.createMessage();
+        marshaler.rmiExchangeToNmr(in, rmiExchange);
+        exchange.setInMessage(in);
+        
+        assertEquals("echo(java.lang.String)", in.getProperty(DefaultRmiMarshaler.SIGNATURE_PROPERTY));
+        RmiExchange result = marshaler.rmiExchangeFromNmr(exchange);
+        assertEquals(rmiExchange.getMethod(), result.getMethod());
+        assertEquals("test", result.getArgs()[0]);
+    }
+    
+    public void testCallUsingContent() throws Exception {
+        InOut exchange = new InOutImpl("id");
+        NormalizedMessage in = exchange.createMessage();
+        in.setContent(new StringSource("<rmi:call xmlns:rmi=\"" + DefaultRmiMarshaler.NAMESPACE 
+            + "\" method=\"echo\"><rmi:argument>hello &amp; bye</rmi:argument></rmi:call>"));
+        exchange.setInMessage(in);
+        
+        RmiExchange result = marshaler.rmiExchangeFromNmr(exchange);
+        assertEquals("echo", result.getMethod().getName());
+        assertEquals("hello & bye", result.getArgs()[0]);
+    }
+    
+    public void testComplexArgumentIsOnlyInProperties() throws Exception {
+        RmiExchange rmiExchange = new RmiExchange();
+        rmiExchange.setMethod(Echo.class.getMethod("echo", String.class));
+        rmiExchange.setArgs(new Object[] {new StringBuffer("test")});
+        
+        InOut exchange = new InOutImpl("id");
+        NormalizedMessage in = exchange.createMessage();
+        marshaler.rmiExchangeToNmr(in, rmiExchange);
+        exchange.setInMessage(in);
+        
+        // the content gives the type of the argument but not its toString()
+        String content = new SourceTransformer().contentToString(in);
+        assertTrue(content.indexOf("type=\"java.lang.StringBuffer\"") > 0);
+        assertTrue(content.indexOf("test") < 0);
+        
+        // reading it from the content is rejected
+        in.setProperty(DefaultRmiMarshaler.ARGUMENTS_PROPERTY, null);
+        try {
+            marshaler.rmiExchangeFromNmr(exchange);
+            fail("MessagingException expected");
+        } catch (MessagingException e) {
+            // expected
+        }
+    }
+    
+    public void testUnknownMethod() throws Exception {
+        InOut exchange = new InOutImpl("id");
+        NormalizedMessage in = exchange.createMessage();
+        in.setContent(new StringSource("<rmi:call xmlns:rmi=\"" + DefaultRmiMarshaler.NAMESPACE 
+            + "\" method=\"unknown\"/>"));
+        exchange.setInMessage(in);
+        
+        try {
+            marshaler.rmiExchangeFromNmr(exchange);
+            fail("MessagingException expected");
+        } catch (MessagingException e) {
+            // expected
+        }
+    }
+    
+    public void testResultUsingContent() throws Exception {
+        InOut exchange = new InOutImpl("id");
+        NormalizedMessage out = exchange.createMessage();
+        out.setContent(new StringSource("<rmi:result xmlns:rmi=\"" + DefaultRmiMarshaler.NAMESPACE 
+            + "\">42</rmi:result>"));
+        
+        assertEquals(Integer.valueOf(42), marshaler.objectFromNmr(out, int.class));
+    }
+    
+    public void testResultAndException() throws Exception {
+        InOut exchange = new InOutImpl("id");
+        NormalizedMessage out = exchange.createMessage();
+        marshaler.objectToNmr(out, "test");
+        assertEquals("test", marshaler.objectFromNmr(out, String.class));
+        
+        RemoteException exception = new RemoteException("boom");
+        Fault fault = exchange.createFault();
+        marshaler.objectToNmr(fault, exception);
+        assertSame(exception, marshaler.objectFromNmr(fault, Throwable.class));
+    }
+
+}
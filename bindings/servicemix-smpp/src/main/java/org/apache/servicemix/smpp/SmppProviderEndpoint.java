@@ -26,23 +26,33 @@ import org.jsmpp.bean.*;
 import org.jsmpp.extra.NegativeResponseException;
 import org.jsmpp.extra.ResponseTimeoutException;
 import org.jsmpp.session.BindParameter;
-import org.jsmpp.session.SMPPSession;
 import org.jsmpp.util.AbsoluteTimeFormatter;
 import org.jsmpp.util.TimeFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jbi.management.DeploymentException;
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
-import javax.xml.transform.TransformerException;
+import javax.jbi.messaging.RobustInOnly;
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A provider component receives XML message from the NMR and converts into SMPP
- * packet and sends it to SMS.
+ * packet and sends it to SMS. The messages are submitted asynchronously over a
+ * pool of bound sessions, each allowing a window of outstanding requests. The
+ * JBI thread only queues the submission, it never waits for a session.
  *
  * @author jbonofre
  * @author lhein
@@ -58,7 +68,8 @@ public class SmppProviderEndpoint extends ProviderEndpoint implements SmppEndpoi
     // SMPP system type
     private final static String DEFAULT_SYSTEM_TYPE = "cp";
 
-    private SMPPSession session;
+    private SmppSessionPool sessionPool;
+    private ExecutorService executor;
     private static TimeFormatter timeFormatter = new AbsoluteTimeFormatter();
 
     private String host;
@@ -68,6 +79,11 @@ public class SmppProviderEndpoint extends ProviderEndpoint implements SmppEndpoi
     private String systemType=DEFAULT_SYSTEM_TYPE;
     private int enquireLinkTimer = 50000;
     private int transactionTimer = 100000;
+    private int poolSize = 1;
+    private int windowSize = 10;
+    private int maxQueuedSubmissions = 1000;
+    private int maxSubmitsPerSecond;
+    private long rebindInterval = 5000;
 
     private SmppMarshalerSupport marshaler;
 
@@ -129,40 +145,132 @@ public class SmppProviderEndpoint extends ProviderEndpoint implements SmppEndpoi
         if (this.transactionTimer <= 0) {
             throw new IllegalArgumentException("The transactionTimer value must be greater than 0.");
         }
+        // check the pool size
+        if (this.poolSize <= 0) {
+            throw new IllegalArgumentException("The poolSize value must be greater than 0.");
+        }
+        // check the window size
+        if (this.windowSize <= 0) {
+            throw new IllegalArgumentException("The windowSize value must be greater than 0.");
+        }
+        // check the submission queue
+        if (this.maxQueuedSubmissions <= 0) {
+            throw new IllegalArgumentException("The maxQueuedSubmissions value must be greater than 0.");
+        }
+        // check the throttling
+        if (this.maxSubmitsPerSecond < 0) {
+            throw new IllegalArgumentException("The maxSubmitsPerSecond value must not be negative.");
+        }
     }
 
     /**
-     * Connect to the SMPP server and bind the SMPP session
+     * Connect to the SMPP server and bind the SMPP sessions
      */
     private void connect() {
-        // create the SMPPSession
-        session = new SMPPSession();
-        // define the enquireLinkTimer
-        session.setEnquireLinkTimer(this.enquireLinkTimer);
-        // define the transationTimer
-        session.setTransactionTimer(this.transactionTimer);
-        // connect and bind to the SMPP server
-        try {
-            session.connectAndBind(this.host, this.port, new BindParameter(BindType.BIND_TX, this.systemId,
-                    this.password, this.systemType,
-                    TypeOfNumber.UNKNOWN,
-                    NumberingPlanIndicator.UNKNOWN,
-                    null));
-        } catch (IOException ioException) {
-            logger.error("Error connecting to the SMPP server", ioException);
-            return;
-        }
+        // create the session pool, sessions failing to bind are bound again on use
+        sessionPool = new SmppSessionPool(this.host, this.port, new BindParameter(BindType.BIND_TX, this.systemId,
+                this.password, this.systemType,
+                TypeOfNumber.UNKNOWN,
+                NumberingPlanIndicator.UNKNOWN,
+                null), this.enquireLinkTimer, this.transactionTimer, this.poolSize, this.windowSize,
+                this.maxSubmitsPerSecond, this.rebindInterval);
+        sessionPool.start();
+        // the window slots bound the number of running submissions, the submissions waiting
+        // for a slot are queued up to maxQueuedSubmissions and further ones are rejected
+        int threads = this.poolSize * this.windowSize;
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(this.maxQueuedSubmissions), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "smpp-submit-" + getEndpoint() + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     /**
-     * Unbind the SMPP session and close the connection to the SMPP server
+     * Unbind the SMPP sessions and close the connections to the SMPP server
      */
-    private void disconnect() {
-        if (this.session == null) {
+    private void disconnect() throws InterruptedException {
+        if (this.sessionPool == null) {
             // seems to not be opened at all
             return;
         }
-        this.session.unbindAndClose();
+        // let the outstanding submissions complete
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(this.transactionTimer, TimeUnit.MILLISECONDS)) {
+            logger.warn("Outstanding SMPP submissions did not complete in {} ms", this.transactionTimer);
+        }
+        this.sessionPool.stop();
+        this.sessionPool = null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see
+     * org.apache.servicemix.common.endpoints.ProviderEndpoint#process(javax.jbi.messaging.MessageExchange)
+     */
+
+    @Override
+    public void process(MessageExchange exchange) throws Exception {
+        NormalizedMessage in;
+        // transacted exchanges are submitted in the calling thread
+        if (exchange.getRole() == MessageExchange.Role.PROVIDER && exchange.getStatus() == ExchangeStatus.ACTIVE
+                && exchange.getFault() == null && (in = exchange.getMessage("in")) != null
+                && !exchange.isTransacted()) {
+            processAsync(exchange, in);
+        } else {
+            super.process(exchange);
+        }
+    }
+
+    /**
+     * queues the submission of the message. A submission thread waits for a free
+     * slot in the window of a session, binds it if needed and submits the message.
+     * The exchange is completed when the SMSC responded.
+     *
+     * @param exchange the message exchange
+     * @param in       the in message
+     * @throws Exception on errors before the submission, or if too many submissions are queued
+     */
+    private void processAsync(final MessageExchange exchange, final NormalizedMessage in) throws Exception {
+        final boolean inOnly = exchange instanceof InOnly || exchange instanceof RobustInOnly;
+        if (!inOnly) {
+            // the in message is copied to the out message after the submission
+            MessageUtil.enableContentRereadability(in);
+        }
+        // let the marshaler create a SM content
+        final MessageRequest sm = marshaler.fromNMS(exchange, in);
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        submit(sessionPool.acquire(), sm);
+                        if (inOnly) {
+                            done(exchange);
+                        } else {
+                            // message was delivered, simply copy the in message with properties and
+                            // attachements to out
+                            NormalizedMessage out = exchange.createMessage();
+                            MessageUtil.transfer(in, out);
+                            exchange.setMessage(out, "out");
+                            send(exchange);
+                        }
+                    } catch (Exception e) {
+                        try {
+                            fail(exchange, e);
+                        } catch (MessagingException messagingException) {
+                            logger.error("Unable to send the error of the SMPP submission", messagingException);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            throw new MessagingException("The SMPP endpoint is stopped or " + this.maxQueuedSubmissions
+                    + " submissions are already waiting", rejectedExecutionException);
+        }
     }
 
     /*
@@ -202,21 +310,31 @@ public class SmppProviderEndpoint extends ProviderEndpoint implements SmppEndpoi
     }
 
     /**
-     * process the incoming exchange
+     * process the incoming exchange in the calling thread
      *
      * @param exchange the message exchange
      * @param in       the in message
-     * @throws TransformerException on transformation errors
-     * @throws MessagingException   on messaging errors
+     * @throws Exception on errors
      */
-    private void process(MessageExchange exchange, NormalizedMessage in) throws TransformerException,
-            MessagingException {
+    private void process(MessageExchange exchange, NormalizedMessage in) throws Exception {
         // let the marshaler create a SM content
         MessageRequest sm = marshaler.fromNMS(exchange, in);
+        submit(sessionPool.acquire(), sm);
+    }
 
+    /**
+     * submits the message on the given session and waits for the response
+     *
+     * @param pooled the session of the pool, released after the response
+     * @param sm     the SM content
+     * @throws Exception if the submission failed
+     */
+    private void submit(SmppSessionPool.PooledSession pooled, MessageRequest sm) throws Exception {
+        long startTime = System.currentTimeMillis();
+        boolean broken = false;
         try {
             logger.debug("Submiting request: {}", sm);
-            String messageId = session
+            String messageId = pooled.getSession()
                     .submitShortMessage("CMT", TypeOfNumber.valueOf(sm.getSourceAddrTon()),
                             NumberingPlanIndicator.valueOf(sm.getSourceAddrNpi()),
                             sm.getSourceAddr(), TypeOfNumber.valueOf(sm.getDestAddrTon()),
@@ -230,19 +348,23 @@ public class SmppProviderEndpoint extends ProviderEndpoint implements SmppEndpoi
             logger.debug("Message sent with ID {}", messageId);
         } catch (PDUException pduException) {
             logger.error("Invalid PDU parameter", pduException);
-            fail(exchange, new Exception("Invalid PDU parameter", pduException));
+            throw new Exception("Invalid PDU parameter", pduException);
         } catch (ResponseTimeoutException responseTimeoutException) {
             logger.error("Response timeout");
-            fail(exchange, new Exception("Response timeout", responseTimeoutException));
+            throw new Exception("Response timeout", responseTimeoutException);
         } catch (InvalidResponseException invalidResponseException) {
             logger.error("Invalid response");
-            fail(exchange, new Exception("Invalid response", invalidResponseException));
+            throw new Exception("Invalid response", invalidResponseException);
         } catch (NegativeResponseException negativeResponseException) {
             logger.error("Negative response");
-            fail(exchange, new Exception("Negative response", negativeResponseException));
+            throw new Exception("Negative response", negativeResponseException);
         } catch (IOException ioException) {
             logger.error("IO error during message send");
-            fail(exchange, new Exception("IO error during message send", ioException));
+            // the session is bound again on its next use
+            broken = true;
+            throw new Exception("IO error during message send", ioException);
+        } finally {
+            sessionPool.release(pooled, startTime, broken);
         }
     }
 
@@ -374,4 +496,102 @@ public class SmppProviderEndpoint extends ProviderEndpoint implements SmppEndpoi
     public void setTransactionTimer(int transactionTimer) {
         this.transactionTimer = transactionTimer;
     }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the number of sessions bound to the server.
+     * The messages are distributed over all sessions.<br/>
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>1</b></i>
+     *
+     * @param poolSize a <code>int</code> value representing the number of sessions
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getMaxQueuedSubmissions() {
+        return maxQueuedSubmissions;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the number of messages waiting for a free slot
+     * in the window of a session. Further messages are rejected with an
+     * error.<br/>
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>1000</b></i>
+     *
+     * @param maxQueuedSubmissions a <code>int</code> value representing the number of queued messages
+     */
+    public void setMaxQueuedSubmissions(int maxQueuedSubmissions) {
+        this.maxQueuedSubmissions = maxQueuedSubmissions;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the number of submit requests a session may
+     * have outstanding before waiting for their responses. It should not
+     * exceed the window allowed by the SMSC.<br/>
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>10</b></i>
+     *
+     * @param windowSize a <code>int</code> value representing the window size
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMaxSubmitsPerSecond() {
+        return maxSubmitsPerSecond;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the maximum number of messages submitted per
+     * second over all sessions, matching the throughput allowed by the SMSC.
+     * A value of <b>0</b> disables the throttling.<br/>
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>0</b></i>
+     *
+     * @param maxSubmitsPerSecond a <code>int</code> value representing the
+     *                            allowed messages per second
+     */
+    public void setMaxSubmitsPerSecond(int maxSubmitsPerSecond) {
+        this.maxSubmitsPerSecond = maxSubmitsPerSecond;
+    }
+
+    public long getRebindInterval() {
+        return rebindInterval;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the minimum time between two attempts to bind
+     * a session which has been closed or lost its bind.<br/>
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>5000</b> milliseconds</i>
+     *
+     * @param rebindInterval a <code>long</code> value representing the rebind
+     *                       interval
+     */
+    public void setRebindInterval(long rebindInterval) {
+        this.rebindInterval = rebindInterval;
+    }
+
+    /**
+     * @return the session pool giving access to the window occupancy and
+     *         submit latency of each session, or null if not started
+     */
+    public SmppSessionPool getSessionPool() {
+        return sessionPool;
+    }
 }
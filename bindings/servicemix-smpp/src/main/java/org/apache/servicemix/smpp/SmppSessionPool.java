@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.smpp;
+
+import org.jsmpp.session.BindParameter;
+import org.jsmpp.session.SMPPSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of bound SMPP sessions. Every session allows a window of outstanding
+ * submit_sm requests, the responses are matched by jSMPP using the sequence
+ * number so several threads can submit on the same session at once. Sessions
+ * which are closed or lost their bind are bound again the next time they are
+ * used. Optionally the submissions over all sessions are throttled to the
+ * number of messages per second allowed by the SMSC.
+ *
+ * @author jbonofre
+ */
+public class SmppSessionPool {
+
+    private final Logger logger = LoggerFactory.getLogger(SmppSessionPool.class);
+
+    private final String host;
+    private final int port;
+    private final BindParameter bindParameter;
+    private final int enquireLinkTimer;
+    private final int transactionTimer;
+    private final int windowSize;
+    private final long rebindInterval;
+    private final List<PooledSession> sessions;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // throttling
+    private final long submitInterval;
+    private long nextSubmit;
+
+    /**
+     * creates a pool
+     *
+     * @param host             the SMSC host
+     * @param port             the SMSC port
+     * @param bindParameter    the bind parameters of the sessions
+     * @param enquireLinkTimer the enquire link timer of the sessions
+     * @param transactionTimer the transaction timer of the sessions
+     * @param poolSize         the number of sessions
+     * @param windowSize       the number of outstanding requests per session
+     * @param maxSubmitsPerSecond the maximum number of submissions per second, 0 for no limit
+     * @param rebindInterval   the minimum time in millis between two bind attempts of a session
+     */
+    public SmppSessionPool(String host, int port, BindParameter bindParameter, int enquireLinkTimer,
+                           int transactionTimer, int poolSize, int windowSize, int maxSubmitsPerSecond,
+                           long rebindInterval) {
+        this.host = host;
+        this.port = port;
+        this.bindParameter = bindParameter;
+        this.enquireLinkTimer = enquireLinkTimer;
+        this.transactionTimer = transactionTimer;
+        this.windowSize = windowSize;
+        this.rebindInterval = rebindInterval;
+        this.submitInterval = maxSubmitsPerSecond > 0 ? 1000000000L / maxSubmitsPerSecond : 0;
+        List<PooledSession> list = new ArrayList<PooledSession>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            list.add(new PooledSession(i));
+        }
+        this.sessions = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * binds all sessions of the pool. Sessions which fail to bind are bound
+     * again when they are used.
+     */
+    public void start() {
+        for (PooledSession session : sessions) {
+            try {
+                session.ensureBound(true);
+            } catch (IOException ioException) {
+                logger.error("Error connecting to the SMPP server", ioException);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * unbinds and closes all sessions of the pool
+     */
+    public void stop() {
+        for (PooledSession session : sessions) {
+            session.close();
+        }
+    }
+
+    /**
+     * acquires a slot in the window of a bound session, waiting for a free slot
+     * if all windows are full and for the throttle if submissions are limited.
+     * Every acquired session has to be given back using
+     * {@link #release(PooledSession, long, boolean)}.
+     *
+     * @return the session to submit on
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IOException          if the session could not be bound
+     */
+    public PooledSession acquire() throws InterruptedException, IOException {
+        int size = sessions.size();
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        PooledSession session = null;
+        // prefer a session with a free slot in its window
+        for (int i = 0; i < size && session == null; i++) {
+            PooledSession candidate = sessions.get((start + i) % size);
+            if (candidate.window.tryAcquire()) {
+                session = candidate;
+            }
+        }
+        if (session == null) {
+            session = sessions.get(start);
+            session.window.acquire();
+        }
+        try {
+            session.ensureBound(false);
+            throttle();
+        } catch (IOException ioException) {
+            session.window.release();
+            throw ioException;
+        } catch (InterruptedException interruptedException) {
+            session.window.release();
+            throw interruptedException;
+        }
+        return session;
+    }
+
+    /**
+     * gives back the window slot of a session
+     *
+     * @param session   the session
+     * @param startTime the time in millis the submission started
+     * @param broken    true if the submission failed with an IO error, the
+     *                  session is then closed and bound again when next used
+     */
+    public void release(PooledSession session, long startTime, boolean broken) {
+        long duration = System.currentTimeMillis() - startTime;
+        session.submitCount.incrementAndGet();
+        session.totalSubmitTime.addAndGet(duration);
+        long max = session.maxSubmitTime.get();
+        while (duration > max && !session.maxSubmitTime.compareAndSet(max, duration)) {
+            max = session.maxSubmitTime.get();
+        }
+        if (broken) {
+            session.close();
+        }
+        session.window.release();
+    }
+
+    /**
+     * waits until the next submission is allowed by the throttle
+     */
+    private void throttle() throws InterruptedException {
+        if (submitInterval <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextSubmit < now) {
+                nextSubmit = now;
+            }
+            wait = nextSubmit - now;
+            nextSubmit += submitInterval;
+        }
+        if (wait > 0) {
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        }
+    }
+
+    /**
+     * @return the sessions of the pool
+     */
+    public List<PooledSession> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return the number of outstanding requests over all sessions
+     */
+    public int getOutstanding() {
+        int outstanding = 0;
+        for (PooledSession session : sessions) {
+            outstanding += session.getOutstanding();
+        }
+        return outstanding;
+    }
+
+    /**
+     * @return the number of submissions over all sessions
+     */
+    public long getSubmitCount() {
+        long count = 0;
+        for (PooledSession session : sessions) {
+            count += session.getSubmitCount();
+        }
+        return count;
+    }
+
+    /**
+     * A session of the pool with its window and statistics.
+     */
+    public class PooledSession {
+
+        private final int index;
+        private final Semaphore window = new Semaphore(windowSize, true);
+        private final AtomicLong submitCount = new AtomicLong();
+        private final AtomicLong totalSubmitTime = new AtomicLong();
+        private final AtomicLong maxSubmitTime = new AtomicLong();
+        private final AtomicLong bindCount = new AtomicLong();
+        private volatile SMPPSession session;
+        private long lastBindAttempt;
+        // whether a thread is binding the session and the number of times it has been closed, guarded by this
+        private boolean binding;
+        private long closeCount;
+
+        PooledSession(int index) {
+            this.index = index;
+        }
+
+        /**
+         * binds the session if it is not bound. The bind is done without
+         * holding the lock of the session, threads needing the session in the
+         * meantime wait for the result of the bind.
+         */
+        void ensureBound(boolean force) throws IOException, InterruptedException {
+            long closed = 0;
+            long retryDelay = 0;
+            SMPPSession dead;
+            synchronized (this) {
+                while (binding) {
+                    wait();
+                }
+                if (isBound()) {
+                    return;
+                }
+                // the dead session is detached under the lock and unbound once the lock is released
+                dead = detach();
+                long now = System.currentTimeMillis();
+                if (!force && now - lastBindAttempt < rebindInterval) {
+                    retryDelay = rebindInterval - (now - lastBindAttempt);
+                } else {
+                    lastBindAttempt = now;
+                    binding = true;
+                    closed = closeCount;
+                }
+            }
+            if (dead != null) {
+                close(dead);
+            }
+            if (retryDelay > 0) {
+                throw new IOException("SMPP session " + index + " is not bound, retrying the bind in "
+                        + retryDelay + " ms");
+            }
+            SMPPSession newSession = null;
+            try {
+                newSession = new SMPPSession();
+                newSession.setEnquireLinkTimer(enquireLinkTimer);
+                newSession.setTransactionTimer(transactionTimer);
+                newSession.connectAndBind(host, port, bindParameter);
+                bindCount.incrementAndGet();
+                synchronized (this) {
+                    if (closed == closeCount) {
+                        logger.debug("SMPP session {} bound to {}:{}", new Object[] {index, host, port});
+                        session = newSession;
+                        newSession = null;
+                    }
+                }
+                if (newSession != null) {
+                    throw new IOException("SMPP session " + index + " has been closed while binding");
+                }
+            } finally {
+                if (newSession != null) {
+                    close(newSession);
+                }
+                synchronized (this) {
+                    binding = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        void close() {
+            SMPPSession old = detach();
+            if (old != null) {
+                close(old);
+            }
+        }
+
+        private synchronized SMPPSession detach() {
+            closeCount++;
+            SMPPSession old = session;
+            session = null;
+            return old;
+        }
+
+        private void close(SMPPSession old) {
+            try {
+                old.unbindAndClose();
+            } catch (RuntimeException e) {
+                logger.debug("Error closing the SMPP session " + index, e);
+            }
+        }
+
+        /**
+         * @return the bound jSMPP session
+         */
+        public SMPPSession getSession() throws IOException {
+            SMPPSession current = session;
+            if (current == null) {
+                throw new IOException("SMPP session " + index + " is closed");
+            }
+            return current;
+        }
+
+        /**
+         * @return the number of requests waiting for their response
+         */
+        public int getOutstanding() {
+            return windowSize - window.availablePermits();
+        }
+
+        /**
+         * @return the number of submissions done on this session
+         */
+        public long getSubmitCount() {
+            return submitCount.get();
+        }
+
+        /**
+         * @return the average time in millis between submission and response
+         */
+        public long getAverageSubmitTime() {
+            long count = submitCount.get();
+            return count > 0 ? totalSubmitTime.get() / count : 0;
+        }
+
+        /**
+         * @return the maximum time in millis between submission and response
+         */
+        public long getMaxSubmitTime() {
+            return maxSubmitTime.get();
+        }
+
+        /**
+         * @return the number of times the session has been bound
+         */
+        public long getBindCount() {
+            return bindCount.get();
+        }
+
+        public boolean isBound() {
+            SMPPSession current = session;
+            return current != null && current.getSessionState().isBound();
+        }
+    }
+}
@@ -48,6 +48,9 @@ public class SmppProviderEndpointTest extends TestCase {
         assertNull(this.endpoint.getPassword());
         assertEquals(50000, this.endpoint.getEnquireLinkTimer());
         assertEquals(100000, this.endpoint.getTransactionTimer());
+        assertEquals(1, this.endpoint.getPoolSize());
+        assertEquals(10, this.endpoint.getWindowSize());
+        assertEquals(0, this.endpoint.getMaxSubmitsPerSecond());
         assertNotNull(this.endpoint.getMarshaler());
     }
 
@@ -60,6 +63,9 @@ public class SmppProviderEndpointTest extends TestCase {
         this.endpoint.setEnquireLinkTimer(10000);
         this.endpoint.setTransactionTimer(20000);
         this.endpoint.setMarshaler(marshaler);
+        this.endpoint.setPoolSize(2);
+        this.endpoint.setWindowSize(20);
+        this.endpoint.setMaxSubmitsPerSecond(50);
 
         this.endpoint.validate();
 
@@ -69,6 +75,9 @@ public class SmppProviderEndpointTest extends TestCase {
         assertEquals("password", this.endpoint.getPassword());
         assertEquals(10000, this.endpoint.getEnquireLinkTimer());
         assertEquals(20000, this.endpoint.getTransactionTimer());
+        assertEquals(2, this.endpoint.getPoolSize());
+        assertEquals(20, this.endpoint.getWindowSize());
+        assertEquals(50, this.endpoint.getMaxSubmitsPerSecond());
         assertSame(marshaler, this.endpoint.getMarshaler());
     }
 
@@ -117,4 +126,43 @@ public class SmppProviderEndpointTest extends TestCase {
             // expected
         }
     }
+
+    public void testValidateInvalidPoolSize() throws DeploymentException {
+        this.endpoint.setHost("localhost");
+        this.endpoint.setSystemId("test");
+        this.endpoint.setPoolSize(0);
+
+        try {
+            this.endpoint.validate();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testValidateInvalidWindowSize() throws DeploymentException {
+        this.endpoint.setHost("localhost");
+        this.endpoint.setSystemId("test");
+        this.endpoint.setWindowSize(0);
+
+        try {
+            this.endpoint.validate();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testValidateInvalidMaxSubmitsPerSecond() throws DeploymentException {
+        this.endpoint.setHost("localhost");
+        this.endpoint.setSystemId("test");
+        this.endpoint.setMaxSubmitsPerSecond(-1);
+
+        try {
+            this.endpoint.validate();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
 }
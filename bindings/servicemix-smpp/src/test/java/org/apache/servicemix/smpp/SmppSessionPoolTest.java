@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.smpp;
+
+import junit.framework.TestCase;
+import org.jsmpp.bean.Alphabet;
+import org.jsmpp.bean.BindType;
+import org.jsmpp.bean.ESMClass;
+import org.jsmpp.bean.GeneralDataCoding;
+import org.jsmpp.bean.MessageClass;
+import org.jsmpp.bean.NumberingPlanIndicator;
+import org.jsmpp.bean.RegisteredDelivery;
+import org.jsmpp.bean.SMSCDeliveryReceipt;
+import org.jsmpp.bean.TypeOfNumber;
+import org.jsmpp.session.BindParameter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JUnit test class for <code>org.apache.servicemix.smpp.SmppSessionPool</code>
+ * against a stub SMSC
+ */
+public class SmppSessionPoolTest extends TestCase {
+
+    private StubSmsc smsc;
+    private SmppSessionPool pool;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.smsc = new StubSmsc();
+        this.pool = new SmppSessionPool("localhost", this.smsc.getPort(),
+                new BindParameter(BindType.BIND_TX, "test", "secret", "cp", TypeOfNumber.UNKNOWN,
+                        NumberingPlanIndicator.UNKNOWN, null), 30000, 10000, 1, 2, 0, 1000);
+    }
+
+    protected void tearDown() throws Exception {
+        this.smsc.holdBinds.countDown();
+        this.pool.stop();
+        this.smsc.close();
+        super.tearDown();
+    }
+
+    public void testBindAndSubmit() throws Exception {
+        this.pool.start();
+        SmppSessionPool.PooledSession session = this.pool.acquire();
+        assertTrue(session.isBound());
+        assertEquals(1, session.getOutstanding());
+
+        String messageId = session.getSession().submitShortMessage("CMT", TypeOfNumber.UNKNOWN,
+                NumberingPlanIndicator.UNKNOWN, "1616", TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN,
+                "628176504657", new ESMClass(), (byte) 0, (byte) 1, null, null,
+                new RegisteredDelivery(SMSCDeliveryReceipt.DEFAULT), (byte) 0,
+                new GeneralDataCoding(false, false, MessageClass.CLASS1, Alphabet.ALPHA_DEFAULT), (byte) 0,
+                "hello".getBytes());
+        this.pool.release(session, System.currentTimeMillis(), false);
+
+        assertEquals("msg1", messageId);
+        assertEquals(1, this.smsc.submits.get());
+        assertEquals(1, this.pool.getSubmitCount());
+        assertEquals(0, this.pool.getOutstanding());
+        // the bound session is reused
+        this.pool.release(this.pool.acquire(), System.currentTimeMillis(), false);
+        assertEquals(1, session.getBindCount());
+        assertEquals(1, this.smsc.binds.get());
+    }
+
+    public void testCloseWhileBinding() throws Exception {
+        this.smsc.holdBinds = new CountDownLatch(1);
+        final SmppSessionPool.PooledSession session = this.pool.getSessions().get(0);
+        final Exception[] failure = new Exception[1];
+        Thread binder = new Thread() {
+            public void run() {
+                try {
+                    pool.acquire();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        binder.start();
+        for (int i = 0; i < 100 && this.smsc.binds.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, this.smsc.binds.get());
+
+        // the pending bind doesn't hold the lock of the session
+        Thread closer = new Thread() {
+            public void run() {
+                session.close();
+            }
+        };
+        closer.start();
+        closer.join(5000);
+        assertFalse("close() waited for the bind", closer.isAlive());
+
+        this.smsc.holdBinds.countDown();
+        binder.join(5000);
+        assertFalse(binder.isAlive());
+        assertTrue(failure[0] instanceof IOException);
+        assertFalse(session.isBound());
+        assertEquals(0, session.getOutstanding());
+    }
+
+    /**
+     * answers bind, submit_sm, enquire_link and unbind requests
+     */
+    private static class StubSmsc extends Thread {
+
+        private static final int BIND_RECEIVER = 0x00000001;
+        private static final int BIND_TRANSMITTER = 0x00000002;
+        private static final int SUBMIT_SM = 0x00000004;
+        private static final int BIND_TRANSCEIVER = 0x00000009;
+        private static final int UNBIND = 0x00000006;
+        private static final int RESPONSE = 0x80000000;
+
+        private final ServerSocket server;
+        private final AtomicInteger binds = new AtomicInteger();
+        private final AtomicInteger submits = new AtomicInteger();
+        private volatile CountDownLatch holdBinds = new CountDownLatch(0);
+
+        StubSmsc() throws IOException {
+            this.server = new ServerSocket(0);
+            setDaemon(true);
+            start();
+        }
+
+        int getPort() {
+            return this.server.getLocalPort();
+        }
+
+        void close() throws IOException {
+            this.server.close();
+        }
+
+        public void run() {
+            while (!this.server.isClosed()) {
+                try {
+                    final Socket socket = this.server.accept();
+                    Thread connection = new Thread() {
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                while (true) {
+                    int length = in.readInt();
+                    int command = in.readInt();
+                    in.readInt();
+                    int sequence = in.readInt();
+                    in.readFully(new byte[length - 16]);
+                    String body = null;
+                    if (command == SUBMIT_SM) {
+                        body = "msg" + this.submits.incrementAndGet();
+                    } else if (command == BIND_RECEIVER || command == BIND_TRANSMITTER
+                            || command == BIND_TRANSCEIVER) {
+                        this.binds.incrementAndGet();
+                        this.holdBinds.await(10, TimeUnit.SECONDS);
+                        body = "stub";
+                    }
+                    byte[] bytes = body != null ? (body + "\0").getBytes("US-ASCII") : new byte[0];
+                    out.writeInt(16 + bytes.length);
+                    out.writeInt(command | RESPONSE);
+                    out.writeInt(0);
+                    out.writeInt(sequence);
+                    out.write(bytes);
+                    out.flush();
+                    if (command == UNBIND) {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                // the connection has been closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
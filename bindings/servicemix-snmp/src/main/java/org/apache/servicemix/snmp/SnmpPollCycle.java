@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.snmp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * polls a set of snmp targets once. Each target is queried with a GET for the
+ * plain OIDs and walks the subtree OIDs with GETBULK (GETNEXT for snmp
+ * version 1). All targets are polled in parallel over the same snmp session,
+ * the number of targets with an outstanding request is bounded by the given
+ * semaphore, the targets without a permit are polled as soon as the poll of
+ * another target finishes. The results are handed to the result handler in
+ * batches.
+ * 
+ * @author lhein
+ */
+public class SnmpPollCycle {
+
+    private final Logger logger = LoggerFactory.getLogger(SnmpPollCycle.class);
+
+    private final Snmp snmp;
+    private final List<OID> oids;
+    private final List<OID> walkOids;
+    private final int maxRepetitions;
+    private final Semaphore outstanding;
+    private final int batchSize;
+    private final ResultHandler handler;
+
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final Queue<Target> waiting = new ConcurrentLinkedQueue<Target>();
+    private List<Result> batch = new ArrayList<Result>();
+
+    /**
+     * creates a poll cycle
+     * 
+     * @param snmp the snmp session used to send the requests
+     * @param oids the OIDs requested with a GET
+     * @param walkOids the OIDs of the subtrees to walk
+     * @param maxRepetitions the max repetitions of the GETBULK requests
+     * @param outstanding the permits for targets with an outstanding request
+     * @param batchSize the number of target results handled at once, 0 for all
+     * @param handler the handler of the results
+     */
+    public SnmpPollCycle(Snmp snmp, List<OID> oids, List<OID> walkOids, int maxRepetitions, Semaphore outstanding,
+                         int batchSize, ResultHandler handler) {
+        this.snmp = snmp;
+        this.oids = oids;
+        this.walkOids = walkOids;
+        this.maxRepetitions = maxRepetitions;
+        this.outstanding = outstanding;
+        this.batchSize = batchSize;
+        this.handler = handler;
+    }
+
+    /**
+     * polls the targets. The method never waits for a permit: the targets
+     * without one are polled when the poll of another target finishes, and
+     * the whole cycle is skipped if the previous cycles still hold all the
+     * permits. The results are handled asynchronously.
+     * 
+     * @param targets the targets to poll
+     * @return false if the cycle has been skipped
+     */
+    public boolean poll(List<? extends Target> targets) {
+        if (targets.isEmpty()) {
+            return true;
+        }
+        if (!outstanding.tryAcquire()) {
+            return false;
+        }
+        remaining.set(targets.size());
+        waiting.addAll(targets.subList(1, targets.size()));
+        new TargetPoll(targets.get(0)).start();
+        pollWaiting();
+        return true;
+    }
+
+    /**
+     * starts the polls of the waiting targets while there are permits left
+     */
+    private void pollWaiting() {
+        while (!waiting.isEmpty() && outstanding.tryAcquire()) {
+            Target target = waiting.poll();
+            if (target == null) {
+                outstanding.release();
+            } else {
+                new TargetPoll(target).start();
+            }
+        }
+    }
+
+    /**
+     * collects the result of a target and hands the batch to the handler when
+     * it is full or all targets are done
+     */
+    private void complete(Result result) {
+        List<Result> toHandle = null;
+        synchronized (this) {
+            if (result != null) {
+                batch.add(result);
+            }
+            boolean last = remaining.decrementAndGet() == 0;
+            if (!batch.isEmpty() && (last || (batchSize > 0 && batch.size() >= batchSize))) {
+                toHandle = batch;
+                batch = new ArrayList<Result>();
+            }
+        }
+        if (toHandle != null) {
+            try {
+                handler.onResults(toHandle);
+            } catch (Exception ex) {
+                logger.error("Error while handling the snmp poll results", ex);
+            }
+        }
+    }
+
+    /**
+     * the requests to a single target, only one request is outstanding at a time
+     */
+    private class TargetPoll implements ResponseListener {
+
+        private final Target target;
+        private final Iterator<OID> walks = walkOids.iterator();
+        private final PDU response = new PDU();
+        private PDU request;
+        private OID walkRoot;
+        private OID walkFrom;
+        private boolean finished;
+
+        TargetPoll(Target target) {
+            this.target = target;
+            this.response.setType(PDU.RESPONSE);
+        }
+
+        void start() {
+            if (!oids.isEmpty()) {
+                PDU pdu = new PDU();
+                pdu.setType(PDU.GET);
+                for (OID oid : oids) {
+                    pdu.add(new VariableBinding(oid));
+                }
+                request = pdu;
+                send(pdu);
+            } else {
+                nextWalk();
+            }
+        }
+
+        private void nextWalk() {
+            if (walks.hasNext()) {
+                walkRoot = walks.next();
+                walk(walkRoot);
+            } else {
+                finish(true);
+            }
+        }
+
+        private void walk(OID from) {
+            walkFrom = from;
+            PDU pdu = new PDU();
+            if (target.getVersion() == SnmpConstants.version1) {
+                pdu.setType(PDU.GETNEXT);
+            } else {
+                pdu.setType(PDU.GETBULK);
+                pdu.setMaxRepetitions(maxRepetitions);
+                pdu.setNonRepeaters(0);
+            }
+            pdu.add(new VariableBinding(from));
+            if (request == null) {
+                request = pdu;
+            }
+            send(pdu);
+        }
+
+        private void send(PDU pdu) {
+            try {
+                snmp.send(pdu, target, null, this);
+            } catch (IOException ex) {
+                logger.error("Unable to send the snmp request to " + target.getAddress(), ex);
+                finish(false);
+            }
+        }
+
+        public void onResponse(ResponseEvent event) {
+            // Always cancel async request when response has been received
+            // otherwise a memory leak is created!
+            ((Snmp)event.getSource()).cancel(event.getRequest(), this);
+
+            PDU pdu = event.getResponse();
+            if (pdu == null) {
+                // the request timed out
+                logger.debug("Received no snmp response from {}", target.getAddress());
+                finish(false);
+                return;
+            }
+
+            if (pdu.getErrorStatus() != PDU.noError) {
+                logger.debug("Received snmp error {} from {}", pdu.getErrorStatusText(), target.getAddress());
+                if (walkRoot == null) {
+                    // the error of the GET request is forwarded as received
+                    response.setErrorStatus(pdu.getErrorStatus());
+                    response.setErrorIndex(pdu.getErrorIndex());
+                    addAll(pdu.getVariableBindings());
+                } else if (pdu.getErrorStatus() != PDU.noSuchName && response.getErrorStatus() == PDU.noError) {
+                    // noSuchName is the end of the mib view for a snmp version 1 walk, other
+                    // errors end the walk too but are reported
+                    response.setErrorStatus(pdu.getErrorStatus());
+                }
+                nextWalk();
+                return;
+            }
+
+            if (walkRoot == null) {
+                // the response to the GET request
+                addAll(pdu.getVariableBindings());
+                nextWalk();
+                return;
+            }
+
+            // the response to a walk request
+            OID last = walkFrom;
+            for (Object o : pdu.getVariableBindings()) {
+                VariableBinding vb = (VariableBinding)o;
+                if (Null.isExceptionSyntax(vb.getVariable().getSyntax()) || !vb.getOid().startsWith(walkRoot)
+                    || vb.getOid().compareTo(last) <= 0) {
+                    // end of the subtree, or an agent returning OIDs out of order
+                    nextWalk();
+                    return;
+                }
+                response.add(vb);
+                last = vb.getOid();
+            }
+            if (last == walkFrom) {
+                nextWalk();
+            } else {
+                walk(last);
+            }
+        }
+
+        private void addAll(List<?> bindings) {
+            for (Object o : bindings) {
+                response.add((VariableBinding)o);
+            }
+        }
+
+        private synchronized void finish(boolean success) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            outstanding.release();
+            complete(success || response.size() > 0 ? new Result(target, request, response) : null);
+            pollWaiting();
+        }
+    }
+
+    /**
+     * the result of the poll of one target
+     */
+    public static class Result {
+
+        private final Target target;
+        private final PDU request;
+        private final PDU response;
+
+        public Result(Target target, PDU request, PDU response) {
+            this.target = target;
+            this.request = request;
+            this.response = response;
+        }
+
+        public Target getTarget() {
+            return this.target;
+        }
+
+        /**
+         * @return the first request sent to the target
+         */
+        public PDU getRequest() {
+            return this.request;
+        }
+
+        /**
+         * @return a response containing the variables returned by all requests
+         */
+        public PDU getResponse() {
+            return this.response;
+        }
+    }
+
+    /**
+     * handles the results of a poll cycle
+     */
+    public interface ResultHandler {
+
+        /**
+         * called with a batch of target results
+         * 
+         * @param results the results
+         * @throws Exception on errors
+         */
+        void onResults(List<Result> results) throws Exception;
+    }
+}
@@ -16,6 +16,11 @@
  */
 package org.apache.servicemix.snmp;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Semaphore;
+
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
@@ -24,27 +29,18 @@ import javax.jbi.messaging.NormalizedMessage;
 
 import org.apache.servicemix.common.endpoints.PollingEndpoint;
 import org.apache.servicemix.snmp.marshaler.DefaultSnmpMarshaler;
+import org.apache.servicemix.snmp.marshaler.SnmpBatchMarshalerSupport;
 import org.apache.servicemix.snmp.marshaler.SnmpMarshalerSupport;
 import org.apache.servicemix.snmp.util.OIDList;
+import org.apache.servicemix.snmp.util.SharedSnmp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.CommunityTarget;
 import org.snmp4j.PDU;
 import org.snmp4j.Snmp;
-import org.snmp4j.TransportMapping;
-import org.snmp4j.event.ResponseEvent;
-import org.snmp4j.event.ResponseListener;
-import org.snmp4j.mp.MPv3;
 import org.snmp4j.mp.SnmpConstants;
-import org.snmp4j.security.SecurityModels;
-import org.snmp4j.security.SecurityProtocols;
-import org.snmp4j.security.USM;
-import org.snmp4j.smi.Address;
 import org.snmp4j.smi.GenericAddress;
-import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
-import org.snmp4j.smi.VariableBinding;
-import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 /**
  * This is the polling endpoint for the snmp component.
@@ -52,7 +48,7 @@ import org.snmp4j.transport.DefaultUdpTransportMapping;
  * @org.apache.xbean.XBean element="poller"
  * @author lhein
  */
-public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpointType, ResponseListener {
+public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpointType, SnmpPollCycle.ResultHandler {
 
     private final Logger logger = LoggerFactory.getLogger(SnmpPollingEndpoint.class);
 
@@ -60,16 +56,20 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public static final int DEFAULT_SNMP_VERSION = SnmpConstants.version1;
     public static final int DEFAULT_SNMP_RETRIES = 2;
     public static final int DEFAULT_SNMP_TIMEOUT = 1500;
+    public static final int DEFAULT_MAX_REPETITIONS = 10;
+    public static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 64;
 
-    private Address targetAddress;
-    private TransportMapping transport;
     private Snmp snmp;
-    private USM usm;
-    private CommunityTarget target;
-    private PDU pdu;
+    private List<CommunityTarget> targets;
+    private Semaphore outstanding;
 
     private OIDList oids = new OIDList();
+    private OIDList walkOids = new OIDList();
     private String address;
+    private String addresses;
+    private int maxRepetitions = DEFAULT_MAX_REPETITIONS;
+    private int maxOutstandingRequests = DEFAULT_MAX_OUTSTANDING_REQUESTS;
+    private int batchSize = 1;
     private int retries = DEFAULT_SNMP_RETRIES;
     private int timeout = DEFAULT_SNMP_TIMEOUT;
     private int snmpVersion = DEFAULT_SNMP_VERSION;
@@ -85,22 +85,37 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public synchronized void activate() throws Exception {
         super.activate();
 
-        this.targetAddress = GenericAddress.parse(this.address);
-        this.transport = new DefaultUdpTransportMapping();
-        this.snmp = new Snmp(transport);
-        this.usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
-        SecurityModels.getInstance().addSecurityModel(usm);
-
-        // setting up target
-        target = new CommunityTarget();
-        target.setCommunity(new OctetString(this.snmpCommunity));
-        target.setAddress(targetAddress);
-        target.setRetries(this.retries);
-        target.setTimeout(this.timeout);
-        target.setVersion(this.snmpVersion);
+        // setting up targets
+        this.targets = new ArrayList<CommunityTarget>();
+        for (String targetAddress : getAllAddresses()) {
+            CommunityTarget target = new CommunityTarget();
+            target.setCommunity(new OctetString(this.snmpCommunity));
+            target.setAddress(GenericAddress.parse(targetAddress));
+            target.setRetries(this.retries);
+            target.setTimeout(this.timeout);
+            target.setVersion(this.snmpVersion);
+            this.targets.add(target);
+        }
+        this.outstanding = new Semaphore(this.maxOutstandingRequests);
+    }
 
-        // creating PDU
-        this.pdu = new PDU();
+    /**
+     * returns the address and all addresses of the addresses attribute
+     * 
+     * @return the list of device addresses
+     */
+    private List<String> getAllAddresses() {
+        List<String> all = new ArrayList<String>();
+        if (this.address != null) {
+            all.add(this.address.trim());
+        }
+        if (this.addresses != null) {
+            StringTokenizer strTok = new StringTokenizer(this.addresses, ", \t\r\n");
+            while (strTok.hasMoreTokens()) {
+                all.add(strTok.nextToken());
+            }
+        }
+        return all;
     }
 
     /*
@@ -111,8 +126,8 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public synchronized void start() throws Exception {
         super.start();
 
-        // again listen to the transport
-        this.transport.listen();
+        // use the snmp session shared by all pollers
+        this.snmp = SharedSnmp.acquire();
     }
 
     /*
@@ -121,9 +136,10 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
      */
     @Override
     public synchronized void stop() throws Exception {
-        // stop listening to the transport
-        if (this.transport.isListening()) {
-            this.transport.close();
+        // release the shared snmp session
+        if (this.snmp != null) {
+            this.snmp = null;
+            SharedSnmp.release();
         }
 
         super.stop();
@@ -138,21 +154,24 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
         super.validate();
 
         // check address not null
-        if (this.address == null) {
-            throw new DeploymentException("The address attribute has to be specified!");
+        List<String> allAddresses = getAllAddresses();
+        if (allAddresses.isEmpty()) {
+            throw new DeploymentException("The address or addresses attribute has to be specified!");
         }
 
-        // check if address is valid
-        try {
-            if (GenericAddress.parse(this.address) == null) {
-                throw new DeploymentException("The specified address " + address + " is not valid!");
+        // check if addresses are valid
+        for (String targetAddress : allAddresses) {
+            try {
+                if (GenericAddress.parse(targetAddress) == null) {
+                    throw new DeploymentException("The specified address " + targetAddress + " is not valid!");
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new DeploymentException("The specified address " + targetAddress + " is not valid!");
             }
-        } catch (IllegalArgumentException ex) {
-            throw new DeploymentException("The specified address " + address + " is not valid!");
         }
         
-        // finally check if the oid vector contains values
-        if (this.oids == null || this.oids.size()<=0) {
+        // finally check if the oid vectors contain values
+        if ((this.oids == null || this.oids.size()<=0) && (this.walkOids == null || this.walkOids.size()<=0)) {
             // the poller would be unemployed
             throw new DeploymentException("There are no OIDs defined to be polled. Check your oids attribute.");
         }
@@ -164,16 +183,14 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
      */
     @Override
     public void poll() throws Exception {
-        this.pdu.clear();
-        this.pdu.setType(PDU.GET);
-
-        // prepare the request items
-        for (OID oid : oids) {
-            this.pdu.add(new VariableBinding(oid));
+        // each poll uses its own requests, so overlapping polls don't interfere
+        SnmpPollCycle cycle = new SnmpPollCycle(snmp, oids != null ? oids : new OIDList(),
+                                                walkOids != null ? walkOids : new OIDList(), maxRepetitions,
+                                                outstanding, batchSize, this);
+        if (!cycle.poll(targets)) {
+            logger.warn("Skipping the snmp poll, all {} outstanding requests of the previous polls are still running",
+                        maxOutstandingRequests);
         }
-
-        // send the request
-        snmp.send(pdu, target, null, this);
     }
 
     /*
@@ -190,27 +207,35 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
 
     /*
      * (non-Javadoc)
-     * @see
-     * org.snmp4j.event.ResponseListener#onResponse(org.snmp4j.event.ResponseEvent
-     * )
+     * @see org.apache.servicemix.snmp.SnmpPollCycle.ResultHandler#onResults(java.util.List)
      */
-    public void onResponse(ResponseEvent event) {
-        // Always cancel async request when response has been received
-        // otherwise a memory leak is created! Not canceling a request
-        // immediately can be useful when sending a request to a broadcast
-        // address.
-        ((Snmp)event.getSource()).cancel(event.getRequest(), this);
-
-        // check for valid response
-        if (event.getRequest() == null || event.getResponse() == null) {
-            // ignore null requests/responses
-            logger.debug("Received invalid snmp event. Request: {} / Response: {}", event.getRequest(),
-                      event.getResponse());
-            return;
+    public void onResults(List<SnmpPollCycle.Result> results) {
+        if (batchSize == 1 || !(this.marshaler instanceof SnmpBatchMarshalerSupport)) {
+            // one message per device
+            for (SnmpPollCycle.Result result : results) {
+                sendSnmpDataMessage(result.getRequest(), result.getResponse());
+            }
+        } else {
+            sendSnmpBatchMessage(results);
         }
+    }
 
-        // now prepare the message and send it
-        sendSnmpDataMessage(event.getRequest(), event.getResponse());
+    /**
+     * sends the results of several devices in one message to the bus
+     * 
+     * @param results the poll results
+     */
+    private void sendSnmpBatchMessage(List<SnmpPollCycle.Result> results) {
+        try {
+            InOnly io = getExchangeFactory().createInOnlyExchange();
+            configureExchangeTarget(io);
+            NormalizedMessage inMsg = io.createMessage();
+            ((SnmpBatchMarshalerSupport)this.marshaler).convertToJBI(io, inMsg, results);
+            io.setInMessage(inMsg);
+            getChannel().send(io);
+        } catch (MessagingException ex) {
+            logger.error("Error while trying to send the snmp results to the jbi bus", ex);
+        }
     }
 
     /**
@@ -387,4 +412,90 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public void setOids(OIDList oids) {
         this.oids = oids;
     }
+
+    public OIDList getWalkOids() {
+        return this.walkOids;
+    }
+
+    /**
+     * <p>Specifies a reference to a list of OID values of subtrees which will be
+     * walked, for instance tables. The subtrees are retrieved with GETBULK 
+     * requests, or GETNEXT requests for snmp version 1. The values are 
+     * specified the same way as for the <code>oids</code> attribute.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>null</b></i><br/><br/>
+     * 
+     * @param walkOids 
+     * 				a <code>OIDList</code> containing the OID values of the subtrees
+     */
+    public void setWalkOids(OIDList walkOids) {
+        this.walkOids = walkOids;
+    }
+
+    public String getAddresses() {
+        return this.addresses;
+    }
+
+    /**
+     * <p>Specifies the connection URIs of several snmp capable devices polled
+     * by this endpoint, separated by commas or whitespaces. The format of each
+     * URI is the same as for the <code>address</code> attribute. All devices 
+     * are polled over a single udp transport shared by all pollers.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>null</b></i><br/><br/>
+     * 
+     * @param addresses 
+     * 				a <code>String</code> value containing the connection details
+     */
+    public void setAddresses(String addresses) {
+        this.addresses = addresses;
+    }
+
+    public int getMaxRepetitions() {
+        return this.maxRepetitions;
+    }
+
+    /**
+     * <p>Specifies the number of variables requested by each GETBULK request
+     * while walking a subtree.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>10</b></i><br/><br/>
+     * 
+     * @param maxRepetitions 
+     * 				a <code>int</code> value containing the max repetitions
+     */
+    public void setMaxRepetitions(int maxRepetitions) {
+        this.maxRepetitions = maxRepetitions;
+    }
+
+    public int getMaxOutstandingRequests() {
+        return this.maxOutstandingRequests;
+    }
+
+    /**
+     * <p>Specifies the number of devices polled at the same time. Each device 
+     * has at most one outstanding request.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>64</b></i><br/><br/>
+     * 
+     * @param maxOutstandingRequests 
+     * 				a <code>int</code> value containing the number of outstanding requests
+     */
+    public void setMaxOutstandingRequests(int maxOutstandingRequests) {
+        this.maxOutstandingRequests = maxOutstandingRequests;
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * <p>Specifies the number of device results sent in one message. With 
+     * <b>1</b> a message is sent per device, in the format used for a single
+     * device. With <b>0</b> a single message is sent per poll containing the
+     * results of all devices.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>1</b></i><br/><br/>
+     * 
+     * @param batchSize 
+     * 				a <code>int</code> value containing the number of devices per message
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
 }
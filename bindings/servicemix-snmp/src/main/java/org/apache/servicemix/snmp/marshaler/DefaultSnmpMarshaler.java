@@ -16,11 +16,14 @@
  */
 package org.apache.servicemix.snmp.marshaler;
 
+import java.util.List;
+
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 
 import org.apache.servicemix.jbi.jaxp.StringSource;
+import org.apache.servicemix.snmp.SnmpPollCycle;
 import org.snmp4j.PDU;
 import org.snmp4j.smi.VariableBinding;
 
@@ -29,14 +32,18 @@ import org.snmp4j.smi.VariableBinding;
  * 
  * @author lhein
  */
-public class DefaultSnmpMarshaler implements SnmpMarshalerSupport {
+public class DefaultSnmpMarshaler implements SnmpBatchMarshalerSupport {
 
     public static final String SNMP_TAG = "snmp";
+    public static final String RESULTS_TAG = "snmp-results";
+    public static final String ADDRESS_ATTRIBUTE = "address";
     public static final String ENTRY_TAG = "entry";
     public static final String OID_TAG = "oid";
     public static final String VALUE_TAG = "value";
     
     private static final String SNMP_TAG_OPEN  = '<' + SNMP_TAG + '>';
+    private static final String RESULTS_TAG_OPEN  = '<' + RESULTS_TAG + '>';
+    private static final String RESULTS_TAG_CLOSE = "</" + RESULTS_TAG + '>';
     private static final String SNMP_TAG_CLOSE = "</" + SNMP_TAG + '>';
     private static final String ENTRY_TAG_OPEN  = '<' + ENTRY_TAG + '>';
     private static final String ENTRY_TAG_CLOSE = "</" + ENTRY_TAG + '>';
@@ -57,6 +64,45 @@ public class DefaultSnmpMarshaler implements SnmpMarshalerSupport {
         sb.append(SNMP_TAG_OPEN);
                 
         // now loop all variables of the response
+        appendEntries(sb, response);
+        
+        // prepare the footer
+        sb.append(SNMP_TAG_CLOSE);
+        
+        // now put the buffer to the message content
+        inMsg.setContent(new StringSource(sb.toString()));
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.servicemix.snmp.marshaler.SnmpBatchMarshalerSupport#convertToJBI(javax.jbi.messaging.MessageExchange, javax.jbi.messaging.NormalizedMessage, java.util.List)
+     */
+    public void convertToJBI(MessageExchange exchange, NormalizedMessage inMsg, List<SnmpPollCycle.Result> results)
+        throws MessagingException {
+        // the output buffer
+        StringBuffer sb = new StringBuffer();
+        
+        sb.append(RESULTS_TAG_OPEN);
+        for (SnmpPollCycle.Result result : results) {
+            // one snmp element per device
+            sb.append('<').append(SNMP_TAG).append(' ').append(ADDRESS_ATTRIBUTE).append("=\"");
+            sb.append(result.getTarget().getAddress().toString());
+            sb.append("\">");
+            appendEntries(sb, result.getResponse());
+            sb.append(SNMP_TAG_CLOSE);
+        }
+        sb.append(RESULTS_TAG_CLOSE);
+        
+        // now put the buffer to the message content
+        inMsg.setContent(new StringSource(sb.toString()));
+    }
+
+    /**
+     * appends an entry for each variable of the response
+     * 
+     * @param sb        the output buffer
+     * @param response  the snmp response
+     */
+    private void appendEntries(StringBuffer sb, PDU response) {
         for (Object o : response.getVariableBindings()) {
             VariableBinding b = (VariableBinding)o;
 
@@ -69,11 +115,5 @@ public class DefaultSnmpMarshaler implements SnmpMarshalerSupport {
             sb.append(VALUE_TAG_CLOSE);
             sb.append(ENTRY_TAG_CLOSE);
         }
-        
-        // prepare the footer
-        sb.append(SNMP_TAG_CLOSE);
-        
-        // now put the buffer to the message content
-        inMsg.setContent(new StringSource(sb.toString()));
     }
 }
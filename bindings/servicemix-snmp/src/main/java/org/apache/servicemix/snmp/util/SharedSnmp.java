@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.snmp.util;
+
+import java.io.IOException;
+
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityModels;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * holds a single snmp session on one udp transport which is shared by all 
+ * polling endpoints. The session is created by the first endpoint acquiring
+ * it and closed when the last one releases it.
+ * 
+ * @author lhein
+ */
+public final class SharedSnmp {
+
+    private static Snmp snmp;
+    private static int references;
+
+    private SharedSnmp() {
+    }
+
+    /**
+     * returns the shared snmp session, creating and starting it if needed
+     * 
+     * @return the shared snmp session
+     * @throws IOException on errors creating the transport
+     */
+    public static synchronized Snmp acquire() throws IOException {
+        if (snmp == null) {
+            Snmp session = new Snmp(new DefaultUdpTransportMapping());
+            USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+            SecurityModels.getInstance().addSecurityModel(usm);
+            session.listen();
+            snmp = session;
+        }
+        references++;
+        return snmp;
+    }
+
+    /**
+     * releases the shared snmp session, closing it if it isn't used anymore
+     * 
+     * @throws IOException on errors closing the transport
+     */
+    public static synchronized void release() throws IOException {
+        if (references > 0 && --references == 0) {
+            Snmp session = snmp;
+            snmp = null;
+            session.close();
+        }
+    }
+}
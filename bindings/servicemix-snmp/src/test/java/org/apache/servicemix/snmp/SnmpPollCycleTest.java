@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.snmp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * tests the poll cycle against an agent answering synchronously from a
+ * sorted mib
+ *
+ * @author lhein
+ */
+public class SnmpPollCycleTest extends TestCase {
+
+    private static final OID SYS_DESCR = new OID("1.3.6.1.2.1.1.1.0");
+    private static final OID IF_TABLE = new OID("1.3.6.1.2.1.2.2");
+
+    private final List<VariableBinding> mib = Arrays.asList(new VariableBinding[] {
+        new VariableBinding(SYS_DESCR, new OctetString("agent")),
+        new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2.1"), new OctetString("lo")),
+        new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2.2"), new OctetString("eth0")),
+        new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2.3"), new OctetString("eth1")),
+        new VariableBinding(new OID("1.3.6.1.2.1.4.1.0"), new OctetString("forwarding"))
+    });
+
+    private FakeAgent agent;
+    private Semaphore outstanding;
+    private List<List<SnmpPollCycle.Result>> batches;
+    private SnmpPollCycle.ResultHandler handler;
+
+    protected void setUp() throws Exception {
+        agent = new FakeAgent();
+        outstanding = new Semaphore(2);
+        batches = new ArrayList<List<SnmpPollCycle.Result>>();
+        handler = new SnmpPollCycle.ResultHandler() {
+            public void onResults(List<SnmpPollCycle.Result> results) {
+                batches.add(results);
+            }
+        };
+    }
+
+    protected void tearDown() throws Exception {
+        agent.close();
+    }
+
+    public void testGet() throws Exception {
+        poll(Collections.singletonList(SYS_DESCR), Collections.<OID>emptyList(), 0, target(SnmpConstants.version2c));
+
+        assertEquals(1, batches.size());
+        PDU response = batches.get(0).get(0).getResponse();
+        assertEquals(PDU.noError, response.getErrorStatus());
+        assertEquals(1, response.size());
+        assertEquals("agent", response.get(0).getVariable().toString());
+        assertEquals(2, outstanding.availablePermits());
+    }
+
+    public void testTimeoutIsFailure() throws Exception {
+        agent.timeout = true;
+        poll(Collections.singletonList(SYS_DESCR), Collections.<OID>emptyList(), 0, target(SnmpConstants.version2c));
+
+        assertTrue(batches.isEmpty());
+        assertEquals(2, outstanding.availablePermits());
+    }
+
+    public void testErrorStatusIsForwarded() throws Exception {
+        OID unknown = new OID("1.3.6.1.2.1.99.0");
+        poll(Collections.singletonList(unknown), Collections.<OID>emptyList(), 0, target(SnmpConstants.version1));
+
+        assertEquals(1, batches.size());
+        PDU response = batches.get(0).get(0).getResponse();
+        assertEquals(PDU.noSuchName, response.getErrorStatus());
+        assertEquals(1, response.getErrorIndex());
+        assertEquals(unknown, response.get(0).getOid());
+    }
+
+    public void testWalkVersion1() throws Exception {
+        poll(Collections.<OID>emptyList(), Collections.singletonList(IF_TABLE), 0, target(SnmpConstants.version1));
+
+        assertEquals(1, batches.size());
+        PDU response = batches.get(0).get(0).getResponse();
+        assertEquals(PDU.noError, response.getErrorStatus());
+        assertEquals(3, response.size());
+        assertEquals("eth1", response.get(2).getVariable().toString());
+        assertEquals(PDU.GETNEXT, batches.get(0).get(0).getRequest().getType());
+    }
+
+    public void testWalkToEndOfMibVersion1() throws Exception {
+        // the walk goes past the last variable, the agent answers with noSuchName
+        poll(Collections.<OID>emptyList(), Collections.singletonList(new OID("1.3.6.1.2.1.4")), 0,
+             target(SnmpConstants.version1));
+
+        assertEquals(1, batches.size());
+        PDU response = batches.get(0).get(0).getResponse();
+        assertEquals(PDU.noError, response.getErrorStatus());
+        assertEquals(1, response.size());
+    }
+
+    public void testBulkWalk() throws Exception {
+        poll(Collections.singletonList(SYS_DESCR), Collections.singletonList(IF_TABLE), 0,
+             target(SnmpConstants.version2c));
+
+        assertEquals(1, batches.size());
+        PDU response = batches.get(0).get(0).getResponse();
+        assertEquals(4, response.size());
+        assertEquals(PDU.GET, batches.get(0).get(0).getRequest().getType());
+        assertTrue(agent.types.contains(PDU.GETBULK));
+    }
+
+    public void testBulkWalkToEndOfMib() throws Exception {
+        poll(Collections.<OID>emptyList(), Collections.singletonList(new OID("1.3.6.1.2.1.4")), 0,
+             target(SnmpConstants.version2c));
+
+        assertEquals(1, batches.size());
+        PDU response = batches.get(0).get(0).getResponse();
+        assertEquals(PDU.noError, response.getErrorStatus());
+        assertEquals(1, response.size());
+    }
+
+    public void testBatches() throws Exception {
+        List<Target> targets = new ArrayList<Target>();
+        for (int i = 0; i < 3; i++) {
+            targets.add(target(SnmpConstants.version2c));
+        }
+        SnmpPollCycle cycle = new SnmpPollCycle(agent, Collections.singletonList(SYS_DESCR),
+                                                Collections.<OID>emptyList(), 2, outstanding, 2, handler);
+        cycle.poll(targets);
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+    }
+
+    public void testTargetsWaitForPermit() throws Exception {
+        agent.deferred = true;
+        List<Target> targets = new ArrayList<Target>();
+        for (int i = 0; i < 5; i++) {
+            targets.add(target(SnmpConstants.version2c));
+        }
+        SnmpPollCycle cycle = new SnmpPollCycle(agent, Collections.singletonList(SYS_DESCR),
+                                                Collections.<OID>emptyList(), 2, outstanding, 0, handler);
+        assertTrue(cycle.poll(targets));
+
+        // the poll returns without waiting, the other targets are polled once the first ones answer
+        assertEquals(2, agent.pending.size());
+        assertEquals(0, outstanding.availablePermits());
+        while (!agent.pending.isEmpty()) {
+            agent.answer();
+        }
+        assertEquals(5, agent.types.size());
+        assertEquals(1, batches.size());
+        assertEquals(5, batches.get(0).size());
+        assertEquals(2, outstanding.availablePermits());
+    }
+
+    public void testCycleSkippedWithoutPermit() throws Exception {
+        // a previous cycle still holds all the permits
+        outstanding.acquire(2);
+        SnmpPollCycle cycle = new SnmpPollCycle(agent, Collections.singletonList(SYS_DESCR),
+                                                Collections.<OID>emptyList(), 2, outstanding, 0, handler);
+        assertFalse(cycle.poll(Collections.singletonList(target(SnmpConstants.version2c))));
+
+        assertTrue(agent.types.isEmpty());
+        assertTrue(batches.isEmpty());
+        assertEquals(0, outstanding.availablePermits());
+    }
+
+    private void poll(List<OID> oids, List<OID> walkOids, int batchSize, Target target) throws Exception {
+        SnmpPollCycle cycle = new SnmpPollCycle(agent, oids, walkOids, 2, outstanding, batchSize, handler);
+        cycle.poll(Collections.singletonList(target));
+    }
+
+    private Target target(int version) {
+        CommunityTarget target = new CommunityTarget();
+        target.setCommunity(new OctetString("public"));
+        target.setAddress(GenericAddress.parse("udp:127.0.0.1/161"));
+        target.setVersion(version);
+        return target;
+    }
+
+    /**
+     * answers the requests synchronously instead of sending them
+     */
+    private class FakeAgent extends Snmp {
+
+        private boolean timeout;
+        private boolean deferred;
+        private final List<Integer> types = new ArrayList<Integer>();
+        private final List<ResponseEvent> pending = new ArrayList<ResponseEvent>();
+        private final List<ResponseListener> listeners = new ArrayList<ResponseListener>();
+
+        FakeAgent() throws IOException {
+            super(new DefaultUdpTransportMapping());
+        }
+
+        @Override
+        public void send(PDU pdu, Target target, Object userHandle, ResponseListener listener) {
+            types.add(pdu.getType());
+            PDU response = timeout ? null : respond(pdu, target.getVersion());
+            ResponseEvent event = new ResponseEvent(this, target.getAddress(), pdu, response, userHandle);
+            if (deferred) {
+                pending.add(event);
+                listeners.add(listener);
+            } else {
+                listener.onResponse(event);
+            }
+        }
+
+        /**
+         * answers the oldest deferred request
+         */
+        void answer() {
+            ResponseEvent event = pending.remove(0);
+            listeners.remove(0).onResponse(event);
+        }
+
+        @Override
+        public void cancel(PDU request, ResponseListener listener) {
+            // nothing outstanding
+        }
+
+        private PDU respond(PDU request, int version) {
+            PDU response = new PDU();
+            response.setType(PDU.RESPONSE);
+            OID from = request.get(0).getOid();
+            if (request.getType() == PDU.GET) {
+                for (int i = 0; i < request.size(); i++) {
+                    VariableBinding vb = find(request.get(i).getOid());
+                    if (vb == null) {
+                        return error(request, i);
+                    }
+                    response.add(vb);
+                }
+            } else {
+                int count = request.getType() == PDU.GETBULK ? request.getMaxRepetitions() : 1;
+                for (VariableBinding vb : mib) {
+                    if (response.size() < count && vb.getOid().compareTo(from) > 0) {
+                        response.add(vb);
+                    }
+                }
+                if (response.size() == 0) {
+                    // end of the mib, only reported as an error by snmp version 1 agents
+                    if (version == SnmpConstants.version1) {
+                        return error(request, 0);
+                    }
+                    response.add(new VariableBinding(from, Null.endOfMibView));
+                }
+            }
+            return response;
+        }
+
+        private PDU error(PDU request, int index) {
+            PDU response = new PDU(request);
+            response.setType(PDU.RESPONSE);
+            response.setErrorStatus(PDU.noSuchName);
+            response.setErrorIndex(index + 1);
+            return response;
+        }
+
+        private VariableBinding find(OID oid) {
+            for (VariableBinding vb : mib) {
+                if (vb.getOid().equals(oid)) {
+                    return vb;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -17,12 +17,24 @@
 package org.apache.servicemix.truezip;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.jbi.management.DeploymentException;
+import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
@@ -44,6 +56,11 @@ import de.schlichtherle.io.FileInputStream;
  * A polling endpoint which looks for a file or files in a directory and sends
  * the files into the JBI bus as messages, deleting the files by default when
  * they are processed.
+ * <p>
+ * With <code>streamArchives</code> enabled, zip archives are read once from
+ * start to end and their entries are sent asynchronously, with at most
+ * <code>maxInFlight</code> exchanges pending over all archives. The processed
+ * entries are deleted with a single update of the archive at the end.
  * 
  * @org.apache.xbean.XBean element="poller"
  * 
@@ -51,6 +68,9 @@ import de.schlichtherle.io.FileInputStream;
  */
 public class TrueZipPollerEndpoint extends PollingEndpoint implements TrueZipEndpointType {
 
+    // the size above which a streamed entry is read from the archive instead of being copied in memory
+    private static final int MAX_BUFFERED_ENTRY = 64 * 1024;
+
     private File file;
 
     private FileFilter filter;
@@ -65,6 +85,18 @@ public class TrueZipPollerEndpoint extends PollingEndpoint implements TrueZipEnd
 
     private LockManager lockManager;
 
+    private boolean streamArchives;
+
+    private int maxInFlight = 16;
+
+    private Semaphore inFlight;
+
+    // the streamed entries waiting for the status of their exchange, by exchange id
+    private final Map<String, StreamedEntry> pendingEntries = new ConcurrentHashMap<String, StreamedEntry>();
+
+    // the streamed archives waiting for a permit to send their next entry
+    private final Queue<ArchiveStream> waitingArchives = new ConcurrentLinkedQueue<ArchiveStream>();
+
     public TrueZipPollerEndpoint() {
     }
 
@@ -91,6 +123,10 @@ public class TrueZipPollerEndpoint extends PollingEndpoint implements TrueZipEnd
         if (lockManager == null) {
             lockManager = createLockManager();
         }
+        if (maxInFlight < 1) {
+            throw new DeploymentException("The maxInFlight property must be greater than 0");
+        }
+        inFlight = new Semaphore(maxInFlight);
     }
 
     protected LockManager createLockManager() {
@@ -173,6 +209,31 @@ public class TrueZipPollerEndpoint extends PollingEndpoint implements TrueZipEnd
         this.marshaler = marshaler;
     }
 
+    public boolean isStreamArchives() {
+        return streamArchives;
+    }
+
+    /**
+     * Sets whether zip archives are read sequentially in a single pass instead
+     * of opening each entry, and their processed entries deleted with a single
+     * update of the archive. Other archive types are always polled entry by entry.
+     */
+    public void setStreamArchives(boolean streamArchives) {
+        this.streamArchives = streamArchives;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of exchanges of streamed archive entries waiting
+     * for their completion, over all archives. Defaults to 16.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
 
@@ -183,6 +244,9 @@ public class TrueZipPollerEndpoint extends PollingEndpoint implements TrueZipEnd
     protected void pollFileOrDirectory(File fileOrDirectory, boolean processDir) {
         if (!fileOrDirectory.isDirectory()) {
             pollFile(fileOrDirectory); // process the file
+        } else if (processDir && isStreamArchives() && fileOrDirectory.isArchive()
+                   && fileOrDirectory.getEnclArchive() == null) {
+            pollArchive(fileOrDirectory); // stream the archive entries
         } else if (processDir) {
             logger.debug("Polling directory {}", fileOrDirectory);
             File[] files = (File[]) fileOrDirectory.listFiles(getFilter());
@@ -246,12 +310,344 @@ public class TrueZipPollerEndpoint extends PollingEndpoint implements TrueZipEnd
         in.close();
     }
 
+    protected void pollArchive(final File archive) {
+        logger.debug("Scheduling archive {} for streaming", archive);
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                String uri = file.toURI().relativize(archive.toURI()).toString();
+                Lock lock = lockManager.getLock(uri);
+                if (lock.tryLock()) {
+                    boolean streaming = false;
+                    try {
+                        streaming = processArchive(archive, uri, lock);
+                    } catch (Exception e) {
+                        logger.error("Failed to process archive: {}.", archive, e);
+                    } finally {
+                        if (!streaming) {
+                            unlock(uri, lock);
+                        }
+                    }
+                } else {
+                    // the lock is held by a stream still in progress, it is
+                    // removed once that stream is finished
+                    logger.debug("Unable to acquire lock on {}", archive);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts streaming the entries of a zip archive. The archive stays locked
+     * until the exchanges of all its entries are completed, the processed
+     * entries are then deleted with a single update of the archive.
+     * 
+     * @return true if the archive is streamed and the lock released once it is finished
+     */
+    protected boolean processArchive(File archive, String uri, Lock lock) throws Exception {
+        // write out the pending changes of this VM before reading the archive
+        File.umount(archive);
+        if (!isZip(archive)) {
+            // other archive formats are polled entry by entry
+            logger.debug("Polling archive {} entry by entry", archive);
+            File[] files = (File[]) archive.listFiles(getFilter());
+            for (int i = 0; i < files.length; i++) {
+                pollFileOrDirectory(files[i], isRecursive());
+            }
+            return false;
+        }
+        logger.debug("Streaming archive {}", archive);
+        new ArchiveStream(archive, uri, lock).run();
+        return true;
+    }
+
+    private void unlock(String uri, Lock lock) {
+        try {
+            lock.unlock();
+        } catch (Exception ex) {
+            // can't release the lock
+            logger.error("Unable to release lock on {}", uri, ex);
+        }
+        lockManager.removeLock(uri);
+    }
+
+    /**
+     * Takes a permit for an exchange of a streamed entry. Without permit the
+     * archive is queued and resumed once an exchange completes, the executor
+     * threads never wait for a permit.
+     */
+    private boolean acquirePermit(ArchiveStream stream) {
+        if (inFlight.tryAcquire()) {
+            return true;
+        }
+        waitingArchives.add(stream);
+        // a permit may have been released before the archive was queued
+        if (inFlight.tryAcquire()) {
+            if (waitingArchives.remove(stream)) {
+                return true;
+            }
+            // already resumed by a completed exchange
+            releasePermit();
+        }
+        return false;
+    }
+
+    private void releasePermit() {
+        inFlight.release();
+        ArchiveStream waiting = waitingArchives.poll();
+        if (waiting != null) {
+            getExecutor().execute(waiting);
+        }
+    }
+
+    /**
+     * Checks the signature of a zip file.
+     */
+    private boolean isZip(File archive) throws IOException {
+        if (!new java.io.File(archive.getPath()).isFile()) {
+            // not yet written
+            return false;
+        }
+        InputStream in = new java.io.FileInputStream(archive.getPath());
+        try {
+            return in.read() == 'P' && in.read() == 'K' && in.read() == 3 && in.read() == 4;
+        } finally {
+            in.close();
+        }
+    }
+
     public String getLocationURI() {
         return file.toURI().toString();
     }
 
     public void process(MessageExchange exchange) throws Exception {
-        // Do nothing. In our case, this method should never be called
-        // as we only send synchronous InOnly exchange
+        // Only the exchanges of streamed archive entries are sent asynchronously,
+        // the others are synchronous InOnly exchanges
+        StreamedEntry entry = pendingEntries.remove(exchange.getExchangeId());
+        if (entry != null) {
+            closeEntry(entry.content);
+            releasePermit();
+            boolean done = exchange.getStatus() == ExchangeStatus.DONE;
+            if (!done) {
+                logger.error("Failed to process entry {}.", entry.name, exchange.getError());
+            }
+            // the last completed entry finishes the archive
+            entry.archive.completed(entry.name, done);
+        }
+    }
+
+    public synchronized void stop() throws Exception {
+        super.stop();
+        // the archives waiting for a permit are not resumed anymore
+        for (ArchiveStream stream = waitingArchives.poll(); stream != null; stream = waitingArchives.poll()) {
+            stream.close();
+        }
+    }
+
+    /**
+     * A zip archive read in a single pass, whose entries are sent asynchronously.
+     * The reading is suspended when no permit is available, and resumed by
+     * the completion of an exchange.
+     */
+    private class ArchiveStream implements Runnable {
+
+        private final File archive;
+        private final String archiveName;
+        private final String uri;
+        private final Lock lock;
+        private final ZipInputStream zip;
+        private final List<String> processed = new ArrayList<String>();
+        // the exchanges of the sent entries, plus one until the archive has been read
+        private int pending = 1;
+        private boolean closed;
+
+        ArchiveStream(File archive, String uri, Lock lock) throws IOException {
+            this.archive = archive;
+            this.archiveName = archive.getCanonicalPath();
+            this.uri = uri;
+            this.lock = lock;
+            this.zip = new ZipInputStream(new BufferedInputStream(new java.io.FileInputStream(archive.getPath())));
+        }
+
+        public void run() {
+            try {
+                if (!sendEntries()) {
+                    // suspended until a permit is released
+                    return;
+                }
+            } catch (Exception e) {
+                logger.error("Failed to process archive: {}.", archive, e);
+            }
+            close();
+        }
+
+        /**
+         * Sends the next entries of the archive.
+         * 
+         * @return true once the whole archive has been read, false if suspended
+         */
+        private boolean sendEntries() throws Exception {
+            byte[] buffer = new byte[8192];
+            while (acquirePermit(this)) {
+                boolean sent = false;
+                InputStream content = null;
+                try {
+                    String entryName = nextEntry();
+                    if (entryName == null) {
+                        return true;
+                    }
+                    content = openEntry(entryName, buffer);
+                    InOnly exchange = getExchangeFactory().createInOnlyExchange();
+                    configureExchangeTarget(exchange);
+                    NormalizedMessage message = exchange.createMessage();
+                    exchange.setInMessage(message);
+                    marshaler.readMessage(exchange, message, content,
+                                          archiveName + java.io.File.separator + entryName);
+                    sending();
+                    pendingEntries.put(exchange.getExchangeId(), new StreamedEntry(this, entryName, content));
+                    try {
+                        send(exchange);
+                        sent = true;
+                    } finally {
+                        if (!sent) {
+                            pendingEntries.remove(exchange.getExchangeId());
+                            closeEntry(content);
+                            completed(entryName, false);
+                        }
+                    }
+                } finally {
+                    if (!sent) {
+                        closeEntry(content);
+                        releasePermit();
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Opens the content of the current entry. Small entries are copied in memory, so
+         * that the archive can be read on while their exchange is pending. Larger entries are
+         * read from the archive by the consumer instead, the rest of the entry is skipped by
+         * the next call to nextEntry().
+         */
+        private InputStream openEntry(String entryName, byte[] buffer) throws IOException {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            int read;
+            while ((read = zip.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+                if (content.size() > MAX_BUFFERED_ENTRY) {
+                    return new BufferedInputStream(new FileInputStream(new File(archive, entryName)));
+                }
+            }
+            return new ByteArrayInputStream(content.toByteArray());
+        }
+
+        /**
+         * Moves to the next entry to send.
+         * 
+         * @return the name of the entry or null at the end of the archive
+         */
+        private String nextEntry() throws IOException {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                if (entry.isDirectory() || (!isRecursive() && entryName.indexOf('/') >= 0)) {
+                    continue;
+                }
+                if (getFilter() != null && !getFilter().accept(new File(archive, entryName))) {
+                    continue;
+                }
+                return entryName;
+            }
+            return null;
+        }
+
+        /**
+         * Stops reading the archive, it is finished once the exchanges of the sent entries are completed.
+         */
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                zip.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close archive {}", archive, e);
+            }
+            completed(null, false);
+        }
+
+        synchronized void sending() {
+            pending++;
+        }
+
+        void completed(String entryName, boolean done) {
+            boolean last;
+            synchronized (this) {
+                if (done) {
+                    processed.add(entryName);
+                }
+                last = --pending == 0;
+            }
+            if (last) {
+                finish();
+            }
+        }
+
+        /**
+         * Deletes the processed entries and releases the archive.
+         */
+        private void finish() {
+            try {
+                if (isDeleteFile() && !processed.isEmpty()) {
+                    for (String entryName : processed) {
+                        File entryFile = new File(archive, entryName);
+                        if (!entryFile.delete()) {
+                            logger.error("Could not delete entry {} of archive {}", entryName, archive);
+                        }
+                    }
+                    // rewrite the archive once for all deleted entries
+                    File.umount(archive);
+                }
+                logger.debug("Streamed {} entries of archive {}", processed.size(), archive);
+            } catch (Exception e) {
+                logger.error("Failed to update archive: {}.", archive, e);
+            } finally {
+                unlock(uri, lock);
+            }
+        }
+    }
+
+    /**
+     * Closes the content of a streamed entry, an entry read from the archive
+     * would otherwise keep the archive from being updated.
+     */
+    private void closeEntry(InputStream content) {
+        if (content != null) {
+            try {
+                content.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close archive entry", e);
+            }
+        }
+    }
+
+    /**
+     * A streamed entry waiting for the status of its exchange.
+     */
+    private static class StreamedEntry {
+
+        private final ArchiveStream archive;
+        private final String name;
+        private final InputStream content;
+
+        StreamedEntry(ArchiveStream archive, String name, InputStream content) {
+            this.archive = archive;
+            this.name = name;
+            this.content = content;
+        }
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.truezip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+
+import org.apache.servicemix.MessageExchangeListener;
+import org.apache.servicemix.components.util.ComponentSupport;
+import org.apache.servicemix.tck.MessageList;
+import org.apache.servicemix.tck.Receiver;
+
+/**
+ * A receiver component keeping the received exchanges active until they are released.
+ */
+public class HoldingReceiverComponent extends ComponentSupport implements MessageExchangeListener, Receiver {
+
+    private final MessageList messageList = new MessageList();
+    private final List<MessageExchange> heldExchanges = new ArrayList<MessageExchange>();
+
+    public void onMessageExchange(MessageExchange exchange) throws MessagingException {
+        NormalizedMessage copyMessage = exchange.createMessage();
+        getMessageTransformer().transform(exchange, getInMessage(exchange), copyMessage);
+        messageList.addMessage(copyMessage);
+        synchronized (heldExchanges) {
+            heldExchanges.add(exchange);
+        }
+    }
+
+    public MessageList getMessageList() {
+        return messageList;
+    }
+
+    /**
+     * Completes the held exchanges.
+     */
+    public void releaseExchanges() throws MessagingException {
+        List<MessageExchange> exchanges;
+        synchronized (heldExchanges) {
+            exchanges = new ArrayList<MessageExchange>(heldExchanges);
+            heldExchanges.clear();
+        }
+        for (MessageExchange exchange : exchanges) {
+            done(exchange);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.truezip;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.servicemix.jbi.util.FileUtil;
+import org.apache.servicemix.tck.SpringTestSupport;
+import org.apache.xbean.spring.context.ClassPathXmlApplicationContext;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+
+/**
+ * Polls an archive whose streamed entries are held by the receiver.
+ */
+public class PollArchiveStreamLockTest extends SpringTestSupport {
+
+    private static final int NUMBER = 5;
+
+    protected void setUp() throws Exception {
+        File archive = new File("target/lockedFiles.zip");
+        FileUtil.deleteFile(archive);
+        archive.getParentFile().mkdirs();
+        // the whole archive is written before the poller starts
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            for (int i = 0; i < NUMBER; i++) {
+                zip.putNextEntry(new ZipEntry("test" + i + ".xml"));
+                zip.write("<hello>world</hello>".getBytes("UTF-8"));
+                zip.closeEntry();
+            }
+        } finally {
+            zip.close();
+        }
+        super.setUp();
+    }
+
+    public void testArchiveIsNotPolledAgainWhileStreamed() throws Exception {
+        HoldingReceiverComponent receiver = (HoldingReceiverComponent) getBean("receiver");
+        receiver.getMessageList().waitForMessagesToArrive(NUMBER);
+        assertEquals(NUMBER, receiver.getMessageList().getMessageCount());
+
+        // the next polls find the archive locked by the stream waiting for its exchanges
+        Thread.sleep(2000);
+        assertEquals(NUMBER, receiver.getMessageList().getMessageCount());
+
+        // once completed, the entries are deleted and not sent again
+        receiver.releaseExchanges();
+        Thread.sleep(2000);
+        assertEquals(NUMBER, receiver.getMessageList().getMessageCount());
+    }
+
+    protected AbstractXmlApplicationContext createBeanFactory() {
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(new String[] { "spring-polling-stream-lock.xml" }, false);
+        context.setValidating(false);
+        context.refresh();
+        return context;
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.truezip;
+
+import java.io.File;
+
+import org.apache.servicemix.jbi.util.FileUtil;
+import org.apache.servicemix.tck.Receiver;
+import org.apache.xbean.spring.context.ClassPathXmlApplicationContext;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+
+/**
+ * Polls the archive written by the sender with streamed archive entries.
+ */
+public class PollArchiveStreamTest extends PollDirectoryTest {
+
+    private static final int NUMBER = 10;
+
+    protected void setUp() throws Exception {
+        FileUtil.deleteFile(new File("target/streamedFiles.zip"));
+        super.setUp();
+    }
+
+    public void testStreamedEntriesAreDeleted() throws Exception {
+        testSendToWriterSoItCanBePolled();
+        // the entries are deleted once their exchanges are done, the next polls don't send them again
+        Thread.sleep(2000);
+        Receiver receiver = (Receiver) getBean("receiver");
+        assertEquals(NUMBER, receiver.getMessageList().getMessageCount());
+    }
+
+    protected AbstractXmlApplicationContext createBeanFactory() {
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(new String[] { "spring-polling-stream.xml" }, false);
+        context.setValidating(false);
+        context.refresh();
+        return context;
+    }
+
+}
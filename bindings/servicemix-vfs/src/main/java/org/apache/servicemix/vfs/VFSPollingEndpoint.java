@@ -18,11 +18,12 @@ package org.apache.servicemix.vfs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.Lock;
 
 import javax.jbi.JBIException;
@@ -69,7 +70,7 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
     private FileMarshaler marshaler = new DefaultFileMarshaler();
     private FileObject file;
     private FileSelector selector;
-    private Set<FileObject> workingSet = new CopyOnWriteArraySet<FileObject>();
+    private ConcurrentMap<String, FileObject> workingSet = new ConcurrentHashMap<String, FileObject>();
     private boolean deleteFile =true;
     private boolean recursive = true;
     private String path;
@@ -78,6 +79,9 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
     private LockManager lockManager;
     private ConcurrentMap<String, InputStream> openExchanges = new ConcurrentHashMap<String, InputStream>();
     private boolean concurrentExchange = true;
+    private boolean incremental;
+    private ConcurrentMap<String, String> previousScan = new ConcurrentHashMap<String, String>();
+    private ConcurrentMap<String, String> currentScan = new ConcurrentHashMap<String, String>();
     /**
      * default constructor
      */
@@ -114,6 +118,8 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
 
         // clear the set of already processed files
         this.workingSet.clear();
+        this.previousScan.clear();
+        this.currentScan.clear();
         
         // re-create the openExchanges map
         this.openExchanges = new ConcurrentHashMap<String, InputStream>();
@@ -182,6 +188,8 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
                                                "Received an exchange with status ERROR, but no exception was set");
                     }
                     logger.warn("Message in file {} could not be handled successfully.", aFile.getName().getPathDecoded(), e);
+                    // make sure the file is picked up again on the next scan
+                    forgetFile(getClaimKey(aFile));
                 } else {
                     // we should never get an ACTIVE exchange -- the File poller
                     // only sends InOnly exchanges
@@ -189,7 +197,7 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
                 }
             } finally {
                 // remove file from set of already processed files
-                workingSet.remove(aFile);
+                workingSet.remove(getClaimKey(aFile));
                 // remove the open exchange
                 openExchanges.remove(exchange.getExchangeId());
                 // unlock the file
@@ -209,8 +217,7 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
      */
     private void unlockAsyncFile(FileObject file) {
         // finally remove the file from the open exchanges list
-        String uri = file.getName().getURI().toString();
-        Lock lock = lockManager.getLock(uri);
+        Lock lock = lockManager.getLock(getClaimKey(file));
         if (lock != null) {
             try {
                 lock.unlock();
@@ -239,7 +246,14 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
         // SM-192: Force close the file, so that the cached informations are cleared
         if (file != null) {
             file.close();
-            pollFileOrDirectory(file);
+            if (incremental) {
+                // files not seen during this scan are dropped from the index
+                currentScan = new ConcurrentHashMap<String, String>();
+                pollFileOrDirectory(file);
+                previousScan = currentScan;
+            } else {
+                pollFileOrDirectory(file);
+            }
         }        
     }
     
@@ -306,24 +320,40 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
      * @throws Exception        on IO errors
      */
     protected void pollFile(final FileObject aFile) throws Exception {
+        final String uri = getClaimKey(aFile);
+        if (incremental) {
+            // skip files which did not change since the previous scan
+            String signature = getSignature(aFile);
+            if (signature != null) {
+                currentScan.put(uri, signature);
+                if (signature.equals(previousScan.get(uri))) {
+                    return;
+                }
+            }
+        }
+        // skip files which are already in process before doing any remote call
+        if (workingSet.containsKey(uri)) {
+            return;
+        }
         // check if file is fully available
         if (!isFullyAvailable(aFile)) {
+            forgetFile(uri);
             return;
         }
         // try to add to set of processed files
-        if (workingSet.add(aFile)) {
+        if (workingSet.putIfAbsent(uri, aFile) == null) {
             logger.debug("Scheduling file {} for processing.", aFile.getName().getPathDecoded());
             
             // execute processing in another thread
             getExecutor().execute(new ExecutorAwareRunnable() {
                 public void run() {
-                    String uri = aFile.getName().getURI().toString();
                     Lock lock = lockManager.getLock(uri);
                     if (lock.tryLock()) {
                         processFileNow(aFile);
                     } else {
-                    	workingSet.remove(aFile);
-                        logger.debug("Unable to acquire lock on {}", aFile.getName().getURI());
+                    	workingSet.remove(uri);
+                    	forgetFile(uri);
+                        logger.debug("Unable to acquire lock on {}", uri);
                     }
                 }
                 public boolean shouldRunSynchronously(){
@@ -346,7 +376,9 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
                 processFile(aFile);
             }
         } catch (Exception e) {
-        	workingSet.remove(aFile);
+        	String uri = getClaimKey(aFile);
+        	workingSet.remove(uri);
+        	forgetFile(uri);
         	unlockAsyncFile(aFile);
         	logger.error("Failed to process file: {}", aFile.getName().getURI(), e);
         }
@@ -390,13 +422,52 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
         }
     }
     
+    /**
+     * returns the key used to claim a file in the working set and in the
+     * lock manager
+     * 
+     * @param aFile     the file object
+     * @return          the normalized URI of the file
+     */
+    private String getClaimKey(FileObject aFile) {
+        return aFile.getName().getURI();
+    }
+
+    /**
+     * returns a signature identifying the current state of a file in
+     * incremental mode
+     * 
+     * @param aFile     the file object
+     * @return          the signature or null if it can't be determined
+     */
+    private String getSignature(FileObject aFile) {
+        try {
+            FileContent content = aFile.getContent();
+            return content.getLastModifiedTime() + ":" + content.getSize();
+        } catch (Exception ex) {
+            logger.debug("Unable to determine the state of file {}", aFile.getName().getPathDecoded(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * removes a file from the incremental scan index so that it is polled
+     * again on the next scan
+     * 
+     * @param uri       the claim key of the file
+     */
+    private void forgetFile(String uri) {
+        previousScan.remove(uri);
+        currentScan.remove(uri);
+    }
+
     /**
      * checks if a file is available 
      * 
      * @param aFile     the file to check
      * @return          true if available
      */
-    private boolean isFullyAvailable(FileObject aFile) {
+    protected boolean isFullyAvailable(FileObject aFile) {
         try {
             if (aFile.getContent() != null) {
                 long size_old = aFile.getContent().getSize();
@@ -539,12 +610,12 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
     }
 
     /**
-     * The set of FTPFiles that this component is currently working on
+     * The set of files that this component is currently working on
      *
-     * @return  a set of in-process file objects
+     * @return  a snapshot of the in-process file objects
      */
     public Set<FileObject> getWorkingSet() {
-        return workingSet;
+        return Collections.unmodifiableSet(new HashSet<FileObject>(workingSet.values()));
     }
     
     /** 
@@ -575,4 +646,21 @@ public class VFSPollingEndpoint extends PollingEndpoint implements VFSEndpointTy
 		this.concurrentExchange = concurrentExchange;
 	}
 
+    /**
+     * Specifies if only files which are new or changed since the previous
+     * scan should be polled. This is mostly useful with
+     * <code>deleteFile</code> set to <code>false</code>, where every file
+     * would otherwise be checked again on each poll. Default value is
+     * <code>false</code>.
+     * 
+     * @param incremental a boolean specifying if incremental polling is used
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
 }
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.vfs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.InOnly;
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessageExchangeFactory;
+import javax.jbi.messaging.MessagingException;
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.vfs.FileObject;
+import org.apache.commons.vfs.VFS;
+import org.apache.servicemix.common.locks.LockManager;
+import org.apache.servicemix.common.locks.impl.SimpleLockManager;
+import org.apache.servicemix.executors.Executor;
+import org.apache.servicemix.tck.mock.MockExchangeFactory;
+import org.apache.servicemix.util.FileUtil;
+
+/**
+ * Tests the claim index and the incremental scans of the VFS poller against
+ * a directory on the local file system.
+ */
+public class VFSPollingEndpointTest extends TestCase {
+
+    private static final File DATA = new File("target/test/vfs-data");
+
+    private final List<MessageExchange> exchanges = new LinkedList<MessageExchange>();
+    private LockManager lockManager;
+    private VFSPollingEndpoint endpoint;
+
+    @Override
+    protected void setUp() throws Exception {
+        FileUtil.deleteFile(DATA);
+        DATA.mkdirs();
+        exchanges.clear();
+        lockManager = new SimpleLockManager();
+        endpoint = new VFSPollingEndpoint() {
+            @Override
+            protected void send(MessageExchange me) throws MessagingException {
+                exchanges.add(me);
+            }
+
+            @Override
+            public Executor getExecutor() {
+                return new MockExecutor();
+            }
+
+            @Override
+            public MessageExchangeFactory getExchangeFactory() {
+                return new MockExchangeFactory() {
+                    @Override
+                    public InOnly createInOnlyExchange() throws MessagingException {
+                        return new MockExchangeFactory.MockInOnly() {
+                            private final String exchangeId = "id" + System.nanoTime();
+
+                            @Override
+                            public String getExchangeId() {
+                                return exchangeId;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+        endpoint.setTargetService(new QName("urn:test", "service"));
+        endpoint.setFileSystemManager(VFS.getManager());
+        endpoint.setLockManager(lockManager);
+        endpoint.setPath(DATA.getAbsoluteFile().toURI().toString());
+        endpoint.setDeleteFile(false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.deleteFile(DATA);
+        super.tearDown();
+    }
+
+    public void testClaimedFilesAreNotSentTwice() throws Exception {
+        createTestFile("a.xml", "<a/>");
+        createTestFile("b.xml", "<b/>");
+
+        endpoint.poll();
+        assertEquals(2, exchanges.size());
+        assertEquals(2, endpoint.getWorkingSet().size());
+
+        // the files are still in process, so the next scan must skip them
+        endpoint.poll();
+        assertEquals(2, exchanges.size());
+    }
+
+    public void testReleasedFileIsPolledAgain() throws Exception {
+        createTestFile("a.xml", "<a/>");
+
+        endpoint.poll();
+        assertEquals(1, exchanges.size());
+        done(exchanges.get(0));
+        assertTrue(endpoint.getWorkingSet().isEmpty());
+
+        // without incremental scans a file which is not deleted is sent again
+        endpoint.poll();
+        assertEquals(2, exchanges.size());
+    }
+
+    public void testIncrementalScanSkipsUnchangedFiles() throws Exception {
+        endpoint.setIncremental(true);
+        File file = createTestFile("a.xml", "<a/>");
+        createTestFile("b.xml", "<b/>");
+
+        endpoint.poll();
+        assertEquals(2, exchanges.size());
+        done(exchanges.get(0));
+        done(exchanges.get(1));
+
+        endpoint.poll();
+        assertEquals(2, exchanges.size());
+
+        // a changed file is picked up again
+        writeContent(file, "<a>changed</a>");
+        endpoint.poll();
+        assertEquals(3, exchanges.size());
+    }
+
+    public void testIncrementalScanRetriesFailedFiles() throws Exception {
+        endpoint.setIncremental(true);
+        createTestFile("a.xml", "<a/>");
+
+        endpoint.poll();
+        assertEquals(1, exchanges.size());
+        MessageExchange exchange = exchanges.get(0);
+        exchange.setStatus(ExchangeStatus.ERROR);
+        exchange.setError(new Exception("test"));
+        endpoint.process(exchange);
+
+        // the failed file is unchanged, but it must not be skipped
+        endpoint.poll();
+        assertEquals(2, exchanges.size());
+    }
+
+    public void testFileLockedElsewhereIsNotSent() throws Exception {
+        endpoint.setIncremental(true);
+        File file = createTestFile("a.xml", "<a/>");
+        String uri = VFS.getManager().resolveFile(file.getAbsolutePath()).getName().getURI();
+
+        // the poller and the lock manager share the claim key, so a lock held
+        // elsewhere on the file URI keeps the file from being sent
+        Lock lock = lockManager.getLock(uri);
+        lock.lock();
+        try {
+            endpoint.poll();
+            assertEquals(0, exchanges.size());
+            assertTrue(endpoint.getWorkingSet().isEmpty());
+        } finally {
+            lock.unlock();
+        }
+
+        // once released the file is picked up, even in incremental mode
+        endpoint.poll();
+        assertEquals(1, exchanges.size());
+        FileObject polled = (FileObject) exchanges.get(0).getMessage("in").getProperty(VFSComponent.VFS_PROPERTY);
+        assertEquals(uri, polled.getName().getURI());
+    }
+
+    private void done(MessageExchange exchange) throws Exception {
+        exchange.setStatus(ExchangeStatus.DONE);
+        endpoint.process(exchange);
+    }
+
+    private File createTestFile(String name, String content) throws IOException {
+        File file = new File(DATA, name);
+        writeContent(file, content);
+        return file;
+    }
+
+    private void writeContent(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class MockExecutor implements Executor {
+
+        public int capacity() {
+            return 0;
+        }
+
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        public void shutdown() {
+            // graciously do nothing
+        }
+
+        public int size() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.vfs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.vfs.FileObject;
+import org.apache.commons.vfs.VFS;
+import org.apache.servicemix.common.locks.impl.SimpleLockManager;
+import org.apache.servicemix.executors.Executor;
+import org.apache.servicemix.util.FileUtil;
+
+/**
+ * Measures the cost of re-scanning a local directory of 1k, 10k and 100k
+ * files once all of them have been claimed. The class name doesn't match the
+ * surefire includes, so it only runs on demand, e.g.
+ * <code>mvn test -Dtest=VFSPollingScanBenchmark</code>.
+ */
+public class VFSPollingScanBenchmark extends TestCase {
+
+    private static final File DATA = new File("target/test/vfs-benchmark");
+    private static final int[] SIZES = {1000, 10000, 100000};
+    private static final int SCANS = 5;
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.deleteFile(DATA);
+        super.tearDown();
+    }
+
+    public void testRescan() throws Exception {
+        for (int size : SIZES) {
+            File dir = createFiles(size);
+            long full = rescan(dir, size, false);
+            long incremental = rescan(dir, size, true);
+            System.out.println("VFS rescan of " + size + " files: " + full + " ms full, "
+                               + incremental + " ms incremental (average of " + SCANS + " scans)");
+            FileUtil.deleteFile(dir);
+        }
+    }
+
+    private long rescan(File dir, int size, boolean incremental) throws Exception {
+        final AtomicInteger processed = new AtomicInteger();
+        VFSPollingEndpoint endpoint = new VFSPollingEndpoint() {
+            @Override
+            public Executor getExecutor() {
+                return new MockExecutor();
+            }
+
+            @Override
+            protected boolean isFullyAvailable(FileObject aFile) {
+                // skip the settle delay, the files are written before the scan
+                return true;
+            }
+
+            @Override
+            protected void processFile(FileObject file) throws Exception {
+                // keep the file claimed, only the listing is measured
+                processed.incrementAndGet();
+            }
+        };
+        endpoint.setFileSystemManager(VFS.getManager());
+        endpoint.setLockManager(new SimpleLockManager());
+        endpoint.setPath(dir.getAbsoluteFile().toURI().toString());
+        endpoint.setDeleteFile(false);
+        endpoint.setIncremental(incremental);
+
+        // the first scan claims every file
+        endpoint.poll();
+        assertEquals(size, processed.get());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < SCANS; i++) {
+            endpoint.poll();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(size, processed.get());
+        return elapsed / SCANS;
+    }
+
+    private File createFiles(int size) throws IOException {
+        File dir = new File(DATA, String.valueOf(size));
+        dir.mkdirs();
+        for (int i = 0; i < size; i++) {
+            FileOutputStream out = new FileOutputStream(new File(dir, "file-" + i + ".xml"));
+            try {
+                out.write("<hello/>".getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        }
+        return dir;
+    }
+
+    private static class MockExecutor implements Executor {
+
+        public int capacity() {
+            return 0;
+        }
+
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        public void shutdown() {
+            // graciously do nothing
+        }
+
+        public int size() {
+            return 0;
+        }
+    }
+}
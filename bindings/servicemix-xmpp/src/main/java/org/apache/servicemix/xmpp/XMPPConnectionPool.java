@@ -0,0 +1,569 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.xmpp;
+
+import org.jivesoftware.smack.AccountManager;
+import org.jivesoftware.smack.Chat;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.muc.MultiUserChat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of XMPP connections shared by the sender endpoints. Endpoints using
+ * the same server, proxy, user and resource share one reference counted
+ * connection. The messages are queued and sent in batches by a thread of the
+ * connection, which reconnects with an increasing delay when the connection
+ * is lost. The chats and rooms are cached per connection.
+ *
+ * @author lhein
+ */
+public final class XMPPConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XMPPConnectionPool.class);
+
+    // the maximum number of messages sent at once
+    private static final int MAX_BATCH_SIZE = 50;
+    // the maximum number of queued messages per connection
+    private static final int MAX_QUEUED_MESSAGES = 1000;
+    // the reconnection delays
+    private static final long INITIAL_RECONNECT_DELAY = 1000;
+    private static final long MAX_RECONNECT_DELAY = 60000;
+    // the time a synchronous send waits for its message, a reconnection attempt included
+    private static final long SEND_TIMEOUT = 2 * MAX_RECONNECT_DELAY;
+    // the interval at which a sender waiting for space in the queue checks if the connection is closed
+    private static final long QUEUE_POLL_INTERVAL = 1000;
+
+    private static final Map<PoolKey, PooledConnection> CONNECTIONS = new HashMap<PoolKey, PooledConnection>();
+
+    /**
+     * hidden constructor
+     */
+    private XMPPConnectionPool() {
+    }
+
+    /**
+     * returns the shared connection for the given settings, connecting and
+     * logging in if the connection is not used by another endpoint yet
+     *
+     * @param key               the key identifying the connection, see {@link #getKey}
+     * @param connectionConfig  the connection configuration
+     * @param user              the user or null to login anonymously
+     * @param password          the password of the user
+     * @param resource          the resource or null
+     * @param login             flag if the connection logs in
+     * @param createAccount     flag if the account of the user should be created
+     * @return  the shared connection
+     * @throws XMPPException on errors connecting to the server
+     */
+    public static PooledConnection acquire(PoolKey key, ConnectionConfiguration connectionConfig,
+                                           String user, String password, String resource,
+                                           boolean login, boolean createAccount) throws XMPPException {
+        PooledConnection pooled;
+        synchronized (XMPPConnectionPool.class) {
+            pooled = CONNECTIONS.get(key);
+            if (pooled == null) {
+                pooled = new PooledConnection(key, connectionConfig, user, password, resource, login, createAccount);
+                pooled.start();
+                CONNECTIONS.put(key, pooled);
+            }
+            pooled.references++;
+        }
+        // connect outside of the pool lock, only the users of this connection wait for it
+        try {
+            pooled.connect();
+        } catch (XMPPException e) {
+            release(pooled);
+            throw e;
+        }
+        return pooled;
+    }
+
+    /**
+     * releases a shared connection, it's closed if no endpoint uses it anymore
+     *
+     * @param pooled    the connection
+     */
+    public static void release(PooledConnection pooled) {
+        synchronized (XMPPConnectionPool.class) {
+            if (--pooled.references > 0) {
+                return;
+            }
+            CONNECTIONS.remove(pooled.key);
+        }
+        pooled.close();
+    }
+
+    /**
+     * @return  the number of open shared connections
+     */
+    public static synchronized int getConnectionCount() {
+        return CONNECTIONS.size();
+    }
+
+    /**
+     * builds the key of a shared connection
+     *
+     * @param host      the server host
+     * @param port      the server port
+     * @param proxy     the proxy host and port or null
+     * @param user      the user
+     * @param password  the password
+     * @param resource  the resource
+     * @param login     the login flag
+     * @return  the key
+     */
+    public static PoolKey getKey(String host, int port, String proxy, String user, String password,
+                                 String resource, boolean login) {
+        return new PoolKey(host, port, proxy, user, password, resource, login);
+    }
+
+    /**
+     * the server and account a shared connection is made for, compared on the
+     * real credentials so that connections are never shared between accounts
+     */
+    public static final class PoolKey {
+
+        private final String host;
+        private final int port;
+        private final String proxy;
+        private final String user;
+        private final String password;
+        private final String resource;
+        private final boolean login;
+
+        private PoolKey(String host, int port, String proxy, String user, String password,
+                        String resource, boolean login) {
+            this.host = host;
+            this.port = port;
+            this.proxy = proxy;
+            this.user = user;
+            this.password = password;
+            this.resource = resource;
+            this.login = login;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) o;
+            return this.port == other.port && this.login == other.login && equal(this.host, other.host)
+                    && equal(this.proxy, other.proxy) && equal(this.user, other.user)
+                    && equal(this.password, other.password) && equal(this.resource, other.resource);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = this.port;
+            hash = 31 * hash + (this.host != null ? this.host.hashCode() : 0);
+            hash = 31 * hash + (this.proxy != null ? this.proxy.hashCode() : 0);
+            hash = 31 * hash + (this.user != null ? this.user.hashCode() : 0);
+            hash = 31 * hash + (this.resource != null ? this.resource.hashCode() : 0);
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            // never expose the password
+            return this.user + "/" + this.resource + "@" + this.host + ":" + this.port;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * the callback of a queued message
+     */
+    public interface SendCallback {
+
+        /**
+         * called when the message has been sent
+         */
+        void onSent();
+
+        /**
+         * called when the message could not be sent
+         *
+         * @param e the error
+         */
+        void onFailure(Exception e);
+    }
+
+    /**
+     * a message waiting to be sent
+     */
+    private static class PendingMessage {
+        private final Message message;
+        private final String participant;
+        private final String room;
+        private final String nickname;
+        private final SendCallback callback;
+        private final long queued = System.currentTimeMillis();
+        // set when the sender stopped waiting for the message
+        private volatile boolean cancelled;
+
+        PendingMessage(Message message, String participant, String room, String nickname, SendCallback callback) {
+            this.message = message;
+            this.participant = participant;
+            this.room = room;
+            this.nickname = nickname;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * A shared connection with its send queue and cached chats and rooms.
+     */
+    public static final class PooledConnection implements Runnable {
+
+        private final PoolKey key;
+        private final ConnectionConfiguration connectionConfig;
+        private final String user;
+        private final String password;
+        private final String resource;
+        private final boolean login;
+        private boolean createAccount;
+        private int references;
+
+        private final BlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<PendingMessage>(MAX_QUEUED_MESSAGES);
+        private final Map<String, Chat> chats = new ConcurrentHashMap<String, Chat>();
+        private final Map<String, MultiUserChat> rooms = new ConcurrentHashMap<String, MultiUserChat>();
+        private final AtomicLong sentCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private XMPPConnection connection;
+        private Thread sender;
+        private volatile boolean closed;
+        private long reconnectDelay;
+        private long nextConnectAttempt;
+
+        PooledConnection(PoolKey key, ConnectionConfiguration connectionConfig, String user, String password,
+                         String resource, boolean login, boolean createAccount) {
+            this.key = key;
+            this.connectionConfig = connectionConfig;
+            this.user = user;
+            this.password = password;
+            this.resource = resource;
+            this.login = login;
+            this.createAccount = createAccount;
+        }
+
+        void start() {
+            this.sender = new Thread(this, "xmpp-sender-" + this.connectionConfig.getHost() + "-" + this.user);
+            this.sender.setDaemon(true);
+            this.sender.start();
+        }
+
+        /**
+         * queues a message for a participant or a room
+         *
+         * @param message       the message
+         * @param participant   the participant or null
+         * @param room          the room or null
+         * @param nickname      the nickname used to join the room
+         * @param callback      the callback notified when the message has been sent
+         * @throws InterruptedException if interrupted while waiting for space in the queue
+         */
+        public void send(Message message, String participant, String room, String nickname,
+                         SendCallback callback) throws InterruptedException {
+            enqueue(new PendingMessage(message, participant, room, nickname, callback));
+        }
+
+        private void enqueue(PendingMessage pending) throws InterruptedException {
+            while (!this.closed) {
+                if (this.queue.offer(pending, QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    // the sender thread drains the queue once more after being closed, a message
+                    // queued after this last drain is failed here
+                    if (this.closed && this.queue.remove(pending)) {
+                        break;
+                    }
+                    return;
+                }
+            }
+            pending.callback.onFailure(new XMPPException("The XMPP connection is closed"));
+        }
+
+        /**
+         * sends a message and waits until it has been sent
+         *
+         * @param message       the message
+         * @param participant   the participant or null
+         * @param room          the room or null
+         * @param nickname      the nickname used to join the room
+         * @throws Exception on errors sending the message
+         */
+        public void sendAndWait(Message message, String participant, String room, String nickname) throws Exception {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final Exception[] error = new Exception[1];
+            PendingMessage pending = new PendingMessage(message, participant, room, nickname, new SendCallback() {
+                public void onSent() {
+                    latch.countDown();
+                }
+
+                public void onFailure(Exception e) {
+                    error[0] = e;
+                    latch.countDown();
+                }
+            });
+            enqueue(pending);
+            if (!latch.await(SEND_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                // don't send the message later if it is still waiting
+                pending.cancelled = true;
+                this.queue.remove(pending);
+                throw new XMPPException("The message has not been sent within " + SEND_TIMEOUT + " ms");
+            }
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            // the batch keeps the messages not sent yet for the next connection attempt
+            List<PendingMessage> batch = new ArrayList<PendingMessage>(MAX_BATCH_SIZE);
+            while (!this.closed) {
+                try {
+                    if (batch.isEmpty()) {
+                        batch.add(this.queue.take());
+                    }
+                    this.queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                    sendBatch(batch);
+                } catch (InterruptedException e) {
+                    // closed while waiting, the batch is failed below
+                }
+            }
+            // fail the messages still waiting
+            this.queue.drainTo(batch);
+            for (PendingMessage pending : batch) {
+                pending.callback.onFailure(new XMPPException("The XMPP connection has been closed"));
+            }
+        }
+
+        /**
+         * sends a batch of messages. The messages are removed from the batch
+         * once sent or failed, they are kept for the next attempt when the
+         * connection can't be established unless they waited for too long.
+         */
+        private void sendBatch(List<PendingMessage> batch) throws InterruptedException {
+            long delay;
+            synchronized (this) {
+                delay = this.nextConnectAttempt - System.currentTimeMillis();
+            }
+            if (delay > 0 && !isConnected()) {
+                // wait for the next reconnection attempt
+                Thread.sleep(delay);
+            }
+            try {
+                connect();
+            } catch (Exception e) {
+                LOGGER.warn("Unable to connect to the XMPP server " + this.connectionConfig.getHost()
+                        + ", retrying in " + this.reconnectDelay + " ms", e);
+                long now = System.currentTimeMillis();
+                for (Iterator<PendingMessage> it = batch.iterator(); it.hasNext();) {
+                    PendingMessage pending = it.next();
+                    if (pending.cancelled) {
+                        it.remove();
+                    } else if (now - pending.queued >= SEND_TIMEOUT) {
+                        it.remove();
+                        this.failedCount.incrementAndGet();
+                        pending.callback.onFailure(e);
+                    }
+                }
+                return;
+            }
+            for (PendingMessage pending : batch) {
+                if (pending.cancelled) {
+                    continue;
+                }
+                try {
+                    sendMessage(pending);
+                    this.sentCount.incrementAndGet();
+                    pending.callback.onSent();
+                } catch (Exception e) {
+                    this.failedCount.incrementAndGet();
+                    pending.callback.onFailure(e);
+                }
+            }
+            batch.clear();
+        }
+
+        private synchronized boolean isConnected() {
+            return this.connection != null && this.connection.isConnected()
+                    && (!this.login || this.connection.isAuthenticated());
+        }
+
+        /**
+         * connects and logs in if the connection is not established
+         */
+        synchronized void connect() throws XMPPException {
+            if (isConnected()) {
+                return;
+            }
+            if (this.connection != null) {
+                // the connection has been lost, start a new one
+                LOGGER.debug("Reconnecting to server {}", this.connectionConfig.getHost());
+                disconnect();
+            }
+            try {
+                XMPPConnection newConnection = new XMPPConnection(this.connectionConfig);
+                LOGGER.debug("Connecting to server {}", this.connectionConfig.getHost());
+                newConnection.connect();
+                this.connection = newConnection;
+                if (this.login && !newConnection.isAuthenticated()) {
+                    if (this.user != null) {
+                        LOGGER.debug("Logging into Jabber as user: {} on connection: {}", this.user, newConnection);
+                        if (this.password == null) {
+                            LOGGER.warn("No password configured for user: {}", this.user);
+                        }
+
+                        if (this.createAccount) {
+                            AccountManager accountManager = new AccountManager(newConnection);
+                            accountManager.createAccount(this.user, this.password);
+                            // the account exists from now on
+                            this.createAccount = false;
+                        }
+                        if (this.resource != null) {
+                            newConnection.login(this.user, this.password, this.resource);
+                        } else {
+                            newConnection.login(this.user, this.password);
+                        }
+                    } else {
+                        LOGGER.debug("Logging in anonymously to Jabber on connection: {}", newConnection);
+                        newConnection.loginAnonymously();
+                    }
+                    // now lets send a presence we are available
+                    newConnection.sendPacket(new Presence(Presence.Type.available));
+                }
+                this.reconnectDelay = 0;
+                this.nextConnectAttempt = 0;
+            } catch (XMPPException e) {
+                this.reconnectDelay = this.reconnectDelay == 0 ? INITIAL_RECONNECT_DELAY
+                        : Math.min(this.reconnectDelay * 2, MAX_RECONNECT_DELAY);
+                this.nextConnectAttempt = System.currentTimeMillis() + this.reconnectDelay;
+                throw e;
+            }
+        }
+
+        private synchronized void sendMessage(PendingMessage pending) throws XMPPException {
+            if (pending.participant != null) {
+                // single chat message
+                Chat chat = this.chats.get(pending.participant);
+                if (chat == null) {
+                    chat = this.connection.getChatManager().createChat(pending.participant, null);
+                    this.chats.put(pending.participant, chat);
+                }
+                chat.sendMessage(pending.message);
+            } else {
+                // chat room message
+                MultiUserChat chatRoom = this.rooms.get(pending.room);
+                if (chatRoom == null) {
+                    chatRoom = new MultiUserChat(this.connection, pending.room);
+                    chatRoom.join(pending.nickname);
+                    this.rooms.put(pending.room, chatRoom);
+                }
+                chatRoom.sendMessage(pending.message);
+            }
+        }
+
+        /**
+         * disconnects and forgets the chats and rooms of the connection
+         */
+        private synchronized void disconnect() {
+            this.chats.clear();
+            this.rooms.clear();
+            if (this.connection != null) {
+                try {
+                    if (this.connection.isConnected()) {
+                        LOGGER.debug("Disconnecting from server {}", this.connectionConfig.getHost());
+                        this.connection.disconnect();
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Error disconnecting from the XMPP server", e);
+                }
+                this.connection = null;
+            }
+        }
+
+        void close() {
+            this.closed = true;
+            if (this.sender != null) {
+                this.sender.interrupt();
+                try {
+                    this.sender.join(MAX_RECONNECT_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            disconnect();
+        }
+
+        /**
+         * @return  the number of endpoints using the connection
+         */
+        public int getReferenceCount() {
+            synchronized (XMPPConnectionPool.class) {
+                return this.references;
+            }
+        }
+
+        /**
+         * @return  the number of messages waiting to be sent
+         */
+        public int getQueueSize() {
+            return this.queue.size();
+        }
+
+        /**
+         * @return  the number of messages sent over the connection
+         */
+        public long getSentCount() {
+            return this.sentCount.get();
+        }
+
+        /**
+         * @return  the number of messages which could not be sent
+         */
+        public long getFailedCount() {
+            return this.failedCount.get();
+        }
+    }
+}
@@ -20,23 +20,23 @@ import org.apache.servicemix.common.endpoints.ProviderEndpoint;
 import org.apache.servicemix.common.util.MessageUtil;
 import org.apache.servicemix.xmpp.marshaler.XMPPMarshalerSupport;
 import org.apache.servicemix.xmpp.marshaler.impl.DefaultXMPPMarshaler;
-import org.jivesoftware.smack.AccountManager;
-import org.jivesoftware.smack.Chat;
 import org.jivesoftware.smack.ConnectionConfiguration;
-import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.packet.Message;
-import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.proxy.ProxyInfo;
-import org.jivesoftware.smackx.muc.MultiUserChat;
 
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
+import javax.jbi.messaging.RobustInOnly;
 
 /**
  * This endpoint sends XMPP messages from the NMR to a specified
- * target (user or room)
+ * target (user or room). Endpoints with the same server and user
+ * share their connection, the messages are sent asynchronously
+ * by the {@link XMPPConnectionPool}.
  *
  * @org.apache.xbean.XBean element="sender"
  *
@@ -45,7 +45,7 @@ import javax.jbi.messaging.NormalizedMessage;
 public class XMPPSenderEndpoint extends ProviderEndpoint implements XMPPEndpointType{
 
     private XMPPMarshalerSupport marshaler = new DefaultXMPPMarshaler();
-    private XMPPConnection connection;
+    private XMPPConnectionPool.PooledConnection connection;
     private String host;
     private int port = -1;
     private String user;
@@ -62,8 +62,6 @@ public class XMPPSenderEndpoint extends ProviderEndpoint implements XMPPEndpoint
     private boolean createAccount;
     private ConnectionConfiguration connectionConfig;
     private ProxyInfo proxyInfo;
-    private Chat userChat;
-    private MultiUserChat chatRoom;
 
     @Override
     public void validate() throws DeploymentException {
@@ -108,62 +106,44 @@ public class XMPPSenderEndpoint extends ProviderEndpoint implements XMPPEndpoint
             }
 
             this.connectionConfig.setCompressionEnabled(true);
-            this.connectionConfig.setReconnectionAllowed(true);
+            // the connection pool reconnects lost connections
+            this.connectionConfig.setReconnectionAllowed(false);
             this.connectionConfig.setSASLAuthenticationEnabled(true);
         }
 
         if (this.connection == null) {
-            this.connection = new XMPPConnection(this.connectionConfig);
-            this.logger.debug("Connecting to server {}", this.host);
-            this.connection.connect();
-        }
-
-        if (this.login && !this.connection.isAuthenticated()) {
-            if (this.user != null) {
-                this.logger.debug("Logging into Jabber as user: {} on connection: {}", this.user, this.connection);
-                if (this.password == null) {
-                    this.logger.warn("No password configured for user: {}", this.user);
-                }
-
-                if (this.createAccount) {
-                    AccountManager accountManager = new AccountManager(this.connection);
-                    accountManager.createAccount(this.user, this.password);
-                }
-                if (this.resource != null) {
-                    this.connection.login(this.user, this.password, this.resource);
-                } else {
-                    this.connection.login(this.user, this.password);
-                }
-            } else {
-                this.logger.debug("Logging in anonymously to Jabber on connection: {}", this.connection);
-                this.connection.loginAnonymously();
-            }
-            // now lets send a presence we are available
-            this.connection.sendPacket(new Presence(Presence.Type.available));
-        }
-
-        // now register listener for new packets
-        if (this.connection != null && this.connection.isConnected()) {
-            // if the user specified a chat room to join we do this here
-            if (this.room != null) {
-                this.chatRoom = new MultiUserChat(this.connection, this.room);
-                this.chatRoom.join(this.user);
-            } else if (this.participant != null) {
-                this.userChat = this.connection.getChatManager().createChat(this.participant, null);
-            }
+            // use the connection shared with the other endpoints of the same user
+            String proxy = this.proxyInfo != null
+                    ? this.proxyInfo.getProxyAddress() + ":" + this.proxyInfo.getProxyPort() : null;
+            XMPPConnectionPool.PoolKey key = XMPPConnectionPool.getKey(this.host, this.port, proxy, this.user, this.password,
+                    this.resource, this.login);
+            this.connection = XMPPConnectionPool.acquire(key, this.connectionConfig, this.user, this.password,
+                    this.resource, this.login, this.createAccount);
         }
     }
 
     @Override
     public void stop() throws Exception {
-        if (this.connection != null && this.connection.isConnected()) {
-            this.logger.debug("Disconnecting from server {}", this.host);
-            this.connection.disconnect();
+        if (this.connection != null) {
+            XMPPConnectionPool.release(this.connection);
             this.connection = null;
         }
         super.stop();
     }
 
+    @Override
+    public void process(MessageExchange exchange) throws Exception {
+        NormalizedMessage in;
+        // transacted exchanges are sent in the calling thread
+        if (exchange.getRole() == MessageExchange.Role.PROVIDER && exchange.getStatus() == ExchangeStatus.ACTIVE
+                && exchange.getFault() == null && (in = exchange.getMessage("in")) != null
+                && !exchange.isTransacted()) {
+            sendMessageAsync(exchange, in);
+        } else {
+            super.process(exchange);
+        }
+    }
+
     @Override
     protected void processInOnly(MessageExchange exchange, NormalizedMessage in) throws Exception {
         // Exchange is finished
@@ -204,6 +184,42 @@ public class XMPPSenderEndpoint extends ProviderEndpoint implements XMPPEndpoint
         }
     }
 
+    /**
+     * queues the message of the exchange on the shared connection, the
+     * exchange is completed once the message has been sent
+     *
+     * @param exchange  the message exchange received through NMR
+     * @param inMsg     the normalized inMessage from the exchange
+     * @throws Exception    on errors
+     */
+    private void sendMessageAsync(final MessageExchange exchange, NormalizedMessage inMsg) throws Exception {
+        final boolean inOnly = exchange instanceof InOnly || exchange instanceof RobustInOnly;
+        Message message = createMessage(exchange, inMsg);
+        this.connection.send(message, this.participant, this.room, this.user, new XMPPConnectionPool.SendCallback() {
+            public void onSent() {
+                try {
+                    if (inOnly) {
+                        done(exchange);
+                    } else {
+                        // copy the input message to the output and send it back to the sender
+                        MessageUtil.transferInToOut(exchange, exchange);
+                        send(exchange);
+                    }
+                } catch (MessagingException e) {
+                    logger.error("Unable to complete the exchange " + exchange.getExchangeId(), e);
+                }
+            }
+
+            public void onFailure(Exception e) {
+                try {
+                    fail(exchange, e);
+                } catch (MessagingException messagingException) {
+                    logger.error("Unable to fail the exchange " + exchange.getExchangeId(), messagingException);
+                }
+            }
+        });
+    }
+
     /**
      * retrieves the message from the exchange and sends it to the defined target
      *
@@ -212,14 +228,25 @@ public class XMPPSenderEndpoint extends ProviderEndpoint implements XMPPEndpoint
      * @throws Exception    on errors
      */
     private void sendMessage(MessageExchange exchange, NormalizedMessage inMsg) throws Exception {
+        this.connection.sendAndWait(createMessage(exchange, inMsg), this.participant, this.room, this.user);
+    }
+
+    /**
+     * creates the XMPP message from the exchange
+     *
+     * @param exchange  the message exchange received through NMR
+     * @param inMsg     the normalized inMessage from the exchange
+     * @return  the XMPP message
+     * @throws Exception    on errors
+     */
+    private Message createMessage(MessageExchange exchange, NormalizedMessage inMsg) throws Exception {
         // first we create a new dummy message
         Message message = null;
 
         if (this.participant != null) {
             message = new Message(this.participant, Message.Type.normal);
         } else {
-            message = this.chatRoom.createMessage();
-            message.setTo(this.room);
+            message = new Message(this.room, Message.Type.groupchat);
         }
 
         // that message gets filled through the marshaler
@@ -227,15 +254,7 @@ public class XMPPSenderEndpoint extends ProviderEndpoint implements XMPPEndpoint
 
         // initialize some more fields of the message
         message.setFrom(this.user);
-
-        // distinguish between single and multi user chat
-        if (this.participant != null) {
-            // single chat message
-            this.userChat.sendMessage(message);
-        } else {
-            // chat room message
-            this.chatRoom.sendMessage(message);
-        }
+        return message;
     }
 
     public XMPPMarshalerSupport getMarshaler() {
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.xmpp;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.packet.Message;
+
+public class XMPPConnectionPoolTest extends TestCase {
+
+    public void testKeyComparesCredentials() {
+        XMPPConnectionPool.PoolKey key = XMPPConnectionPool.getKey("localhost", 5222, null, "user", "Aa", "res", true);
+        assertEquals(key, XMPPConnectionPool.getKey("localhost", 5222, null, "user", "Aa", "res", true));
+        assertEquals(key.hashCode(),
+                XMPPConnectionPool.getKey("localhost", 5222, null, "user", "Aa", "res", true).hashCode());
+
+        // passwords with the same hash code don't share a connection
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertFalse(key.equals(XMPPConnectionPool.getKey("localhost", 5222, null, "user", "BB", "res", true)));
+
+        assertFalse(key.equals(XMPPConnectionPool.getKey("localhost", 5222, null, "user", null, "res", true)));
+        assertFalse(key.equals(XMPPConnectionPool.getKey("localhost", 5222, null, "other", "Aa", "res", true)));
+        assertFalse(key.equals(XMPPConnectionPool.getKey("localhost", 5222, "proxy:8080", "user", "Aa", "res", true)));
+        assertFalse(key.equals(XMPPConnectionPool.getKey("localhost", 5222, null, "user", "Aa", null, true)));
+        assertFalse(key.equals(XMPPConnectionPool.getKey("localhost", 5222, null, "user", "Aa", "res", false)));
+        assertFalse(key.toString().contains("Aa"));
+    }
+
+    public void testMessagesAreKeptWhileNotConnected() throws Exception {
+        // a port nobody listens on
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+
+        ConnectionConfiguration config = new ConnectionConfiguration("127.0.0.1", port);
+        XMPPConnectionPool.PooledConnection pooled = new XMPPConnectionPool.PooledConnection(
+                XMPPConnectionPool.getKey("127.0.0.1", port, null, "user", "secret", null, true),
+                config, "user", "secret", null, true, false);
+        pooled.start();
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        final Exception[] error = new Exception[1];
+        pooled.send(new Message("participant"), "participant", null, null, new XMPPConnectionPool.SendCallback() {
+            public void onSent() {
+            }
+
+            public void onFailure(Exception e) {
+                error[0] = e;
+                failed.countDown();
+            }
+        });
+
+        // the failed connection attempts don't fail the message, it waits for the next attempt
+        assertFalse(failed.await(2500, TimeUnit.MILLISECONDS));
+        assertEquals(0, pooled.getFailedCount());
+
+        // it is failed once the connection is closed
+        pooled.close();
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(error[0].getMessage().indexOf("closed") >= 0);
+    }
+
+}
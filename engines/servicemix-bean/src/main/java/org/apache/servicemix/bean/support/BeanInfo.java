@@ -33,7 +33,6 @@ import org.apache.servicemix.bean.Operation;
 import org.apache.servicemix.bean.Property;
 import org.apache.servicemix.bean.XPath;
 import org.apache.servicemix.expression.Expression;
-import org.apache.servicemix.expression.JAXPStringXPathExpression;
 import org.apache.servicemix.expression.PropertyExpression;
 import org.apache.servicemix.jbi.helper.MessageHelper;
 import org.apache.servicemix.jbi.jaxp.DefaultNamespaceContext;
@@ -129,18 +128,7 @@ public class BeanInfo {
     }
 
     protected Expression createMethodParametersExpression(final Expression[] parameterExpressions) {
-        return new Expression() {
-
-            public Object evaluate(MessageExchange messageExchange, 
-                                   NormalizedMessage normalizedMessage) throws MessagingException {
-                Object[] answer = new Object[parameterExpressions.length];
-                for (int i = 0; i < parameterExpressions.length; i++) {
-                    Expression parameterExpression = parameterExpressions[i];
-                    answer[i] = parameterExpression.evaluate(messageExchange, normalizedMessage);
-                }
-                return answer;
-            }
-        };
+        return new MethodParametersExpression(parameterExpressions);
     }
 
     /**
@@ -172,13 +160,13 @@ public class BeanInfo {
             return createContentExpression(marshaller);
         } else if (annotation instanceof XPath) {
             XPath xpathAnnotation = (XPath) annotation;
-            JAXPStringXPathExpression expr = new JAXPStringXPathExpression(xpathAnnotation.xpath());
+            DefaultNamespaceContext ctx = null;
             if (!xpathAnnotation.prefix().equals("") && !xpathAnnotation.uri().equals("")) {
-                DefaultNamespaceContext ctx = new DefaultNamespaceContext();
+                ctx = new DefaultNamespaceContext();
                 ctx.add(xpathAnnotation.prefix(), xpathAnnotation.uri());
-                expr.setNamespaceContext(ctx);
             }
-            return expr; 
+            // compiled once here and shared by all invocations of the method
+            return new XPathParameterExpression(xpathAnnotation.xpath(), ctx);
         }
         return null;
     }
@@ -37,6 +37,18 @@ public class MethodInfo {
     public MethodInfo(Method method, Expression parametersExpression) {
         this.method = method;
         this.parametersExpression = parametersExpression;
+        // resolve the access check once at introspection time rather than on every call
+        if (!method.isAccessible()) {
+            try {
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // fall back to checked reflective calls
+            }
+        }
+    }
+
+    public Method getMethod() {
+        return method;
     }
 
 
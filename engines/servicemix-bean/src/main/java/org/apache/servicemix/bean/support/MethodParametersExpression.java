@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+
+import org.w3c.dom.Node;
+
+import org.apache.servicemix.expression.Expression;
+
+/**
+ * Evaluates the parameter expressions of a method into an argument array.
+ * When one or more parameters are bound through XPath, the message content
+ * is parsed only once and the resulting node is shared by all of them.
+ *
+ * @version $Revision: $
+ */
+public class MethodParametersExpression implements Expression {
+
+    private final Expression[] parameterExpressions;
+    private final boolean xpathParameters;
+
+    public MethodParametersExpression(Expression[] parameterExpressions) {
+        this.parameterExpressions = parameterExpressions;
+        boolean xpath = false;
+        for (Expression expression : parameterExpressions) {
+            if (expression instanceof XPathParameterExpression) {
+                xpath = true;
+            }
+        }
+        this.xpathParameters = xpath;
+    }
+
+    public int getParameterCount() {
+        return parameterExpressions.length;
+    }
+
+    public Object evaluate(MessageExchange messageExchange,
+                           NormalizedMessage normalizedMessage) throws MessagingException {
+        Object[] answer = new Object[parameterExpressions.length];
+        if (!xpathParameters) {
+            for (int i = 0; i < parameterExpressions.length; i++) {
+                answer[i] = parameterExpressions[i].evaluate(messageExchange, normalizedMessage);
+            }
+            return answer;
+        }
+        Node node = null;
+        boolean parsed = false;
+        for (int i = 0; i < parameterExpressions.length; i++) {
+            Expression parameterExpression = parameterExpressions[i];
+            if (parameterExpression instanceof XPathParameterExpression) {
+                if (!parsed) {
+                    node = XPathParameterExpression.getContentNode(normalizedMessage);
+                    parsed = true;
+                }
+                answer[i] = ((XPathParameterExpression) parameterExpression)
+                    .evaluate(messageExchange, normalizedMessage, node);
+            } else {
+                answer[i] = parameterExpression.evaluate(messageExchange, normalizedMessage);
+            }
+        }
+        return answer;
+    }
+}
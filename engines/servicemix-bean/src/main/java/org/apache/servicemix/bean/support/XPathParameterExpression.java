@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Node;
+
+import org.apache.servicemix.common.util.MessageUtil;
+import org.apache.servicemix.expression.Expression;
+import org.apache.servicemix.expression.MessageVariableResolver;
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
+
+/**
+ * An {@link Expression} for a parameter annotated with {@link org.apache.servicemix.bean.XPath}.
+ * The XPath is compiled once when the bean is introspected, and the expression can be evaluated
+ * against a DOM node that has already been parsed so that several XPath parameters on the same
+ * method can share a single parse of the message content.
+ *
+ * @version $Revision: $
+ */
+public class XPathParameterExpression implements Expression {
+
+    private static final SourceTransformer TRANSFORMER = new SourceTransformer();
+
+    private final String xpath;
+    private final XPathExpression compiled;
+    private final MessageVariableResolver variableResolver = new MessageVariableResolver();
+
+    public XPathParameterExpression(String xpath, NamespaceContext namespaceContext) {
+        this.xpath = xpath;
+        try {
+            XPath path = XPathFactory.newInstance().newXPath();
+            if (namespaceContext != null) {
+                path.setNamespaceContext(namespaceContext);
+            }
+            // resolves $var references from the message and exchange properties
+            path.setXPathVariableResolver(variableResolver);
+            this.compiled = path.compile(xpath);
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Invalid XPath expression: " + xpath, e);
+        }
+    }
+
+    public String getXPath() {
+        return xpath;
+    }
+
+    public Object evaluate(MessageExchange exchange, NormalizedMessage message) throws MessagingException {
+        return evaluate(exchange, message, getContentNode(message));
+    }
+
+    /**
+     * Evaluates the compiled XPath against an already parsed node of the given message
+     */
+    public Object evaluate(MessageExchange exchange, NormalizedMessage message, Node node) throws MessagingException {
+        if (node == null) {
+            return null;
+        }
+        try {
+            // compiled XPath expressions and the variable resolver are not thread-safe
+            synchronized (compiled) {
+                variableResolver.setExchange(exchange);
+                variableResolver.setMessage(message);
+                return compiled.evaluate(node, XPathConstants.STRING);
+            }
+        } catch (XPathExpressionException e) {
+            throw new MessagingException("Unable to evaluate XPath expression " + xpath, e);
+        }
+    }
+
+    /**
+     * Parses the message content into a DOM node, leaving the message content re-readable so
+     * that other parameters (or the bean itself) can still access it afterwards
+     */
+    public static Node getContentNode(NormalizedMessage message) throws MessagingException {
+        if (message == null) {
+            return null;
+        }
+        MessageUtil.enableContentRereadability(message);
+        Source content = message.getContent();
+        if (content == null) {
+            return null;
+        }
+        if (content instanceof DOMSource) {
+            return ((DOMSource) content).getNode();
+        }
+        try {
+            return TRANSFORMER.toDOMNode(content);
+        } catch (Exception e) {
+            throw new MessagingException("Unable to parse message content for XPath evaluation", e);
+        }
+    }
+}
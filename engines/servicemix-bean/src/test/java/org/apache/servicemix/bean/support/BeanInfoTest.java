@@ -24,6 +24,10 @@ import junit.framework.TestCase;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.servicemix.bean.Operation;
+import org.apache.servicemix.bean.Property;
+import org.apache.servicemix.bean.XPath;
+import org.apache.servicemix.common.util.MessageUtil;
+import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.tck.mock.MockMessageExchange;
 
 /**
@@ -43,6 +47,49 @@ public class BeanInfoTest extends TestCase {
                    createInvocation(info, "doSomething"));
     }
 
+    public void testPropertyAndXPathParameters() throws Throwable {
+        BeanInfo info = new BeanInfo(XPathPojo.class, new DefaultMethodInvocationStrategy());
+        info.introspect();
+
+        MessageExchange exchange = new MockMessageExchange();
+        exchange.setOperation(new QName("multiple"));
+        MessageUtil.NormalizedMessageImpl in = new MessageUtil.NormalizedMessageImpl();
+        in.setContent(new StringSource("<t:order xmlns:t='urn:test' id='42'><t:item>book</t:item></t:order>"));
+        in.setProperty("key", "value");
+        exchange.setMessage(in, "in");
+
+        XPathPojo pojo = new XPathPojo();
+        MethodInvocation invocation = info.createInvocation(pojo, exchange);
+        assertNotNull(invocation);
+        invocation.proceed();
+        assertEquals("value", pojo.key);
+        assertEquals("42", pojo.id);
+        assertEquals("book", pojo.item);
+        
+        // the message content should still be readable after the XPath evaluation
+        invocation = info.createInvocation(pojo, exchange);
+        invocation.proceed();
+        assertEquals("book", pojo.item);
+    }
+
+    public void testXPathParameterWithVariable() throws Throwable {
+        BeanInfo info = new BeanInfo(XPathPojo.class, new DefaultMethodInvocationStrategy());
+        info.introspect();
+
+        MessageExchange exchange = new MockMessageExchange();
+        exchange.setOperation(new QName("variable"));
+        MessageUtil.NormalizedMessageImpl in = new MessageUtil.NormalizedMessageImpl();
+        in.setContent(new StringSource("<order><item id='1'>book</item><item id='2'>pen</item></order>"));
+        in.setProperty("itemId", "2");
+        exchange.setMessage(in, "in");
+
+        XPathPojo pojo = new XPathPojo();
+        MethodInvocation invocation = info.createInvocation(pojo, exchange);
+        assertNotNull(invocation);
+        invocation.proceed();
+        assertEquals("pen", pojo.item);
+    }
+
     private MethodInvocation createInvocation(BeanInfo info, String name) throws MessagingException {
         MessageExchange exchange = new MockMessageExchange();
         exchange.setOperation(new QName(name));
@@ -62,4 +109,22 @@ public class BeanInfoTest extends TestCase {
             //just another operation
         }
     }
+
+    public static final class XPathPojo {
+        private Object key;
+        private String id;
+        private String item;
+
+        public void multiple(@Property(name = "key") Object key,
+                             @XPath(prefix = "t", uri = "urn:test", xpath = "/t:order/@id") String id,
+                             @XPath(prefix = "t", uri = "urn:test", xpath = "/t:order/t:item") String item) {
+            this.key = key;
+            this.id = id;
+            this.item = item;
+        }
+
+        public void variable(@XPath(xpath = "/order/item[@id = $itemId]") String item) {
+            this.item = item;
+        }
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.camel;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.camel.NoTypeConversionAvailableException;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.TypeConverter;
+
+/**
+ * {@link Source} that carries the original Camel message body across the NMR when the
+ * {@link JbiBinding} is configured for pass-through.  The body is handed back as-is when the exchange
+ * arrives in another Camel route and is only converted to XML when a non-Camel JBI component actually
+ * reads the content.  A body which can't be converted makes the content reads fail with a
+ * {@link RuntimeCamelException}, instead of handing back neither a stream nor a reader.
+ */
+public class CamelBodySource extends StreamSource {
+
+    private final Object body;
+    private final TypeConverter converter;
+    private final AtomicLong conversions;
+
+    private boolean converted;
+    private String text;
+    private byte[] bytes;
+
+    public CamelBodySource(Object body, TypeConverter converter, AtomicLong conversions) {
+        this.body = body;
+        this.converter = converter;
+        this.conversions = conversions;
+    }
+
+    /**
+     * Access the original Camel message body
+     *
+     * @return the body
+     */
+    public Object getBody() {
+        return body;
+    }
+
+    /**
+     * Has the body been converted because a JBI component read the content?
+     *
+     * @return <code>true</code> if the body has been converted
+     */
+    public synchronized boolean isConverted() {
+        return converted;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        convert();
+        checkConverted();
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    @Override
+    public synchronized Reader getReader() {
+        convert();
+        checkConverted();
+        return text != null ? new StringReader(text) : null;
+    }
+
+    /*
+     * Convert the body only once, keeping the result so the content can be read more than once
+     */
+    private void convert() {
+        if (converted) {
+            return;
+        }
+        converted = true;
+        conversions.incrementAndGet();
+        if (body instanceof byte[]) {
+            bytes = (byte[]) body;
+        } else if (body instanceof String) {
+            text = (String) body;
+        } else if (body instanceof InputStream) {
+            bytes = converter.convertTo(byte[].class, body);
+        } else {
+            Source source = body instanceof Source ? (Source) body : converter.convertTo(Source.class, body);
+            if (source != null) {
+                text = converter.convertTo(String.class, source);
+            }
+        }
+    }
+
+    /*
+     * Fail on every read of a body which could not be converted
+     */
+    private void checkConverted() {
+        if (bytes == null && text == null) {
+            throw new RuntimeCamelException(new NoTypeConversionAvailableException(body, Source.class));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CamelBodySource[" + body + "]";
+    }
+}
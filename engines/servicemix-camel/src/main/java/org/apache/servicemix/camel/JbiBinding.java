@@ -20,6 +20,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jbi.messaging.InOptionalOut;
 import javax.jbi.messaging.InOut;
@@ -66,6 +67,10 @@ public class JbiBinding {
 
     private HeaderFilterStrategies strategies = new HeaderFilterStrategies();
     private boolean convertExceptions;
+    private boolean passThrough;
+
+    private final AtomicLong avoidedConversions = new AtomicLong();
+    private final AtomicLong lazyConversions = new AtomicLong();
 
     /**
      * Create the binding instance for a given CamelContext
@@ -102,6 +107,39 @@ public class JbiBinding {
         this.convertExceptions = convertExceptions;
     }
 
+    /**
+     * Enable pass-through of the original Camel message body.  Instead of converting every body into
+     * an XML {@link Source}, non-XML bodies are wrapped in a {@link CamelBodySource} that is only converted
+     * when a non-Camel JBI component reads the content.
+     *
+     * @param passThrough <code>true</code> to enable pass-through of message bodies
+     */
+    public void setPassThrough(boolean passThrough) {
+        this.passThrough = passThrough;
+    }
+
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * Get the number of message bodies that were handed back to Camel without being converted to XML
+     *
+     * @return the number of avoided conversions
+     */
+    public long getAvoidedConversions() {
+        return avoidedConversions.get();
+    }
+
+    /**
+     * Get the number of pass-through message bodies that had to be converted because a JBI component read them
+     *
+     * @return the number of conversions
+     */
+    public long getLazyConversions() {
+        return lazyConversions.get();
+    }
+
     /**
      * Run a block of code with the {@link CamelContext#getApplicationContextClassLoader()} set as the thread context classloader.
      * 
@@ -179,7 +217,8 @@ public class JbiBinding {
             result.setProperty(OPERATION, exchange.getOperation());
         }
         if (exchange.getMessage("in") != null) {
-            copyFromJbiToCamel(exchange.getMessage("in"), result.getIn());
+            // headers and attachments are only copied when the route accesses them
+            result.setIn(new JbiMessage(this, exchange.getMessage("in")));
         }
         copyPropertiesFromJbiToCamel(exchange, result);
         return result;
@@ -224,26 +263,58 @@ public class JbiBinding {
      * @param to the target {@link Message}
      */
     public void copyFromJbiToCamel(NormalizedMessage from, Message to) {
-        to.setBody(from.getContent());
+        to.setBody(getBody(from));
+        copyHeadersFromJbiToCamel(from, to.getHeaders(), to.getExchange());
+        for (Object id : from.getAttachmentNames()) {
+            to.addAttachment(id.toString(), from.getAttachment(id.toString()));
+        }
+    }
+
+    /**
+     * Get the Camel message body for a JBI NormalizedMessage, unwrapping the original body if it was passed through
+     *
+     * @param from the {@link NormalizedMessage}
+     * @return the message body
+     */
+    protected Object getBody(NormalizedMessage from) {
+        Source content = from.getContent();
+        if (content instanceof CamelBodySource) {
+            CamelBodySource source = (CamelBodySource) content;
+            if (!source.isConverted()) {
+                avoidedConversions.incrementAndGet();
+            }
+            return source.getBody();
+        }
+        return content;
+    }
+
+    /**
+     * Copies the security subject and the properties that pass the {@link HeaderFilterStrategy}
+     * from the JBI NormalizedMessage into a map of Camel headers.
+     *
+     * @param from the source {@link NormalizedMessage}
+     * @param headers the target Camel headers
+     * @param exchange the Camel Exchange the headers belong to (can be <code>null</code>)
+     */
+    protected void copyHeadersFromJbiToCamel(NormalizedMessage from, Map<String, Object> headers, Exchange exchange) {
         Subject securitySubject = from.getSecuritySubject();
         if (securitySubject != null) {
-            to.setHeader(SECURITY_SUBJECT, securitySubject);
+            headers.put(SECURITY_SUBJECT, securitySubject);
         }
-        Exchange exchange = to.getExchange();
         for (Object object : from.getPropertyNames()) {
             String key = object.toString();
             Object value = from.getProperty(key);
             if (!strategies.applyFilterToCamelHeaders(key, value, exchange)) { 
-                to.setHeader(key, value);
+                headers.put(key, value);
             }
         }
-        for (Object id : from.getAttachmentNames()) {
-            to.addAttachment(id.toString(), from.getAttachment(id.toString()));
-        }
     }
 
     public void copyFromCamelToJbi(Message message, NormalizedMessage normalizedMessage) throws MessagingException {
-        if (message != null && message.getBody() != null) {
+        if (message != null && passThrough && message.getBody() != null && !(message.getBody() instanceof Source)) {
+            normalizedMessage.setContent(
+                new CamelBodySource(message.getBody(), context.getTypeConverter(), lazyConversions));
+        } else if (message != null && message.getBody() != null) {
             Source body = message.getBody(Source.class);
             if (body == null) {
                 logger.warn("Unable to convert message body of type {} into an XML Source", message.getBody().getClass());
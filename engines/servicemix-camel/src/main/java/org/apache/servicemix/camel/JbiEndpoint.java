@@ -54,6 +54,8 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
 
     private String serialization;
 
+    private boolean passThrough;
+
     private HeaderFilterStrategy headerFilterStrategy;
 
     private final JbiComponent jbiComponent;
@@ -73,10 +75,20 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
     public JbiBinding createBinding() {
         JbiBinding result = new JbiBinding(this.getCamelContext(), serialization);
         result.setConvertExceptions(convertExceptions);
+        result.setPassThrough(passThrough);
         result.addHeaderFilterStrategy(headerFilterStrategy);
         return result;
     }
 
+    /**
+     * Access the binding used by this endpoint
+     *
+     * @return the binding
+     */
+    public JbiBinding getBinding() {
+        return binding;
+    }
+
     public Producer createProducer() throws Exception {
         return new JbiProducer(this);
     }
@@ -184,6 +196,11 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
                     this.setSerialization(serialization);
                     params.remove("serialization");
                 }
+                String passThrough = (String) params.get("passThrough");
+                if (StringUtils.hasLength(passThrough)) {
+                    this.setPassThrough(Boolean.valueOf(passThrough));
+                    params.remove("passThrough");
+                }
                 String endpointUri = this.destinationUri + URISupport.createQueryString(params);
                 this.setEndpointUri(endpointUri);
             }
@@ -266,4 +283,12 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
     public String getSerialization() {
         return serialization;
     }
+
+    public void setPassThrough(boolean passThrough) {
+        this.passThrough = passThrough;
+    }
+
+    public boolean isPassThrough() {
+        return passThrough;
+    }
 }
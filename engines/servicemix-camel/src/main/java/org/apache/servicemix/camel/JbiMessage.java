@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.camel;
+
+import java.util.Map;
+
+import javax.activation.DataHandler;
+import javax.jbi.messaging.NormalizedMessage;
+
+import org.apache.camel.impl.DefaultMessage;
+
+/**
+ * Camel {@link org.apache.camel.Message} backed by a JBI {@link NormalizedMessage}.  The body is set
+ * eagerly, but the headers and attachments are only copied from the JBI message (through the
+ * {@link JbiBinding}'s header filter strategies) the first time the route accesses them.
+ */
+public class JbiMessage extends DefaultMessage {
+
+    private final JbiBinding binding;
+    private final NormalizedMessage normalizedMessage;
+
+    public JbiMessage(JbiBinding binding, NormalizedMessage normalizedMessage) {
+        this.binding = binding;
+        this.normalizedMessage = normalizedMessage;
+        setBody(binding.getBody(normalizedMessage));
+    }
+
+    /**
+     * Access the underlying JBI NormalizedMessage
+     *
+     * @return the NormalizedMessage
+     */
+    public NormalizedMessage getNormalizedMessage() {
+        return normalizedMessage;
+    }
+
+    @Override
+    protected void populateInitialHeaders(Map<String, Object> map) {
+        binding.copyHeadersFromJbiToCamel(normalizedMessage, map, getExchange());
+    }
+
+    @Override
+    protected void populateInitialAttachments(Map<String, DataHandler> map) {
+        for (Object id : normalizedMessage.getAttachmentNames()) {
+            map.put(id.toString(), normalizedMessage.getAttachment(id.toString()));
+        }
+    }
+
+    @Override
+    public DefaultMessage newInstance() {
+        return new DefaultMessage();
+    }
+
+    @Override
+    public String toString() {
+        return "JbiMessage: " + normalizedMessage;
+    }
+}
@@ -17,9 +17,8 @@
 package org.apache.servicemix.camel.util;
 
 import org.apache.camel.Exchange;
-import org.apache.camel.spi.HeaderFilterStrategy;
 
-public class DefaultJBIHeaderFilterStrategy implements HeaderFilterStrategy {
+public class DefaultJBIHeaderFilterStrategy implements KeyBasedHeaderFilterStrategy {
 
     public boolean applyFilterToCamelHeaders(String s, Object o, Exchange exchange) {
         return doApplyFilter(s);
@@ -29,6 +28,10 @@ public class DefaultJBIHeaderFilterStrategy implements HeaderFilterStrategy {
         return doApplyFilter(s);
     }
 
+    public boolean applyFilterToKey(String key) {
+        return doApplyFilter(key);
+    }
+
     // Here we should filter the jbi message headers which should be not be exposed to Camel
     private boolean doApplyFilter(String header) {
         if (header.startsWith("javax.jbi.")) {
@@ -16,8 +16,11 @@
  */
 package org.apache.servicemix.camel.util;
 
+import java.lang.reflect.Method;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.spi.HeaderFilterStrategy;
@@ -26,12 +29,29 @@ import org.apache.camel.spi.HeaderFilterStrategy;
  * {@link HeaderFilterStrategy} implementation that will evaluate a set of
  * strategies in an OR-like fashion (if one of the strategies filters the property,
  * the HeaderFilter
+ *
+ * Strategies implementing {@link KeyBasedHeaderFilterStrategy} are evaluated first and their
+ * outcome is cached per header key, so the value-based strategies only run for keys that
+ * have not already been filtered. A key-based strategy whose class overrides
+ * applyFilterToCamelHeaders or applyFilterToExternalHeaders below its applyFilterToKey
+ * is evaluated like any other strategy.
  */
 public class HeaderFilterStrategies implements HeaderFilterStrategy {
 
+    /**
+     * Upper bound on the number of cached key decisions, to guard against header keys that are
+     * generated dynamically
+     */
+    protected static final int MAX_CACHED_KEYS = 1024;
+
     private final List<HeaderFilterStrategy> strategies = new LinkedList<HeaderFilterStrategy>();
+    private final List<KeyBasedHeaderFilterStrategy> keyStrategies = new LinkedList<KeyBasedHeaderFilterStrategy>();
+    private final Map<String, Boolean> keyDecisions = new ConcurrentHashMap<String, Boolean>();
 
     public boolean applyFilterToCamelHeaders(String s, Object o, Exchange exchange) {
+        if (isFilteredKey(s)) {
+            return true;
+        }
         for (HeaderFilterStrategy strategy : strategies) {
             if (strategy.applyFilterToCamelHeaders(s, o, exchange)) {
                 return true;
@@ -41,6 +61,9 @@ public class HeaderFilterStrategies implements HeaderFilterStrategy {
     }
 
     public boolean applyFilterToExternalHeaders(String s, Object o, Exchange exchange) {
+        if (isFilteredKey(s)) {
+            return true;
+        }
         for (HeaderFilterStrategy strategy : strategies) {
             if (strategy.applyFilterToExternalHeaders(s, o, exchange)) {
                 return true;
@@ -55,8 +78,57 @@ public class HeaderFilterStrategies implements HeaderFilterStrategy {
      * @param strategy
      */
     public void add(HeaderFilterStrategy strategy) {
-        if (strategy != null) {
+        if (strategy instanceof KeyBasedHeaderFilterStrategy && isKeyBased(strategy)) {
+            keyStrategies.add((KeyBasedHeaderFilterStrategy) strategy);
+            keyDecisions.clear();
+        } else if (strategy != null) {
             strategies.add(strategy);
         }
     }
+
+    /*
+     * A key-based strategy can only be reduced to its key decision if the header methods
+     * have not been overridden in a subclass of the class implementing applyFilterToKey
+     */
+    private static boolean isKeyBased(HeaderFilterStrategy strategy) {
+        try {
+            Class<?> keyClass = getDeclaringClass(strategy, "applyFilterToKey", String.class);
+            Class<?> camelClass = getDeclaringClass(strategy, "applyFilterToCamelHeaders",
+                                                    String.class, Object.class, Exchange.class);
+            Class<?> externalClass = getDeclaringClass(strategy, "applyFilterToExternalHeaders",
+                                                       String.class, Object.class, Exchange.class);
+            return camelClass.isAssignableFrom(keyClass) && externalClass.isAssignableFrom(keyClass);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Class<?> getDeclaringClass(Object object, String name, Class<?>... types)
+        throws NoSuchMethodException {
+        Method method = object.getClass().getMethod(name, types);
+        return method.getDeclaringClass();
+    }
+
+    /*
+     * Evaluate the key-based strategies, reusing the decision made earlier for the same key
+     */
+    private boolean isFilteredKey(String key) {
+        if (keyStrategies.isEmpty() || key == null) {
+            return false;
+        }
+        Boolean decision = keyDecisions.get(key);
+        if (decision == null) {
+            decision = Boolean.FALSE;
+            for (KeyBasedHeaderFilterStrategy strategy : keyStrategies) {
+                if (strategy.applyFilterToKey(key)) {
+                    decision = Boolean.TRUE;
+                    break;
+                }
+            }
+            if (keyDecisions.size() < MAX_CACHED_KEYS) {
+                keyDecisions.put(key, decision);
+            }
+        }
+        return decision.booleanValue();
+    }
 }
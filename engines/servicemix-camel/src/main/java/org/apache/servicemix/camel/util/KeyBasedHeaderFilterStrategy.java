@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.camel.util;
+
+import org.apache.camel.spi.HeaderFilterStrategy;
+
+/**
+ * {@link HeaderFilterStrategy} whose decision only depends on the header key (in both directions),
+ * so the outcome can be computed once per key and cached by {@link HeaderFilterStrategies}
+ */
+public interface KeyBasedHeaderFilterStrategy extends HeaderFilterStrategy {
+
+    /**
+     * Determine if the header with the given key should be filtered, regardless of its value
+     *
+     * @param key the header key
+     * @return <code>true</code> if the header should be filtered out
+     */
+    boolean applyFilterToKey(String key);
+
+}
@@ -16,10 +16,21 @@
  */
 package org.apache.servicemix.camel.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.xml.namespace.QName;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.spi.HeaderFilterStrategy;
@@ -30,12 +41,34 @@ import org.slf4j.LoggerFactory;
  * {@link org.apache.camel.spi.HeaderFilterStrategy} that filters out non-serializable values.
  *
  * It will try to write the object to a stream to make sure that an object that implements the
- * {@link Serializable} interface can actually be serialized
+ * {@link Serializable} interface can actually be serialized.  Types that are always serializable
+ * (Strings, boxed primitives, dates, enums, ...) are recognized up front and the verdict on
+ * classes not implementing the interface is remembered per class, so the trial serialization
+ * only happens for other types.  The remembered classes are weakly referenced, so that the
+ * classes of undeployed bundles or service units can go.
  */
 public class StrictSerializationHeaderFilterStrategy implements HeaderFilterStrategy {
 
+    private static final Set<Class<?>> SERIALIZABLE_TYPES = new HashSet<Class<?>>(Arrays.asList(new Class<?>[] {
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+        Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, Date.class,
+        java.sql.Date.class, java.sql.Timestamp.class, QName.class,
+        boolean[].class, char[].class, byte[].class, short[].class, int[].class,
+        long[].class, float[].class, double[].class
+    }));
+
+    /*
+     * The maximum number of remembered verdicts, further classes are checked on each use
+     */
+    private static final int MAX_VERDICTS = 1024;
+
     private final Logger logger = LoggerFactory.getLogger(StrictSerializationHeaderFilterStrategy.class);
 
+    /*
+     * Per-class verdicts, only for classes whose serializability does not depend on the instance state
+     */
+    private final Map<Class<?>, Boolean> verdicts = Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
     public boolean applyFilterToCamelHeaders(String s, Object o, Exchange exchange) {
         return doApplyFilter(s, o);
     }
@@ -45,25 +78,66 @@ public class StrictSerializationHeaderFilterStrategy implements HeaderFilterStra
     }
 
     private boolean doApplyFilter(String s, Object o) {
-        if (o instanceof Serializable) {
-            ObjectOutputStream oos = null;
-            try {
-                oos = new ObjectOutputStream(new ByteArrayOutputStream());
-                oos.writeObject(o);
-            } catch (IOException e) {
-                logger.debug("{} implements Serializable, but serialization throws IOException: filtering key {}", o, s);
-                return true;
-            } finally {
-                if (oos != null) {
-                    try {
-                        oos.close();
-                    } catch (IOException e) {
-                        // ignoring exception on stream close
-                    }
+        if (o == null) {
+            return true;
+        }
+        Class<?> type = o.getClass();
+        if (SERIALIZABLE_TYPES.contains(type)) {
+            return false;
+        }
+        Boolean verdict = verdicts.get(type);
+        if (verdict != null) {
+            return verdict.booleanValue();
+        }
+        if (!(o instanceof Serializable)) {
+            // a class that does not implement Serializable will never become serializable
+            remember(type, Boolean.TRUE);
+            return true;
+        }
+        if (o instanceof Enum) {
+            remember(type, Boolean.FALSE);
+            return false;
+        }
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(new NullOutputStream());
+            oos.writeObject(o);
+        } catch (IOException e) {
+            logger.debug("{} implements Serializable, but serialization throws IOException: filtering key {}", o, s);
+            return true;
+        } finally {
+            if (oos != null) {
+                try {
+                    oos.close();
+                } catch (IOException e) {
+                    // ignoring exception on stream close
                 }
             }
-            return false;
         }
-        return true;
+        return false;
+    }
+
+    private void remember(Class<?> type, Boolean verdict) {
+        synchronized (verdicts) {
+            if (verdicts.size() < MAX_VERDICTS) {
+                verdicts.put(type, verdict);
+            }
+        }
+    }
+
+    /*
+     * We only need to know whether the object can be written, so there is no need to keep the bytes
+     */
+    private static final class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            // discard
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // discard
+        }
     }
 }
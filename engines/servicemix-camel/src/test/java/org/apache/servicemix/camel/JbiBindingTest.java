@@ -31,10 +31,13 @@ import junit.framework.TestCase;
 import org.apache.camel.Exchange;
 import org.apache.camel.ExchangePattern;
 import org.apache.camel.Message;
+import org.apache.camel.NoTypeConversionAvailableException;
+import org.apache.camel.RuntimeCamelException;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.impl.DefaultMessage;
 import org.apache.camel.spi.HeaderFilterStrategy;
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.tck.mock.MockExchangeFactory;
 import org.apache.servicemix.tck.mock.MockMessageExchange;
@@ -149,6 +152,24 @@ public class JbiBindingTest extends TestCase {
                      ExchangePattern.InOut, exchange.getPattern());
     }
     
+    public void testCreateExchangeCopiesHeadersLazily() throws Exception {
+        MessageExchange me = factory.createInOutExchange();
+        MockNormalizedMessage nm = new MockNormalizedMessage();
+        nm.setContent(CONTENT);
+        me.setMessage(nm, "in");
+
+        Exchange exchange = binding.createExchange(me);
+        nm.setProperty(KEY, VALUE);
+        nm.setProperty(FILTERED_KEY, FILTERED_VALUE);
+
+        assertTrue("Camel Message should be backed by the JBI NormalizedMessage",
+                   exchange.getIn() instanceof JbiMessage);
+        assertEquals("JBI NormalizedMessage headers are copied when first accessed",
+                     VALUE, exchange.getIn().getHeader(KEY));
+        assertFalse("JBI NormalizedMessage headers have been filtered by the strategy",
+                    exchange.getIn().getHeaders().containsKey(FILTERED_KEY));
+    }
+
     public void testCreateExchangeWithSecuritySubject() throws Exception {
         MessageExchange me = factory.createInOutExchange();
         MockNormalizedMessage nm = new MockNormalizedMessage();
@@ -178,6 +199,56 @@ public class JbiBindingTest extends TestCase {
                      1, to.getPropertyNames().size());
     }
 
+    public void testCopyCamelToJbiWithPassThrough() throws Exception {
+        binding.setPassThrough(true);
+        byte[] body = "<my>content</my>".getBytes("UTF-8");
+
+        Message from = new DefaultMessage();
+        from.setBody(body);
+        NormalizedMessage to = new MockNormalizedMessage();
+        binding.copyFromCamelToJbi(from, to);
+
+        assertTrue("Body should have been passed through", to.getContent() instanceof CamelBodySource);
+        MessageExchange me = factory.createInOnlyExchange();
+        me.setMessage(to, "in");
+        Exchange exchange = binding.createExchange(me);
+        assertSame("Original body should be handed back to Camel", body, exchange.getIn().getBody());
+        assertEquals(1, binding.getAvoidedConversions());
+        assertEquals(0, binding.getLazyConversions());
+
+        assertTrue("Content should still be readable by JBI components",
+                   new SourceTransformer().contentToString(to).contains("<my>content</my>"));
+        assertEquals(1, binding.getLazyConversions());
+    }
+
+    public void testPassThroughBodyWithoutConversion() throws Exception {
+        binding.setPassThrough(true);
+        Object body = new Object();
+
+        Message from = new DefaultMessage();
+        from.setBody(body);
+        NormalizedMessage to = new MockNormalizedMessage();
+        binding.copyFromCamelToJbi(from, to);
+
+        CamelBodySource source = (CamelBodySource) to.getContent();
+        try {
+            source.getInputStream();
+            fail("A body which can't be converted to XML should not be read as an empty stream");
+        } catch (RuntimeCamelException e) {
+            assertTrue(e.getCause() instanceof NoTypeConversionAvailableException);
+        }
+        try {
+            source.getReader();
+            fail("A body which can't be converted to XML should not be read as an empty reader");
+        } catch (RuntimeCamelException e) {
+            // expected
+        }
+        // the original body is still handed back to Camel
+        MessageExchange me = factory.createInOnlyExchange();
+        me.setMessage(to, "in");
+        assertSame(body, binding.createExchange(me).getIn().getBody());
+    }
+
     public void testCopyCamelMessageToJbiPreserveKeyCase() throws Exception {
         NormalizedMessage to = new MockNormalizedMessage();
 
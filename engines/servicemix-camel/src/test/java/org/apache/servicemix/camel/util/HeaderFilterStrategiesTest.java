@@ -57,6 +57,44 @@ public class HeaderFilterStrategiesTest extends TestCase {
         assertFalse("3 should not have been filtered", strategies.applyFilterToExternalHeaders("3", null, null));
     }
 
+    public void testKeyBasedStrategies() {
+        final int[] evaluations = new int[1];
+        HeaderFilterStrategies strategies = new HeaderFilterStrategies();
+        strategies.add(new DefaultJBIHeaderFilterStrategy() {
+            @Override
+            public boolean applyFilterToKey(String key) {
+                evaluations[0]++;
+                return super.applyFilterToKey(key);
+            }
+        });
+
+        assertTrue("javax.jbi. keys should have been filtered",
+                   strategies.applyFilterToCamelHeaders("javax.jbi.transaction", "value", null));
+        assertTrue("javax.jbi. keys should have been filtered",
+                   strategies.applyFilterToExternalHeaders("javax.jbi.transaction", "other", null));
+        assertFalse("XYZ should not have been filtered", strategies.applyFilterToCamelHeaders("XYZ", null, null));
+        assertFalse("XYZ should not have been filtered", strategies.applyFilterToCamelHeaders("XYZ", null, null));
+        assertEquals("Key decisions should have been cached", 2, evaluations[0]);
+    }
+
+    public void testKeyBasedStrategyWithOverriddenHeaderMethods() {
+        HeaderFilterStrategies strategies = new HeaderFilterStrategies();
+        strategies.add(new DefaultJBIHeaderFilterStrategy() {
+            @Override
+            public boolean applyFilterToCamelHeaders(String s, Object o, Exchange exchange) {
+                return super.applyFilterToCamelHeaders(s, o, exchange) || "secret".equals(o);
+            }
+        });
+
+        assertTrue("javax.jbi. keys should have been filtered",
+                   strategies.applyFilterToCamelHeaders("javax.jbi.transaction", "value", null));
+        assertTrue("secret values should have been filtered",
+                   strategies.applyFilterToCamelHeaders("XYZ", "secret", null));
+        assertFalse("XYZ should not have been filtered", strategies.applyFilterToCamelHeaders("XYZ", "value", null));
+        assertFalse("secret values should only be filtered towards Camel",
+                    strategies.applyFilterToExternalHeaders("XYZ", "secret", null));
+    }
+
     public void testIgnoreNullStrategies() {
         HeaderFilterStrategies strategies = new HeaderFilterStrategies();
         strategies.add(null);
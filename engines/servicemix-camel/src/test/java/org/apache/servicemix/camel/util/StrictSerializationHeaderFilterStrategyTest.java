@@ -17,6 +17,7 @@
 package org.apache.servicemix.camel.util;
 
 import java.io.ByteArrayOutputStream;
+import java.util.Date;
 
 import junit.framework.TestCase;
 import org.apache.camel.spi.HeaderFilterStrategy;
@@ -37,4 +38,17 @@ public class StrictSerializationHeaderFilterStrategyTest extends TestCase {
         assertFalse("Strategy should not filter String - is Serializable",
                     strategy.applyFilterToCamelHeaders("key", "value", null));
     }
+
+    public void testApplyFilterToWellKnownTypes() {
+        assertFalse("Strategy should not filter Integer - is Serializable",
+                    strategy.applyFilterToCamelHeaders("key", Integer.valueOf(42), null));
+        assertFalse("Strategy should not filter Date - is Serializable",
+                    strategy.applyFilterToCamelHeaders("key", new Date(), null));
+        assertFalse("Strategy should not filter enums - are Serializable",
+                    strategy.applyFilterToCamelHeaders("key", Thread.State.NEW, null));
+        assertTrue("Strategy should filter null values",
+                   strategy.applyFilterToCamelHeaders("key", null, null));
+        assertTrue("Strategy should keep filtering non-Serializable types",
+                   strategy.applyFilterToCamelHeaders("key", new ByteArrayOutputStream(), null));
+    }
 }
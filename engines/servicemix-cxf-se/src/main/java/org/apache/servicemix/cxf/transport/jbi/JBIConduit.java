@@ -25,6 +25,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jbi.messaging.DeliveryChannel;
+import javax.xml.namespace.QName;
 
 
 
@@ -41,6 +42,8 @@ public class JBIConduit extends AbstractConduit {
 
     private DeliveryChannel channel;
     private Bus bus;
+    private volatile QName serviceName;
+    private JBIPendingInvocations pendingInvocations;
            
     public JBIConduit(EndpointReferenceType target, DeliveryChannel dc) {           
         this(null, target, dc);
@@ -56,6 +59,28 @@ public class JBIConduit extends AbstractConduit {
         return bus;
     }
     
+    /**
+     * The JBI service targeted by this conduit, resolved on the first invocation
+     */
+    public QName getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(QName serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    /**
+     * The asynchronous invocations of the transport factory, invocations are synchronous without them
+     */
+    public JBIPendingInvocations getPendingInvocations() {
+        return pendingInvocations;
+    }
+
+    public void setPendingInvocations(JBIPendingInvocations pendingInvocations) {
+        this.pendingInvocations = pendingInvocations;
+    }
+
     protected Logger getLogger() {
         return LOG;
     }
@@ -25,8 +25,11 @@ import java.io.Serializable;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.jbi.messaging.DeliveryChannel;
@@ -50,11 +53,23 @@ import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.service.model.BindingOperationInfo;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
 import org.apache.cxf.wsdl.EndpointReferenceUtils;
+import org.apache.servicemix.cxfse.JBIContext;
 
 public class JBIConduitOutputStream extends CachedOutputStream {
 
     private static final Logger LOG = LogUtils.getL7dLogger(JBIConduitOutputStream.class);
 
+    /*
+     * @WebService interface names, looked up once per proxy interface, weak so that undeployed classes can go
+     */
+    private static final Map<Class<?>, QName> INTERFACE_NAMES =
+        Collections.synchronizedMap(new WeakHashMap<Class<?>, QName>());
+
+    private static final long DEFAULT_TIMEOUT = 60000L;
+
+    // the client property giving the timeout of an invocation, ClientImpl has no constant for it in CXF 2.7
+    private static final String SYNC_TIMEOUT = "cxf.synchronous.timeout";
+
     private Message message;
     private boolean isOneWay;
     private DeliveryChannel channel;
@@ -79,9 +94,6 @@ public class JBIConduitOutputStream extends CachedOutputStream {
     protected void doClose() throws IOException {
         isOneWay = message.getExchange().isOneWay();
         commitOutputMessage();
-        if (target != null) {
-            target.getClass();
-        }
     }
 
     private void commitOutputMessage() throws IOException {
@@ -91,22 +103,27 @@ public class JBIConduitOutputStream extends CachedOutputStream {
             Exchange exchange = message.getExchange();
             BindingOperationInfo bop = exchange.get(BindingOperationInfo.class);
 
-            LOG.info(new org.apache.cxf.common.i18n.Message("INVOKE.SERVICE", LOG).toString() + clz);
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.fine(new org.apache.cxf.common.i18n.Message("INVOKE.SERVICE", LOG).toString() + clz);
+            }
 
-            WebService ws = clz.getAnnotation(WebService.class);
-            assert ws != null;
-            QName interfaceName = new QName(ws.targetNamespace(), ws.name());
-            QName serviceName = null;
-            if (target != null) {
-                serviceName = EndpointReferenceUtils.getServiceName(target,
-                                                                    message.getExchange().get(Bus.class));
-            } else {
-                serviceName = message.getExchange().get(org.apache.cxf.service.Service.class).getName();
+            QName interfaceName = getInterfaceName(clz);
+            QName serviceName = conduit.getServiceName();
+            if (serviceName == null) {
+                if (target != null) {
+                    serviceName = EndpointReferenceUtils.getServiceName(target,
+                                                                        message.getExchange().get(Bus.class));
+                } else {
+                    serviceName = message.getExchange().get(org.apache.cxf.service.Service.class).getName();
+                }
+                conduit.setServiceName(serviceName);
             }
           
             MessageExchangeFactory factory = channel.createExchangeFactoryForService(serviceName);
-            LOG.info(new org.apache.cxf.common.i18n.Message("CREATE.MESSAGE.EXCHANGE", LOG).toString()
-                     + serviceName);
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.fine(new org.apache.cxf.common.i18n.Message("CREATE.MESSAGE.EXCHANGE", LOG).toString()
+                         + serviceName);
+            }
             MessageExchange xchng = null;
             if (isOneWay) {
                 xchng = factory.createInOnlyExchange();
@@ -117,14 +134,9 @@ public class JBIConduitOutputStream extends CachedOutputStream {
             }
 
             NormalizedMessage inMsg = xchng.createMessage();
-            LOG.info(new org.apache.cxf.common.i18n.Message("EXCHANGE.ENDPOINT", LOG).toString()
-                     + xchng.getEndpoint());
             if (inMsg != null) {
-                LOG.info("setup message contents on " + inMsg);
                 inMsg.setContent(getMessageContent(message));
                 xchng.setService(serviceName);
-                LOG.info("service for exchange " + serviceName);
-
                 xchng.setInterfaceName(interfaceName);
 
                 xchng.setOperation(bop.getName());
@@ -147,55 +159,30 @@ public class JBIConduitOutputStream extends CachedOutputStream {
                     }
                 }
                 xchng.setMessage(inMsg, "in");
-                LOG.info("sending message");
-                if (!isOneWay) {
-                    channel.sendSync(xchng);
-                    NormalizedMessage outMsg = ((InOut)xchng).getOutMessage();
-                    Source content = null;
-                    Set normalizedMessageProps = null;
-                    if (outMsg != null) {
-                        content = outMsg.getContent();
-                        normalizedMessageProps = outMsg.getPropertyNames();
-                    } else {
-                        if (((InOut)xchng).getFault() == null) {
-                            throw xchng.getError();
-                        }
-                        content = ((InOut)xchng).getFault().getContent();
-                        normalizedMessageProps = ((InOut)xchng).getFault().getPropertyNames();
-                    }
-                    Message inMessage = new MessageImpl();
-                    message.getExchange().setInMessage(inMessage);
-                    InputStream ins = JBIMessageHelper.convertMessageToInputStream(content);
-                    if (ins == null) {
-                        throw new IOException(new org.apache.cxf.common.i18n.Message(
-                            "UNABLE.RETRIEVE.MESSAGE", LOG).toString());
-                    }
-                    inMessage.setContent(InputStream.class, ins);
-                    inMessage.put(MessageExchange.class, xchng);
-                    
-                    
-                    if (normalizedMessageProps != null) {
-                  
-                        for (Object name : normalizedMessageProps) {
-                            inMessage.put((String) name, outMsg
-                                    .getProperty((String) name));
-
-                        }
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine("sending exchange " + xchng.getExchangeId() + " to service " + serviceName);
+                }
+                if (isOneWay) {
+                    channel.send(xchng);
+                } else if (isAsynchronous(exchange)) {
+                    // the response is handed to handleResponse() by the endpoint that sent the exchange
+                    JBIPendingInvocations pending = conduit.getPendingInvocations();
+                    pending.add(xchng.getExchangeId(), this, getTimeout());
+                    try {
+                        channel.send(xchng);
+                    } catch (Exception e) {
+                        pending.remove(xchng.getExchangeId());
+                        throw e;
                     }
-                    conduit.getMessageObserver().onMessage(inMessage);
-
-                    xchng.setStatus(ExchangeStatus.DONE);
-                    channel.send(xchng);                    
                 } else {
-                    channel.send(xchng);
+                    channel.sendSync(xchng);
+                    processResponse(xchng);
                 }
 
             } else {
                 LOG.info(new org.apache.cxf.common.i18n.Message("NO.MESSAGE", LOG).toString());
             }
 
-            
-
         } catch (IOException e) {
             throw e;
         } catch (Exception e) {
@@ -203,6 +190,113 @@ public class JBIConduitOutputStream extends CachedOutputStream {
         }
     }
 
+    /*
+     * Responses to an asynchronous send are delivered to the cxf-se endpoint that sent the exchange,
+     * so we can only go asynchronous for CXF async invocations sent on the channel of the cxf-se
+     * endpoint processing the current JBI exchange (and not e.g. through a CxfSeProxyFactoryBean proxy)
+     */
+    private boolean isAsynchronous(Exchange exchange) {
+        return !exchange.isSynchronous() && conduit.getPendingInvocations() != null
+            && JBIContext.getMessageExchange() != null
+            && channel == JBIContext.getDeliveryChannel();
+    }
+
+    private long getTimeout() {
+        Object timeout = message.getContextualProperty(SYNC_TIMEOUT);
+        if (timeout instanceof Number) {
+            return ((Number) timeout).longValue();
+        } else if (timeout != null) {
+            return Long.parseLong(timeout.toString());
+        }
+        return DEFAULT_TIMEOUT;
+    }
+
+    DeliveryChannel getChannel() {
+        return channel;
+    }
+
+    void onResponse(MessageExchange xchng) {
+        try {
+            processResponse(xchng);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Error processing response for exchange " + xchng.getExchangeId(), e);
+            onFailure(e);
+        }
+    }
+
+    void onFailure(Exception e) {
+        Message inMessage = new MessageImpl();
+        inMessage.setExchange(message.getExchange());
+        message.getExchange().setInMessage(inMessage);
+        message.getExchange().put(Exception.class, e);
+        inMessage.setContent(Exception.class, e);
+        conduit.getMessageObserver().onMessage(inMessage);
+    }
+
+    private void processResponse(MessageExchange xchng) throws Exception {
+        if (xchng.getStatus() == ExchangeStatus.ERROR) {
+            throw xchng.getError() != null ? xchng.getError()
+                : new IOException("Error status received for exchange " + xchng.getExchangeId());
+        }
+        NormalizedMessage outMsg = ((InOut)xchng).getOutMessage();
+        Source content = null;
+        Set normalizedMessageProps = null;
+        if (outMsg != null) {
+            content = outMsg.getContent();
+            normalizedMessageProps = outMsg.getPropertyNames();
+        } else {
+            if (((InOut)xchng).getFault() == null) {
+                throw xchng.getError();
+            }
+            content = ((InOut)xchng).getFault().getContent();
+            normalizedMessageProps = ((InOut)xchng).getFault().getPropertyNames();
+        }
+        Message inMessage = new MessageImpl();
+        message.getExchange().setInMessage(inMessage);
+        InputStream ins = getInputStream(content);
+        if (ins == null) {
+            throw new IOException(new org.apache.cxf.common.i18n.Message(
+                "UNABLE.RETRIEVE.MESSAGE", LOG).toString());
+        }
+        inMessage.setContent(InputStream.class, ins);
+        inMessage.put(MessageExchange.class, xchng);
+        
+        
+        if (normalizedMessageProps != null) {
+      
+            for (Object name : normalizedMessageProps) {
+                inMessage.put((String) name, outMsg
+                        .getProperty((String) name));
+
+            }
+        }
+        conduit.getMessageObserver().onMessage(inMessage);
+
+        xchng.setStatus(ExchangeStatus.DONE);
+        channel.send(xchng);
+    }
+
+    /*
+     * Hand over stream content as-is instead of copying it into another buffer
+     */
+    private InputStream getInputStream(Source content) throws IOException {
+        if (content instanceof StreamSource && ((StreamSource) content).getInputStream() != null) {
+            return ((StreamSource) content).getInputStream();
+        }
+        return JBIMessageHelper.convertMessageToInputStream(content);
+    }
+
+    private static QName getInterfaceName(Class<?> clz) {
+        QName interfaceName = INTERFACE_NAMES.get(clz);
+        if (interfaceName == null) {
+            WebService ws = clz.getAnnotation(WebService.class);
+            assert ws != null;
+            interfaceName = new QName(ws.targetNamespace(), ws.name());
+            INTERFACE_NAMES.put(clz, interfaceName);
+        }
+        return interfaceName;
+    }
+
     private Source getMessageContent(Message message2) throws IOException {
         return new StreamSource(this.getInputStream());
         
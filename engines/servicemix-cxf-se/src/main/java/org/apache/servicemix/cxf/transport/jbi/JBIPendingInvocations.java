@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.servicemix.cxf.transport.jbi;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jbi.messaging.DeliveryChannel;
+import javax.jbi.messaging.MessageExchange;
+
+/**
+ * The asynchronous invocations sent through the JBI conduits of a transport factory and waiting
+ * for their response, keyed on the JBI exchange id. The timer expiring them is started on the first
+ * invocation and cancelled by {@link #shutdown()}.
+ */
+public class JBIPendingInvocations {
+
+    private final Map<String, PendingInvocation> pending = new ConcurrentHashMap<String, PendingInvocation>();
+
+    // guarded by this
+    private Timer timer;
+
+    /**
+     * Register an asynchronous invocation before sending its exchange
+     *
+     * @param exchangeId the id of the JBI exchange
+     * @param stream the conduit output stream of the invocation
+     * @param timeout the time to wait for the response, in milliseconds
+     */
+    void add(String exchangeId, JBIConduitOutputStream stream, long timeout) {
+        PendingInvocation invocation = new PendingInvocation(exchangeId, stream);
+        synchronized (this) {
+            if (timer == null) {
+                timer = new Timer("JBI conduit asynchronous invocation timeouts", true);
+            }
+            pending.put(exchangeId, invocation);
+            timer.schedule(invocation, timeout);
+        }
+    }
+
+    /**
+     * Forget an asynchronous invocation whose exchange could not be sent
+     *
+     * @param exchangeId the id of the JBI exchange
+     */
+    void remove(String exchangeId) {
+        PendingInvocation invocation = pending.remove(exchangeId);
+        if (invocation != null) {
+            invocation.cancel();
+        }
+    }
+
+    /**
+     * Complete an asynchronous invocation with the JBI exchange that has been sent back to the consumer
+     *
+     * @param xchng the JBI exchange
+     * @return <code>true</code> if the exchange belonged to a pending asynchronous invocation
+     */
+    public boolean handleResponse(MessageExchange xchng) {
+        PendingInvocation invocation = pending.remove(xchng.getExchangeId());
+        if (invocation == null) {
+            return false;
+        }
+        invocation.cancel();
+        invocation.stream.onResponse(xchng);
+        return true;
+    }
+
+    /**
+     * Fail the asynchronous invocations sent on the given channel, whose responses can no longer be delivered
+     *
+     * @param dc the delivery channel of the endpoint being stopped
+     */
+    public void cancelPending(DeliveryChannel dc) {
+        for (PendingInvocation invocation : pending.values()) {
+            if (invocation.stream.getChannel() == dc) {
+                cancel(invocation, "Endpoint stopped before receiving the response for exchange ");
+            }
+        }
+    }
+
+    /**
+     * Fail all the asynchronous invocations and stop the timer, so that no thread is left
+     * once the component is shut down
+     */
+    public void shutdown() {
+        for (PendingInvocation invocation : pending.values()) {
+            cancel(invocation, "Component shut down before receiving the response for exchange ");
+        }
+        synchronized (this) {
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of asynchronous invocations waiting for their response
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private void cancel(PendingInvocation invocation, String reason) {
+        if (pending.remove(invocation.exchangeId) != null) {
+            invocation.cancel();
+            invocation.stream.onFailure(new IOException(reason + invocation.exchangeId));
+        }
+    }
+
+    /*
+     * An asynchronous invocation waiting for its response, failed when the timeout expires
+     */
+    private final class PendingInvocation extends TimerTask {
+
+        private final String exchangeId;
+        private final JBIConduitOutputStream stream;
+
+        private PendingInvocation(String exchangeId, JBIConduitOutputStream stream) {
+            this.exchangeId = exchangeId;
+            this.stream = stream;
+        }
+
+        @Override
+        public void run() {
+            if (pending.remove(exchangeId) != null) {
+                stream.onFailure(new IOException("Timeout waiting for the response to exchange " + exchangeId));
+            }
+        }
+    }
+
+}
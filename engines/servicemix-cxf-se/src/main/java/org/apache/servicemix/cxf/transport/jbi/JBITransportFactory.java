@@ -60,6 +60,7 @@ public class JBITransportFactory extends AbstractTransportFactory implements Con
     private DeliveryChannel deliveryChannel;
     private Bus bus;
     private final Map<String, JBIDestination> destinationMap =  new HashMap<String, JBIDestination>();
+    private final JBIPendingInvocations pendingInvocations = new JBIPendingInvocations();
 
 
     private Collection<String> activationNamespaces = DEFAULT_NAMESPACES;
@@ -109,6 +110,13 @@ public class JBITransportFactory extends AbstractTransportFactory implements Con
 
 
 
+    /**
+     * The asynchronous invocations sent through the conduits of this factory
+     */
+    public JBIPendingInvocations getPendingInvocations() {
+        return pendingInvocations;
+    }
+
     public DeliveryChannel getDeliveryChannel() {
         return deliveryChannel;
     }
@@ -124,7 +132,8 @@ public class JBITransportFactory extends AbstractTransportFactory implements Con
     }
 
     public Conduit getConduit(EndpointInfo endpointInfo, EndpointReferenceType target) throws IOException {
-        Conduit conduit = new JBIConduit(target, getDeliveryChannel());
+        JBIConduit conduit = new JBIConduit(target, getDeliveryChannel());
+        conduit.setPendingInvocations(pendingInvocations);
         Configurer configurer = bus.getExtension(Configurer.class);
         if (null != configurer) {
             configurer.configureBean(conduit);
@@ -21,7 +21,9 @@ import java.util.List;
 import org.apache.cxf.Bus;
 import org.apache.cxf.BusFactory;
 import org.apache.cxf.bus.spring.SpringBusFactory;
+import org.apache.cxf.transport.ConduitInitiatorManager;
 import org.apache.servicemix.common.DefaultComponent;
+import org.apache.servicemix.cxf.transport.jbi.JBITransportFactory;
 
 /**
  * 
@@ -93,6 +95,12 @@ public class CxfSeComponent extends DefaultComponent {
         // Bus should no longer be the thread default since the component's threads will end now
         if (bus != null) {
             BusFactory.setThreadDefaultBus(null);
+            // stop the timer of the asynchronous invocations, it would keep the component class loader
+            ConduitInitiatorManager cim = bus.getExtension(ConduitInitiatorManager.class);
+            if (cim != null) {
+                JBITransportFactory jbiTransportFactory = (JBITransportFactory) cim.getConduitInitiator(JBI_TRANSPORT_ID);
+                jbiTransportFactory.getPendingInvocations().shutdown();
+            }
         }
         super.doShutDown();
     }
@@ -466,6 +466,16 @@ public class CxfSeEndpoint extends ProviderEndpoint implements InterceptorProvid
      */
     @Override
     public void process(MessageExchange exchange) throws Exception {
+        if (exchange.getRole() == MessageExchange.Role.CONSUMER) {
+            // response to an asynchronous invocation done through a JBI proxy
+            if (!getJBITransportFactory().getPendingInvocations().handleResponse(exchange)
+                && exchange.getStatus() == ExchangeStatus.ACTIVE) {
+                // the invocation has already timed out or been cancelled
+                logger.warn("Received a response for an unknown asynchronous invocation: {}", exchange.getExchangeId());
+                done(exchange);
+            }
+            return;
+        }
         if (exchange.getStatus() != ExchangeStatus.ACTIVE) {
             return;
         }
@@ -502,9 +512,7 @@ public class CxfSeEndpoint extends ProviderEndpoint implements InterceptorProvid
 
                 }
             }
-            JBITransportFactory jbiTransportFactory = (JBITransportFactory)getBus()
-                .getExtension(ConduitInitiatorManager.class)
-                .getConduitInitiator(CxfSeComponent.JBI_TRANSPORT_ID);
+            JBITransportFactory jbiTransportFactory = getJBITransportFactory();
 
             exchange.setService(getPojoService());
             exchange.setInterfaceName(getPojoInterfaceName());
@@ -514,6 +522,7 @@ public class CxfSeEndpoint extends ProviderEndpoint implements InterceptorProvid
             jbiTransportFactory.setDeliveryChannel(dc);
 
             jbiDestination.setDeliveryChannel(dc);
+            JBIContext.setDeliveryChannel(dc);
             if (exchange.getStatus() == ExchangeStatus.ACTIVE) {
                 jbiDestination.getJBIDispatcherUtil().dispatch(exchange);
             }
@@ -524,6 +533,7 @@ public class CxfSeEndpoint extends ProviderEndpoint implements InterceptorProvid
 
         } finally {
             JBIContext.setMessageExchange(null);
+            JBIContext.setDeliveryChannel(null);
         }
     }
 
@@ -570,9 +580,10 @@ public class CxfSeEndpoint extends ProviderEndpoint implements InterceptorProvid
             endpoint.stop();
         }
         ReflectionUtils.callLifecycleMethod(getPojo(), PreDestroy.class);
+        JBITransportFactory jbiTransportFactory = getJBITransportFactory();
+        // responses to the pending asynchronous invocations can not be delivered anymore
+        jbiTransportFactory.getPendingInvocations().cancelPending(getContext().getDeliveryChannel());
         JBIDispatcherUtil.clean();
-        JBITransportFactory jbiTransportFactory = (JBITransportFactory)getBus()
-            .getExtension(ConduitInitiatorManager.class).getConduitInitiator(CxfSeComponent.JBI_TRANSPORT_ID);
         jbiTransportFactory.setDeliveryChannel(null);
         jbiTransportFactory.removeDestination(getPojoService().toString() + getPojoInterfaceName().toString());
         super.stop();
@@ -581,6 +592,11 @@ public class CxfSeEndpoint extends ProviderEndpoint implements InterceptorProvid
     protected Bus getBus() {
         return ((CxfSeComponent)getServiceUnit().getComponent()).getBus();
     }
+
+    private JBITransportFactory getJBITransportFactory() throws BusException {
+        return (JBITransportFactory)getBus()
+            .getExtension(ConduitInitiatorManager.class).getConduitInitiator(CxfSeComponent.JBI_TRANSPORT_ID);
+    }
     
     private void cleanUpDeadDestination() throws DeploymentException {
         JBITransportFactory jbiTransportFactory;
@@ -16,6 +16,7 @@
  */
 package org.apache.servicemix.cxfse;
 
+import javax.jbi.messaging.DeliveryChannel;
 import javax.jbi.messaging.MessageExchange;
 
 /**
@@ -27,6 +28,8 @@ public final class JBIContext {
 
     private static ThreadLocal<MessageExchange> exchanges = new ThreadLocal<MessageExchange>();
 
+    private static ThreadLocal<DeliveryChannel> channels = new ThreadLocal<DeliveryChannel>();
+
     private JBIContext() {
     }
 
@@ -43,4 +46,17 @@ public final class JBIContext {
         exchanges.set(exchange);
     }
 
+    /**
+     * Retrieve the DeliveryChannel of the cxf-se endpoint handling the current MessageExchange
+     *
+     * @return the endpoint DeliveryChannel or null
+     */
+    public static DeliveryChannel getDeliveryChannel() {
+        return channels.get();
+    }
+
+    protected static void setDeliveryChannel(DeliveryChannel channel) {
+        channels.set(channel);
+    }
+
 }
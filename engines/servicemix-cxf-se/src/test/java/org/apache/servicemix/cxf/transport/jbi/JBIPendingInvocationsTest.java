@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.servicemix.cxf.transport.jbi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jbi.messaging.DeliveryChannel;
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.Fault;
+import javax.jbi.messaging.InOut;
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.transport.MessageObserver;
+
+public class JBIPendingInvocationsTest extends TestCase {
+
+    private JBIPendingInvocations pending;
+    private DeliveryChannel channel;
+    private List<MessageExchange> sent;
+    private BlockingQueue<Message> received;
+    private JBIConduit conduit;
+
+    protected void setUp() throws Exception {
+        pending = new JBIPendingInvocations();
+        sent = Collections.synchronizedList(new ArrayList<MessageExchange>());
+        channel = (DeliveryChannel) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {DeliveryChannel.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("send".equals(method.getName())) {
+                        sent.add((MessageExchange) args[0]);
+                    }
+                    return null;
+                }
+            });
+        received = new LinkedBlockingQueue<Message>();
+        conduit = new JBIConduit(null, channel);
+        conduit.setPendingInvocations(pending);
+        conduit.setMessageObserver(new MessageObserver() {
+            public void onMessage(Message message) {
+                received.add(message);
+            }
+        });
+    }
+
+    protected void tearDown() throws Exception {
+        pending.shutdown();
+    }
+
+    public void testResponse() throws Exception {
+        JBIConduitOutputStream stream = createStream();
+        pending.add("exchange1", stream, 60000);
+        assertEquals(1, pending.size());
+
+        NormalizedMessage out = stub(NormalizedMessage.class);
+        out.setContent(new StreamSource(new ByteArrayInputStream("<response/>".getBytes("UTF-8"))));
+        InOut xchng = createExchange("exchange1");
+        xchng.setOutMessage(out);
+
+        assertTrue(pending.handleResponse(xchng));
+        assertEquals(0, pending.size());
+        Message in = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(in);
+        assertEquals("<response/>", read(in.getContent(InputStream.class)));
+        assertSame(xchng, in.get(MessageExchange.class));
+        // the response exchange is completed
+        assertEquals(ExchangeStatus.DONE, xchng.getStatus());
+        assertEquals(1, sent.size());
+        // a late duplicate is not handled again
+        assertFalse(pending.handleResponse(xchng));
+    }
+
+    public void testFault() throws Exception {
+        JBIConduitOutputStream stream = createStream();
+        pending.add("exchange1", stream, 60000);
+
+        Fault fault = stub(Fault.class);
+        fault.setContent(new StreamSource(new ByteArrayInputStream("<fault/>".getBytes("UTF-8"))));
+        InOut xchng = createExchange("exchange1");
+        xchng.setFault(fault);
+
+        assertTrue(pending.handleResponse(xchng));
+        Message in = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(in);
+        assertEquals("<fault/>", read(in.getContent(InputStream.class)));
+        assertNull(in.getContent(Exception.class));
+        assertEquals(0, pending.size());
+    }
+
+    public void testTimeout() throws Exception {
+        JBIConduitOutputStream stream = createStream();
+        pending.add("exchange1", stream, 100);
+
+        Message in = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(in);
+        Exception e = in.getContent(Exception.class);
+        assertTrue(e instanceof IOException);
+        assertTrue(e.getMessage().indexOf("exchange1") > 0);
+        assertEquals(0, pending.size());
+
+        // the response arriving after the timeout is not delivered
+        InOut xchng = createExchange("exchange1");
+        xchng.setOutMessage(stub(NormalizedMessage.class));
+        assertFalse(pending.handleResponse(xchng));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    public void testShutdown() throws Exception {
+        pending.add("exchange1", createStream(), 60000);
+        pending.add("exchange2", createStream(), 60000);
+
+        pending.shutdown();
+        assertEquals(0, pending.size());
+        for (int i = 0; i < 2; i++) {
+            Message in = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(in);
+            assertTrue(in.getContent(Exception.class) instanceof IOException);
+        }
+    }
+
+    private JBIConduitOutputStream createStream() {
+        Message message = new MessageImpl();
+        Exchange exchange = new ExchangeImpl();
+        exchange.setOutMessage(message);
+        message.setExchange(exchange);
+        return new JBIConduitOutputStream(message, channel, null, conduit);
+    }
+
+    private InOut createExchange(String id) {
+        InOut xchng = stub(InOut.class);
+        ((Stub) Proxy.getInvocationHandler(xchng)).values.put("ExchangeId", id);
+        xchng.setStatus(ExchangeStatus.ACTIVE);
+        return xchng;
+    }
+
+    private String read(InputStream in) throws IOException {
+        StringBuffer buffer = new StringBuffer();
+        int c;
+        while ((c = in.read()) != -1) {
+            buffer.append((char) c);
+        }
+        return buffer.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(JBIPendingInvocationsTest.class.getClassLoader(),
+                                          new Class[] {type}, new Stub());
+    }
+
+    /*
+     * Bean-like stub of the JBI interfaces: the setters store the values returned by the getters
+     */
+    private static class Stub implements InvocationHandler {
+
+        private final Map<String, Object> values = new HashMap<String, Object>();
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getPropertyNames".equals(name)) {
+                return Collections.emptySet();
+            }
+            if (name.startsWith("set") && args != null && args.length == 1) {
+                values.put(name.substring(3), args[0]);
+                return null;
+            }
+            if (name.startsWith("get") && (args == null || args.length == 0)) {
+                return values.get(name.substring(3));
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if (method.getReturnType() == boolean.class) {
+                return Boolean.FALSE;
+            }
+            return null;
+        }
+    }
+
+}
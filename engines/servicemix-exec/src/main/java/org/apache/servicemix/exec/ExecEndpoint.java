@@ -16,8 +16,14 @@
  */
 package org.apache.servicemix.exec;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOut;
@@ -34,7 +40,9 @@ import org.apache.servicemix.exec.marshaler.DefaultExecMarshaler;
 import org.apache.servicemix.exec.marshaler.ExecMarshalerSupport;
 import org.apache.servicemix.exec.marshaler.ExecRequest;
 import org.apache.servicemix.exec.marshaler.ExecResponse;
-import org.apache.servicemix.exec.utils.ExecUtils;
+import org.apache.servicemix.exec.utils.ExecCallback;
+import org.apache.servicemix.exec.utils.ExecEngine;
+import org.apache.servicemix.exec.utils.ExecException;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.w3c.dom.Document;
@@ -53,6 +61,13 @@ public class ExecEndpoint extends ProviderEndpoint {
 	private String command; // the command can be static (define in the descriptor) or provided in the incoming message
 	private Resource wsdl; // the abstract WSDL describing the endpoint behavior
 	private ExecMarshalerSupport marshaler = new DefaultExecMarshaler(); // the default exec marshaler
+	private ExecEngine engine = new ExecEngine(); // the engine executing the commands
+	private boolean streamOutput = false; // send the whole output exceeding the maximum output size as attachment
+	
+	// the temporary output files attached to the exchanges not yet completed
+	private ConcurrentMap<String, File> outputFiles = new ConcurrentHashMap<String, File>();
+	
+	public static final String OUTPUT_ATTACHMENT = "output"; // the name of the out message attachment containing the whole output
 
 	public String getCommand() {
 		return command;
@@ -107,6 +122,108 @@ public class ExecEndpoint extends ProviderEndpoint {
 		this.marshaler = marshaler;
 	}
 	
+	public int getMaxConcurrentExecutions() {
+	    return engine.getMaxConcurrentExecutions();
+	}
+	
+	/**
+	 * <p>
+	 * This attribute specifies the maximum number of commands executed at the same time by the endpoint.
+	 * It can't be changed once the endpoint is started.
+	 * </p>
+	 * <i>&nbsp;&nbsp;&nbsp;The default value is <code>16</code>.
+	 * 
+	 * @param maxConcurrentExecutions the maximum number of concurrent executions.
+	 */
+	public void setMaxConcurrentExecutions(int maxConcurrentExecutions) {
+	    engine.setMaxConcurrentExecutions(maxConcurrentExecutions);
+	}
+	
+	public int getMaxQueuedExecutions() {
+	    return engine.getMaxQueuedExecutions();
+	}
+	
+	/**
+	 * <p>
+	 * This attribute specifies the maximum number of commands waiting for execution. Further
+	 * exchanges are rejected with an error. It can't be changed once the endpoint is started.
+	 * </p>
+	 * <i>&nbsp;&nbsp;&nbsp;The default value is <code>64</code>.
+	 * 
+	 * @param maxQueuedExecutions the maximum number of waiting executions.
+	 */
+	public void setMaxQueuedExecutions(int maxQueuedExecutions) {
+	    engine.setMaxQueuedExecutions(maxQueuedExecutions);
+	}
+	
+	public long getTimeout() {
+	    return engine.getTimeout();
+	}
+	
+	/**
+	 * <p>
+	 * This attribute specifies the time in milliseconds after which a command is killed, if the
+	 * incoming message doesn't define a timeout.
+	 * </p>
+	 * <i>&nbsp;&nbsp;&nbsp;The default value is <code>0</code> (no timeout).
+	 * 
+	 * @param timeout the execution timeout.
+	 */
+	public void setTimeout(long timeout) {
+	    engine.setTimeout(timeout);
+	}
+	
+	public int getMaxOutputSize() {
+	    return engine.getMaxOutputSize();
+	}
+	
+	/**
+	 * <p>
+	 * This attribute specifies the number of bytes of the command output and error output sent in the
+	 * out message. The exceeding output is dropped, unless streamOutput is true.
+	 * </p>
+	 * <i>&nbsp;&nbsp;&nbsp;The default value is <code>1048576</code>.
+	 * 
+	 * @param maxOutputSize the maximum size of each output.
+	 */
+	public void setMaxOutputSize(int maxOutputSize) {
+	    engine.setMaxOutputSize(maxOutputSize);
+	}
+	
+	public String getOutputEncoding() {
+	    return engine.getOutputEncoding();
+	}
+	
+	/**
+	 * <p>
+	 * This attribute specifies the encoding of the command output and error output.
+	 * </p>
+	 * <i>&nbsp;&nbsp;&nbsp;The default value is the platform encoding.
+	 * 
+	 * @param outputEncoding the output encoding.
+	 */
+	public void setOutputEncoding(String outputEncoding) {
+	    engine.setOutputEncoding(outputEncoding);
+	}
+	
+	public boolean isStreamOutput() {
+	    return streamOutput;
+	}
+	
+	/**
+	 * <p>
+	 * This attribute specifies if a command output exceeding the maximum output size is kept in a
+	 * temporary file and sent whole as the <code>output</code> attachment of the out message.
+	 * </p>
+	 * <i>&nbsp;&nbsp;&nbsp;The default value is <code>false</code>.
+	 * 
+	 * @param streamOutput true to send the whole output as attachment.
+	 */
+	public void setStreamOutput(boolean streamOutput) {
+	    this.streamOutput = streamOutput;
+	    engine.setSpillOutput(streamOutput);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.apache.servicemix.common.endpoints.AbstractEndpoint#validate()
@@ -140,6 +257,26 @@ public class ExecEndpoint extends ProviderEndpoint {
 	    }
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.servicemix.common.endpoints.SimpleEndpoint#start()
+	 */
+	@Override
+	public synchronized void start() throws Exception {
+	    super.start();
+	    engine.start();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.servicemix.common.endpoints.SimpleEndpoint#stop()
+	 */
+	@Override
+	public synchronized void stop() throws Exception {
+	    engine.stop();
+	    super.stop();
+	}
+	
 	protected Document parse(InputStream is) throws IOException, SAXException, ParserConfigurationException {
 		DocumentBuilder builder = DOMUtil.getBuilder();
 		try {
@@ -164,9 +301,11 @@ public class ExecEndpoint extends ProviderEndpoint {
 		// sent by this component)
 		if (exchange.getStatus() == ExchangeStatus.DONE) {
 			// exchange is finished
+			deleteOutputFile(exchange);
 			return;
 		} else if (exchange.getStatus() == ExchangeStatus.ERROR) {
 			// exchange has been aborted with an exception
+			deleteOutputFile(exchange);
 			return;
 		} else {
 			// exchange is active
@@ -182,7 +321,7 @@ public class ExecEndpoint extends ProviderEndpoint {
 	 * @param exchange
 	 *            the <code>MessageExchange</code>.
 	 */
-	protected void handleProviderExchange(MessageExchange exchange)
+	protected void handleProviderExchange(final MessageExchange exchange)
 			throws Exception {
 		// fault message
 		if (exchange.getFault() != null) {
@@ -212,20 +351,80 @@ public class ExecEndpoint extends ProviderEndpoint {
 				throw new MessagingException("No command to execute.");
 			}
 
-			// execute the command
-			ExecResponse execResponse = ExecUtils.execute(execRequest);
-
-			if (exchange instanceof InOut) {
+			// execute the command, the exchange is answered by the engine thread once it is done
+			engine.execute(execRequest, new ExecCallback() {
+				public void executed(ExecResponse execResponse) {
+					try {
+						sendResponse(exchange, execResponse);
+					} catch (Exception exception) {
+						logger.error("Can't send the response of exchange {}", exchange.getExchangeId(), exception);
+						failed(new ExecException(exception));
+					}
+				}
+				public void failed(ExecException execException) {
+					try {
+						fail(exchange, execException);
+					} catch (MessagingException messagingException) {
+						logger.error("Can't send the error of exchange {}", exchange.getExchangeId(), messagingException);
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Sends the execution response in the out message of an InOut exchange, or completes the exchange.
+	 * </p>
+	 * 
+	 * @param exchange the <code>MessageExchange</code>.
+	 * @param execResponse the execution response.
+	 */
+	private void sendResponse(MessageExchange exchange, ExecResponse execResponse) throws Exception {
+		if (exchange instanceof InOut) {
+			if (execResponse.getOutputFile() != null) {
+				// the temporary file is deleted once the exchange is completed
+				outputFiles.put(exchange.getExchangeId(), execResponse.getOutputFile());
+			}
+			boolean sent = false;
+			try {
 				// pushes the execution output in out message
 				NormalizedMessage out = exchange.createMessage();
 				// marshal into the out message
 				marshaler.marshal(execResponse, out);
+				if (execResponse.getOutputFile() != null) {
+					// the whole output is streamed from the temporary file
+					out.addAttachment(OUTPUT_ATTACHMENT, new DataHandler(new FileDataSource(execResponse.getOutputFile())));
+				}
 				exchange.setMessage(out, "out");
 				// send the message exchange
 				send(exchange);
-			} else {
-				done(exchange);
+				sent = true;
+			} finally {
+				if (!sent) {
+					// the exchange won't be completed, nothing else would delete the temporary file
+					deleteOutputFile(exchange);
+				}
 			}
+		} else {
+			if (execResponse.getOutputFile() != null) {
+				execResponse.getOutputFile().delete();
+			}
+			done(exchange);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Deletes the temporary output file attached to a completed exchange.
+	 * </p>
+	 * 
+	 * @param exchange the completed <code>MessageExchange</code>.
+	 */
+	private void deleteOutputFile(MessageExchange exchange) {
+		File outputFile = outputFiles.remove(exchange.getExchangeId());
+		if (outputFile != null && !outputFile.delete()) {
+			logger.warn("Can't delete the temporary output file {}", outputFile);
 		}
 	}
 }
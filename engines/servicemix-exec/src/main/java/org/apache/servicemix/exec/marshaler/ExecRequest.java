@@ -35,6 +35,7 @@ public class ExecRequest {
     
     private String command; // the system command
     private List<String> arguments = new LinkedList<String>(); // the command arguments
+    private long timeout; // the execution timeout in milliseconds
     
     public String getCommand() {
         return this.command;
@@ -68,5 +69,22 @@ public class ExecRequest {
     public void setArguments(List<String> arguments) {
         this.arguments = arguments;
     }
+    
+    public long getTimeout() {
+        return this.timeout;
+    }
+    
+    /**
+     * <p>
+     * This attribute defines the time in milliseconds after which the system command is killed.
+     * If not defined, the endpoint timeout is used.
+     * </p>
+     * 
+     * @param timeout the execution timeout.
+     */
+    @XmlElement
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
 
 }
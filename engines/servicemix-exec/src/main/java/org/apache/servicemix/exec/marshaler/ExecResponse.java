@@ -16,8 +16,11 @@
  */
 package org.apache.servicemix.exec.marshaler;
 
+import java.io.File;
+
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 /**
  * <p>
@@ -37,6 +40,8 @@ public class ExecResponse {
     private StringBuffer outputData;
     private StringBuffer errorData;
     
+    private File outputFile;
+    
     /**
      * <p>
      * Default constructor.
@@ -143,5 +148,22 @@ public class ExecResponse {
     public void setErrorData(StringBuffer errorData) {
         this.errorData = errorData;
     }
+    
+    public File getOutputFile() {
+        return this.outputFile;
+    }
+    
+    /**
+     * <p>
+     * This attribute defines the temporary file containing the whole system command
+     * execution output, when it exceeds the output buffer size.
+     * </p>
+     * 
+     * @param outputFile the system command execution output file.
+     */
+    @XmlTransient
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
 
 }
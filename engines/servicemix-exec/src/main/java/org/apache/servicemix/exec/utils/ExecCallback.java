@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.exec.utils;
+
+import org.apache.servicemix.exec.marshaler.ExecResponse;
+
+/**
+ * Notified of the end of a command executed asynchronously by an {@link ExecEngine}.
+ * 
+ * @author jbonofre
+ */
+public interface ExecCallback {
+
+    /**
+     * <p>
+     * Called once the command has been executed.
+     * </p>
+     * 
+     * @param execResponse the execution response.
+     */
+    void executed(ExecResponse execResponse);
+
+    /**
+     * <p>
+     * Called if the command execution failed or timed out.
+     * </p>
+     * 
+     * @param execException the execution failure.
+     */
+    void failed(ExecException execException);
+
+}
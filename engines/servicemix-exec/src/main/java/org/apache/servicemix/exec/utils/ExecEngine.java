@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.exec.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.servicemix.exec.marshaler.ExecRequest;
+import org.apache.servicemix.exec.marshaler.ExecResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Executes system commands with a bounded number of concurrent executions.
+ * The commands are executed by a thread pool of the engine, created when the
+ * engine is started, and further commands are queued up to a bounded number
+ * or rejected, so the caller never waits to be admitted.
+ * The command outputs are drained by a shared thread pool into buffers of
+ * limited size, the standard output exceeding this size can be kept in a
+ * temporary file.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class ExecEngine {
+
+    private final static Logger logger = LoggerFactory.getLogger(ExecEngine.class);
+
+    // the threads draining the command outputs, shared by all engines
+    private final static ExecutorService DRAINERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "servicemix-exec-drainer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private int maxConcurrentExecutions = 16; // the number of commands executed at the same time
+    private int maxQueuedExecutions = 64; // the number of commands waiting for execution
+    private long timeout = 0; // the default execution timeout in milliseconds, 0 for no timeout
+    private int maxOutputSize = 1024 * 1024; // the number of bytes of each output kept in memory
+    private boolean spillOutput = false; // keep the standard output exceeding maxOutputSize in a temporary file
+    private String outputEncoding = Charset.defaultCharset().name(); // the encoding of the command outputs
+
+    private ThreadPoolExecutor executor; // the threads executing the commands, guarded by this
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * <p>
+     * Starts the threads executing the commands. The engine is started by its first execution
+     * if it hasn't been started before, its concurrency can't be changed until it is stopped.
+     * </p>
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            BlockingQueue<Runnable> queue = maxQueuedExecutions > 0
+                ? new ArrayBlockingQueue<Runnable>(maxQueuedExecutions) : new SynchronousQueue<Runnable>();
+            executor = new ThreadPoolExecutor(maxConcurrentExecutions, maxConcurrentExecutions, 60, TimeUnit.SECONDS, queue, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "servicemix-exec-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * <p>
+     * Stops the engine, the commands already admitted are still executed.
+     * </p>
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        start();
+        return executor;
+    }
+
+    /**
+     * <p>
+     * Executes a command and returns the output and error buffer and also the
+     * return value, waiting for the end of the execution.
+     * </p>
+     * 
+     * @param execRequest the exec request.
+     * @return the execution response.
+     * @throws ExecException in case of execution failure, timeout or if too many executions are pending.
+     */
+    public ExecResponse execute(ExecRequest execRequest) throws ExecException {
+        final CountDownLatch executed = new CountDownLatch(1);
+        final ExecResponse[] response = new ExecResponse[1];
+        final ExecException[] failure = new ExecException[1];
+        execute(execRequest, new ExecCallback() {
+            public void executed(ExecResponse execResponse) {
+                response[0] = execResponse;
+                executed.countDown();
+            }
+            public void failed(ExecException execException) {
+                failure[0] = execException;
+                executed.countDown();
+            }
+        });
+        try {
+            executed.await();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new ExecException("Interrupted while waiting for command " + execRequest.getCommand(), interruptedException);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return response[0];
+    }
+
+    /**
+     * <p>
+     * Executes a command asynchronously. The command is rejected at once if the maximum
+     * number of executions are already pending, otherwise the callback is notified from
+     * a thread of the engine.
+     * </p>
+     * 
+     * @param execRequest the exec request.
+     * @param callback the callback notified of the execution end.
+     * @throws ExecException if too many executions are pending or the engine is stopped.
+     */
+    public void execute(final ExecRequest execRequest, final ExecCallback callback) throws ExecException {
+        pending.incrementAndGet();
+        try {
+            getExecutor().execute(new Runnable() {
+                public void run() {
+                    ExecResponse execResponse = null;
+                    ExecException execException = null;
+                    try {
+                        execResponse = doExecute(execRequest);
+                    } catch (ExecException e) {
+                        execException = e;
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                    if (execException != null) {
+                        callback.failed(execException);
+                    } else {
+                        callback.executed(execResponse);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            pending.decrementAndGet();
+            throw new ExecException("Too many pending executions, command " + execRequest.getCommand() + " rejected.", rejectedExecutionException);
+        }
+    }
+
+    private ExecResponse doExecute(ExecRequest execRequest) throws ExecException {
+        ExecResponse execResponse = new ExecResponse();
+
+        String[] shellCommand = ExecUtils.getShellCommand(execRequest);
+        String exec = shellCommand[shellCommand.length - 1];
+        logger.info("Execute command {}", exec);
+
+        long commandTimeout = execRequest.getTimeout() > 0 ? execRequest.getTimeout() : timeout;
+        Process process = null;
+        OutputDrainer outputDrainer = null;
+        Future<Void> error = null;
+        Future<Void> output = null;
+        try {
+            // remember the start time
+            execResponse.setStartTime(System.currentTimeMillis());
+
+            // launch the system command
+            process = new ProcessBuilder(shellCommand).start();
+            process.getOutputStream().close();
+
+            // drain the error and output streams
+            OutputDrainer errorDrainer = new OutputDrainer(process.getErrorStream(), false);
+            outputDrainer = new OutputDrainer(process.getInputStream(), spillOutput);
+            error = DRAINERS.submit(errorDrainer);
+            output = DRAINERS.submit(outputDrainer);
+
+            // wait the end of the outputs, then of the process
+            long deadline = commandTimeout > 0 ? System.currentTimeMillis() + commandTimeout : 0;
+            await(output, deadline);
+            await(error, deadline);
+            int exitValue = waitFor(process, deadline);
+
+            // remember the end time
+            execResponse.setEndTime(System.currentTimeMillis());
+            execResponse.setExecutionDuration(execResponse.getEndTime() - execResponse.getStartTime());
+
+            // store the exit code and outputs
+            execResponse.setExitCode(exitValue);
+            outputDrainer.appendTo(execResponse.getOutputData());
+            errorDrainer.appendTo(execResponse.getErrorData());
+            execResponse.setOutputFile(outputDrainer.getFile());
+
+            if (outputDrainer.isTruncated() || errorDrainer.isTruncated()) {
+                logger.warn("The output of command {} exceeds {} bytes and has been truncated", exec, maxOutputSize);
+            }
+            if (exitValue != 0) {
+                // an error occured
+                logger.error("Command {} execution failed with return code {}", exec, exitValue);
+            } else {
+                // command was successful
+                logger.debug("Command {} execution completed", exec);
+            }
+            return execResponse;
+        } catch (TimeoutException timeoutException) {
+            logger.error("Command {} execution timed out after {} ms, killing it.", exec, commandTimeout);
+            abort(process, outputDrainer, output, error);
+            throw new ExecException("Command " + exec + " execution timed out after " + commandTimeout + " ms.", timeoutException);
+        } catch (Exception exception) {
+            logger.error("Command {} execution failed.", exec, exception);
+            abort(process, outputDrainer, output, error);
+            throw new ExecException("Command " + exec + " execution failed.", exception);
+        }
+    }
+
+    private void await(Future<Void> future, long deadline) throws Exception {
+        try {
+            if (deadline == 0) {
+                future.get();
+            } else {
+                future.get(Math.max(deadline - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS);
+            }
+        } catch (ExecutionException executionException) {
+            logger.warn("System command stream drainer error : {}", executionException.getCause().getMessage());
+        }
+    }
+
+    private int waitFor(Process process, long deadline) throws InterruptedException, TimeoutException {
+        if (deadline == 0) {
+            return process.waitFor();
+        }
+        // Process.waitFor() has no timeout, so poll the exit value until the deadline
+        long delay = 1;
+        while (true) {
+            try {
+                return process.exitValue();
+            } catch (IllegalThreadStateException stillRunning) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                delay = Math.min(delay * 2, 100);
+                Thread.sleep(Math.min(delay, remaining));
+            }
+        }
+    }
+
+    private void abort(Process process, OutputDrainer outputDrainer, Future<Void> output, Future<Void> error) {
+        if (process != null) {
+            process.destroy();
+            // only the shell is killed, the commands it started may still hold the pipes: closing
+            // them ends the drainers at the next output and makes further writes fail
+            close(process.getInputStream());
+            close(process.getErrorStream());
+            close(process.getOutputStream());
+        }
+        if (output != null) {
+            output.cancel(true);
+        }
+        if (error != null) {
+            error.cancel(true);
+        }
+        if (outputDrainer != null) {
+            // the drainer may still be writing, the file is deleted once it is done
+            outputDrainer.deleteFile();
+        }
+    }
+
+    private void close(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException ioException) {
+            logger.debug("Can't close the command stream", ioException);
+        }
+    }
+
+    public int getMaxConcurrentExecutions() {
+        return maxConcurrentExecutions;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the maximum number of commands executed at the same time.
+     * It can only be set while the engine is stopped.
+     * </p>
+     * 
+     * @param maxConcurrentExecutions the maximum number of concurrent executions.
+     */
+    public synchronized void setMaxConcurrentExecutions(int maxConcurrentExecutions) {
+        checkStopped();
+        this.maxConcurrentExecutions = maxConcurrentExecutions;
+    }
+
+    public int getMaxQueuedExecutions() {
+        return maxQueuedExecutions;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the maximum number of commands waiting for execution,
+     * further commands are rejected. It can only be set while the engine is stopped.
+     * </p>
+     * 
+     * @param maxQueuedExecutions the maximum number of waiting executions.
+     */
+    public synchronized void setMaxQueuedExecutions(int maxQueuedExecutions) {
+        checkStopped();
+        this.maxQueuedExecutions = maxQueuedExecutions;
+    }
+
+    private void checkStopped() {
+        if (executor != null) {
+            throw new IllegalStateException("The concurrency of the exec engine can't be changed once it is started");
+        }
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the time in milliseconds after which a command is killed,
+     * if the request doesn't define its own timeout. 0 means no timeout.
+     * </p>
+     * 
+     * @param timeout the execution timeout.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getMaxOutputSize() {
+        return maxOutputSize;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the number of bytes of the standard and error outputs kept in memory.
+     * </p>
+     * 
+     * @param maxOutputSize the maximum size of each output in memory.
+     */
+    public void setMaxOutputSize(int maxOutputSize) {
+        this.maxOutputSize = maxOutputSize;
+    }
+
+    public boolean isSpillOutput() {
+        return spillOutput;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies if the whole standard output is written to a temporary file
+     * when it exceeds the maximum output size, instead of being truncated.
+     * </p>
+     * 
+     * @param spillOutput true to keep the whole standard output in a temporary file.
+     */
+    public void setSpillOutput(boolean spillOutput) {
+        this.spillOutput = spillOutput;
+    }
+
+    public String getOutputEncoding() {
+        return outputEncoding;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the encoding used to decode the standard and error outputs,
+     * by default the platform encoding which the commands use.
+     * </p>
+     * 
+     * @param outputEncoding the name of the output encoding.
+     */
+    public void setOutputEncoding(String outputEncoding) {
+        // fail on an unknown encoding when the endpoint is configured, not on the first execution
+        this.outputEncoding = Charset.forName(outputEncoding).name();
+    }
+
+    /**
+     * <p>
+     * Number of executions running or waiting.
+     * </p>
+     * 
+     * @return the number of pending executions.
+     */
+    public int getPendingExecutions() {
+        return pending.get();
+    }
+
+    /**
+     * <p>
+     * Drains a command output into a buffer of limited size, and optionally into a temporary file.
+     * </p>
+     */
+    private class OutputDrainer implements Callable<Void> {
+
+        private final InputStream in;
+        private final boolean spill;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private File file;
+        private boolean truncated;
+        private boolean done;
+        private boolean discarded;
+
+        OutputDrainer(InputStream in, boolean spill) {
+            this.in = in;
+            this.spill = spill;
+        }
+
+        public Void call() throws IOException {
+            OutputStream fileStream = null;
+            try {
+                byte[] bytes = new byte[8192];
+                int read;
+                while ((read = in.read(bytes)) != -1) {
+                    int kept = Math.min(read, maxOutputSize - buffer.size());
+                    if (kept > 0) {
+                        buffer.write(bytes, 0, kept);
+                    }
+                    if (kept < read) {
+                        truncated = true;
+                        if (spill && fileStream == null) {
+                            file = File.createTempFile("servicemix-exec", ".out");
+                            fileStream = new FileOutputStream(file);
+                            buffer.writeTo(fileStream);
+                            fileStream.write(bytes, kept, read - kept);
+                        } else if (fileStream != null) {
+                            fileStream.write(bytes, 0, read);
+                        }
+                    }
+                }
+            } finally {
+                try {
+                    in.close();
+                    if (fileStream != null) {
+                        fileStream.close();
+                    }
+                } finally {
+                    finished();
+                }
+            }
+            return null;
+        }
+
+        private synchronized void finished() {
+            done = true;
+            if (discarded && file != null) {
+                file.delete();
+            }
+        }
+
+        void appendTo(StringBuffer data) throws UnsupportedEncodingException {
+            // new String(byte[], Charset) is not available on Java 5
+            data.append(new String(buffer.toByteArray(), outputEncoding));
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        synchronized void deleteFile() {
+            discarded = true;
+            if (done && file != null) {
+                file.delete();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.exec.tests.utils;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.exec.marshaler.ExecRequest;
+import org.apache.servicemix.exec.marshaler.ExecResponse;
+import org.apache.servicemix.exec.utils.ExecCallback;
+import org.apache.servicemix.exec.utils.ExecEngine;
+import org.apache.servicemix.exec.utils.ExecException;
+
+/**
+ * <p>
+ * Unit tests on the exec engine.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class ExecEngineTest extends TestCase {
+    
+    private ExecEngine engine;
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() throws Exception {
+        this.engine = new ExecEngine();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    public void tearDown() throws Exception {
+        this.engine.stop();
+    }
+    
+    /**
+     * <p>
+     * Test the execution of a simple command.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testExecute() throws Exception {
+        ExecResponse response = engine.execute(createRequest("echo", "hello"));
+        assertEquals(0, response.getExitCode());
+        assertEquals("hello", response.getOutputData().toString().trim());
+        assertNull(response.getOutputFile());
+    }
+    
+    /**
+     * <p>
+     * Test that a command is killed once its timeout is reached.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testTimeout() throws Exception {
+        if (isWindows()) {
+            return;
+        }
+        ExecRequest request = createRequest("sleep", "10");
+        request.setTimeout(200);
+        long start = System.currentTimeMillis();
+        try {
+            engine.execute(request);
+            fail("The command should have timed out");
+        } catch (ExecException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(0, engine.getPendingExecutions());
+    }
+    
+    /**
+     * <p>
+     * Test that the commands started by the shell stop writing once their command timed out.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testTimeoutClosesStreams() throws Exception {
+        if (isWindows()) {
+            return;
+        }
+        File marker = File.createTempFile("servicemix-exec", ".marker");
+        try {
+            // the subshell and cat outlive the killed shell
+            ExecRequest request = createRequest("(while echo x; do echo x >> " + marker.getAbsolutePath() + "; sleep 0.1; done)", "| cat");
+            request.setTimeout(300);
+            try {
+                engine.execute(request);
+                fail("The command should have timed out");
+            } catch (ExecException e) {
+                // expected
+            }
+            Thread.sleep(1000);
+            long length = marker.length();
+            Thread.sleep(1000);
+            assertEquals(length, marker.length());
+        } finally {
+            marker.delete();
+        }
+    }
+    
+    /**
+     * <p>
+     * Test that the commands exceeding the concurrency are rejected without waiting.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testRejectedWithoutWaiting() throws Exception {
+        if (isWindows()) {
+            return;
+        }
+        engine.setMaxConcurrentExecutions(1);
+        engine.setMaxQueuedExecutions(0);
+        final CountDownLatch executed = new CountDownLatch(1);
+        engine.execute(createRequest("sleep", "2"), new ExecCallback() {
+            public void executed(ExecResponse execResponse) {
+                executed.countDown();
+            }
+            public void failed(ExecException execException) {
+            }
+        });
+        long start = System.currentTimeMillis();
+        try {
+            engine.execute(createRequest("echo", "hello"));
+            fail("The command should have been rejected");
+        } catch (ExecException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, engine.getPendingExecutions());
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+    }
+    
+    /**
+     * <p>
+     * Test that the concurrency can only be changed while the engine is stopped.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testConcurrencyFixedOnceStarted() throws Exception {
+        engine.start();
+        try {
+            engine.setMaxConcurrentExecutions(1);
+            fail("The concurrency should not be changed once the engine is started");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(16, engine.getMaxConcurrentExecutions());
+        engine.stop();
+        engine.setMaxConcurrentExecutions(1);
+        assertEquals(0, engine.execute(createRequest("echo", "hello")).getExitCode());
+    }
+    
+    /**
+     * <p>
+     * Test the limitation of the output kept in memory, and the temporary file containing the whole output.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testOutputLimit() throws Exception {
+        engine.setMaxOutputSize(4);
+        ExecResponse response = engine.execute(createRequest("echo", "0123456789"));
+        assertEquals("0123", response.getOutputData().toString());
+        assertNull(response.getOutputFile());
+        
+        engine.setSpillOutput(true);
+        response = engine.execute(createRequest("echo", "0123456789"));
+        assertEquals("0123", response.getOutputData().toString());
+        File outputFile = response.getOutputFile();
+        assertNotNull(outputFile);
+        assertTrue(outputFile.length() >= 10);
+        assertTrue(outputFile.delete());
+    }
+    
+    private ExecRequest createRequest(String command, String argument) {
+        ExecRequest request = new ExecRequest();
+        request.setCommand(command);
+        request.getArguments().add(argument);
+        return request;
+    }
+    
+    private boolean isWindows() {
+        return System.getProperty("os.name").startsWith("Windows");
+    }
+
+}
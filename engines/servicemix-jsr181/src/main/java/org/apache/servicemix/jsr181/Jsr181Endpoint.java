@@ -45,6 +45,7 @@ import javax.wsdl.xml.WSDLReader;
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
 
 import org.apache.servicemix.common.EndpointDeliveryChannel;
 import org.apache.servicemix.common.JbiConstants;
@@ -52,6 +53,7 @@ import org.apache.servicemix.common.ManagementSupport;
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
 import org.apache.servicemix.common.tools.wsdl.WSDLFlattener;
 import org.apache.servicemix.jbi.api.Container;
+import org.apache.servicemix.jbi.jaxp.BytesSource;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.jsr181.xfire.JbiFaultSerializer;
@@ -504,7 +506,7 @@ public class Jsr181Endpoint extends ProviderEndpoint {
                     fault = exchange.createFault();
                     exchange.setFault(fault);
                 }
-                fault.setContent(new StringSource(out.toString(charSet)));
+                fault.setContent(createContent(out, charSet));
                 XFireFault xFault = (XFireFault) ctx.getExchange().getFaultMessage().getBody();
                 fault.setProperty(SOAP_FAULT_CODE, xFault.getFaultCode());
                 fault.setProperty(SOAP_FAULT_REASON, xFault.getReason());
@@ -524,7 +526,7 @@ public class Jsr181Endpoint extends ProviderEndpoint {
                         outMsg.addAttachment(att.getId(), att.getDataHandler());
                     }
                 }
-                outMsg.setContent(new StringSource(out.toString(charSet)));
+                outMsg.setContent(createContent(out, charSet));
             }
             if (exchange.isTransacted() && Boolean.TRUE.equals(exchange.getProperty(JbiConstants.SEND_SYNC))) {
                 sendSync(exchange);
@@ -536,6 +538,17 @@ public class Jsr181Endpoint extends ProviderEndpoint {
         }
     }
 
+    /**
+     * Wraps the bytes written by the XFire stax writer without decoding them
+     * to a string, unless the encoding can not be detected from the bytes.
+     */
+    protected Source createContent(ByteArrayOutputStream out, String charSet) throws IOException {
+        if (charSet == null || "UTF-8".equalsIgnoreCase(charSet)) {
+            return new BytesSource(out.toByteArray());
+        }
+        return new StringSource(out.toString(charSet));
+    }
+
     public XFire getXFire() {
         Jsr181Component component = (Jsr181Component) this.serviceUnit.getComponent();
         return component.getXFire();
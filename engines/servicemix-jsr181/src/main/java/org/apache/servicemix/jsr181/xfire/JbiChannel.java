@@ -16,7 +16,6 @@
  */
 package org.apache.servicemix.jsr181.xfire;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -32,8 +31,8 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
 
+import org.apache.servicemix.jbi.jaxp.BytesSource;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.jbi.helper.MessageExchangePattern;
@@ -174,7 +173,8 @@ public class JbiChannel extends AbstractChannel {
         serializer.writeMessage(message, writer, context);
         writer.close();
         outStream.close();
-        return new StreamSource(new ByteArrayInputStream(outStream.toByteArray()));
+        // unlike a stream source, the bytes source can be read again by the target
+        return new BytesSource(outStream.toByteArray());
     }
     
 }
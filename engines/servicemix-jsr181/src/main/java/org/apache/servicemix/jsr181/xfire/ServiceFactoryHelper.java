@@ -19,6 +19,7 @@ package org.apache.servicemix.jsr181.xfire;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.codehaus.xfire.XFire;
 import org.codehaus.xfire.aegis.AegisBindingProvider;
@@ -44,6 +45,9 @@ public final class ServiceFactoryHelper {
 
     private static final Map<String, TypeMappingRegistry> KNOWN_TYPE_MAPPINGS;
     private static final Map<String, WebAnnotations> KNOWN_ANNOTATIONS;
+
+    // the annotations detected on each class, weak so that undeployed classes can go
+    private static final Map<Class, String> DETECTED_ANNOTATIONS = new WeakHashMap<Class, String>();
     
     private ServiceFactoryHelper() {
     }
@@ -71,6 +75,11 @@ public final class ServiceFactoryHelper {
         }
     }
     
+    /**
+     * Creates the service factory for a service class.  A new factory is created for
+     * each service: the binding providers keep the types of the services they create,
+     * so a shared factory would keep the classes of undeployed service units.
+     */
     @SuppressWarnings("unchecked")
     public static ObjectServiceFactory findServiceFactory(
                         XFire xfire,
@@ -93,14 +102,9 @@ public final class ServiceFactoryHelper {
                 }
             }
         } else {
-            for (Iterator it = KNOWN_ANNOTATIONS.entrySet().iterator(); it.hasNext();) {
-                Map.Entry entry = (Map.Entry) it.next();
-                WebAnnotations w = (WebAnnotations) entry.getValue();
-                if (w.hasWebServiceAnnotation(serviceClass)) {
-                    selectedAnnotations = (String) entry.getKey();
-                    wa = w;
-                    break;
-                }
+            selectedAnnotations = detectAnnotations(serviceClass);
+            if (selectedAnnotations != null) {
+                wa = (WebAnnotations) KNOWN_ANNOTATIONS.get(selectedAnnotations);
             }
         }
         // Determine TypeMappingRegistry
@@ -115,7 +119,36 @@ public final class ServiceFactoryHelper {
         if (tm == null) {
             throw new Exception("Unrecognized typeMapping: " + typeMapping);
         }
-        // Create factory
+        return createServiceFactory(xfire, wa, selectedAnnotations, selectedTypeMapping, tm);
+    }
+
+    private static String detectAnnotations(Class serviceClass) {
+        synchronized (DETECTED_ANNOTATIONS) {
+            if (DETECTED_ANNOTATIONS.containsKey(serviceClass)) {
+                return DETECTED_ANNOTATIONS.get(serviceClass);
+            }
+        }
+        String selectedAnnotations = null;
+        for (Iterator it = KNOWN_ANNOTATIONS.entrySet().iterator(); it.hasNext();) {
+            Map.Entry entry = (Map.Entry) it.next();
+            WebAnnotations w = (WebAnnotations) entry.getValue();
+            if (w.hasWebServiceAnnotation(serviceClass)) {
+                selectedAnnotations = (String) entry.getKey();
+                break;
+            }
+        }
+        synchronized (DETECTED_ANNOTATIONS) {
+            DETECTED_ANNOTATIONS.put(serviceClass, selectedAnnotations);
+        }
+        return selectedAnnotations;
+    }
+
+    private static ObjectServiceFactory createServiceFactory(
+                        XFire xfire,
+                        WebAnnotations wa,
+                        String selectedAnnotations,
+                        String selectedTypeMapping,
+                        TypeMappingRegistry tm) {
         ObjectServiceFactory factory = null;
         if (wa == null) {
             factory = new ObjectServiceFactory(xfire.getTransportManager(),
@@ -18,6 +18,10 @@ package org.apache.servicemix.jsr181;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOut;
@@ -126,6 +130,83 @@ public class Jsr181ComponentTest extends TestCase {
         }
     }
     
+    /**
+     * Simple benchmark logging the round trip time of 1 KB and 1 MB echo payloads.
+     * It has not been run yet, so there are no reference timings to compare with.
+     */
+    public void testEchoPayloadSizes() throws Exception {
+        Jsr181Component component = new Jsr181Component();
+        container.activateComponent(component, "JSR181Component");
+
+        // Start container
+        container.start();
+        
+        // Deploy SU
+        component.getServiceUnitManager().deploy("good2", getServiceUnitPath("good2"));
+        component.getServiceUnitManager().init("good2", getServiceUnitPath("good2"));
+        component.getServiceUnitManager().start("good2");
+
+        DefaultServiceMixClient client = new DefaultServiceMixClient(container);
+        int[] sizes = new int[] {1024, 1024 * 1024};
+        for (int i = 0; i < sizes.length; i++) {
+            StringBuffer payload = new StringBuffer(sizes[i]);
+            while (payload.length() < sizes[i]) {
+                payload.append("0123456789abcdef");
+            }
+            // Call it
+            long start = System.currentTimeMillis();
+            InOut me = client.createInOutExchange();
+            me.setInterfaceName(new QName("http://test", "EchoService2PortType"));
+            me.getInMessage().setContent(new StringSource("<echo xmlns='http://test'><in0>" + payload + "</in0></echo>"));
+            client.sendSync(me);
+            assertEquals(ExchangeStatus.ACTIVE, me.getStatus());
+            String out = new SourceTransformer().contentToString(me.getOutMessage());
+            client.done(me);
+            logger.info("Echoed {} bytes in {} ms", sizes[i], System.currentTimeMillis() - start);
+            assertTrue(out.indexOf(payload.toString()) > 0);
+        }
+    }
+    
+    public void testConcurrentDeployments() throws Exception {
+        final Jsr181Component component1 = new Jsr181Component();
+        container.activateComponent(component1, "JSR181Component1");
+        final Jsr181Component component2 = new Jsr181Component();
+        container.activateComponent(component2, "JSR181Component2");
+        container.start();
+
+        // Deploy two SUs at the same time
+        final CountDownLatch ready = new CountDownLatch(1);
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread[] threads = new Thread[] {
+            new Deployment(component1, "good1", ready, errors),
+            new Deployment(component2, "good2", ready, errors)
+        };
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].start();
+        }
+        ready.countDown();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join(60000);
+            assertFalse("Deployment did not complete", threads[i].isAlive());
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+
+        // Call both services
+        DefaultServiceMixClient client = new DefaultServiceMixClient(container);
+        String[] interfaces = new String[] {"EchoServicePortType", "EchoService2PortType"};
+        for (int i = 0; i < interfaces.length; i++) {
+            InOut me = client.createInOutExchange();
+            me.setInterfaceName(new QName("http://test", interfaces[i]));
+            me.getInMessage().setContent(new StringSource("<echo xmlns='http://test'><in0>world</in0></echo>"));
+            client.sendSync(me);
+            assertEquals(ExchangeStatus.ACTIVE, me.getStatus());
+            assertTrue(new SourceTransformer().contentToString(me.getOutMessage()).indexOf("world") > 0);
+            client.done(me);
+        }
+    }
+    
     public void testDeployUndeploy() throws Exception {
         Jsr181Component component = new Jsr181Component();
         container.activateComponent(component, "JSR181Component");
@@ -212,6 +293,31 @@ public class Jsr181ComponentTest extends TestCase {
         }
     }
     
+    private class Deployment extends Thread {
+        private final Jsr181Component component;
+        private final String name;
+        private final CountDownLatch ready;
+        private final List<Exception> errors;
+
+        Deployment(Jsr181Component component, String name, CountDownLatch ready, List<Exception> errors) {
+            this.component = component;
+            this.name = name;
+            this.ready = ready;
+            this.errors = errors;
+        }
+
+        public void run() {
+            try {
+                ready.await();
+                component.getServiceUnitManager().deploy(name, getServiceUnitPath(name));
+                component.getServiceUnitManager().init(name, getServiceUnitPath(name));
+                component.getServiceUnitManager().start(name);
+            } catch (Exception e) {
+                errors.add(e);
+            }
+        }
+    }
+    
     protected String getServiceUnitPath(String name) {
         URL url = getClass().getClassLoader().getResource(name + "/xbean.xml");
         File path = new File(url.getFile());
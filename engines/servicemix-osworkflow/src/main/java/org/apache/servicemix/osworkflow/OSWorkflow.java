@@ -18,8 +18,10 @@ package org.apache.servicemix.osworkflow;
 
 import java.util.Map;
 
+import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.RobustInOnly;
 
 
@@ -28,7 +30,6 @@ import com.opensymphony.workflow.InvalidRoleException;
 import com.opensymphony.workflow.Workflow;
 import com.opensymphony.workflow.WorkflowException;
 import com.opensymphony.workflow.basic.BasicWorkflow;
-import com.opensymphony.workflow.config.DefaultConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +46,10 @@ public class OSWorkflow implements Runnable {
     public static final String KEY_CALLER = "caller";
 
     public static final String KEY_ASYNC_PROCESSING = "asynchronous";
+
+    public static final String KEY_WORKFLOW = "workflow";
+
+    public static final String KEY_RESPONSE = "response";
     
     private Workflow osWorkflowInstance;
 
@@ -66,6 +71,18 @@ public class OSWorkflow implements Runnable {
 
     private MessageExchange exchange;
 
+    private boolean started;
+
+    // the exchange the workflow is waiting for, the response not yet handed to
+    // an action and whether the workflow has left its thread, guarded by this
+    private MessageExchange pendingExchange;
+
+    private MessageExchange response;
+
+    private boolean suspended;
+
+    private boolean ended;
+
     /**
      * creates and initializes a new workflow object
      * 
@@ -99,6 +116,93 @@ public class OSWorkflow implements Runnable {
         this.map.put(KEY_IN_MESSAGE, this.exchange.getMessage("in"));
         this.map.put(KEY_EXCHANGE, this.exchange);
         this.map.put(KEY_ASYNC_PROCESSING, this.exchange instanceof InOnly || this.exchange instanceof RobustInOnly);
+        this.map.put(KEY_WORKFLOW, this);
+    }
+
+    /**
+     * the exchange sent asynchronously by the current action, the workflow
+     * is suspended after the action and resumed when the exchange comes back
+     * 
+     * @param ex
+     *            the sent exchange
+     * @throws MessagingException
+     *             if the action already sent an exchange asynchronously
+     */
+    synchronized void suspendOn(MessageExchange ex) throws MessagingException {
+        if (this.pendingExchange != null) {
+            throw new MessagingException("The workflow is already waiting for the exchange "
+                + this.pendingExchange.getExchangeId() + ", an action can only send one exchange asynchronously");
+        }
+        this.pendingExchange = ex;
+    }
+
+    /**
+     * sending the exchange failed, the workflow is not waiting for it
+     */
+    synchronized void cancelSuspend() {
+        this.pendingExchange = null;
+    }
+
+    /**
+     * continues the workflow with the exchange it was waiting for
+     * 
+     * @param ex
+     *            the returned exchange
+     * @return true if the workflow has to be scheduled again, false if it is
+     *         still running and will pick up the exchange itself
+     */
+    boolean resume(MessageExchange ex) {
+        synchronized (this) {
+            this.pendingExchange = null;
+            if (!this.ended) {
+                this.response = ex;
+                if (this.suspended) {
+                    this.suspended = false;
+                    return true;
+                }
+                return false;
+            }
+        }
+        // the workflow has been aborted while waiting
+        done(ex);
+        return false;
+    }
+
+    /**
+     * aborts the workflow, it is not resumed anymore
+     * 
+     * @return the exchange received by the workflow
+     */
+    synchronized MessageExchange abort() {
+        this.ended = true;
+        this.pendingExchange = null;
+        return this.exchange;
+    }
+
+    /**
+     * @return true if the workflow leaves the thread to wait for an exchange,
+     *         or has been aborted while running the current action
+     */
+    private synchronized boolean suspendIfWaiting() {
+        if (this.ended) {
+            return true;
+        }
+        if (this.pendingExchange != null) {
+            this.suspended = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized MessageExchange takeResponse() {
+        MessageExchange ex = this.response;
+        this.response = null;
+        return ex;
+    }
+
+    private synchronized void end() {
+        this.ended = true;
+        this.pendingExchange = null;
     }
 
     /**
@@ -109,8 +213,7 @@ public class OSWorkflow implements Runnable {
     private long createWorkflow() throws InvalidRoleException,
             InvalidInputException, WorkflowException {
         this.osWorkflowInstance = new BasicWorkflow(this.caller);
-        DefaultConfiguration config = new DefaultConfiguration();
-        this.osWorkflowInstance.setConfiguration(config);
+        this.osWorkflowInstance.setConfiguration(this.endpoint.getConfiguration());
         long wfId = this.osWorkflowInstance.initialize(this.osWorkflowName, this.action, this.map);
         return wfId;
     }
@@ -121,6 +224,13 @@ public class OSWorkflow implements Runnable {
      * @see java.lang.Runnable#run()
      */
     public void run() {
+        if (this.started) {
+            logger.debug("Resuming workflow {}", this.workflowId);
+            execute();
+            return;
+        }
+        this.started = true;
+
         // call the endpoint method for init actions
         this.endpoint.preWorkflow();
 
@@ -130,6 +240,14 @@ public class OSWorkflow implements Runnable {
         logger.debug("Caller:     {}", this.caller);
         logger.debug("Map:        {}", this.map);
 
+        execute();
+    }
+
+    /**
+     * runs the actions until the workflow is finished, aborted or waiting
+     * for an exchange
+     */
+    private void execute() {
         // loop as long as there are more actions to do and the workflow is not
         // finished or aborted
         while (!finished && !aborted) {
@@ -142,6 +260,17 @@ public class OSWorkflow implements Runnable {
                     aborted = true;
                     break;
                 }
+                // the initial action may already have sent an exchange asynchronously
+                if (suspendIfWaiting()) {
+                    logger.debug("Workflow {} is waiting for an exchange", this.workflowId);
+                    return;
+                }
+            }
+
+            // hand the response of the last asynchronous send to the next action
+            MessageExchange current = takeResponse();
+            if (current != null) {
+                this.map.put(KEY_RESPONSE, current);
             }
 
             // determine the available actions
@@ -168,7 +297,18 @@ public class OSWorkflow implements Runnable {
                     aborted = true;
                 }
             }
+            // the response has been handled by the action
+            if (current != null) {
+                this.map.remove(KEY_RESPONSE);
+                done(current);
+            }
+            if (!finished && !aborted && suspendIfWaiting()) {
+                logger.debug("Workflow {} is waiting for an exchange", this.workflowId);
+                return;
+            }
         }
+        end();
+        done(takeResponse());
 
         logger.debug("Stopping workflow...");
         logger.debug("Name:       {}", this.osWorkflowName);
@@ -181,4 +321,14 @@ public class OSWorkflow implements Runnable {
         // call the endpoint method for cleanup actions or message exchange
         this.endpoint.postWorkflow();
     }
+
+    private void done(MessageExchange response) {
+        if (response != null && response.getStatus() == ExchangeStatus.ACTIVE) {
+            try {
+                this.endpoint.done(response);
+            } catch (MessagingException e) {
+                logger.warn("Unable to complete the response exchange " + response.getExchangeId(), e);
+            }
+        }
+    }
 }
@@ -17,6 +17,8 @@
 package org.apache.servicemix.osworkflow;
 
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
@@ -34,6 +36,9 @@ import org.apache.servicemix.common.EndpointSupport;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.executors.Executor;
 
+import com.opensymphony.workflow.config.Configuration;
+import com.opensymphony.workflow.config.DefaultConfiguration;
+
 /**
  * @org.apache.xbean.XBean element="endpoint"
  * 
@@ -51,15 +56,45 @@ public class OSWorkflowEndpoint extends ProviderEndpoint {
 
     private Executor executor;
 
+    private Configuration configuration;
+
     private SourceTransformer sourceTransformer = new SourceTransformer();
 
+    // the workflows waiting for an asynchronously sent exchange, by exchange id
+    private final Map<String, OSWorkflow> suspendedWorkflows = new ConcurrentHashMap<String, OSWorkflow>();
+
     public void start() throws Exception {
         super.start();
         OSWorkflowComponent component = (OSWorkflowComponent) getServiceUnit().getComponent();
         executor = component.getExecutorFactory().createExecutor("component." + component.getComponentName() + "." + EndpointSupport.getKey(this));
+        if (configuration == null) {
+            configuration = new DefaultConfiguration();
+        }
+        if (!configuration.isInitialized()) {
+            configuration.load(null);
+        }
+        if (workflowName != null) {
+            // loads and caches the workflow descriptor shared by all the workflows
+            configuration.getWorkflow(workflowName);
+        }
     }
 
     public void stop() throws Exception {
+        if (!suspendedWorkflows.isEmpty()) {
+            // the suspended workflows are only kept in memory, they can't be resumed after a restart
+            logger.warn("Stopping endpoint with {} workflows waiting for an exchange", suspendedWorkflows.size());
+            for (OSWorkflow suspended : suspendedWorkflows.values()) {
+                MessageExchange exchange = suspended.abort();
+                if (exchange.getStatus() == ExchangeStatus.ACTIVE) {
+                    try {
+                        fail(exchange, new MessagingException("The endpoint has been stopped while the workflow was waiting for an exchange"));
+                    } catch (MessagingException e) {
+                        logger.warn("Unable to fail the exchange " + exchange.getExchangeId(), e);
+                    }
+                }
+            }
+            suspendedWorkflows.clear();
+        }
         executor.shutdown();
         super.stop();
     }
@@ -81,7 +116,14 @@ public class OSWorkflowEndpoint extends ProviderEndpoint {
         // If this component does not create / send exchanges, you may just
         // throw an
         // UnsupportedOperationException
-        if (exchange.getRole() == Role.CONSUMER) {
+        OSWorkflow suspended = exchange.getRole() == Role.CONSUMER
+            ? suspendedWorkflows.remove(exchange.getExchangeId()) : null;
+        if (suspended != null) {
+            // the response of an asynchronous send, continue the workflow
+            if (suspended.resume(exchange)) {
+                executor.execute(suspended);
+            }
+        } else if (exchange.getRole() == Role.CONSUMER) {
             onConsumerExchange(exchange);
         } else if (exchange.getRole() == MessageExchange.Role.PROVIDER) {
 //          The component acts as a provider, this means that another component
@@ -234,6 +276,44 @@ public class OSWorkflowEndpoint extends ProviderEndpoint {
         }
     }
 
+    /**
+     * sends the exchange without waiting for the response, the workflow given by
+     * the transient vars of the calling function releases its thread after the
+     * current action and is resumed with the returned exchange available as the
+     * {@link OSWorkflow#KEY_RESPONSE} transient var. The returned exchange is
+     * done once the next action has been executed. An action can only send one
+     * exchange asynchronously. The waiting workflows are kept in memory only,
+     * they are aborted and their exchange failed when the endpoint is stopped.
+     *
+     * @param ex
+     *            the exchange to send
+     * @param transientVars
+     *            the transient vars of the calling function
+     * @throws MessagingException
+     *             on any messaging exception, or if the current action already
+     *             sent an exchange asynchronously
+     */
+    public void sendAsync(MessageExchange ex, Map transientVars)
+        throws MessagingException {
+        OSWorkflow osWorkflow = (OSWorkflow) transientVars.get(OSWorkflow.KEY_WORKFLOW);
+        if (osWorkflow == null) {
+            throw new MessagingException("OSWorkflowEndpoint.sendAsync(): Missing transient variable for workflow object. ("
+                + OSWorkflow.KEY_WORKFLOW + ")");
+        }
+        osWorkflow.suspendOn(ex);
+        suspendedWorkflows.put(ex.getExchangeId(), osWorkflow);
+        boolean sent = false;
+        try {
+            getChannel().send(ex);
+            sent = true;
+        } finally {
+            if (!sent) {
+                suspendedWorkflows.remove(ex.getExchangeId());
+                osWorkflow.cancelSuspend();
+            }
+        }
+    }
+
     /**
      * creates a msg object
      * 
@@ -293,6 +373,25 @@ public class OSWorkflowEndpoint extends ProviderEndpoint {
         super.fail(ex, new Exception("Failure"));
     }
 
+    /**
+     * @return the configuration
+     */
+    public Configuration getConfiguration() {
+        return this.configuration;
+    }
+
+    /**
+     * The osworkflow configuration shared by all the workflows of this endpoint.
+     * Defaults to a <code>DefaultConfiguration</code> loaded from the
+     * <code>osworkflow.xml</code> file found on the classpath.
+     *
+     * @param configuration
+     *            the configuration to set
+     */
+    public void setConfiguration(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
     /**
      * @return the workflowName
      */
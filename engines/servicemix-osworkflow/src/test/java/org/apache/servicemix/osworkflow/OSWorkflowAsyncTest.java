@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.osworkflow;
+
+import java.util.HashMap;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.InOut;
+import javax.jbi.messaging.MessagingException;
+import javax.xml.namespace.QName;
+
+import org.apache.servicemix.client.DefaultServiceMixClient;
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
+import org.apache.servicemix.jbi.jaxp.StringSource;
+import org.apache.servicemix.jbi.messaging.InOnlyImpl;
+import org.apache.servicemix.jbi.messaging.InOutImpl;
+import org.apache.servicemix.tck.SpringTestSupport;
+import org.apache.xbean.spring.context.ClassPathXmlApplicationContext;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+
+/**
+ * Runs a workflow sending a request with sendAsync, which is resumed with the
+ * response to answer the received exchange.
+ */
+public class OSWorkflowAsyncTest extends SpringTestSupport {
+
+    public void testResumeWithResponse() throws Exception {
+        assertResumed(new QName("urn:test", "async"));
+    }
+
+    public void testResumeAfterInitialAction() throws Exception {
+        // the request is sent by the initial action, while the workflow is created
+        assertResumed(new QName("urn:test", "initialAsync"));
+    }
+
+    private void assertResumed(QName service) throws Exception {
+        DefaultServiceMixClient client = new DefaultServiceMixClient(jbi);
+        InOut me = client.createInOutExchange();
+        me.setService(service);
+        me.getInMessage().setContent(new StringSource("<example>AsyncValue</example>"));
+        client.sendSync(me);
+        if (me.getStatus() == ExchangeStatus.ERROR) {
+            if (me.getError() != null) {
+                throw me.getError();
+            }
+            fail("Received ERROR status");
+        }
+        assertNotNull(me.getOutMessage());
+        String out = new SourceTransformer().contentToString(me.getOutMessage());
+        client.done(me);
+        assertTrue("Unexpected answer " + out, out.indexOf("AsyncValue") >= 0);
+    }
+
+    public void testSecondSendAsyncIsRejected() throws Exception {
+        OSWorkflow workflow = new OSWorkflow(null, "asyncflow", 1, new HashMap(), "testUser",
+                new InOnlyImpl("received"));
+        workflow.suspendOn(new InOutImpl("first"));
+        try {
+            workflow.suspendOn(new InOutImpl("second"));
+            fail("An action can only send one exchange asynchronously");
+        } catch (MessagingException e) {
+            // expected
+        }
+    }
+
+    protected AbstractXmlApplicationContext createBeanFactory() {
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(new String[] { "spring-async.xml" }, false);
+        context.setValidating(false);
+        context.refresh();
+        return context;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.osworkflow.functions;
+
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.NormalizedMessage;
+
+import com.opensymphony.module.propertyset.PropertySet;
+import com.opensymphony.workflow.FunctionProvider;
+import com.opensymphony.workflow.WorkflowException;
+
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
+import org.apache.servicemix.osworkflow.OSWorkflow;
+import org.apache.servicemix.osworkflow.OSWorkflowEndpoint;
+
+/**
+ * Answers the received exchange with the response of the asynchronous
+ * request sent by {@link AsyncRequestFunction}.
+ */
+public class AsyncAnswerFunction implements FunctionProvider {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.opensymphony.workflow.FunctionProvider#execute(java.util.Map,
+     *      java.util.Map, com.opensymphony.module.propertyset.PropertySet)
+     */
+    public void execute(Map transientVars, Map args, PropertySet propertySet)
+        throws WorkflowException {
+        OSWorkflowEndpoint ep = (OSWorkflowEndpoint) transientVars.get(OSWorkflow.KEY_ENDPOINT);
+        MessageExchange exchange = (MessageExchange) transientVars.get(OSWorkflow.KEY_EXCHANGE);
+        MessageExchange response = (MessageExchange) transientVars.get(OSWorkflow.KEY_RESPONSE);
+        if (response == null) {
+            throw new WorkflowException(
+                    "AsyncAnswerFunction: Missing transient variable for response object. ("
+                            + OSWorkflow.KEY_RESPONSE + ")");
+        }
+
+        try {
+            NormalizedMessage out = exchange.createMessage();
+            out.setContent(new SourceTransformer().toDOMSource(response.getMessage("out").getContent()));
+            exchange.setMessage(out, "out");
+            ep.send(exchange, false);
+        } catch (Exception ex) {
+            throw new WorkflowException("AsyncAnswerFunction: Unable to answer request.", ex);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.osworkflow.functions;
+
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.QName;
+
+import com.opensymphony.module.propertyset.PropertySet;
+import com.opensymphony.workflow.FunctionProvider;
+import com.opensymphony.workflow.WorkflowException;
+
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
+import org.apache.servicemix.osworkflow.OSWorkflow;
+import org.apache.servicemix.osworkflow.OSWorkflowEndpoint;
+
+/**
+ * Sends the received message to the echo service without waiting for the
+ * response, the workflow is resumed when the response comes back.
+ */
+public class AsyncRequestFunction implements FunctionProvider {
+
+    public static final QName ECHO_SERVICE = new QName("urn:test", "echo");
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.opensymphony.workflow.FunctionProvider#execute(java.util.Map,
+     *      java.util.Map, com.opensymphony.module.propertyset.PropertySet)
+     */
+    public void execute(Map transientVars, Map args, PropertySet propertySet)
+        throws WorkflowException {
+        OSWorkflowEndpoint ep = (OSWorkflowEndpoint) transientVars.get(OSWorkflow.KEY_ENDPOINT);
+        NormalizedMessage in = (NormalizedMessage) transientVars.get(OSWorkflow.KEY_IN_MESSAGE);
+        if (ep == null || in == null) {
+            throw new WorkflowException(
+                    "AsyncRequestFunction: Missing transient variable for endpoint or message object. ("
+                            + OSWorkflow.KEY_ENDPOINT + ", " + OSWorkflow.KEY_IN_MESSAGE + ")");
+        }
+
+        try {
+            MessageExchange request = ep.getNewExchange(ECHO_SERVICE, true);
+            NormalizedMessage msg = request.createMessage();
+            msg.setContent(new SourceTransformer().toDOMSource(in.getContent()));
+            request.setMessage(msg, "in");
+            ep.sendAsync(request, transientVars);
+        } catch (Exception ex) {
+            throw new WorkflowException("AsyncRequestFunction: Unable to send the request.", ex);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.lowagie.text.pdf.AcroFields;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfStamper;
+
+/**
+ * <p>
+ * Populates PDF templates for the PDF composer endpoints. The template files content is
+ * cached, and the resulting documents are buffered in memory up to a threshold and in a
+ * temporary file above. The temporary files of the documents sent in exchanges are kept
+ * until the exchange ends.
+ * </p>
+ *
+ * @author jbonofre
+ */
+public class PdfDocumentComposer {
+
+    private int spillThreshold = 1024 * 1024; // the size of the resulting PDF kept in memory before using a temporary file
+    private File spillDir = null; // the directory of the temporary files, null for the default temporary directory
+    private final PdfTemplateCache templateCache = new PdfTemplateCache(); // the content of the template files already used
+    private final ConcurrentMap<String, SpillOutputStream> spills = new ConcurrentHashMap<String, SpillOutputStream>(); // the documents not read yet by exchange id
+
+    public int getSpillThreshold() {
+        return this.spillThreshold;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the size of the resulting PDF kept in memory.
+     * </p>
+     *
+     * @param spillThreshold the number of bytes kept in memory.
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public File getSpillDir() {
+        return this.spillDir;
+    }
+
+    /**
+     * <p>
+     * This attribute specifies the directory of the temporary files used for large resulting PDF.
+     * </p>
+     *
+     * @param spillDir the temporary files directory, null for the default temporary directory.
+     */
+    public void setSpillDir(File spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * <p>
+     * Opens a template, from the cache if the template is a file.
+     * </p>
+     *
+     * @param path the template file path or URL.
+     * @return the PDF template.
+     * @throws IOException in case of template read failure.
+     */
+    public PdfReader loadTemplate(String path) throws IOException {
+        byte[] templateContent = templateCache.getTemplate(path);
+        if (templateContent != null) {
+            return new PdfReader(templateContent);
+        }
+        return new PdfReader(path);
+    }
+
+    /**
+     * <p>
+     * Populates a template into a buffered document. The temporary file used for a large
+     * document is deleted if the document can't be completed.
+     * </p>
+     *
+     * @param templateReader the PDF template.
+     * @param fields the field values by field name.
+     * @return the resulting document.
+     * @throws Exception in case of populating failure.
+     */
+    public SpillOutputStream compose(PdfReader templateReader, Map<String, String> fields) throws Exception {
+        SpillOutputStream stream = new SpillOutputStream(spillThreshold, spillDir);
+        boolean composed = false;
+        try {
+            stamp(templateReader, fields, stream);
+            composed = true;
+        } finally {
+            if (!composed) {
+                stream.discard();
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * <p>
+     * Populates a template with the given fields.
+     * </p>
+     *
+     * @param templateReader the PDF template.
+     * @param fields the field values by field name.
+     * @param output the stream of the resulting document.
+     * @throws Exception in case of populating failure.
+     */
+    public void stamp(PdfReader templateReader, Map<String, String> fields, OutputStream output) throws Exception {
+        // create a stamper to populate the target document
+        PdfStamper stamper = new PdfStamper(templateReader, output);
+
+        // get the acrofields
+        AcroFields acroFields = stamper.getAcroFields();
+        // replace the field
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            acroFields.setField(field.getKey(), field.getValue());
+        }
+
+        // close the stamper
+        stamper.setFormFlattening(true);
+        stamper.close();
+    }
+
+    /**
+     * <p>
+     * Keeps the temporary file of a document sent in an exchange until the exchange ends.
+     * </p>
+     *
+     * @param exchangeId the id of the exchange.
+     * @param stream the document.
+     */
+    public void keep(String exchangeId, SpillOutputStream stream) {
+        if (stream.isSpilled()) {
+            spills.put(exchangeId, stream);
+        }
+    }
+
+    /**
+     * <p>
+     * Deletes the temporary file of the document sent in an exchange, if any.
+     * </p>
+     *
+     * @param exchangeId the id of the exchange.
+     */
+    public void discard(String exchangeId) {
+        SpillOutputStream stream = spills.remove(exchangeId);
+        if (stream != null) {
+            stream.discard();
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Cache of the PDF template files content, keyed by the template path. A cached template is
+ * read again when the file modification time or length changes.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class PdfTemplateCache {
+    
+    private final ConcurrentMap<String, CachedTemplate> templates = new ConcurrentHashMap<String, CachedTemplate>();
+    
+    /**
+     * <p>
+     * Get the content of a template file.
+     * </p>
+     * 
+     * @param path the template file path.
+     * @return the template content or <code>null</code> if the path is not a file (for instance an URL).
+     * @throws IOException in case of template read failure.
+     */
+    public byte[] getTemplate(String path) throws IOException {
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CachedTemplate cached = templates.get(path);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.content;
+        }
+        cached = new CachedTemplate(lastModified, length, read(file));
+        templates.put(path, cached);
+        return cached.content;
+    }
+    
+    /**
+     * <p>
+     * Remove all templates from the cache.
+     * </p>
+     */
+    public void clear() {
+        templates.clear();
+    }
+    
+    public int size() {
+        return templates.size();
+    }
+    
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+    
+    private static final class CachedTemplate {
+        private final long lastModified;
+        private final long length;
+        private final byte[] content;
+        
+        CachedTemplate(long lastModified, long length, byte[] content) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.content = content;
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Output stream keeping the written data in memory up to a threshold and spilling it to a
+ * temporary file above. The data is read back with {@link #getInputStream()} once the
+ * stream is closed, the temporary file is deleted when this input stream is closed or by
+ * {@link #discard()}.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class SpillOutputStream extends OutputStream {
+    
+    private final int threshold;
+    private final File directory;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream(8192);
+    private File file;
+    private OutputStream out = memory;
+    
+    /**
+     * <p>
+     * Create a new spill output stream.
+     * </p>
+     * 
+     * @param threshold the number of bytes kept in memory before spilling to a temporary file.
+     */
+    public SpillOutputStream(int threshold) {
+        this(threshold, null);
+    }
+    
+    /**
+     * <p>
+     * Create a new spill output stream.
+     * </p>
+     * 
+     * @param threshold the number of bytes kept in memory before spilling to a temporary file.
+     * @param directory the directory of the temporary file, null for the default temporary directory.
+     */
+    public SpillOutputStream(int threshold, File directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        spillIfNeeded(1);
+        out.write(b);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        spillIfNeeded(len);
+        out.write(b, off, len);
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    private void spillIfNeeded(int len) throws IOException {
+        if (memory != null && memory.size() + len > threshold) {
+            file = File.createTempFile("servicemix-pdf", ".pdf", directory);
+            OutputStream fileStream;
+            try {
+                fileStream = new FileOutputStream(file);
+            } catch (IOException e) {
+                file.delete();
+                file = null;
+                throw e;
+            }
+            memory.writeTo(fileStream);
+            memory = null;
+            out = fileStream;
+        }
+    }
+    
+    /**
+     * <p>
+     * Check if the data has been spilled to a temporary file.
+     * </p>
+     * 
+     * @return true if the data is in a temporary file.
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+    
+    /**
+     * <p>
+     * Close the stream and delete the temporary file, if any. Used when the data is not read back,
+     * or can't be read anymore.
+     * </p>
+     */
+    public void discard() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the data is not used anymore
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+    
+    /**
+     * <p>
+     * Get a stream to read the written data.
+     * </p>
+     * 
+     * @return the input stream on the data.
+     * @throws IOException in case of temporary file access failure.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(memory.toByteArray());
+        }
+        final File spilled = file;
+        return new FileInputStream(spilled) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                spilled.delete();
+            }
+        };
+    }
+
+}
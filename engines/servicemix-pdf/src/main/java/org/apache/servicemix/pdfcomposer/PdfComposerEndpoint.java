@@ -16,10 +16,11 @@
  */
 package org.apache.servicemix.pdfcomposer;
 
+import java.io.File;
 import java.io.FileOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
@@ -32,6 +33,8 @@ import javax.xml.namespace.QName;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
+import org.apache.servicemix.pdf.PdfDocumentComposer;
+import org.apache.servicemix.pdf.SpillOutputStream;
 import org.apache.servicemix.pdfcomposer.marshaler.JaxbPdfComposerMarshaler;
 import org.apache.servicemix.pdfcomposer.marshaler.PdfComposerDataField;
 import org.apache.servicemix.pdfcomposer.marshaler.PdfComposerMarshalerSupport;
@@ -40,9 +43,7 @@ import org.apache.servicemix.soap.util.DomUtil;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
-import com.lowagie.text.pdf.AcroFields;
 import com.lowagie.text.pdf.PdfReader;
-import com.lowagie.text.pdf.PdfStamper;
 
 /**
  * <p>
@@ -61,6 +62,7 @@ public class PdfComposerEndpoint extends ProviderEndpoint {
     private String outputDir = null; // in case of InOnly exchange, write file to the output directory
     private Resource wsdl; // the abstract WSDL describing the endpoint behavior
     private PdfComposerMarshalerSupport marshaler = new JaxbPdfComposerMarshaler();
+    private PdfDocumentComposer composer = new PdfDocumentComposer(); // populates the templates and buffers the resulting documents
     
     public String getTemplate() {
         return this.template;
@@ -146,6 +148,40 @@ public class PdfComposerEndpoint extends ProviderEndpoint {
         this.marshaler = marshaler;
     }
     
+    public int getSpillThreshold() {
+        return composer.getSpillThreshold();
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the size of the resulting PDF kept in memory, in case of in-out exchange.
+     * A larger resulting PDF is written to a temporary file which is deleted once the "out" message content
+     * has been read.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <code>1048576</code>.
+     * 
+     * @param spillThreshold the number of bytes kept in memory.
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        composer.setSpillThreshold(spillThreshold);
+    }
+    
+    public File getSpillDir() {
+        return composer.getSpillDir();
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the directory of the temporary files used for large resulting PDF.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <code>null</code> (the <code>java.io.tmpdir</code> directory).
+     * 
+     * @param spillDir the temporary files directory.
+     */
+    public void setSpillDir(File spillDir) {
+        composer.setSpillDir(spillDir);
+    }
+    
     /*
      * (non-Javadoc)
      * @see org.apache.servicemix.common.endpoints.AbstractEndpoint#validate()
@@ -189,10 +225,12 @@ public class PdfComposerEndpoint extends ProviderEndpoint {
         // As this exchange is active, this is either an "in" or a "fault" (out
         // is sent by this component)
         if (exchange.getStatus() == ExchangeStatus.DONE) {
-            // exchange is finished
+            // exchange is finished, delete the temporary file if the consumer didn't close the document
+            composer.discard(exchange.getExchangeId());
             return;
         } else if (exchange.getStatus() == ExchangeStatus.ERROR) {
             // exchange has been aborted with an exception
+            composer.discard(exchange.getExchangeId());
             return;
         } else {
             // exchange is active
@@ -242,48 +280,67 @@ public class PdfComposerEndpoint extends ProviderEndpoint {
             templateToUse = templatesDir + "/" + templateToUse;
         }
         
-        // load PDF template
-        PdfReader templateReader = new PdfReader(templateToUse);
+        // load PDF template, the template files content is cached to avoid reading them for each request
+        PdfReader templateReader = composer.loadTemplate(templateToUse);
+        Map<String, String> fields = getFields(request);
         
-        // create a stamper to populate the target document
-        PdfStamper stamper;
-        PipedInputStream stream = new PipedInputStream();
+        SpillOutputStream stream = null;
         if (exchange instanceof InOut) {
-            // when we have an InOut, we use a pipe
-            stamper = new PdfStamper(templateReader, new PipedOutputStream(stream));
+            // when we have an InOut, we buffer the resulting document, it's read once the stamper is closed
+            stream = composer.compose(templateReader, fields);
         } else {
             // when we have an InOnly, we directly write a file in the output directory
             FileOutputStream fileStream = new FileOutputStream(outputDir + "/test.pdf");
-            stamper = new PdfStamper(templateReader, fileStream);
-        }
-        
-        // get the acrofields
-        AcroFields fields = stamper.getAcroFields();
-        // replace the field
-        for (PdfComposerDataField field:request.getData()) {
-            fields.setField(field.getName(), field.getValue());
+            try {
+                composer.stamp(templateReader, fields, fileStream);
+            } finally {
+                fileStream.close();
+            }
         }
         
-        // close the stamper
-        stamper.setFormFlattening(true);
-        stamper.close();
-        
         if (exchange instanceof InOut) {
             // create "out" message
             NormalizedMessage out = exchange.createMessage();
-            // set the "out" message content with the piped stream
-            out.setContent(new StreamSource(stream));
-        
-            // set the "out" message of the exchange
-            exchange.setMessage(out, "out");
+            try {
+                // set the "out" message content with the resulting document
+                out.setContent(new StreamSource(stream.getInputStream()));
+            
+                // set the "out" message of the exchange
+                exchange.setMessage(out, "out");
+                // the temporary file is deleted at the latest when the exchange is done
+                composer.keep(exchange.getExchangeId(), stream);
+                
+                // send back the exchange
+                send(exchange);
+            } catch (Exception e) {
+                composer.discard(exchange.getExchangeId());
+                stream.discard();
+                throw e;
+            }
         } else {
             // the exchange is InOnly, Robust InOnly, In Optional Out
             // set the exchange as DONE
             exchange.setStatus(ExchangeStatus.DONE);
-        }
 
-        // send back the exchange
-        send(exchange);
+            // send back the exchange
+            send(exchange);
+        }
+    }
+    
+    /**
+     * <p>
+     * Get the fields of the PDF Composer request, in the request order.
+     * </p>
+     * 
+     * @param request the PDF Composer request.
+     * @return the field values by field name.
+     */
+    private Map<String, String> getFields(PdfComposerRequest request) {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        for (PdfComposerDataField field:request.getData()) {
+            fields.put(field.getName(), field.getValue());
+        }
+        return fields;
     }
 
 }
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lowagie.text.pdf.PdfReader;
+
+/**
+ * <p>
+ * Measures the time to compose a document from a 20 fields template: reading the template
+ * file for each document as before, with the template cache, and with the document spilled
+ * to a temporary file. The class name doesn't match the surefire includes, so it only runs
+ * on demand, e.g. <code>mvn test -Dtest=PdfDocumentComposerBenchmark</code>.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class PdfDocumentComposerBenchmark extends TestCase {
+    
+    private static final int FIELDS = 20;
+    private static final int WARMUP = 50;
+    private static final int DOCUMENTS = 500;
+    
+    private File template;
+    private File spillDir;
+    private Map<String, String> fields;
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() throws Exception {
+        template = File.createTempFile("template", ".pdf");
+        FileOutputStream out = new FileOutputStream(template);
+        out.write(PdfDocumentComposerTest.createTemplate(FIELDS));
+        out.close();
+        spillDir = SpillOutputStreamTest.createSpillDir();
+        fields = PdfDocumentComposerTest.createFields(FIELDS);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    public void tearDown() throws Exception {
+        template.delete();
+        SpillOutputStreamTest.deleteSpillDir(spillDir);
+    }
+    
+    public void testCompose() throws Exception {
+        PdfDocumentComposer composer = new PdfDocumentComposer();
+        PdfDocumentComposer spilling = new PdfDocumentComposer();
+        spilling.setSpillThreshold(0);
+        spilling.setSpillDir(spillDir);
+        
+        System.out.println("PDF composition of " + DOCUMENTS + " documents with " + FIELDS + " fields:");
+        System.out.println("  template read per document: " + uncached(composer) + " ms");
+        System.out.println("  cached template, in memory: " + cached(composer) + " ms");
+        System.out.println("  cached template, spilled:   " + cached(spilling) + " ms");
+        assertEquals(0, spillDir.list().length);
+    }
+    
+    private long uncached(PdfDocumentComposer composer) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            composer.stamp(new PdfReader(template.getPath()), fields, new ByteArrayOutputStream());
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            composer.stamp(new PdfReader(template.getPath()), fields, new ByteArrayOutputStream());
+        }
+        return System.currentTimeMillis() - start;
+    }
+    
+    private long cached(PdfDocumentComposer composer) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            composer.compose(composer.loadTemplate(template.getPath()), fields).discard();
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            composer.compose(composer.loadTemplate(template.getPath()), fields).discard();
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+}
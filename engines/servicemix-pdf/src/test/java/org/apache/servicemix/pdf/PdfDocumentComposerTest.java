@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.TextField;
+
+/**
+ * <p>
+ * Unit tests of the PDF document composer.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class PdfDocumentComposerTest extends TestCase {
+    
+    private File spillDir;
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() throws Exception {
+        spillDir = SpillOutputStreamTest.createSpillDir();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    public void tearDown() throws Exception {
+        SpillOutputStreamTest.deleteSpillDir(spillDir);
+    }
+    
+    /**
+     * <p>
+     * Test that a template is populated in memory and its fields flattened.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testCompose() throws Exception {
+        PdfDocumentComposer composer = new PdfDocumentComposer();
+        SpillOutputStream stream = composer.compose(new PdfReader(createTemplate(2)), createFields(2));
+        assertFalse(stream.isSpilled());
+        
+        PdfReader document = new PdfReader(stream.getInputStream());
+        assertEquals(1, document.getNumberOfPages());
+        assertTrue(document.getAcroFields().getFields().isEmpty());
+    }
+    
+    /**
+     * <p>
+     * Test that the temporary file of a document kept for an exchange is deleted when the exchange ends.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testDiscardSpilledDocument() throws Exception {
+        PdfDocumentComposer composer = new PdfDocumentComposer();
+        composer.setSpillThreshold(16);
+        composer.setSpillDir(spillDir);
+        SpillOutputStream stream = composer.compose(new PdfReader(createTemplate(2)), createFields(2));
+        assertTrue(stream.isSpilled());
+        
+        composer.keep("exchange", stream);
+        assertEquals(1, spillDir.list().length);
+        composer.discard("exchange");
+        assertEquals(0, spillDir.list().length);
+    }
+    
+    /**
+     * <p>
+     * Test that the temporary file of a document is deleted when the template can't be populated.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testComposeFailure() throws Exception {
+        PdfDocumentComposer composer = new PdfDocumentComposer() {
+            public void stamp(PdfReader templateReader, Map<String, String> fields, OutputStream output) throws Exception {
+                output.write("this is larger than the threshold".getBytes("UTF-8"));
+                throw new IOException("Stamping failure");
+            }
+        };
+        composer.setSpillThreshold(4);
+        composer.setSpillDir(spillDir);
+        try {
+            composer.compose(null, new HashMap<String, String>());
+            fail("The stamping failure should be thrown");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, spillDir.list().length);
+    }
+    
+    /**
+     * <p>
+     * Create a one page template with the given number of text fields, named <code>field0</code>,
+     * <code>field1</code>, ...
+     * </p>
+     * 
+     * @param count the number of fields.
+     * @return the template content.
+     * @throws Exception in case of template creation failure.
+     */
+    static byte[] createTemplate(int count) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Document document = new Document();
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        document.open();
+        document.add(new Paragraph("PDF composer template"));
+        for (int i = 0; i < count; i++) {
+            float top = 740 - (i % 30) * 22;
+            TextField field = new TextField(writer, new Rectangle(72, top - 18, 300, top), "field" + i);
+            writer.addAnnotation(field.getTextField());
+        }
+        document.close();
+        return out.toByteArray();
+    }
+    
+    /**
+     * <p>
+     * Create the values of the fields of a template created by {@link #createTemplate(int)}.
+     * </p>
+     * 
+     * @param count the number of fields.
+     * @return the field values by field name.
+     */
+    static Map<String, String> createFields(int count) {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            fields.put("field" + i, "value " + i);
+        }
+        return fields;
+    }
+
+}
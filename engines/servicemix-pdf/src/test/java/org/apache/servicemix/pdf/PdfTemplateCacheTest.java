@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Unit tests of the PDF template cache.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class PdfTemplateCacheTest extends TestCase {
+    
+    private File template;
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() throws Exception {
+        template = File.createTempFile("template", ".pdf");
+        write(template, "first");
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    public void tearDown() throws Exception {
+        template.delete();
+    }
+    
+    /**
+     * <p>
+     * Test that a template is read once and read again when it changes.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testTemplateCache() throws Exception {
+        PdfTemplateCache cache = new PdfTemplateCache();
+        byte[] content = cache.getTemplate(template.getPath());
+        assertEquals("first", new String(content, "UTF-8"));
+        assertSame(content, cache.getTemplate(template.getPath()));
+        
+        write(template, "second template");
+        assertEquals("second template", new String(cache.getTemplate(template.getPath()), "UTF-8"));
+        assertEquals(1, cache.size());
+        
+        assertNull(cache.getTemplate("http://localhost/template.pdf"));
+    }
+    
+    private void write(File file, String content) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        // make sure the modification is detected even on file systems with a coarse time resolution
+        file.setLastModified(file.lastModified() + 2000);
+    }
+
+}
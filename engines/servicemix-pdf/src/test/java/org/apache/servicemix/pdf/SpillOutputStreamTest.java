@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.pdf;
+
+import java.io.File;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Unit tests of the spill output stream.
+ * </p>
+ * 
+ * @author jbonofre
+ */
+public class SpillOutputStreamTest extends TestCase {
+    
+    /**
+     * <p>
+     * Test the spill output stream in memory.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testInMemory() throws Exception {
+        SpillOutputStream memory = new SpillOutputStream(16);
+        memory.write("small".getBytes("UTF-8"));
+        memory.close();
+        assertFalse(memory.isSpilled());
+        assertEquals("small", read(memory.getInputStream()));
+    }
+    
+    /**
+     * <p>
+     * Test the spill output stream with a temporary file, deleted once read.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testSpilled() throws Exception {
+        File spillDir = createSpillDir();
+        try {
+            SpillOutputStream spilled = new SpillOutputStream(4, spillDir);
+            spilled.write("this is larger than the threshold".getBytes("UTF-8"));
+            spilled.write('!');
+            spilled.close();
+            assertTrue(spilled.isSpilled());
+            assertEquals(1, spillDir.list().length);
+            assertEquals("this is larger than the threshold!", read(spilled.getInputStream()));
+            assertEquals(0, spillDir.list().length);
+        } finally {
+            deleteSpillDir(spillDir);
+        }
+    }
+    
+    /**
+     * <p>
+     * Test that discarding a spilled stream deletes its temporary file.
+     * </p>
+     * 
+     * @throws Exception in case of test failure.
+     */
+    public void testDiscard() throws Exception {
+        File spillDir = createSpillDir();
+        try {
+            SpillOutputStream spilled = new SpillOutputStream(4, spillDir);
+            spilled.write("this is larger than the threshold".getBytes("UTF-8"));
+            assertTrue(spilled.isSpilled());
+            spilled.discard();
+            assertEquals(0, spillDir.list().length);
+        } finally {
+            deleteSpillDir(spillDir);
+        }
+    }
+    
+    static File createSpillDir() throws Exception {
+        File spillDir = File.createTempFile("spill", "");
+        spillDir.delete();
+        spillDir.mkdir();
+        return spillDir;
+    }
+    
+    static void deleteSpillDir(File spillDir) {
+        File[] files = spillDir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        spillDir.delete();
+    }
+    
+    private String read(InputStream in) throws Exception {
+        StringBuffer buffer = new StringBuffer();
+        int c;
+        while ((c = in.read()) != -1) {
+            buffer.append((char) c);
+        }
+        in.close();
+        return buffer.toString();
+    }
+
+}
@@ -18,8 +18,12 @@ package org.apache.servicemix.quartz;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
@@ -48,11 +52,38 @@ import org.springframework.scheduling.quartz.JobDetailAwareTrigger;
  */
 public class QuartzEndpoint extends ConsumerEndpoint {
 
+    /**
+     * Drop the fires while the maximum number of exchanges is active.
+     */
+    public static final String OVERLAP_SKIP = "skip";
+    /**
+     * Keep only the latest fire while the maximum number of exchanges is active.
+     */
+    public static final String OVERLAP_COALESCE = "coalesce";
+    /**
+     * Queue the fires while the maximum number of exchanges is active.
+     */
+    public static final String OVERLAP_QUEUE = "queue";
+
     private Trigger trigger;
     private List<Trigger> triggers;
     private Map<String, Calendar> calendars;
     private JobDetail jobDetail;
     private QuartzMarshaler marshaler = new DefaultQuartzMarshaler();
+    private int maxConcurrentExchanges;
+    private String overlapPolicy = OVERLAP_SKIP;
+    private int maxQueuedFires = 100;
+
+    // the fires waiting for a free exchange slot and the ids of the exchanges sent since
+    // the endpoint was started and not yet completed, guarded by fireLock
+    private final Object fireLock = new Object();
+    private final LinkedList<PendingFire> queuedFires = new LinkedList<PendingFire>();
+    private final Set<String> activeExchanges = new HashSet<String>();
+
+    private final AtomicLong firedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong maxFireLag = new AtomicLong();
+    private volatile long lastFireLag;
     
     /**
      * @return the triggers
@@ -130,6 +161,100 @@ public class QuartzEndpoint extends ConsumerEndpoint {
     public void setMarshaler(QuartzMarshaler marshaler) {
         this.marshaler = marshaler;
     }
+
+    public int getMaxConcurrentExchanges() {
+        return maxConcurrentExchanges;
+    }
+
+    /**
+     * The maximum number of exchanges sent by this endpoint which may be active
+     * at the same time. Fires happening while this number is reached are handled
+     * according to the <code>overlapPolicy</code>. The default value <code>0</code>
+     * means no limit.
+     *
+     * @param maxConcurrentExchanges the maximum number of active exchanges
+     */
+    public void setMaxConcurrentExchanges(int maxConcurrentExchanges) {
+        this.maxConcurrentExchanges = maxConcurrentExchanges;
+    }
+
+    public String getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+    /**
+     * What to do with a fire while <code>maxConcurrentExchanges</code> exchanges are active:
+     * <code>skip</code> drops the fire, <code>coalesce</code> keeps only the latest fire and
+     * sends it when an exchange completes, <code>queue</code> keeps up to <code>maxQueuedFires</code>
+     * fires and sends them in order. Defaults to <code>skip</code>.
+     *
+     * @param overlapPolicy the overlap policy
+     */
+    public void setOverlapPolicy(String overlapPolicy) {
+        this.overlapPolicy = overlapPolicy;
+    }
+
+    public int getMaxQueuedFires() {
+        return maxQueuedFires;
+    }
+
+    /**
+     * The maximum number of fires queued with the <code>queue</code> overlap policy,
+     * further fires are skipped. Defaults to <code>100</code>.
+     *
+     * @param maxQueuedFires the maximum number of queued fires
+     */
+    public void setMaxQueuedFires(int maxQueuedFires) {
+        this.maxQueuedFires = maxQueuedFires;
+    }
+
+    /**
+     * @return the number of exchanges sent for fires
+     */
+    public long getFiredCount() {
+        return firedCount.get();
+    }
+
+    /**
+     * @return the number of fires dropped because too many exchanges were active
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * @return the delay in milliseconds between the scheduled fire time and the
+     *         sending of the exchange for the last fire
+     */
+    public long getLastFireLag() {
+        return lastFireLag;
+    }
+
+    /**
+     * @return the maximum delay in milliseconds between the scheduled fire time
+     *         and the sending of the exchange
+     */
+    public long getMaxFireLag() {
+        return maxFireLag.get();
+    }
+
+    /**
+     * @return the number of exchanges sent since the endpoint was started and not yet completed
+     */
+    public int getActiveExchanges() {
+        synchronized (fireLock) {
+            return activeExchanges.size();
+        }
+    }
+
+    /**
+     * @return the number of fires waiting for an exchange to complete
+     */
+    public int getQueuedFires() {
+        synchronized (fireLock) {
+            return queuedFires.size();
+        }
+    }
     
     @Override
     public String getLocationURI() {
@@ -140,21 +265,104 @@ public class QuartzEndpoint extends ConsumerEndpoint {
         if (exchange.getStatus() == ExchangeStatus.ACTIVE) {
             throw new IllegalStateException("Unexpected ACTIVE exchange: " + exchange);
         }
+        // the exchange of a fire is completed
+        exchangeCompleted(exchange.getExchangeId());
     }
 
     public void onJobExecute(JobExecutionContext context) throws JobExecutionException {
         logger.debug("Firing Quartz Job with context: {}", context);
+        long scheduledFireTime = context.getScheduledFireTime() != null
+            ? context.getScheduledFireTime().getTime() : System.currentTimeMillis();
         try {
-            InOnly exchange = getExchangeFactory().createInOnlyExchange();
-            NormalizedMessage message = exchange.createMessage();
-            getMarshaler().populateNormalizedMessage(message, context);
-            exchange.setInMessage(message);
-            configureExchangeTarget(exchange);
-            send(exchange);
+            // the message has to be created now for the fires sent later, and the
+            // exchange id is needed to hold an exchange slot
+            PendingFire fire = new PendingFire(createExchange(context), scheduledFireTime);
+            synchronized (fireLock) {
+                if (maxConcurrentExchanges > 0 && activeExchanges.size() >= maxConcurrentExchanges) {
+                    deferFire(fire);
+                    return;
+                }
+                activeExchanges.add(fire.exchange.getExchangeId());
+            }
+            sendFire(fire);
         } catch (MessagingException e) {
             throw new JobExecutionException(e);
         }
     }
+
+    private InOnly createExchange(JobExecutionContext context) throws JobExecutionException, MessagingException {
+        InOnly exchange = getExchangeFactory().createInOnlyExchange();
+        NormalizedMessage message = exchange.createMessage();
+        getMarshaler().populateNormalizedMessage(message, context);
+        exchange.setInMessage(message);
+        configureExchangeTarget(exchange);
+        return exchange;
+    }
+
+    /**
+     * Handles a fire while the maximum number of exchanges is active, must be
+     * called holding the fire lock.
+     */
+    private void deferFire(PendingFire fire) {
+        if (OVERLAP_QUEUE.equals(overlapPolicy) && queuedFires.size() < maxQueuedFires) {
+            queuedFires.addLast(fire);
+        } else if (OVERLAP_COALESCE.equals(overlapPolicy)) {
+            if (!queuedFires.isEmpty()) {
+                // the latest fire replaces the waiting one
+                queuedFires.clear();
+                skippedCount.incrementAndGet();
+            }
+            queuedFires.addLast(fire);
+        } else {
+            logger.debug("Skipping fire, {} exchanges are still active", activeExchanges.size());
+            skippedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sends the exchange of a fire, the caller holds an exchange slot.
+     */
+    private void sendFire(PendingFire fire) throws MessagingException {
+        long lag = System.currentTimeMillis() - fire.scheduledFireTime;
+        lastFireLag = lag;
+        long max = maxFireLag.get();
+        while (lag > max && !maxFireLag.compareAndSet(max, lag)) {
+            max = maxFireLag.get();
+        }
+        boolean sent = false;
+        try {
+            send(fire.exchange);
+            firedCount.incrementAndGet();
+            sent = true;
+        } finally {
+            if (!sent) {
+                exchangeCompleted(fire.exchange.getExchangeId());
+            }
+        }
+    }
+
+    /**
+     * Frees the exchange slot, or hands it to the next waiting fire.
+     */
+    private void exchangeCompleted(String exchangeId) {
+        PendingFire next;
+        synchronized (fireLock) {
+            if (!activeExchanges.remove(exchangeId)) {
+                // an exchange sent before a restart doesn't hold a slot anymore
+                return;
+            }
+            next = queuedFires.poll();
+            if (next == null) {
+                return;
+            }
+            activeExchanges.add(next.exchange.getExchangeId());
+        }
+        try {
+            sendFire(next);
+        } catch (MessagingException e) {
+            logger.error("Unable to send the exchange of a queued fire", e);
+        }
+    }
     
     public void validate() throws DeploymentException {
         super.validate();
@@ -165,6 +373,11 @@ public class QuartzEndpoint extends ConsumerEndpoint {
             }
             jobDetail = jb;
         }
+        if (!OVERLAP_SKIP.equals(overlapPolicy) && !OVERLAP_COALESCE.equals(overlapPolicy)
+            && !OVERLAP_QUEUE.equals(overlapPolicy)) {
+            throw new DeploymentException("Unknown overlapPolicy " + overlapPolicy
+                + ", it must be one of skip, coalesce or queue");
+        }
         if (jobDetail == null) {
             JobDetailBean j = new JobDetailBean();
             j.setName(EndpointSupport.getKey(this));
@@ -195,10 +408,19 @@ public class QuartzEndpoint extends ConsumerEndpoint {
     }
     
     public void start() throws Exception {
+        synchronized (fireLock) {
+            // the exchanges still active when the endpoint was stopped don't block the new fires
+            activeExchanges.clear();
+            queuedFires.clear();
+        }
         QuartzComponent component = (QuartzComponent) getServiceUnit().getComponent(); 
         Scheduler scheduler = component.getScheduler();
         jobDetail.getJobDataMap().put(ServiceMixJob.COMPONENT_NAME, component.getComponentName());
         jobDetail.getJobDataMap().put(ServiceMixJob.ENDPOINT_NAME, EndpointSupport.getKey(this));
+        if (!scheduler.getMetaData().isJobStoreSupportsPersistence()) {
+            // avoid the registry lookup on each fire, the endpoint can't be persisted
+            jobDetail.getJobDataMap().put(ServiceMixJob.ENDPOINT, this);
+        }
         for (Map.Entry<String, Calendar> e : getCalendars().entrySet()) {
             scheduler.addCalendar(e.getKey(), e.getValue(), true, true);
         }
@@ -220,6 +442,9 @@ public class QuartzEndpoint extends ConsumerEndpoint {
     
     public void stop() throws Exception {
         super.stop();
+        synchronized (fireLock) {
+            queuedFires.clear();
+        }
         Scheduler scheduler = ((QuartzComponent) getServiceUnit().getComponent()).getScheduler();
         for (Trigger trg : getTriggers()) {
             scheduler.unscheduleJob(trg.getName(), trg.getGroup());
@@ -230,4 +455,18 @@ public class QuartzEndpoint extends ConsumerEndpoint {
         }
     }
 
+    /**
+     * A fire with its exchange
+     */
+    private static class PendingFire {
+
+        private final InOnly exchange;
+        private final long scheduledFireTime;
+
+        PendingFire(InOnly exchange, long scheduledFireTime) {
+            this.exchange = exchange;
+            this.scheduledFireTime = scheduledFireTime;
+        }
+    }
+
 }
@@ -74,7 +74,8 @@ public class DefaultQuartzMarshaler implements QuartzMarshaler {
         for (Iterator iter = dataMap.entrySet().iterator(); iter.hasNext();) {
             Map.Entry entry = (Map.Entry) iter.next();
             String key = (String) entry.getKey();
-            if (!key.equals(ServiceMixJob.COMPONENT_NAME) && !key.equals(ServiceMixJob.ENDPOINT_NAME)) {
+            if (!key.equals(ServiceMixJob.COMPONENT_NAME) && !key.equals(ServiceMixJob.ENDPOINT_NAME)
+                && !key.equals(ServiceMixJob.ENDPOINT)) {
                 Object value = entry.getValue();
                 message.setProperty(key, value);
             }
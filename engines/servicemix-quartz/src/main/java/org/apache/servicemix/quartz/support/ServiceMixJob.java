@@ -32,8 +32,15 @@ public class ServiceMixJob implements Job {
     
     public static final String COMPONENT_NAME = "org.apache.servicemix.quartz.ComponentName";
     public static final String ENDPOINT_NAME = "org.apache.servicemix.quartz.EndpointName";
+    public static final String ENDPOINT = "org.apache.servicemix.quartz.Endpoint";
     
     public void execute(JobExecutionContext context) throws JobExecutionException {
+        // use the endpoint cached at schedule time if the job store keeps it
+        Object cached = context.getJobDetail().getJobDataMap().get(ENDPOINT);
+        if (cached instanceof QuartzEndpoint) {
+            ((QuartzEndpoint) cached).onJobExecute(context);
+            return;
+        }
         try {
             String componentName = (String) context.getJobDetail().getJobDataMap().get(COMPONENT_NAME);
             if (componentName == null) {
@@ -16,6 +16,8 @@
  */
 package org.apache.servicemix.quartz;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -32,6 +34,7 @@ import org.apache.servicemix.tck.Receiver;
 /**
  * A simple receiver component which can be configured to
  * wait for messages before the method getMessageList returns.
+ * The received exchanges can be held open until they are released.
  *
  * @version $Revision$
  */
@@ -46,6 +49,9 @@ public class CountDownReceiverComponent extends ComponentSupport implements Mess
     
     private MessageList messageList = new MessageList();
 
+    private volatile boolean holdExchanges;
+    private final List<MessageExchange> heldExchanges = new ArrayList<MessageExchange>();
+
     public CountDownReceiverComponent(int messageCount, long milliSecTimeOut) {
         this(SERVICE, ENDPOINT, messageCount, milliSecTimeOut);
     }
@@ -66,7 +72,13 @@ public class CountDownReceiverComponent extends ComponentSupport implements Mess
         NormalizedMessage copyMessage = exchange.createMessage();
         getMessageTransformer().transform(exchange, inMessage, copyMessage);
         messageList.addMessage(copyMessage);
-        done(exchange);
+        if (holdExchanges) {
+            synchronized (heldExchanges) {
+                heldExchanges.add(exchange);
+            }
+        } else {
+            done(exchange);
+        }
         if (countDownLatch != null) {
             countDownLatch.countDown();
         }
@@ -88,5 +100,34 @@ public class CountDownReceiverComponent extends ComponentSupport implements Mess
     public void reset() {
         this.countDownLatch = new CountDownLatch(messageCount);
     }
+
+    /**
+     * Sets whether the received exchanges are kept active until {@link #releaseExchanges()} is called.
+     */
+    public void setHoldExchanges(boolean holdExchanges) {
+        this.holdExchanges = holdExchanges;
+    }
+
+    /**
+     * Completes the held exchanges.
+     */
+    public void releaseExchanges() throws MessagingException {
+        releaseExchanges(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Completes the given number of held exchanges, the oldest first.
+     */
+    public void releaseExchanges(int count) throws MessagingException {
+        List<MessageExchange> exchanges;
+        synchronized (heldExchanges) {
+            List<MessageExchange> oldest = heldExchanges.subList(0, Math.min(count, heldExchanges.size()));
+            exchanges = new ArrayList<MessageExchange>(oldest);
+            oldest.clear();
+        }
+        for (MessageExchange exchange : exchanges) {
+            done(exchange);
+        }
+    }
     
 }
@@ -16,15 +16,30 @@
  */
 package org.apache.servicemix.quartz;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jbi.messaging.MessageExchange;
 import javax.xml.namespace.QName;
 
 import junit.framework.TestCase;
 
 import org.apache.servicemix.jbi.container.JBIContainer;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
 import org.springframework.scheduling.quartz.SimpleTriggerBean;
 
 public class QuartzComponentTest extends TestCase {
 
+    private JBIContainer jbi;
+    private QuartzComponent quartz;
+
+    protected void tearDown() throws Exception {
+        if (jbi != null) {
+            jbi.shutDown();
+        }
+    }
+
     public void test() throws Exception {
         JBIContainer jbi = new JBIContainer();
         jbi.setEmbedded(true);
@@ -68,4 +83,168 @@ public class QuartzComponentTest extends TestCase {
         jbi.shutDown();
     }
     
+    public void testSkipWhileExchangeActive() throws Exception {
+        LatchedQuartzEndpoint endpoint = createEndpoint(1, QuartzEndpoint.OVERLAP_SKIP);
+        CountDownReceiverComponent receiver = startContainer(endpoint);
+
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        // the fires happening while the exchange is held are dropped
+        endpoint.expectFires(3);
+        assertTrue(endpoint.awaitFires());
+        assertEquals(0, receiver.getMessageList().flushMessages().size());
+        assertEquals(1, endpoint.getActiveExchanges());
+        assertEquals(1, endpoint.getFiredCount());
+        assertEquals(0, endpoint.getQueuedFires());
+        assertTrue(endpoint.getSkippedCount() > 0);
+
+        // the next fire is sent once the exchange is completed
+        receiver.reset();
+        receiver.releaseExchanges();
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+    }
+
+    public void testCoalesceWhileExchangeActive() throws Exception {
+        LatchedQuartzEndpoint endpoint = createEndpoint(1, QuartzEndpoint.OVERLAP_COALESCE);
+        CountDownReceiverComponent receiver = startContainer(endpoint);
+
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        // only the latest fire waits for the exchange
+        endpoint.expectFires(3);
+        assertTrue(endpoint.awaitFires());
+        assertEquals(0, receiver.getMessageList().flushMessages().size());
+        assertEquals(1, endpoint.getQueuedFires());
+        assertTrue(endpoint.getSkippedCount() > 0);
+
+        // the waiting fire is sent when the exchange completes
+        receiver.reset();
+        endpoint.expectCompletions(1);
+        receiver.releaseExchanges();
+        assertTrue(endpoint.awaitCompletions());
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        assertEquals(2, endpoint.getFiredCount());
+        assertEquals(1, endpoint.getActiveExchanges());
+    }
+
+    public void testQueueWhileExchangeActive() throws Exception {
+        LatchedQuartzEndpoint endpoint = createEndpoint(1, QuartzEndpoint.OVERLAP_QUEUE);
+        endpoint.setMaxQueuedFires(3);
+        CountDownReceiverComponent receiver = startContainer(endpoint);
+
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        // the fires wait for the exchange, up to the maximum number of queued fires
+        endpoint.expectFires(5);
+        assertTrue(endpoint.awaitFires());
+        assertEquals(0, receiver.getMessageList().flushMessages().size());
+        assertEquals(3, endpoint.getQueuedFires());
+        assertTrue(endpoint.getSkippedCount() > 0);
+
+        // the queued fires are sent once the exchanges complete
+        receiver.setHoldExchanges(false);
+        endpoint.expectCompletions(4);
+        receiver.releaseExchanges();
+        assertTrue(endpoint.awaitCompletions());
+        assertTrue(receiver.getMessageList().flushMessages().size() >= 3);
+        assertTrue(endpoint.getFiredCount() >= 4);
+    }
+
+    public void testRestartResetsActiveExchanges() throws Exception {
+        LatchedQuartzEndpoint endpoint = createEndpoint(1, QuartzEndpoint.OVERLAP_SKIP);
+        CountDownReceiverComponent receiver = startContainer(endpoint);
+
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        quartz.stop();
+        assertEquals(1, endpoint.getActiveExchanges());
+
+        // the exchange held over the restart doesn't block the new fires
+        quartz.start();
+        receiver.reset();
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        assertEquals(1, endpoint.getActiveExchanges());
+
+        // completing the exchange sent before the restart doesn't free the slot of the new one
+        endpoint.expectCompletions(1);
+        receiver.releaseExchanges(1);
+        assertTrue(endpoint.awaitCompletions());
+        endpoint.expectFires(3);
+        assertTrue(endpoint.awaitFires());
+        assertEquals(0, receiver.getMessageList().flushMessages().size());
+        assertEquals(1, endpoint.getActiveExchanges());
+
+        // completing the new exchange frees its slot
+        receiver.reset();
+        receiver.releaseExchanges();
+        assertEquals(1, receiver.getMessageList().flushMessages().size());
+        assertEquals(1, endpoint.getActiveExchanges());
+    }
+
+    private LatchedQuartzEndpoint createEndpoint(int maxConcurrentExchanges, String overlapPolicy) throws Exception {
+        LatchedQuartzEndpoint endpoint = new LatchedQuartzEndpoint();
+        endpoint.setService(new QName("quartz"));
+        endpoint.setEndpoint("endpoint");
+        endpoint.setTargetService(new QName("countDownReceiver"));
+        SimpleTriggerBean trigger = new SimpleTriggerBean();
+        trigger.setRepeatInterval(100);
+        trigger.setName("trigger");
+        trigger.afterPropertiesSet();
+        endpoint.setTrigger(trigger);
+        endpoint.setMaxConcurrentExchanges(maxConcurrentExchanges);
+        endpoint.setOverlapPolicy(overlapPolicy);
+        return endpoint;
+    }
+
+    /**
+     * Starts the endpoint with a receiver holding the exchanges open.
+     */
+    private CountDownReceiverComponent startContainer(QuartzEndpoint endpoint) throws Exception {
+        jbi = new JBIContainer();
+        jbi.setEmbedded(true);
+        jbi.init();
+
+        quartz = new QuartzComponent();
+        quartz.setEndpoints(new QuartzEndpoint[] {endpoint });
+        jbi.activateComponent(quartz, "servicemix-quartz");
+
+        CountDownReceiverComponent receiver = new CountDownReceiverComponent(new QName("countDownReceiver"), "endpoint", 1, 3000);
+        receiver.setHoldExchanges(true);
+        jbi.activateComponent(receiver, "countDownReceiver");
+
+        jbi.start();
+        return receiver;
+    }
+
+    /**
+     * An endpoint counting down latches on the fires and on the completed exchanges.
+     */
+    private static class LatchedQuartzEndpoint extends QuartzEndpoint {
+
+        private volatile CountDownLatch fires = new CountDownLatch(0);
+        private volatile CountDownLatch completions = new CountDownLatch(0);
+
+        void expectFires(int count) {
+            fires = new CountDownLatch(count);
+        }
+
+        boolean awaitFires() throws InterruptedException {
+            return fires.await(5, TimeUnit.SECONDS);
+        }
+
+        void expectCompletions(int count) {
+            completions = new CountDownLatch(count);
+        }
+
+        boolean awaitCompletions() throws InterruptedException {
+            return completions.await(5, TimeUnit.SECONDS);
+        }
+
+        public void onJobExecute(JobExecutionContext context) throws JobExecutionException {
+            super.onJobExecute(context);
+            fires.countDown();
+        }
+
+        public void process(MessageExchange exchange) throws Exception {
+            super.process(exchange);
+            completions.countDown();
+        }
+    }
+
 }
@@ -17,9 +17,12 @@
 package org.apache.servicemix.wsn.jms;
 
 import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.Topic;
 import javax.xml.namespace.QName;
 import javax.xml.bind.JAXBElement;
 import javax.xml.datatype.DatatypeFactory;
@@ -40,6 +43,8 @@ public abstract class JmsNotificationBroker extends AbstractNotificationBroker {
 
     private Connection connection;
 
+    private final ConcurrentMap<Topic, JmsTopicDispatcher> dispatchers = new ConcurrentHashMap<Topic, JmsTopicDispatcher>();
+
     public JmsNotificationBroker(String name) {
         super(name);
     }
@@ -77,9 +82,25 @@ public abstract class JmsNotificationBroker extends AbstractNotificationBroker {
         JmsSubscription subscription = createJmsSubscription(name);
         subscription.setManager(getManager());
         subscription.setConnection(connection);
+        subscription.setNotificationBroker(this);
         return subscription;
     }
 
+    /**
+     * Returns the dispatcher shared by all the subscriptions to the given topic
+     */
+    protected JmsTopicDispatcher getDispatcher(Topic topic) {
+        JmsTopicDispatcher dispatcher = dispatchers.get(topic);
+        if (dispatcher == null) {
+            dispatcher = new JmsTopicDispatcher(connection, topic);
+            JmsTopicDispatcher existing = dispatchers.putIfAbsent(topic, dispatcher);
+            if (existing != null) {
+                dispatcher = existing;
+            }
+        }
+        return dispatcher;
+    }
+
     protected abstract JmsSubscription createJmsSubscription(String name);
 
     protected abstract JmsPublisher createJmsPublisher(String name);
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of sessions, each with an unidentified producer, used to send text messages.
+ * JMS sessions can not be used concurrently, so each send borrows a session from the pool
+ * instead of creating a new one.
+ */
+class JmsProducerPool {
+
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(JmsProducerPool.class);
+
+    private final Connection connection;
+
+    private final int maxIdle;
+
+    private final Queue<PooledProducer> idle = new ConcurrentLinkedQueue<PooledProducer>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    JmsProducerPool(Connection connection) {
+        this(connection, DEFAULT_MAX_IDLE);
+    }
+
+    JmsProducerPool(Connection connection, int maxIdle) {
+        this.connection = connection;
+        this.maxIdle = maxIdle;
+    }
+
+    public void send(Destination destination, String text) throws JMSException {
+        PooledProducer producer = idle.poll();
+        if (producer != null) {
+            idleCount.decrementAndGet();
+        } else {
+            producer = new PooledProducer(connection);
+        }
+        try {
+            producer.producer.send(destination, producer.session.createTextMessage(text));
+        } catch (JMSException e) {
+            // do not give a possibly broken session back to the pool
+            producer.close();
+            throw e;
+        }
+        release(producer);
+    }
+
+    public void close() {
+        closed = true;
+        for (PooledProducer producer = idle.poll(); producer != null; producer = idle.poll()) {
+            idleCount.decrementAndGet();
+            producer.close();
+        }
+    }
+
+    private void release(PooledProducer producer) {
+        if (!closed && idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(producer);
+            if (closed && idle.remove(producer)) {
+                // closed concurrently
+                idleCount.decrementAndGet();
+                producer.close();
+            }
+        } else {
+            idleCount.decrementAndGet();
+            producer.close();
+        }
+    }
+
+    private class PooledProducer {
+
+        private final Session session;
+
+        private final MessageProducer producer;
+
+        PooledProducer(Connection connection) throws JMSException {
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producer = session.createProducer(null);
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                logger.debug("Error closing session", e);
+            }
+        }
+    }
+
+}
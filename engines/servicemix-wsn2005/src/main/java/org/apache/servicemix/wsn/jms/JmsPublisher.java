@@ -16,15 +16,9 @@
  */
 package org.apache.servicemix.wsn.jms;
 
-import java.io.StringWriter;
-
 import javax.jms.Connection;
 import javax.jms.JMSException;
-import javax.jms.Message;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
 import javax.jms.Topic;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 
 import org.apache.activemq.advisory.ConsumerEvent;
@@ -33,7 +27,6 @@ import org.apache.activemq.advisory.ConsumerListener;
 import org.apache.servicemix.wsn.AbstractPublisher;
 import org.oasis_open.docs.wsn.b_2.InvalidTopicExpressionFaultType;
 import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
-import org.oasis_open.docs.wsn.b_2.Notify;
 import org.oasis_open.docs.wsn.br_2.PublisherRegistrationFailedFaultType;
 import org.oasis_open.docs.wsn.br_2.RegisterPublisher;
 import org.oasis_open.docs.wsn.br_2.ResourceNotDestroyedFaultType;
@@ -54,7 +47,11 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
 
     private JmsTopicExpressionConverter topicConverter;
 
-    private JAXBContext jaxbContext;
+    private JmsProducerPool producerPool;
+
+    private boolean destroyed;
+
+    private final NotifyMarshaller marshaller = new NotifyMarshaller();
 
     private Topic jmsTopic;
 
@@ -65,11 +62,6 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
     public JmsPublisher(String name) {
         super(name);
         topicConverter = new JmsTopicExpressionConverter();
-        try {
-            jaxbContext = JAXBContext.newInstance(Notify.class);
-        } catch (JAXBException e) {
-            throw new RuntimeException("Unable to create JAXB context", e);
-        }
     }
 
     public Connection getConnection() {
@@ -80,33 +72,28 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
         this.connection = connection;
     }
 
+    private synchronized JmsProducerPool getProducerPool() throws JMSException {
+        if (destroyed) {
+            // do not open sessions that nothing would close anymore
+            throw new JMSException("Publisher " + getName() + " has been destroyed");
+        }
+        if (producerPool == null) {
+            producerPool = new JmsProducerPool(connection);
+        }
+        return producerPool;
+    }
+
     @Override
     public void notify(NotificationMessageHolderType messageHolder) {
-        Session session = null;
         try {
             Topic topic = topicConverter.toActiveMQTopic(messageHolder.getTopic());
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer producer = session.createProducer(topic);
-            Notify notify = new Notify();
-            notify.getNotificationMessage().add(messageHolder);
-            StringWriter writer = new StringWriter();
-            jaxbContext.createMarshaller().marshal(notify, writer);
-            Message message = session.createTextMessage(writer.toString());
-            producer.send(message);
+            getProducerPool().send(topic, marshaller.marshal(messageHolder));
         } catch (JMSException e) {
             logger.warn("Error dispatching message", e);
         } catch (JAXBException e) {
             logger.warn("Error dispatching message", e);
         } catch (InvalidTopicException e) {
             logger.warn("Error dispatching message", e);
-        } finally {
-            if (session != null) {
-                try {
-                    session.close();
-                } catch (JMSException e) {
-                    logger.debug("Error closing session", e);
-                }
-            }
         }
     }
 
@@ -142,6 +129,14 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
             if (advisory != null) {
                 advisory.stop();
             }
+            synchronized (this) {
+                destroyed = true;
+                if (producerPool != null) {
+                    producerPool.close();
+                    producerPool = null;
+                }
+                marshaller.clear();
+            }
         } catch (Exception e) {
             ResourceNotDestroyedFaultType fault = new ResourceNotDestroyedFaultType();
             throw new ResourceNotDestroyedFault("Error destroying publisher", fault, e);
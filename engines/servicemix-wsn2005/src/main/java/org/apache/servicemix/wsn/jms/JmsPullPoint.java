@@ -16,8 +16,6 @@
  */
 package org.apache.servicemix.wsn.jms;
 
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,17 +23,16 @@ import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TextMessage;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 
 import org.apache.servicemix.wsn.AbstractPullPoint;
 import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
 import org.oasis_open.docs.wsn.b_2.Notify;
 import org.oasis_open.docs.wsn.b_2.UnableToGetMessagesFaultType;
+import org.oasis_open.docs.wsn.bw_2.UnableToDestroyPullPointFault;
 import org.oasis_open.docs.wsn.bw_2.UnableToGetMessagesFault;
 import org.oasis_open.docs.wsrf.rw_2.ResourceUnknownFault;
 import org.slf4j.Logger;
@@ -45,93 +42,102 @@ public class JmsPullPoint extends AbstractPullPoint {
 
     private final Logger logger = LoggerFactory.getLogger(JmsPullPoint.class);
 
-    private JAXBContext jaxbContext;
+    private final Object consumerLock = new Object();
 
     private Connection connection;
 
-    private Session session;
+    private JmsProducerPool producerPool;
+
+    private boolean destroyed;
 
-    private Queue queue;
+    private final NotifyMarshaller marshaller = new NotifyMarshaller();
 
-    private MessageProducer producer;
+    private volatile Queue queue;
+
+    private Session session;
 
     private MessageConsumer consumer;
 
     public JmsPullPoint(String name) {
         super(name);
-        try {
-            jaxbContext = JAXBContext.newInstance(Notify.class);
-        } catch (JAXBException e) {
-            throw new RuntimeException("Could not create PullEndpoint", e);
-        }
     }
 
+    /**
+     * Creates the consumer session.  Must be called while holding the consumer lock.
+     */
     protected void initSession() throws JMSException {
         if (session == null) {
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             queue = session.createQueue(getName());
-            producer = session.createProducer(queue);
             consumer = session.createConsumer(queue);
         }
     }
 
+    private synchronized JmsProducerPool getProducerPool() throws JMSException {
+        if (destroyed) {
+            // do not open sessions that nothing would close anymore
+            throw new JMSException("Pull point " + getName() + " has been destroyed");
+        }
+        if (producerPool == null) {
+            producerPool = new JmsProducerPool(connection);
+        }
+        return producerPool;
+    }
+
+    private Queue getQueue() throws JMSException {
+        if (queue == null) {
+            synchronized (consumerLock) {
+                initSession();
+            }
+        }
+        return queue;
+    }
+
     @Override
-    protected synchronized void store(NotificationMessageHolderType messageHolder) {
+    protected void store(NotificationMessageHolderType messageHolder) {
+        // stores do not wait for the consumer, the producers are pooled
         try {
-            initSession();
-            Notify notify = new Notify();
-            notify.getNotificationMessage().add(messageHolder);
-            StringWriter writer = new StringWriter();
-            jaxbContext.createMarshaller().marshal(notify, writer);
-            Message message = session.createTextMessage(writer.toString());
-            producer.send(message);
+            getProducerPool().send(getQueue(), marshaller.marshal(messageHolder));
         } catch (JMSException e) {
             logger.warn("Error storing message", e);
-            if (session != null) {
-                try {
-                    session.close();
-                } catch (JMSException inner) {
-                    logger.debug("Error closing session", inner);
-                } finally {
-                    session = null;
-                }
-            }
         } catch (JAXBException e) {
             logger.warn("Error storing message", e);
         }
     }
 
     @Override
-    protected synchronized List<NotificationMessageHolderType> getMessages(int max) throws ResourceUnknownFault,
+    protected List<NotificationMessageHolderType> getMessages(int max) throws ResourceUnknownFault,
             UnableToGetMessagesFault {
+        if (max == 0) {
+            max = 256;
+        }
+        List<String> texts = new ArrayList<String>(Math.min(max, 256));
         try {
-            if (max == 0) {
-                max = 256;
-            }
-            initSession();
-            List<NotificationMessageHolderType> messages = new ArrayList<NotificationMessageHolderType>();
-            for (int i = 0; i < max; i++) {
-                Message msg = consumer.receiveNoWait();
-                if (msg == null) {
-                    break;
+            // only the draining of the consumer is serialized, the messages prefetched by the
+            // consumer are received without any broker round trip
+            synchronized (consumerLock) {
+                try {
+                    initSession();
+                    for (int i = 0; i < max; i++) {
+                        Message msg = consumer.receiveNoWait();
+                        if (msg == null) {
+                            break;
+                        }
+                        texts.add(((TextMessage) msg).getText());
+                    }
+                } catch (JMSException e) {
+                    closeSession();
+                    throw e;
                 }
-                TextMessage txtMsg = (TextMessage) msg;
-                StringReader reader = new StringReader(txtMsg.getText());
-                Notify notify = (Notify) jaxbContext.createUnmarshaller().unmarshal(reader);
+            }
+            List<NotificationMessageHolderType> messages = new ArrayList<NotificationMessageHolderType>(texts.size());
+            for (String text : texts) {
+                Notify notify = marshaller.unmarshal(text);
                 messages.addAll(notify.getNotificationMessage());
             }
             return messages;
         } catch (JMSException e) {
             logger.info("Error retrieving messages", e);
-            if (session != null) {
-                try {
-                    session.close();
-                } catch (JMSException inner) {
-                    logger.debug("Error closing session", inner);
-                } finally {
-                    session = null;
-                }
-            }
             UnableToGetMessagesFaultType fault = new UnableToGetMessagesFaultType();
             throw new UnableToGetMessagesFault("Unable to retrieve messages", fault, e);
         } catch (JAXBException e) {
@@ -141,6 +147,37 @@ public class JmsPullPoint extends AbstractPullPoint {
         }
     }
 
+    @Override
+    protected void destroy() throws UnableToDestroyPullPointFault {
+        try {
+            synchronized (consumerLock) {
+                closeSession();
+            }
+            synchronized (this) {
+                destroyed = true;
+                if (producerPool != null) {
+                    producerPool.close();
+                    producerPool = null;
+                }
+                marshaller.clear();
+            }
+        } finally {
+            super.destroy();
+        }
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (JMSException inner) {
+                logger.debug("Error closing session", inner);
+            } finally {
+                session = null;
+            }
+        }
+    }
+
     public Connection getConnection() {
         return connection;
     }
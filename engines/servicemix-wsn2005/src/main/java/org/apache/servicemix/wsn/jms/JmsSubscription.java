@@ -21,14 +21,10 @@ import java.io.StringReader;
 import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
-import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
@@ -69,7 +65,13 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
 
     private Connection connection;
 
-    private Session session;
+    private JmsNotificationBroker notificationBroker;
+
+    private JmsTopicDispatcher dispatcher;
+
+    private boolean running;
+
+    private XPathExpression filterExpression;
 
     private JmsTopicExpressionConverter topicConverter;
 
@@ -82,9 +84,13 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
 
     protected void start() throws SubscribeCreationFailedFault {
         try {
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            MessageConsumer consumer = session.createConsumer(jmsTopic);
-            consumer.setMessageListener(this);
+            if (notificationBroker != null) {
+                dispatcher = notificationBroker.getDispatcher(jmsTopic);
+            } else {
+                dispatcher = new JmsTopicDispatcher(connection, jmsTopic);
+            }
+            dispatcher.addSubscription(this);
+            running = true;
         } catch (JMSException e) {
             SubscribeCreationFailedFaultType fault = new SubscribeCreationFailedFaultType();
             throw new SubscribeCreationFailedFault("Error starting subscription", fault, e);
@@ -108,31 +114,30 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
 
     @Override
     protected void pause() throws PauseFailedFault {
-        if (session == null) {
+        if (!running) {
             PauseFailedFaultType fault = new PauseFailedFaultType();
             throw new PauseFailedFault("Subscription is already paused", fault);
         } else {
             try {
-                session.close();
+                dispatcher.removeSubscription(this);
             } catch (JMSException e) {
                 PauseFailedFaultType fault = new PauseFailedFaultType();
                 throw new PauseFailedFault("Error pausing subscription", fault, e);
             } finally {
-                session = null;
+                running = false;
             }
         }
     }
 
     @Override
     protected void resume() throws ResumeFailedFault {
-        if (session != null) {
+        if (running) {
             ResumeFailedFaultType fault = new ResumeFailedFaultType();
             throw new ResumeFailedFault("Subscription is already running", fault);
         } else {
             try {
-                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                MessageConsumer consumer = session.createConsumer(jmsTopic);
-                consumer.setMessageListener(this);
+                dispatcher.addSubscription(this);
+                running = true;
             } catch (JMSException e) {
                 ResumeFailedFaultType fault = new ResumeFailedFaultType();
                 throw new ResumeFailedFault("Error resuming subscription", fault, e);
@@ -149,14 +154,14 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
     @Override
     protected void unsubscribe() throws UnableToDestroySubscriptionFault {
         super.unsubscribe();
-        if (session != null) {
+        if (running) {
             try {
-                session.close();
+                dispatcher.removeSubscription(this);
             } catch (JMSException e) {
                 UnableToDestroySubscriptionFaultType fault = new UnableToDestroySubscriptionFaultType();
                 throw new UnableToDestroySubscriptionFault("Unable to unsubscribe", fault, e);
             } finally {
-                session = null;
+                running = false;
             }
         }
     }
@@ -169,22 +174,46 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
         this.connection = connection;
     }
 
+    public JmsNotificationBroker getNotificationBroker() {
+        return notificationBroker;
+    }
+
+    /**
+     * The broker owning this subscription.  Subscriptions of the same broker
+     * share the parsing and filtering of the notifications of their topic.
+     */
+    public void setNotificationBroker(JmsNotificationBroker notificationBroker) {
+        this.notificationBroker = notificationBroker;
+    }
+
+    /**
+     * Returns the XPath expression of the content filter, or <code>null</code> if the
+     * subscription has no content filter.
+     */
+    protected String getContentFilterExpression() {
+        if (contentFilter == null) {
+            return null;
+        }
+        if (!contentFilter.getDialect().equals(XPATH1_URI)) {
+            throw new IllegalStateException("Unsupported dialect: " + contentFilter.getDialect());
+        }
+        return contentFilter.getContent().get(0).toString();
+    }
+
+    boolean isUseRaw() {
+        return useRaw;
+    }
+
+    /**
+     * Notifications are normally received through a {@link JmsTopicDispatcher}, this
+     * method handles a notification for this subscription only.
+     */
     public void onMessage(Message jmsMessage) {
         try {
             TextMessage text = (TextMessage) jmsMessage;
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document doc = factory.newDocumentBuilder().parse(new InputSource(new StringReader(text.getText())));
+            Document doc = JmsTopicDispatcher.newDocumentBuilder().parse(new InputSource(new StringReader(text.getText())));
             Element root = doc.getDocumentElement();
-            Element holder = (Element) root.getElementsByTagNameNS(WSN_URI, "NotificationMessage").item(0);
-            Element message = (Element) holder.getElementsByTagNameNS(WSN_URI, "Message").item(0);
-            Element content = null;
-            for (int i = 0; i < message.getChildNodes().getLength(); i++) {
-                if (message.getChildNodes().item(i) instanceof Element) {
-                    content = (Element) message.getChildNodes().item(i);
-                    break;
-                }
-            }
+            Element content = JmsTopicDispatcher.getContent(root);
             boolean match = doFilter(content);
             if (match) {
                 if (useRaw) {
@@ -204,11 +233,14 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
                 throw new IllegalStateException("Unsupported dialect: " + contentFilter.getDialect());
             }
             try {
-                XPathFactory xpfactory = XPathFactory.newInstance();
-                XPath xpath = xpfactory.newXPath();
-                XPathExpression exp = xpath.compile(contentFilter.getContent().get(0).toString());
-                Boolean ret = (Boolean) exp.evaluate(content, XPathConstants.BOOLEAN);
-                return ret.booleanValue();
+                synchronized (this) {
+                    if (filterExpression == null) {
+                        filterExpression = XPathFactory.newInstance().newXPath().compile(
+                                contentFilter.getContent().get(0).toString());
+                    }
+                    Boolean ret = (Boolean) filterExpression.evaluate(content, XPathConstants.BOOLEAN);
+                    return ret.booleanValue();
+                }
             } catch (XPathExpressionException e) {
                 logger.warn("Could not filter notification", e);
             }
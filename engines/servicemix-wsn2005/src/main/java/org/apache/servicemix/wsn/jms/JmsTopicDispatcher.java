@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import org.apache.servicemix.wsn.AbstractSubscription;
+
+/**
+ * Consumes the notifications published on a JMS topic on behalf of all the subscriptions
+ * to this topic.
+ * <p>
+ * Each notification is parsed once and the content filter of every group of subscriptions
+ * is evaluated against the parsed notification. Subscriptions using the same filter are
+ * grouped so that the filter is compiled and evaluated only once.
+ * The JMS consumer is only open while there are subscriptions.
+ */
+public class JmsTopicDispatcher implements MessageListener {
+
+    private final Logger logger = LoggerFactory.getLogger(JmsTopicDispatcher.class);
+
+    private final Connection connection;
+
+    private final Topic topic;
+
+    private final XPathFactory xpathFactory = XPathFactory.newInstance();
+
+    private final Map<String, FilterGroup> groups = new LinkedHashMap<String, FilterGroup>();
+
+    private volatile List<FilterGroup> activeGroups = new ArrayList<FilterGroup>();
+
+    private DocumentBuilder builder;
+
+    private Session session;
+
+    public JmsTopicDispatcher(Connection connection, Topic topic) {
+        this.connection = connection;
+        this.topic = topic;
+    }
+
+    public Topic getTopic() {
+        return topic;
+    }
+
+    public synchronized void addSubscription(JmsSubscription subscription) throws JMSException {
+        String filter = subscription.getContentFilterExpression();
+        FilterGroup group = groups.get(filter);
+        if (group == null) {
+            group = new FilterGroup(filter, compile(filter));
+            groups.put(filter, group);
+            activeGroups = new ArrayList<FilterGroup>(groups.values());
+        }
+        group.subscriptions.add(subscription);
+        if (session == null) {
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(topic);
+            consumer.setMessageListener(this);
+        }
+    }
+
+    public synchronized void removeSubscription(JmsSubscription subscription) throws JMSException {
+        String filter = subscription.getContentFilterExpression();
+        FilterGroup group = groups.get(filter);
+        if (group == null || !group.subscriptions.remove(subscription)) {
+            return;
+        }
+        if (group.subscriptions.isEmpty()) {
+            groups.remove(filter);
+            activeGroups = new ArrayList<FilterGroup>(groups.values());
+        }
+        if (groups.isEmpty() && session != null) {
+            try {
+                session.close();
+            } finally {
+                session = null;
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return groups.isEmpty();
+    }
+
+    /**
+     * Called by the JMS session for each notification published on the topic.
+     * Messages of a session are delivered serially, so the parser and the compiled
+     * filters are only used by one thread at a time.
+     */
+    public void onMessage(Message jmsMessage) {
+        List<FilterGroup> groups = activeGroups;
+        if (groups.isEmpty()) {
+            return;
+        }
+        try {
+            Document doc = parse(((TextMessage) jmsMessage).getText());
+            Element root = doc.getDocumentElement();
+            Element content = getContent(root);
+            List<JmsSubscription> matches = new ArrayList<JmsSubscription>();
+            for (FilterGroup group : groups) {
+                if (group.matches(content)) {
+                    matches.addAll(group.subscriptions);
+                }
+            }
+            // all filters have been evaluated, the parsed notification can now be given away:
+            // each subscriber receives its own copy except the last one which receives the original
+            for (int i = 0; i < matches.size(); i++) {
+                JmsSubscription subscription = matches.get(i);
+                boolean last = i == matches.size() - 1;
+                try {
+                    if (subscription.isUseRaw()) {
+                        subscription.doNotify(last ? content : copy(content));
+                    } else {
+                        subscription.doNotify(last ? root : copy(root));
+                    }
+                } catch (Exception e) {
+                    logger.warn("Error notifying consumer", e);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error notifying consumers", e);
+        }
+    }
+
+    private Document parse(String text) throws Exception {
+        if (builder == null) {
+            builder = newDocumentBuilder();
+        }
+        return builder.parse(new InputSource(new StringReader(text)));
+    }
+
+    private Element copy(Element element) {
+        Document doc = builder.newDocument();
+        Element copy = (Element) doc.importNode(element, true);
+        doc.appendChild(copy);
+        return copy;
+    }
+
+    private XPathExpression compile(String filter) {
+        if (filter == null) {
+            return null;
+        }
+        try {
+            return xpathFactory.newXPath().compile(filter);
+        } catch (XPathExpressionException e) {
+            logger.warn("Could not compile notification filter", e);
+            return null;
+        }
+    }
+
+    static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder();
+    }
+
+    /**
+     * Returns the content of the first notification message of a Notify element
+     */
+    static Element getContent(Element root) {
+        Element holder = (Element) root.getElementsByTagNameNS(AbstractSubscription.WSN_URI, "NotificationMessage").item(0);
+        Element message = (Element) holder.getElementsByTagNameNS(AbstractSubscription.WSN_URI, "Message").item(0);
+        for (Node child = message.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    private class FilterGroup {
+
+        private final String filter;
+
+        private final XPathExpression expression;
+
+        private final List<JmsSubscription> subscriptions = new CopyOnWriteArrayList<JmsSubscription>();
+
+        FilterGroup(String filter, XPathExpression expression) {
+            this.filter = filter;
+            this.expression = expression;
+        }
+
+        boolean matches(Element content) {
+            if (filter == null) {
+                return true;
+            }
+            if (expression == null) {
+                // the filter could not be compiled
+                return false;
+            }
+            try {
+                return ((Boolean) expression.evaluate(content, XPathConstants.BOOLEAN)).booleanValue();
+            } catch (XPathExpressionException e) {
+                logger.warn("Could not filter notification", e);
+                return false;
+            }
+        }
+    }
+
+}
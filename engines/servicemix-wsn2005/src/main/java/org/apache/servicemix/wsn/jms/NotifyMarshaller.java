@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
+import org.oasis_open.docs.wsn.b_2.Notify;
+
+/**
+ * Converts notifications to and from the text sent over JMS.
+ * The JAXB context is created once and each instance pools the marshallers and unmarshallers,
+ * as these are not thread safe.  Unlike thread locals on the container threads, the pools go
+ * away with their owner when the component is undeployed.
+ */
+final class NotifyMarshaller {
+
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    private static final JAXBContext CONTEXT;
+
+    static {
+        try {
+            CONTEXT = JAXBContext.newInstance(Notify.class);
+        } catch (JAXBException e) {
+            throw new RuntimeException("Unable to create JAXB context", e);
+        }
+    }
+
+    private final int maxIdle;
+
+    private final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<Marshaller>();
+
+    private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+
+    NotifyMarshaller() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    NotifyMarshaller(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public String marshal(NotificationMessageHolderType messageHolder) throws JAXBException {
+        Notify notify = new Notify();
+        notify.getNotificationMessage().add(messageHolder);
+        Marshaller marshaller = marshallers.poll();
+        if (marshaller == null) {
+            marshaller = CONTEXT.createMarshaller();
+        }
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(notify, writer);
+        release(marshallers, marshaller);
+        return writer.toString();
+    }
+
+    public Notify unmarshal(String text) throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        if (unmarshaller == null) {
+            unmarshaller = CONTEXT.createUnmarshaller();
+        }
+        Notify notify = (Notify) unmarshaller.unmarshal(new StringReader(text));
+        release(unmarshallers, unmarshaller);
+        return notify;
+    }
+
+    /**
+     * Releases all the pooled marshallers and unmarshallers.
+     */
+    public void clear() {
+        marshallers.clear();
+        unmarshallers.clear();
+    }
+
+    private <T> void release(Queue<T> pool, T object) {
+        // the size of a concurrent queue is not constant-time, but the pools are small
+        if (pool.size() < maxIdle) {
+            pool.offer(object);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+
+public class JmsProducerPoolTest extends TestCase {
+
+    private Connection connection;
+
+    private AtomicInteger sessions;
+
+    private JmsProducerPool pool;
+
+    protected void setUp() throws Exception {
+        connection = new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false").createConnection();
+        connection.start();
+        sessions = new AtomicInteger();
+        pool = new JmsProducerPool(countSessions(connection, sessions), 2);
+    }
+
+    protected void tearDown() throws Exception {
+        pool.close();
+        connection.close();
+    }
+
+    public void testSessionIsReused() throws Exception {
+        ActiveMQQueue queue = new ActiveMQQueue("testSessionIsReused");
+        pool.send(queue, "first");
+        pool.send(queue, "second");
+        pool.send(queue, "third");
+        assertEquals(1, sessions.get());
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(queue);
+        assertEquals("first", ((TextMessage) consumer.receive(5000)).getText());
+        assertEquals("second", ((TextMessage) consumer.receive(5000)).getText());
+        assertEquals("third", ((TextMessage) consumer.receive(5000)).getText());
+        session.close();
+    }
+
+    public void testConcurrentSends() throws Exception {
+        final ActiveMQQueue queue = new ActiveMQQueue("testConcurrentSends");
+        final List<Exception> errors = new ArrayList<Exception>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            pool.send(queue, "message");
+                        }
+                    } catch (Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        // at most one session per sender, not one per message
+        assertTrue(sessions.get() <= threads.length);
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(queue);
+        for (int i = 0; i < threads.length * 50; i++) {
+            assertNotNull(consumer.receive(5000));
+        }
+        session.close();
+    }
+
+    public void testClosedPoolKeepsNoSession() throws Exception {
+        ActiveMQQueue queue = new ActiveMQQueue("testClosedPoolKeepsNoSession");
+        pool.send(queue, "first");
+        pool.close();
+        // sends still go through, but the session is closed instead of pooled
+        pool.send(queue, "second");
+        pool.send(queue, "third");
+        assertEquals(3, sessions.get());
+    }
+
+    /**
+     * Wraps a connection to count the sessions it creates.
+     */
+    static Connection countSessions(final Connection connection, final AtomicInteger sessions) {
+        return (Connection) Proxy.newProxyInstance(JmsProducerPoolTest.class.getClassLoader(),
+            new Class[] {Connection.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("createSession".equals(method.getName())) {
+                        sessions.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                }
+            });
+    }
+
+}
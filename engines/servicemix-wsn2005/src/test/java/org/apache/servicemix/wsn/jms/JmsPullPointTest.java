@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Element;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
+
+public class JmsPullPointTest extends TestCase {
+
+    private Connection connection;
+
+    private AtomicInteger sessions;
+
+    private JmsPullPoint pullPoint;
+
+    protected void setUp() throws Exception {
+        connection = new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false").createConnection();
+        connection.start();
+        sessions = new AtomicInteger();
+        pullPoint = new JmsPullPoint("pullPoint" + System.nanoTime());
+        pullPoint.setConnection(JmsProducerPoolTest.countSessions(connection, sessions));
+    }
+
+    protected void tearDown() throws Exception {
+        connection.close();
+    }
+
+    public void testGetMessages() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pullPoint.store(NotifyMarshallerTest.createMessageHolder("myTopic", String.valueOf(i)));
+        }
+        // let the broker dispatch the messages to the consumer prefetch buffer
+        Thread.sleep(500);
+
+        List<NotificationMessageHolderType> messages = pullPoint.getMessages(2);
+        assertEquals(2, messages.size());
+        assertEquals("0", getAmount(messages.get(0)));
+        assertEquals("1", getAmount(messages.get(1)));
+        // no maximum
+        messages = pullPoint.getMessages(0);
+        assertEquals(1, messages.size());
+        assertEquals("2", getAmount(messages.get(0)));
+        assertEquals(0, pullPoint.getMessages(0).size());
+        // one consumer session and one pooled producer session
+        assertEquals(2, sessions.get());
+        pullPoint.destroy();
+    }
+
+    public void testStoreAfterDestroy() throws Exception {
+        pullPoint.store(NotifyMarshallerTest.createMessageHolder("myTopic", "1"));
+        pullPoint.destroy();
+        int created = sessions.get();
+
+        // the notification is dropped, no session is left open behind the destroyed pull point
+        pullPoint.store(NotifyMarshallerTest.createMessageHolder("myTopic", "2"));
+        assertEquals(created, sessions.get());
+    }
+
+    private String getAmount(NotificationMessageHolderType holder) {
+        return ((Element) holder.getMessage().getAny()).getTextContent();
+    }
+
+}
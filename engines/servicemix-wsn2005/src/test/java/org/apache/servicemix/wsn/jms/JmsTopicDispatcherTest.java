@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Element;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.oasis_open.docs.wsn.b_2.QueryExpressionType;
+
+public class JmsTopicDispatcherTest extends TestCase {
+
+    private static final String NOTIFY =
+        "<wsnt:Notify xmlns:wsnt='http://docs.oasis-open.org/wsn/b-2'>"
+        + "<wsnt:NotificationMessage><wsnt:Message><order><amount>15</amount></order></wsnt:Message>"
+        + "</wsnt:NotificationMessage></wsnt:Notify>";
+
+    private Connection connection;
+
+    private JmsTopicDispatcher dispatcher;
+
+    protected void setUp() throws Exception {
+        connection = new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false").createConnection();
+        dispatcher = new JmsTopicDispatcher(connection, new ActiveMQTopic("myTopic"));
+    }
+
+    protected void tearDown() throws Exception {
+        connection.close();
+    }
+
+    public void testFilteredDispatch() throws Exception {
+        TestSubscription all = new TestSubscription("all", null, false);
+        TestSubscription big1 = new TestSubscription("big1", "/order/amount > 10", false);
+        TestSubscription big2 = new TestSubscription("big2", "/order/amount > 10", true);
+        TestSubscription small = new TestSubscription("small", "/order/amount < 10", false);
+        dispatcher.addSubscription(all);
+        dispatcher.addSubscription(big1);
+        dispatcher.addSubscription(big2);
+        dispatcher.addSubscription(small);
+
+        dispatcher.onMessage(createMessage());
+
+        assertEquals(1, all.notifications.size());
+        assertEquals("Notify", all.notifications.get(0).getLocalName());
+        assertEquals(1, big1.notifications.size());
+        assertEquals(1, big2.notifications.size());
+        assertEquals("order", big2.notifications.get(0).getLocalName());
+        assertEquals(0, small.notifications.size());
+        // each subscriber receives its own tree
+        assertNotSame(all.notifications.get(0).getOwnerDocument(), big1.notifications.get(0).getOwnerDocument());
+    }
+
+    public void testRemoveSubscription() throws Exception {
+        TestSubscription big1 = new TestSubscription("big1", "/order/amount > 10", false);
+        TestSubscription big2 = new TestSubscription("big2", "/order/amount > 10", false);
+        dispatcher.addSubscription(big1);
+        dispatcher.addSubscription(big2);
+        dispatcher.removeSubscription(big1);
+
+        dispatcher.onMessage(createMessage());
+
+        assertEquals(0, big1.notifications.size());
+        assertEquals(1, big2.notifications.size());
+        dispatcher.removeSubscription(big2);
+        assertTrue(dispatcher.isEmpty());
+    }
+
+    private ActiveMQTextMessage createMessage() throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(NOTIFY);
+        return message;
+    }
+
+    private static class TestSubscription extends JmsSubscription {
+
+        private final List<Element> notifications = new ArrayList<Element>();
+
+        TestSubscription(String name, String filter, boolean raw) {
+            super(name);
+            if (filter != null) {
+                contentFilter = new QueryExpressionType();
+                contentFilter.setDialect(XPATH1_URI);
+                contentFilter.getContent().add(filter);
+            }
+            useRaw = raw;
+        }
+
+        @Override
+        protected void doNotify(Element content) {
+            notifications.add(content);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
+import org.oasis_open.docs.wsn.b_2.Notify;
+
+public class NotifyMarshallerTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        NotifyMarshaller marshaller = new NotifyMarshaller();
+        String text = marshaller.marshal(createMessageHolder("myTopic", "15"));
+        assertTrue(text, text.indexOf("Notify") > 0);
+
+        Notify notify = marshaller.unmarshal(text);
+        assertEquals(1, notify.getNotificationMessage().size());
+        NotificationMessageHolderType holder = notify.getNotificationMessage().get(0);
+        assertEquals("myTopic", holder.getTopic().getContent().get(0).toString());
+        Element content = (Element) holder.getMessage().getAny();
+        assertEquals("order", content.getLocalName());
+        assertEquals("15", content.getTextContent());
+    }
+
+    public void testMarshallersAreReused() throws Exception {
+        NotifyMarshaller marshaller = new NotifyMarshaller(1);
+        String first = marshaller.marshal(createMessageHolder("myTopic", "1"));
+        String second = marshaller.marshal(createMessageHolder("myTopic", "2"));
+        assertEquals("1", ((Element) marshaller.unmarshal(first).getNotificationMessage().get(0)
+                .getMessage().getAny()).getTextContent());
+        assertEquals("2", ((Element) marshaller.unmarshal(second).getNotificationMessage().get(0)
+                .getMessage().getAny()).getTextContent());
+    }
+
+    public void testClear() throws Exception {
+        NotifyMarshaller marshaller = new NotifyMarshaller();
+        String text = marshaller.marshal(createMessageHolder("myTopic", "15"));
+        marshaller.clear();
+        // the marshaller is still usable, new JAXB marshallers are created
+        assertEquals(text, marshaller.marshal(createMessageHolder("myTopic", "15")));
+        assertEquals(1, marshaller.unmarshal(text).getNotificationMessage().size());
+    }
+
+    static NotificationMessageHolderType createMessageHolder(String topic, String amount) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element order = doc.createElementNS(null, "order");
+        order.setTextContent(amount);
+        NotificationMessageHolderType holder = new NotificationMessageHolderType();
+        holder.setTopic(new JmsTopicExpressionConverter().toTopicExpression(topic));
+        holder.setMessage(new NotificationMessageHolderType.Message());
+        holder.getMessage().setAny(order);
+        return holder;
+    }
+
+}